@@ -0,0 +1,31 @@
+package fit.biejk.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fit.biejk.dto.OrderAlertMessage;
+import jakarta.websocket.EncodeException;
+import jakarta.websocket.Encoder;
+import lombok.SneakyThrows;
+
+/**
+ * WebSocket encoder that serializes {@link OrderAlertMessage} instances to JSON strings.
+ */
+public class OrderAlertEncoder implements Encoder.Text<OrderAlertMessage> {
+
+    /**
+     * Configured Jackson object mapper for serialization.
+     */
+    private final ObjectMapper jackson = ChatMessageDecoder.getJackson();
+
+    /**
+     * Serializes an {@link OrderAlertMessage} to its JSON string representation.
+     *
+     * @param orderAlertMessage the alert to encode
+     * @return JSON string representing the alert
+     * @throws EncodeException if encoding fails
+     */
+    @Override
+    @SneakyThrows
+    public String encode(final OrderAlertMessage orderAlertMessage) throws EncodeException {
+        return jackson.writeValueAsString(orderAlertMessage);
+    }
+}
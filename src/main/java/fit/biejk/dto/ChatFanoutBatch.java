@@ -0,0 +1,40 @@
+package fit.biejk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Batch of chat messages published by one node to the Redis channel of a chat.
+ * <p>
+ * Every node with sessions in the chat receives the batch and delivers the messages to its own sessions.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatFanoutBatch {
+
+    /**
+     * ID of the node that published the batch; the node ignores its own batches.
+     */
+    private String nodeId;
+
+    /**
+     * Wall-clock time the batch was published, in milliseconds since the epoch.
+     */
+    private long publishedAt;
+
+    /**
+     * Number of the batch among the batches the node published for the chat, increasing by one per batch;
+     * a receiver that sees a number skipped has missed a batch.
+     */
+    private long sequence;
+
+    /**
+     * Messages of the chat, in the order they were sent.
+     */
+    private List<ChatOutputMessage> messages;
+}
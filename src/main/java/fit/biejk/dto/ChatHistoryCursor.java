@@ -0,0 +1,55 @@
+package fit.biejk.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the message history of a chat: the creation time and ID of a message.
+ * <p>
+ * Messages are ordered by {@code (createAt, id)}, so the pair identifies a position even if several
+ * messages share the same timestamp. Clients receive it as an opaque URL-safe token.
+ * </p>
+ *
+ * @param createAt creation time of the message
+ * @param id       ID of the message
+ */
+public record ChatHistoryCursor(LocalDateTime createAt, Long id) {
+
+    /**
+     * Separator between the timestamp and the ID in the decoded token.
+     */
+    private static final char SEPARATOR = '|';
+
+    /**
+     * Decodes a cursor token received from a client.
+     *
+     * @param token the token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ChatHistoryCursor decode(final String token) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
+            return new ChatHistoryCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid history cursor", e);
+        }
+    }
+
+    /**
+     * Encodes the cursor as an opaque URL-safe token.
+     *
+     * @return the token
+     */
+    public String encode() {
+        byte[] value = (createAt.toString() + SEPARATOR + id).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+    }
+}
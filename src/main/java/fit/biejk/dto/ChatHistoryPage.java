@@ -0,0 +1,54 @@
+package fit.biejk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the message history of a chat.
+ *
+ * @param <T> type of the messages
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatHistoryPage<T> {
+
+    /**
+     * Messages of the page, oldest first.
+     */
+    private List<T> messages;
+
+    /**
+     * Token to pass as {@code before} to fetch older messages, or {@code null} if there are none.
+     */
+    private String before;
+
+    /**
+     * Token to pass as {@code after} to fetch newer messages, or {@code null} if there are none.
+     */
+    private String after;
+
+    /**
+     * Builds a page of messages with the cursors of its first and last message.
+     *
+     * @param messages messages ordered from oldest to newest
+     * @param hasOlder whether older messages exist
+     * @param hasNewer whether newer messages exist
+     * @return the page
+     */
+    public static ChatHistoryPage<ChatOutputMessage> of(final List<ChatOutputMessage> messages,
+                                                        final boolean hasOlder,
+                                                        final boolean hasNewer) {
+        if (messages.isEmpty()) {
+            return new ChatHistoryPage<>(List.of(), null, null);
+        }
+        ChatOutputMessage first = messages.get(0);
+        ChatOutputMessage last = messages.get(messages.size() - 1);
+        return new ChatHistoryPage<>(messages,
+                hasOlder ? new ChatHistoryCursor(first.getCreateAt(), first.getId()).encode() : null,
+                hasNewer ? new ChatHistoryCursor(last.getCreateAt(), last.getId()).encode() : null);
+    }
+}
@@ -0,0 +1,27 @@
+package fit.biejk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Notice published by one node to all nodes that the cached chat memberships of a user are no longer valid.
+ * <p>
+ * Every node receives the notice and drops the cached chats of the user.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMembershipInvalidation {
+
+    /**
+     * ID of the node that published the notice; the node ignores its own notices.
+     */
+    private String nodeId;
+
+    /**
+     * ID of the user whose chats are dropped.
+     */
+    private Long userId;
+}
@@ -0,0 +1,34 @@
+package fit.biejk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Batch of new-order alerts published by one node to the Redis channel of a specialist.
+ * <p>
+ * Every node with sessions of the specialist receives the batch and delivers the alerts to its own sessions.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderAlertBatch {
+
+    /**
+     * ID of the node that published the batch; the node ignores its own batches.
+     */
+    private String nodeId;
+
+    /**
+     * ID of the specialist the alerts are for.
+     */
+    private Long specialistId;
+
+    /**
+     * Alerts for the specialist, one per matching order.
+     */
+    private List<OrderAlertMessage> alerts;
+}
@@ -0,0 +1,51 @@
+package fit.biejk.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO pushed to specialists over WebSocket when a new order matches one of their saved searches.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderAlertMessage {
+
+    /**
+     * ID of the new order.
+     */
+    private Long orderId;
+
+    /**
+     * Title of the order.
+     */
+    private String title;
+
+    /**
+     * Names of the requested services.
+     */
+    private List<String> services;
+
+    /**
+     * Name of the order location.
+     */
+    private String location;
+
+    /**
+     * Price offered for the order.
+     */
+    private Integer price;
+
+    /**
+     * Deadline of the order in ISO-8601 format, or {@code null} if none is set.
+     */
+    private String deadline;
+
+    /**
+     * IDs of the saved searches of the specialist that matched the order.
+     */
+    private List<Long> savedSearchIds;
+}
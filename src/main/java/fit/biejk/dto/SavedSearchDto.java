@@ -0,0 +1,68 @@
+package fit.biejk.dto;
+
+import fit.biejk.entity.Location;
+import fit.biejk.entity.ServiceOffering;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Data Transfer Object representing a saved search of a specialist.
+ * <p>
+ * Contains the criteria new orders are matched against: services, location with an optional
+ * radius, and price range. Criteria left empty match any order.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SavedSearchDto {
+
+    /**
+     * Unique identifier of the saved search.
+     */
+    private Long id;
+
+    /**
+     * ID of the specialist who registered the search.
+     */
+    private Long specialistId;
+
+    /**
+     * Services of which a matching order must request at least one.
+     */
+    private List<ServiceOffering> serviceOfferings;
+
+    /**
+     * Location of matching orders.
+     */
+    private Location location;
+
+    /**
+     * Radius around the location in kilometres; an exact location match if empty.
+     */
+    @Positive(message = "Radius must be positive")
+    private Double radiusKm;
+
+    /**
+     * Lowest accepted order price.
+     */
+    @PositiveOrZero(message = "Minimum price must not be negative")
+    private Integer minPrice;
+
+    /**
+     * Highest accepted order price.
+     */
+    @PositiveOrZero(message = "Maximum price must not be negative")
+    private Integer maxPrice;
+
+    /**
+     * Timestamp of when the saved search was created.
+     */
+    private LocalDateTime createdAt;
+}
@@ -15,17 +15,33 @@ import java.time.LocalDateTime;
  * </p>
  */
 @Entity
-@Table(name = "chat-message")
+@Table(name = "chat-message",
+        indexes = @Index(name = "idx_chat_message_history", columnList = "chat_id, create_at, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class ChatMessage {
 
+    /**
+     * Name of the database sequence the message IDs are drawn from.
+     */
+    public static final String ID_SEQUENCE = "chat_message_seq";
+
+    /**
+     * Number of IDs reserved by one call of the sequence; each value of the sequence is the last ID of a block.
+     */
+    public static final int ID_ALLOCATION_SIZE = 100;
+
     /**
      * Unique identifier for the chat message.
+     * <p>
+     * Messages are written by {@link fit.biejk.service.ChatMessageWriteBehind}, which reserves blocks of IDs
+     * from the sequence before the messages are stored.
+     * </p>
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
     private Long id;
 
     /**
@@ -36,6 +36,18 @@ public class Location {
     @Column(name = "name", unique = true, nullable = false)
     private String name;
 
+    /**
+     * Latitude of the location centre in degrees (WGS 84).
+     */
+    @Column(name = "latitude")
+    private Double latitude;
+
+    /**
+     * Longitude of the location centre in degrees (WGS 84).
+     */
+    @Column(name = "longitude")
+    private Double longitude;
+
     /**
      * List of users registered in this location.
      * <p>
@@ -0,0 +1,75 @@
+package fit.biejk.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Entity representing a search registered by a specialist to be alerted about matching new orders.
+ * <p>
+ * Every criterion is optional; a saved search without criteria matches every new order.
+ * </p>
+ */
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "saved_search")
+public class SavedSearch {
+
+    /**
+     * Unique identifier of the saved search.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The specialist who registered the search.
+     */
+    @ManyToOne
+    @JoinColumn(name = "specialist_id", nullable = false)
+    private Specialist specialist;
+
+    /**
+     * Services of which the order must request at least one; empty for any service.
+     */
+    @ManyToMany
+    @JoinTable(name = "saved_search_service")
+    private List<ServiceOffering> serviceOfferings;
+
+    /**
+     * Location of the order, or {@code null} for any location.
+     */
+    @ManyToOne
+    @JoinColumn(name = "location_id")
+    private Location location;
+
+    /**
+     * Radius around {@link #location} in kilometres, or {@code null} for an exact location match.
+     */
+    @Column(name = "radius_km")
+    private Double radiusKm;
+
+    /**
+     * Lowest accepted order price, or {@code null} for no lower bound.
+     */
+    @Column(name = "min_price")
+    private Integer minPrice;
+
+    /**
+     * Highest accepted order price, or {@code null} for no upper bound.
+     */
+    @Column(name = "max_price")
+    private Integer maxPrice;
+
+    /**
+     * Timestamp of when the saved search was created.
+     */
+    @Column(name = "createAt", nullable = false, updatable = false)
+    private final LocalDateTime createdAt = LocalDateTime.now();
+}
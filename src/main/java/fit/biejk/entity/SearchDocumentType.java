@@ -0,0 +1,22 @@
+package fit.biejk.entity;
+
+/**
+ * Enumeration of entity types that are mirrored into the search index.
+ */
+public enum SearchDocumentType {
+
+    /**
+     * {@link Order} documents stored in the "orders" index.
+     */
+    ORDER,
+
+    /**
+     * {@link Specialist} documents stored in the "specialists" index.
+     */
+    SPECIALIST,
+
+    /**
+     * {@link SavedSearch} percolator queries stored in the "saved-searches" index.
+     */
+    SAVED_SEARCH
+}
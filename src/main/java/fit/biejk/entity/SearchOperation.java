@@ -0,0 +1,55 @@
+package fit.biejk.entity;
+
+/**
+ * Enumeration of changes that can be propagated to the search index.
+ */
+public enum SearchOperation {
+
+    /**
+     * The document is (re)built from the current database state and indexed.
+     */
+    UPSERT,
+
+    /**
+     * Like {@link #UPSERT}, for a document indexed for the first time; the new document is also
+     * matched against the saved searches.
+     */
+    CREATE,
+
+    /**
+     * The document is removed from the index.
+     */
+    DELETE,
+
+    /**
+     * Only the rating and activity fields of a specialist document are updated in place.
+     */
+    UPDATE_RATING,
+
+    /**
+     * Only the status field of an order document is updated in place.
+     */
+    UPDATE_STATUS,
+
+    /**
+     * The indexed order is matched against the saved searches; the index is not changed. Written in place
+     * of an applied {@link #CREATE} and processed by the percolator instead of the relay.
+     */
+    PERCOLATE,
+
+    /**
+     * The document was removed from the index while the index was being rebuilt; the removal is replayed
+     * against the rebuilt index before it goes live. Written in place of an applied removal and read only
+     * by the {@code SearchIndexManager}.
+     */
+    TOMBSTONE;
+
+    /**
+     * Checks whether the operation rewrites or removes the whole document.
+     *
+     * @return {@code true} for {@link #UPSERT}, {@link #CREATE} and {@link #DELETE}
+     */
+    public boolean isFull() {
+        return this == UPSERT || this == CREATE || this == DELETE;
+    }
+}
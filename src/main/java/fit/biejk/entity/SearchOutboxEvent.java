@@ -0,0 +1,77 @@
+package fit.biejk.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing a pending change of the search index.
+ * <p>
+ * Events are written in the same transaction as the change of the entity itself
+ * and later applied to Elasticsearch by a background relay, in the order of their IDs.
+ * </p>
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "search_outbox", indexes = {
+        @Index(name = "idx_search_outbox_ready", columnList = "next_attempt_at, id"),
+        @Index(name = "idx_search_outbox_document", columnList = "document_type, document_id")
+})
+public class SearchOutboxEvent {
+
+    /**
+     * Unique identifier of the event, also defining the processing order.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Type of the changed entity.
+     */
+    @Column(name = "document_type", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private SearchDocumentType documentType;
+
+    /**
+     * ID of the changed entity.
+     */
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    /**
+     * Change to apply to the index.
+     */
+    @Column(name = "operation", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private SearchOperation operation;
+
+    /**
+     * Timestamp when the event was recorded.
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    /**
+     * Number of failed attempts to apply the event.
+     */
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    /**
+     * Earliest time of the next attempt, postponed after every failure.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    /**
+     * Whether the event was dispatched, so its write may still be running until {@code nextAttemptAt}.
+     */
+    @Column(name = "leased", nullable = false)
+    private boolean leased;
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -36,6 +37,18 @@ public class Specialist extends User {
     @Column(name = "average_rating")
     private Double averageRating = 0.0;
 
+    /**
+     * Number of client reviews the average rating is calculated from.
+     */
+    @Column(name = "review_count")
+    private Integer reviewCount = 0;
+
+    /**
+     * Time of the specialist's last activity, such as a submitted proposal or a received review.
+     */
+    @Column(name = "last_active_at")
+    private LocalDateTime lastActiveAt;
+
     /**
      * Short description of the specialist's services or qualifications.
      */
@@ -0,0 +1,45 @@
+package fit.biejk.mapper;
+
+import fit.biejk.dto.SavedSearchDto;
+import fit.biejk.entity.SavedSearch;
+import org.mapstruct.*;
+
+import java.util.List;
+
+/**
+ * Mapper for converting between {@link SavedSearch} entity and {@link SavedSearchDto}.
+ */
+@Mapper(componentModel = "jakarta", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface SavedSearchMapper {
+
+    /**
+     * Maps a {@link SavedSearch} entity to its corresponding {@link SavedSearchDto}.
+     *
+     * @param entity the saved search entity
+     * @return the corresponding DTO
+     */
+    @Mapping(source = "specialist.id", target = "specialistId")
+    SavedSearchDto toDto(SavedSearch entity);
+
+    /**
+     * Maps a {@link SavedSearchDto} to a {@link SavedSearch} entity.
+     * <p>
+     * The specialist should be set manually in service.
+     * </p>
+     *
+     * @param dto the saved search DTO
+     * @return the entity (without the specialist)
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "specialist", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    SavedSearch toEntity(SavedSearchDto dto);
+
+    /**
+     * Converts a list of entities to a list of DTOs.
+     *
+     * @param entityList list of entities
+     * @return list of DTOs
+     */
+    List<SavedSearchDto> toDtoList(List<SavedSearch> entityList);
+}
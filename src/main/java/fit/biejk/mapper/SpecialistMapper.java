@@ -3,6 +3,7 @@ package fit.biejk.mapper;
 import fit.biejk.dto.SpecialistDto;
 import fit.biejk.entity.Specialist;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 import java.util.List;
 
@@ -27,6 +28,8 @@ public interface SpecialistMapper {
      * @param dto the SpecialistDto
      * @return the mapped Specialist entity
      */
+    @Mapping(target = "reviewCount", ignore = true)
+    @Mapping(target = "lastActiveAt", ignore = true)
     Specialist toEntity(SpecialistDto dto);
 
     /**
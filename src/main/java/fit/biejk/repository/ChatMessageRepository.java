@@ -2,15 +2,67 @@ package fit.biejk.repository;
 
 import fit.biejk.entity.ChatMessage;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * Repository class for managing {@link ChatMessage} entities.
  * <p>
- * Provides access to basic CRUD operations using Panache.
- * Additional custom queries can be added here as needed.
+ * History queries seek on the {@code (chat_id, create_at, id)} index instead of skipping rows, so a page
+ * costs the same wherever it is in the history.
  * </p>
  */
 @ApplicationScoped
 public class ChatMessageRepository implements PanacheRepository<ChatMessage> {
+
+    /**
+     * Returns the newest messages of a chat.
+     *
+     * @param chatId ID of the chat
+     * @param limit  maximum number of messages
+     * @return messages ordered from newest to oldest
+     */
+    public List<ChatMessage> findLatest(final Long chatId, final int limit) {
+        return find("chat.id = ?1", Sort.descending("createAt", "id"), chatId)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Returns the messages of a chat that precede a position in the history.
+     *
+     * @param chatId   ID of the chat
+     * @param createAt creation time of the message at the position
+     * @param id       ID of the message at the position
+     * @param limit    maximum number of messages
+     * @return messages ordered from newest to oldest
+     */
+    public List<ChatMessage> findBefore(final Long chatId, final LocalDateTime createAt, final Long id,
+                                        final int limit) {
+        return find("chat.id = ?1 and createAt <= ?2 and (createAt < ?2 or id < ?3)",
+                Sort.descending("createAt", "id"), chatId, createAt, id)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Returns the messages of a chat that follow a position in the history.
+     *
+     * @param chatId   ID of the chat
+     * @param createAt creation time of the message at the position
+     * @param id       ID of the message at the position
+     * @param limit    maximum number of messages
+     * @return messages ordered from oldest to newest
+     */
+    public List<ChatMessage> findAfter(final Long chatId, final LocalDateTime createAt, final Long id,
+                                       final int limit) {
+        return find("chat.id = ?1 and createAt >= ?2 and (createAt > ?2 or id > ?3)",
+                Sort.ascending("createAt", "id"), chatId, createAt, id)
+                .page(Page.ofSize(limit))
+                .list();
+    }
 }
@@ -5,6 +5,7 @@ import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Repository class for managing {@link Chat} entities.
@@ -40,4 +41,21 @@ public class ChatRepository implements PanacheRepository<Chat> {
     public List<Chat> findByUserId(final Long userId) {
         return find("user1.id = ?1 OR user2.id = ?1", userId).list();
     }
+
+    /**
+     * Finds the IDs of the two participants of a chat without loading the chat or its users.
+     *
+     * @param chatId ID of the chat
+     * @return IDs of the participants, or {@code null} if the chat does not exist
+     */
+    public Set<Long> findParticipantIds(final Long chatId) {
+        List<Object[]> rows = getEntityManager()
+                .createQuery("select c.user1.id, c.user2.id from Chat c where c.id = ?1", Object[].class)
+                .setParameter(1, chatId)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        return Set.copyOf(List.of((Long) rows.get(0)[0], (Long) rows.get(0)[1]));
+    }
 }
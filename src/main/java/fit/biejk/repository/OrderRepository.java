@@ -4,6 +4,8 @@ import fit.biejk.entity.Order;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -35,5 +37,58 @@ public class OrderRepository implements PanacheRepository<Order> {
     public List<Order> findBySpecialistId(final Long specialistId) {
         return find("specialist.id", specialistId).list();
     }
-}
 
+    /**
+     * Retrieves the next chunk of orders ordered by ID, starting after the given ID.
+     * <p>
+     * Used for keyset pagination over the whole table without loading it at once. The location and service
+     * offerings are fetched like in {@link #findByIds}, so mapping a chunk does not trigger lazy loads.
+     * </p>
+     *
+     * @param afterId ID of the last order of the previous chunk
+     * @param size    maximum number of orders to return
+     * @return a list of {@link Order} entities with IDs greater than {@code afterId}
+     */
+    public List<Order> findChunkAfterId(final Long afterId, final int size) {
+        // paging a collection fetch join would happen in memory, so the IDs are paged first
+        List<Long> ids = getEntityManager()
+                .createQuery("select o.id from Order o where o.id > ?1 order by o.id", Long.class)
+                .setParameter(1, afterId)
+                .setMaxResults(size)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Order> chunk = new ArrayList<>(findByIds(ids));
+        chunk.sort(Comparator.comparing(Order::getId));
+        return chunk;
+    }
+
+    /**
+     * Retrieves all orders with the given IDs in a single query.
+     * <p>
+     * The location and service offerings are fetched together with the orders, so mapping
+     * the result does not trigger further lazy loads.
+     * </p>
+     *
+     * @param ids IDs of the orders
+     * @return a list of found {@link Order} entities, in no particular order
+     */
+    public List<Order> findByIds(final List<Long> ids) {
+        return list("select distinct o from Order o join fetch o.location left join fetch o.serviceOfferings "
+                + "where o.id in ?1", ids);
+    }
+
+    /**
+     * Retrieves all orders with the given IDs without fetching their collections.
+     * <p>
+     * Meant for reading scalar columns only, e.g. to build partial search document updates.
+     * </p>
+     *
+     * @param ids IDs of the orders
+     * @return a list of found {@link Order} entities, in no particular order
+     */
+    public List<Order> findPlainByIds(final List<Long> ids) {
+        return list("id in ?1", ids);
+    }
+}
@@ -0,0 +1,62 @@
+package fit.biejk.repository;
+
+import fit.biejk.entity.SavedSearch;
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.List;
+
+/**
+ * Repository for accessing and managing {@link SavedSearch} entities.
+ */
+@ApplicationScoped
+public class SavedSearchRepository implements PanacheRepository<SavedSearch> {
+
+    /**
+     * Finds all saved searches registered by the given specialist.
+     *
+     * @param specialistId ID of the specialist
+     * @return list of saved searches, oldest first
+     */
+    public List<SavedSearch> findBySpecialistId(final Long specialistId) {
+        return find("specialist.id", Sort.by("id"), specialistId).list();
+    }
+
+    /**
+     * Counts the saved searches registered by the given specialist.
+     *
+     * @param specialistId ID of the specialist
+     * @return number of saved searches
+     */
+    public long countBySpecialistId(final Long specialistId) {
+        return count("specialist.id", specialistId);
+    }
+
+    /**
+     * Retrieves all saved searches with the given IDs in a single query.
+     * <p>
+     * The location and service offerings are fetched together with the searches, so mapping
+     * the result does not trigger further lazy loads.
+     * </p>
+     *
+     * @param ids IDs of the saved searches
+     * @return a list of found {@link SavedSearch} entities, in no particular order
+     */
+    public List<SavedSearch> findByIds(final List<Long> ids) {
+        return list("select distinct s from SavedSearch s left join fetch s.location "
+                + "left join fetch s.serviceOfferings where s.id in ?1", ids);
+    }
+
+    /**
+     * Retrieves the next chunk of saved searches ordered by ID.
+     *
+     * @param afterId ID after which the chunk starts
+     * @param size    maximum number of saved searches in the chunk
+     * @return the chunk, empty if there are no more saved searches
+     */
+    public List<SavedSearch> findChunkAfterId(final Long afterId, final int size) {
+        return find("id > ?1", Sort.by("id"), afterId).page(Page.ofSize(size)).list();
+    }
+}
@@ -0,0 +1,155 @@
+package fit.biejk.repository;
+
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.entity.SearchOutboxEvent;
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.LockModeType;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Repository for accessing {@link SearchOutboxEvent} entities.
+ */
+@ApplicationScoped
+public class SearchOutboxRepository implements PanacheRepository<SearchOutboxEvent> {
+
+    /**
+     * Lock timeout hint value that makes Hibernate skip rows locked by other transactions.
+     */
+    private static final int SKIP_LOCKED = -2;
+
+    /**
+     * Operations of the events kept in the outbox that are not pending index changes.
+     */
+    private static final List<SearchOperation> NOT_CHANGES = List.of(SearchOperation.PERCOLATE,
+            SearchOperation.TOMBSTONE);
+
+    /**
+     * Locks and returns the oldest index changes that are due for processing.
+     * <p>
+     * Rows already locked by another relay (e.g. on another replica) are skipped. Pending percolations and
+     * tombstones are left to the percolator and the index manager.
+     * </p>
+     *
+     * @param now   current time
+     * @param limit maximum number of events
+     * @return due events ordered by ID
+     */
+    public List<SearchOutboxEvent> lockReady(final LocalDateTime now, final int limit) {
+        return find("nextAttemptAt <= ?1 and operation not in ?2", Sort.by("id"), now, NOT_CHANGES)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint("jakarta.persistence.lock.timeout", SKIP_LOCKED)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Locks and returns the oldest pending percolations that are due, skipping rows locked by another
+     * percolator.
+     *
+     * @param now   current time
+     * @param limit maximum number of events
+     * @return due percolation events ordered by ID
+     */
+    public List<SearchOutboxEvent> lockPercolations(final LocalDateTime now, final int limit) {
+        return find("nextAttemptAt <= ?1 and operation = ?2", Sort.by("id"), now, SearchOperation.PERCOLATE)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint("jakarta.persistence.lock.timeout", SKIP_LOCKED)
+                .page(Page.ofSize(limit))
+                .list();
+    }
+
+    /**
+     * Returns the index changes of the given documents other than the given events.
+     *
+     * @param type        type of the documents
+     * @param documentIds IDs of the documents
+     * @param excludedIds IDs of the events to leave out
+     * @return the other events of the documents
+     */
+    public List<SearchOutboxEvent> findOthers(final SearchDocumentType type,
+                                              final Collection<Long> documentIds,
+                                              final Collection<Long> excludedIds) {
+        return list("documentType = ?1 and documentId in ?2 and id not in ?3 and operation not in ?4", type,
+                documentIds, excludedIds, NOT_CHANGES);
+    }
+
+    /**
+     * Locks the index changes of the given documents other than the given events, skipping rows locked by
+     * another transaction.
+     *
+     * @param type        type of the documents
+     * @param documentIds IDs of the documents
+     * @param excludedIds IDs of the events to leave out
+     * @return the other events of the documents that could be locked
+     */
+    public List<SearchOutboxEvent> lockOthers(final SearchDocumentType type,
+                                              final Collection<Long> documentIds,
+                                              final Collection<Long> excludedIds) {
+        return find("documentType = ?1 and documentId in ?2 and id not in ?3 and operation not in ?4", type,
+                documentIds, excludedIds, NOT_CHANGES)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint("jakarta.persistence.lock.timeout", SKIP_LOCKED)
+                .list();
+    }
+
+    /**
+     * Returns the oldest index change that has not been applied yet.
+     *
+     * @return the oldest pending change, or {@code null} if no change is waiting
+     */
+    public SearchOutboxEvent findOldest() {
+        return find("operation not in ?1", Sort.by("id"), NOT_CHANGES).firstResult();
+    }
+
+    /**
+     * Counts the index changes that have not been applied yet.
+     *
+     * @return number of pending changes, not counting pending percolations and tombstones
+     */
+    public long countChanges() {
+        return count("operation not in ?1", NOT_CHANGES);
+    }
+
+    /**
+     * Returns the tombstones of the documents of one type.
+     *
+     * @param type type of the documents
+     * @return the tombstone events
+     */
+    public List<SearchOutboxEvent> findTombstones(final SearchDocumentType type) {
+        return list("documentType = ?1 and operation = ?2", type, SearchOperation.TOMBSTONE);
+    }
+
+    /**
+     * Deletes the tombstones of the documents of one type.
+     *
+     * @param type type of the documents
+     * @return number of deleted tombstones
+     */
+    public long deleteTombstones(final SearchDocumentType type) {
+        return delete("documentType = ?1 and operation = ?2", type, SearchOperation.TOMBSTONE);
+    }
+
+    /**
+     * Returns which of the given documents still have index changes waiting in the outbox.
+     *
+     * @param type type of the documents
+     * @param ids  IDs of the documents
+     * @return IDs of the documents with pending events
+     */
+    public Set<Long> findPendingIds(final SearchDocumentType type, final Collection<Long> ids) {
+        return find("documentType = ?1 and documentId in ?2 and operation not in ?3", type, ids,
+                NOT_CHANGES).stream()
+                .map(SearchOutboxEvent::getDocumentId)
+                .collect(Collectors.toSet());
+    }
+}
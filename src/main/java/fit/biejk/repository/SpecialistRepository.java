@@ -4,6 +4,10 @@ import fit.biejk.entity.Specialist;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 /**
  * Repository class for performing CRUD operations on {@link Specialist} entities.
  * <p>
@@ -12,4 +16,76 @@ import jakarta.enterprise.context.ApplicationScoped;
  */
 @ApplicationScoped
 public class SpecialistRepository implements PanacheRepository<Specialist> {
+
+    /**
+     * Retrieves the next chunk of specialists ordered by ID, starting after the given ID.
+     * <p>
+     * Used for keyset pagination over the whole table without loading it at once. The location and service
+     * offerings are fetched like in {@link #findByIds}, so mapping a chunk does not trigger lazy loads.
+     * </p>
+     *
+     * @param afterId ID of the last specialist of the previous chunk
+     * @param size    maximum number of specialists to return
+     * @return a list of {@link Specialist} entities with IDs greater than {@code afterId}
+     */
+    public List<Specialist> findChunkAfterId(final Long afterId, final int size) {
+        // paging a collection fetch join would happen in memory, so the IDs are paged first
+        List<Long> ids = getEntityManager()
+                .createQuery("select s.id from Specialist s where s.id > ?1 order by s.id", Long.class)
+                .setParameter(1, afterId)
+                .setMaxResults(size)
+                .getResultList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Specialist> chunk = new ArrayList<>(findByIds(ids));
+        chunk.sort(Comparator.comparing(Specialist::getId));
+        return chunk;
+    }
+
+    /**
+     * Retrieves all specialists with the given IDs in a single query.
+     * <p>
+     * The location and service offerings are fetched together with the specialists, so mapping
+     * the result does not trigger further lazy loads.
+     * </p>
+     *
+     * @param ids IDs of the specialists
+     * @return a list of found {@link Specialist} entities, in no particular order
+     */
+    public List<Specialist> findByIds(final List<Long> ids) {
+        return list("select distinct s from Specialist s join fetch s.location left join fetch s.serviceOfferings "
+                + "where s.id in ?1", ids);
+    }
+
+    /**
+     * Retrieves all specialists with the given IDs without fetching their collections.
+     * <p>
+     * Meant for reading scalar columns only, e.g. to build partial search document updates.
+     * </p>
+     *
+     * @param ids IDs of the specialists
+     * @return a list of found {@link Specialist} entities, in no particular order
+     */
+    public List<Specialist> findPlainByIds(final List<Long> ids) {
+        return list("id in ?1", ids);
+    }
+
+    /**
+     * Adds one review rating to the average rating and review count of a specialist in a single statement.
+     * <p>
+     * The new values are computed by the database from the current row, so concurrent reviews of the same
+     * specialist are all counted.
+     * </p>
+     *
+     * @param id     ID of the specialist
+     * @param rating rating of the new review
+     * @return number of updated specialists, {@code 0} if the specialist does not exist
+     */
+    public int addRating(final Long id, final int rating) {
+        return update("averageRating = (coalesce(averageRating, 0.0) * coalesce(reviewCount, 0) + ?1)"
+                        + " / (coalesce(reviewCount, 0) + 1), reviewCount = coalesce(reviewCount, 0) + 1"
+                        + " where id = ?2",
+                (double) rating, id);
+    }
 }
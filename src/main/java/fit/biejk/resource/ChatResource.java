@@ -1,10 +1,10 @@
 package fit.biejk.resource;
 
+import fit.biejk.dto.ChatHistoryPage;
+import fit.biejk.dto.ChatOutputMessage;
 import fit.biejk.dto.CreateChatRequest;
 import fit.biejk.entity.Chat;
-import fit.biejk.entity.ChatMessage;
 import fit.biejk.mapper.ChatMapper;
-import fit.biejk.mapper.ChatMessageMapper;
 import fit.biejk.service.AuthService;
 import fit.biejk.service.ChatService;
 import io.quarkus.security.Authenticated;
@@ -13,13 +13,16 @@ import jakarta.validation.Valid;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
+import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 
 /**
  * REST resource that handles operations related to chat creation and message history retrieval.
  */
+@Slf4j
 @Path("/v1/chats")
 public class ChatResource {
 
@@ -35,12 +38,6 @@ public class ChatResource {
     @Inject
     private AuthService authService;
 
-    /**
-     * Mapper to convert ChatMessage entities to DTOs.
-     */
-    @Inject
-    private ChatMessageMapper chatMessageMapper;
-
     /** Mapper to convert chat entities to DTOs. */
     @Inject
     private ChatMapper chatMapper;
@@ -60,17 +57,34 @@ public class ChatResource {
     }
 
     /**
-     * Retrieves the message history for a specific chat.
+     * Retrieves one page of the message history of a specific chat.
+     * <p>
+     * Without a cursor the newest messages are returned. The {@code before} and {@code after} tokens of
+     * the response fetch the adjacent older and newer pages. Messages are stored shortly after they are
+     * sent, so a page read with {@code after} may miss a message sent to another node within that delay;
+     * live clients receive every message over the chat WebSocket.
+     * </p>
      *
      * @param chatId The ID of the chat whose history is to be retrieved.
-     * @return A Response containing a list of ChatOutputMessage DTOs.
+     * @param before token of the position to read older messages from, or {@code null}
+     * @param after  token of the position to read newer messages from, or {@code null}
+     * @param size   number of messages per page, capped by the configured maximum
+     * @return A Response containing the page of ChatOutputMessage DTOs, oldest first.
      */
     @GET
     @Path("/{chatId}/messages")
     @Authenticated
-    public Response getMessagesById(final Long chatId) {
-        List<ChatMessage> result = chatService.getMessagesById(chatId);
-        return Response.ok().entity(chatMessageMapper.toDtoList(result)).build();
+    public Response getMessagesById(final Long chatId,
+                                    @QueryParam("before") final String before,
+                                    @QueryParam("after") final String after,
+                                    @QueryParam("size") final Integer size) {
+        try {
+            ChatHistoryPage<ChatOutputMessage> page = chatService.getHistory(chatId, before, after, size);
+            return Response.ok().entity(page).build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid history request for chat {}: {}", chatId, e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
     }
 
     /**
@@ -1,17 +1,21 @@
 package fit.biejk.resource;
 
 import fit.biejk.dto.ReviewDto;
+import fit.biejk.dto.SavedSearchDto;
 import fit.biejk.dto.SpecialistDto;
 import fit.biejk.entity.OrderProposal;
 import fit.biejk.entity.Review;
+import fit.biejk.entity.SavedSearch;
 import fit.biejk.entity.ServiceOffering;
 import fit.biejk.entity.Specialist;
 import fit.biejk.mapper.OrderProposalMapper;
 import fit.biejk.mapper.ReviewMapper;
+import fit.biejk.mapper.SavedSearchMapper;
 import fit.biejk.mapper.SpecialistMapper;
 import fit.biejk.service.AuthService;
 import fit.biejk.service.OrderProposalService;
 import fit.biejk.service.ReviewService;
+import fit.biejk.service.SavedSearchService;
 import fit.biejk.service.SpecialistService;
 import jakarta.annotation.security.DenyAll;
 import jakarta.annotation.security.PermitAll;
@@ -67,6 +71,14 @@ public class SpecialistResource {
     @Inject
     private ReviewService reviewService;
 
+    /** Service for managing saved searches of specialists. */
+    @Inject
+    private SavedSearchService savedSearchService;
+
+    /** Mapper for converting between SavedSearch and SavedSearchDto. */
+    @Inject
+    private SavedSearchMapper savedSearchMapper;
+
     /**
      * Retrieves a list of all specialists.
      *
@@ -230,6 +242,66 @@ public class SpecialistResource {
         return Response.ok(specialistMapper.toDto(specialist)).build();
     }
 
+    /**
+     * Retrieves the saved searches of the currently authenticated specialist.
+     *
+     * @return HTTP response containing list of saved searches
+     */
+    @GET
+    @Path("/me/saved-searches")
+    @RolesAllowed("SPECIALIST")
+    public Response getSavedSearches() {
+        Long id = authService.getCurrentUserId();
+        log.info("Get saved searches for specialist ID={}", id);
+        List<SavedSearch> result = savedSearchService.getBySpecialistId(id);
+        return Response.ok(savedSearchMapper.toDtoList(result)).build();
+    }
+
+    /**
+     * Registers a saved search for the currently authenticated specialist.
+     * <p>
+     * The specialist is alerted over the {@code /alerts} WebSocket about new orders matching the search.
+     * </p>
+     *
+     * @param dto search criteria
+     * @return HTTP response with the saved search or error
+     */
+    @POST
+    @Path("/me/saved-searches")
+    @RolesAllowed("SPECIALIST")
+    public Response createSavedSearch(@Valid final SavedSearchDto dto) {
+        Long id = authService.getCurrentUserId();
+        log.info("Create saved search for specialist ID={} with dto={}", id, dto);
+        try {
+            SavedSearch result = savedSearchService.create(id, savedSearchMapper.toEntity(dto));
+            return Response.ok(savedSearchMapper.toDto(result)).build();
+        } catch (IllegalArgumentException e) {
+            log.error("Error creating saved search: {}", e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Deletes a saved search of the currently authenticated specialist.
+     *
+     * @param savedSearchId ID of the saved search
+     * @return HTTP response
+     */
+    @DELETE
+    @Path("/me/saved-searches/{savedSearchId}")
+    @RolesAllowed("SPECIALIST")
+    public Response deleteSavedSearch(@PathParam("savedSearchId") final Long savedSearchId) {
+        Long id = authService.getCurrentUserId();
+        log.info("Delete saved search ID={} of specialist ID={}", savedSearchId, id);
+        try {
+            savedSearchService.delete(id, savedSearchId);
+            return Response.ok().build();
+        } catch (IllegalArgumentException e) {
+            log.error("Error deleting saved search: {}", e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+    }
+
     /**
      * Creates a review for the given specialist.
      *
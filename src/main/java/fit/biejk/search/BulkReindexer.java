@@ -0,0 +1,202 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.util.BinaryData;
+import co.elastic.clients.util.ContentType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.stream.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Streams search documents from the database into Elasticsearch using the bulk API.
+ * <p>
+ * Documents are read chunk by chunk through a {@link ChunkLoader}, serialized once and sent
+ * as bulk requests. Up to {@code profinder.search.reindex.max-in-flight} requests run in parallel;
+ * when the limit is reached the reading thread waits, so at most that many chunks are held
+ * in memory regardless of the table size.
+ * </p>
+ * <p>
+ * Documents are sent with the {@code create} operation: when a live write has already stored a newer
+ * version of a document in the target index, the (older) snapshot from the reindex is skipped.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class BulkReindexer {
+
+    /**
+     * HTTP status of a bulk item rejected because the document already exists.
+     */
+    private static final int HTTP_CONFLICT = 409;
+
+    /**
+     * Asynchronous Elasticsearch client used to send bulk requests without blocking the reader.
+     */
+    @Inject
+    private ElasticsearchAsyncClient elasticsearchAsyncClient;
+
+    /**
+     * Registry for publishing reindex throughput metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Number of documents read from the database and sent in one bulk request.
+     */
+    @ConfigProperty(name = "profinder.search.reindex.chunk-size", defaultValue = "500")
+    private int chunkSize;
+
+    /**
+     * Maximum number of bulk requests waiting for a response at the same time.
+     */
+    @ConfigProperty(name = "profinder.search.reindex.max-in-flight", defaultValue = "4")
+    private int maxInFlight;
+
+    /**
+     * Throughput of the last finished run per index, exported as a gauge.
+     */
+    private final ConcurrentHashMap<String, AtomicLong> lastThroughput = new ConcurrentHashMap<>();
+
+    /**
+     * Reads all documents from the loader and indexes them into the given index.
+     *
+     * @param indexName   name of the target index
+     * @param loader      source of documents in id-ordered chunks
+     * @param idExtractor function returning the id of a document
+     * @param <D>         type of the search document
+     * @return summary of the run
+     */
+    public <D> ReindexReport reindex(final String indexName,
+                                     final ChunkLoader<D> loader,
+                                     final Function<D, Long> idExtractor) {
+        log.info("Reindexing {} with chunkSize={}, maxInFlight={}", indexName, chunkSize, maxInFlight);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong documents = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        Timer batchTimer = meterRegistry.timer("search.reindex.batch", "index", indexName);
+        JsonpMapper mapper = elasticsearchAsyncClient._jsonpMapper();
+        long start = System.currentTimeMillis();
+
+        Long lastId = 0L;
+        List<D> chunk = loader.load(lastId, chunkSize);
+        while (!chunk.isEmpty()) {
+            List<BulkOperation> operations = new ArrayList<>(chunk.size());
+            long chunkBytes = 0;
+            for (D document : chunk) {
+                byte[] json = serialize(mapper, document);
+                chunkBytes += json.length;
+                String id = String.valueOf(idExtractor.apply(document));
+                BinaryData data = BinaryData.of(json, ContentType.APPLICATION_JSON);
+                operations.add(BulkOperation.of(b -> b.create(c -> c.index(indexName).id(id).document(data))));
+            }
+            lastId = idExtractor.apply(chunk.get(chunk.size() - 1));
+
+            inFlight.acquireUninterruptibly();
+            int size = chunk.size();
+            long sentBytes = chunkBytes;
+            Timer.Sample sample = Timer.start(meterRegistry);
+            elasticsearchAsyncClient.bulk(BulkRequest.of(r -> r.operations(operations)))
+                    .whenComplete((response, error) -> {
+                        try {
+                            sample.stop(batchTimer);
+                            if (error != null) {
+                                log.error("Bulk request to {} failed", indexName, error);
+                            }
+                            documents.addAndGet(size);
+                            failed.addAndGet(error != null ? size : countFailures(indexName, response));
+                            bytes.addAndGet(sentBytes);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+
+            chunk = loader.load(lastId, chunkSize);
+        }
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        ReindexReport report = new ReindexReport(indexName, documents.get(), failed.get(), bytes.get(),
+                System.currentTimeMillis() - start);
+        publish(report);
+        log.info("Reindexed {}: documents={}, failed={}, bytes={}, durationMs={}, docsPerSecond={}",
+                indexName, report.getDocuments(), report.getFailed(), report.getBytes(),
+                report.getDurationMillis(), Math.round(report.getDocsPerSecond()));
+        return report;
+    }
+
+    /**
+     * Serializes a document to JSON using the client's own mapper.
+     *
+     * @param mapper   JSON mapper of the Elasticsearch client
+     * @param document document to serialize
+     * @return JSON bytes
+     */
+    private byte[] serialize(final JsonpMapper mapper, final Object document) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.jsonProvider().createGenerator(out)) {
+            mapper.serialize(document, generator);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Counts and logs the items rejected within a bulk response.
+     * <p>
+     * Conflicts caused by documents already written by live updates are not counted as failures.
+     * </p>
+     *
+     * @param indexName name of the target index
+     * @param response  bulk response
+     * @return number of rejected items
+     */
+    private long countFailures(final String indexName, final BulkResponse response) {
+        if (!response.errors()) {
+            return 0;
+        }
+        long rejected = 0;
+        for (BulkResponseItem item : response.items()) {
+            if (item.error() != null && item.status() == HTTP_CONFLICT) {
+                log.debug("Document {} already written to {} by a live update", item.id(), indexName);
+            } else if (item.error() != null) {
+                log.warn("Failed to index {} into {}: {}", item.id(), indexName, item.error().reason());
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Publishes counters and the throughput gauge for a finished run.
+     *
+     * @param report summary of the run
+     */
+    private void publish(final ReindexReport report) {
+        String index = report.getIndex();
+        meterRegistry.counter("search.reindex.documents", "index", index).increment(report.getDocuments());
+        meterRegistry.counter("search.reindex.failed", "index", index).increment(report.getFailed());
+        meterRegistry.counter("search.reindex.bytes", "index", index).increment(report.getBytes());
+        lastThroughput.computeIfAbsent(index, k -> meterRegistry.gauge("search.reindex.docs.per.second",
+                        Tags.of("index", k), new AtomicLong()))
+                .set(Math.round(report.getDocsPerSecond()));
+    }
+}
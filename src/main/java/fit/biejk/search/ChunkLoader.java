@@ -0,0 +1,25 @@
+package fit.biejk.search;
+
+import java.util.List;
+
+/**
+ * Source of search documents read from the database in id-ordered chunks.
+ * <p>
+ * Implementations return at most {@code size} documents whose id is strictly greater
+ * than {@code afterId}, ordered by id. An empty list signals the end of the data.
+ * </p>
+ *
+ * @param <D> type of the search document
+ */
+@FunctionalInterface
+public interface ChunkLoader<D> {
+
+    /**
+     * Loads the next chunk of documents.
+     *
+     * @param afterId id of the last document of the previous chunk ({@code 0} for the first chunk)
+     * @param size    maximum number of documents to return
+     * @return next chunk of documents, empty when there is nothing left
+     */
+    List<D> load(Long afterId, int size);
+}
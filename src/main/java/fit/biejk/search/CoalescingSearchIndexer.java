@@ -0,0 +1,512 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process indexing queue that coalesces changes of the same document.
+ * <p>
+ * Submitted documents are kept in a queue keyed by {@link SearchDocumentKey}; a newer version of a document
+ * replaces the queued one. Every coalesce window the queue is drained into a {@link BulkIngester}, which
+ * sends bulk requests once the configured number of operations, size or flush interval is reached.
+ * A document is never part of two bulk requests at the same time, so an older version cannot overtake
+ * a newer one; its next version waits in the queue until the previous write has completed.
+ * </p>
+ * <p>
+ * A {@link PartialUpdate} is sent as an {@code _update} merging only the changed fields, retried by
+ * Elasticsearch on version conflicts. Queued behind a full version it is merged into that version; queued
+ * behind a deletion it is dropped. If the document is missing from an index, the change fails with
+ * a {@link DocumentMissingException}, so the caller can retry it as a full document.
+ * </p>
+ * <p>
+ * Bulk requests wait for the next index refresh, so written documents are visible to searches when a
+ * request completes. The cached search results of written indices are invalidated only after that, once
+ * per {@code profinder.search.cache.invalidate-interval}, so steady writes do not empty the cache.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class CoalescingSearchIndexer {
+
+    /**
+     * Error type reported by Elasticsearch for an update of a document that does not exist.
+     */
+    private static final String DOCUMENT_MISSING = "document_missing_exception";
+
+    /**
+     * Elasticsearch client used by the bulk ingester.
+     */
+    @Inject
+    private ElasticsearchClient elasticsearchClient;
+
+    /**
+     * Manager resolving the indices that writes are sent to.
+     */
+    @Inject
+    private SearchIndexManager searchIndexManager;
+
+    /**
+     * Registry for publishing indexer metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Cache of search results, invalidated after documents of an index were written.
+     */
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    /**
+     * In-process search engine, updated as soon as a change is submitted.
+     */
+    @Inject
+    private LocalSearchEngine localSearchEngine;
+
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Maximum number of operations in one bulk request.
+     */
+    @ConfigProperty(name = "profinder.search.indexer.max-operations", defaultValue = "1000")
+    private int maxOperations;
+
+    /**
+     * Maximum size of one bulk request in bytes.
+     */
+    @ConfigProperty(name = "profinder.search.indexer.max-size-bytes", defaultValue = "5242880")
+    private long maxSizeBytes;
+
+    /**
+     * Maximum time an operation waits in the ingester before the bulk request is sent.
+     */
+    @ConfigProperty(name = "profinder.search.indexer.flush-interval", defaultValue = "1s")
+    private Duration flushInterval;
+
+    /**
+     * Maximum number of bulk requests running in parallel.
+     */
+    @ConfigProperty(name = "profinder.search.indexer.max-concurrent-requests", defaultValue = "2")
+    private int maxConcurrentRequests;
+
+    /**
+     * Number of times Elasticsearch retries a partial update that hit a concurrent write of the same document.
+     */
+    @ConfigProperty(name = "profinder.search.indexer.retry-on-conflict", defaultValue = "3")
+    private int retryOnConflict;
+
+    /**
+     * Indices written since their cached search results were last invalidated.
+     */
+    private final Set<String> dirtyIndices = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Documents waiting for the next coalesce window, guarded by {@code this}.
+     */
+    private final Map<SearchDocumentKey, PendingChange> queue = new LinkedHashMap<>();
+
+    /**
+     * Documents currently being written by a bulk request, guarded by {@code this}.
+     */
+    private final Set<SearchDocumentKey> inFlight = new HashSet<>();
+
+    /**
+     * Start times of running bulk requests by execution ID, for the flush latency timer.
+     */
+    private final Map<Long, Timer.Sample> runningRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Bulk ingester sending the drained documents.
+     */
+    private BulkIngester<PendingChange> ingester;
+
+    /**
+     * Number of submitted changes.
+     */
+    private Counter submitted;
+
+    /**
+     * Number of submitted changes that replaced a queued version of the same document.
+     */
+    private Counter coalesced;
+
+    /**
+     * Number of partial update operations sent.
+     */
+    private Counter partialUpdates;
+
+    /**
+     * Timer measuring the latency of bulk requests.
+     */
+    private Timer flushTimer;
+
+    /**
+     * Creates the bulk ingester and registers the metrics.
+     */
+    @PostConstruct
+    void init() {
+        ingester = BulkIngester.of(b -> b
+                .client(elasticsearchClient)
+                .maxOperations(maxOperations)
+                .maxSize(maxSizeBytes)
+                .maxConcurrentRequests(maxConcurrentRequests)
+                .flushInterval(flushInterval.toMillis(), TimeUnit.MILLISECONDS)
+                // targets are aliases; a removed rebuild alias must fail instead of becoming an index
+                .globalSettings(g -> g.requireAlias(true).refresh(Refresh.WaitFor))
+                .listener(new Listener())
+        );
+        submitted = meterRegistry.counter("search.indexer.submitted");
+        coalesced = meterRegistry.counter("search.indexer.coalesced");
+        partialUpdates = meterRegistry.counter("search.indexer.partial");
+        flushTimer = meterRegistry.timer("search.indexer.flush");
+        meterRegistry.gauge("search.indexer.queue.depth", this, CoalescingSearchIndexer::queueDepth);
+        meterRegistry.gauge("search.indexer.coalesce.ratio", this, CoalescingSearchIndexer::coalesceRatio);
+    }
+
+    /**
+     * Flushes the queue and closes the ingester, waiting for running requests.
+     */
+    @PreDestroy
+    void close() {
+        drainQueue();
+        ingester.close();
+    }
+
+    /**
+     * Queues a new version of a document.
+     * <p>
+     * The change is applied to the {@link LocalSearchEngine} immediately. If Elasticsearch is disabled,
+     * nothing is queued and the returned future is already complete.
+     * </p>
+     *
+     * @param key      the document to write
+     * @param document the new document, a {@link PartialUpdate} of it, or {@code null} to delete it from the index
+     * @return future completed when this or a newer version has been written
+     */
+    public CompletableFuture<Void> submit(final SearchDocumentKey key, final Object document) {
+        submitted.increment();
+        localSearchEngine.apply(key, document);
+        if (searchEngineRouter.isLocalOnly()) {
+            searchResultCache.invalidate(key.index());
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            PendingChange change = queue.get(key);
+            if (change == null) {
+                queue.put(key, new PendingChange(key, document, future));
+            } else {
+                change.document = coalesce(change.document, document);
+                change.futures.add(future);
+                coalesced.increment();
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Moves every queued document whose previous version is not in flight into the bulk ingester.
+     */
+    @Scheduled(every = "${profinder.search.indexer.coalesce-window}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void drainQueue() {
+        List<PendingChange> ready = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PendingChange> iterator = queue.values().iterator();
+            while (iterator.hasNext()) {
+                PendingChange change = iterator.next();
+                if (inFlight.add(change.key)) {
+                    iterator.remove();
+                    ready.add(change);
+                }
+            }
+        }
+        for (PendingChange change : ready) {
+            List<String> targets = searchIndexManager.writeTargets(change.key.index());
+            if (targets.isEmpty()) {
+                complete(change, new IllegalStateException("No writable index for " + change.key.index()));
+                continue;
+            }
+            change.remaining.set(targets.size());
+            String id = String.valueOf(change.key.id());
+            Object document = change.document;
+            for (String target : targets) {
+                ingester.add(operation(target, id, document), change);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the cached search results of the indices written since the last run.
+     */
+    @Scheduled(every = "${profinder.search.cache.invalidate-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void invalidateWritten() {
+        for (String index : List.copyOf(dirtyIndices)) {
+            dirtyIndices.remove(index);
+            searchResultCache.invalidate(index);
+        }
+    }
+
+    /**
+     * Builds the bulk operation writing a change to one index.
+     *
+     * @param target   name of the index
+     * @param id       ID of the document
+     * @param document the document, a partial update of it, or {@code null} for a deletion
+     * @return the bulk operation
+     */
+    private BulkOperation operation(final String target, final String id, final Object document) {
+        if (document == null) {
+            return BulkOperation.of(o -> o.delete(d -> d.index(target).id(id)));
+        }
+        if (document instanceof PartialUpdate update) {
+            partialUpdates.increment();
+            return BulkOperation.of(o -> o.update(u -> u
+                    .index(target)
+                    .id(id)
+                    .retryOnConflict(retryOnConflict)
+                    .action(a -> a.doc(update.fields()))
+            ));
+        }
+        return BulkOperation.of(o -> o.index(i -> i.index(target).id(id).document(document)));
+    }
+
+    /**
+     * Combines a queued version of a document with a newer submission.
+     *
+     * @param queued the queued document, partial update or {@code null} for a deletion
+     * @param next   the newer document, partial update or {@code null} for a deletion
+     * @return the version to write
+     */
+    private static Object coalesce(final Object queued, final Object next) {
+        if (!(next instanceof PartialUpdate update)) {
+            return next;
+        }
+        if (queued == null) {
+            return null;
+        }
+        if (queued instanceof PartialUpdate earlier) {
+            return earlier.merge(update);
+        }
+        return update.applyTo(queued);
+    }
+
+    /**
+     * Completes a change once all its operations have finished.
+     *
+     * @param change the change
+     * @param error  failure of the change, or {@code null} if it succeeded
+     */
+    private void complete(final PendingChange change, final Throwable error) {
+        synchronized (this) {
+            inFlight.remove(change.key);
+        }
+        for (CompletableFuture<Void> future : change.futures) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Records the result of one operation of a change.
+     *
+     * @param change the change the operation belongs to
+     * @param error  failure of the operation, or {@code null} if it succeeded
+     */
+    private void operationDone(final PendingChange change, final Throwable error) {
+        if (error != null) {
+            change.failure.compareAndSet(null, error);
+        }
+        if (change.remaining.decrementAndGet() == 0) {
+            complete(change, change.failure.get());
+        }
+    }
+
+    /**
+     * Returns the number of documents waiting in the queue.
+     *
+     * @return queue depth
+     */
+    synchronized double queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the share of submitted changes that were coalesced with a queued version.
+     *
+     * @return coalesce ratio between 0 and 1
+     */
+    double coalesceRatio() {
+        double total = submitted.count();
+        return total == 0 ? 0 : coalesced.count() / total;
+    }
+
+    /**
+     * A queued or in-flight version of a document.
+     */
+    private static final class PendingChange {
+
+        /**
+         * The document to write.
+         */
+        private final SearchDocumentKey key;
+
+        /**
+         * Latest version of the document, a {@link PartialUpdate} of it, or {@code null} for a deletion.
+         */
+        private Object document;
+
+        /**
+         * Futures of all submissions represented by this change.
+         */
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        /**
+         * Number of bulk operations (one per write target) that have not finished yet.
+         */
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        /**
+         * First failure among the operations of this change.
+         */
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * Creates a change for a first submission.
+         *
+         * @param key      the document to write
+         * @param document the document content, {@code null} for a deletion
+         * @param future   future of the submission
+         */
+        PendingChange(final SearchDocumentKey key, final Object document, final CompletableFuture<Void> future) {
+            this.key = key;
+            this.document = document;
+            this.futures.add(future);
+        }
+    }
+
+    /**
+     * Bulk listener resolving the futures of the changes and timing the requests.
+     */
+    private final class Listener implements BulkListener<PendingChange> {
+
+        /**
+         * Starts the latency measurement of a bulk request.
+         *
+         * @param executionId ID of the bulk request
+         * @param request     the bulk request
+         * @param contexts    changes of the operations
+         */
+        @Override
+        public void beforeBulk(final long executionId, final BulkRequest request,
+                               final List<PendingChange> contexts) {
+            runningRequests.put(executionId, Timer.start(meterRegistry));
+        }
+
+        /**
+         * Resolves the operations of a completed bulk request.
+         *
+         * @param executionId ID of the bulk request
+         * @param request     the bulk request
+         * @param contexts    changes of the operations
+         * @param response    the bulk response
+         */
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request,
+                              final List<PendingChange> contexts, final BulkResponse response) {
+            stopTimer(executionId);
+            for (int i = 0; i < contexts.size(); i++) {
+                BulkResponseItem item = response.items().get(i);
+                Throwable error = null;
+                if (item.error() != null && DOCUMENT_MISSING.equals(item.error().type())) {
+                    log.debug("Document {} is missing from {}, partial update skipped", item.id(), item.index());
+                    error = new DocumentMissingException(item.error().reason());
+                } else if (item.error() != null) {
+                    log.warn("Failed to index {} into {}: {}", item.id(), item.index(), item.error().reason());
+                    error = new IllegalStateException(item.error().reason());
+                }
+                operationDone(contexts.get(i), error);
+            }
+            invalidate(contexts);
+        }
+
+        /**
+         * Fails all operations of a bulk request that could not be sent.
+         *
+         * @param executionId ID of the bulk request
+         * @param request     the bulk request
+         * @param contexts    changes of the operations
+         * @param failure     the failure
+         */
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request,
+                              final List<PendingChange> contexts, final Throwable failure) {
+            stopTimer(executionId);
+            log.warn("Bulk request with {} operations failed: {}", contexts.size(), failure.getMessage());
+            for (PendingChange change : contexts) {
+                operationDone(change, failure);
+            }
+        }
+
+        /**
+         * Marks every index written by a bulk request for invalidation of its cached search results.
+         *
+         * @param contexts changes of the operations
+         */
+        private void invalidate(final List<PendingChange> contexts) {
+            for (PendingChange change : contexts) {
+                dirtyIndices.add(change.key.index());
+            }
+        }
+
+        /**
+         * Records the latency of a finished bulk request.
+         *
+         * @param executionId ID of the bulk request
+         */
+        private void stopTimer(final long executionId) {
+            Timer.Sample sample = runningRequests.remove(executionId);
+            if (sample != null) {
+                sample.stop(flushTimer);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Value of a completion field in a search document.
+ * <p>
+ * Follows the structure Elasticsearch expects for {@code completion} fields with contexts.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompletionInput {
+
+    /**
+     * Texts the suggestion is completed from.
+     */
+    private List<String> input;
+
+    /**
+     * Weight ranking the suggestion among other matches.
+     */
+    private Integer weight;
+
+    /**
+     * Context values by context name, used to filter the suggestions.
+     */
+    private Map<String, List<String>> contexts;
+}
@@ -0,0 +1,97 @@
+package fit.biejk.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Hash of the content of a search document, stored in the document when it is written.
+ * <p>
+ * A document carries two hashes: {@code contentHash} over all of its fields except those rewritten in place
+ * by a {@link PartialUpdate}, and {@code partialHash} over the fields of its partial update, which is sent
+ * along with every partial update. Together they cover the whole document, text fields included, so the
+ * reconciler can compare the index with the database by summing two numeric fields. Fields are hashed through
+ * their JSON form with sorted keys; a hash is non-negative and below 2<sup>31</sup> so that the sum over a
+ * chunk stays exact in the double returned by a sum aggregation.
+ * </p>
+ */
+final class ContentHash {
+
+    /**
+     * JSON property holding the hash of the fields written by full upserts only.
+     */
+    static final String CONTENT_FIELD = "contentHash";
+
+    /**
+     * JSON property holding the hash of the fields rewritten by partial updates.
+     */
+    static final String PARTIAL_FIELD = "partialHash";
+
+    /**
+     * Mapper writing the canonical JSON form, with object properties and map entries sorted by name.
+     */
+    private static final ObjectMapper JSON = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    /**
+     * Mask keeping a hash non-negative.
+     */
+    private static final long NON_NEGATIVE = 0x7fffffffL;
+
+    /**
+     * Prevents instantiation.
+     */
+    private ContentHash() {
+    }
+
+    /**
+     * Hashes a whole document except the given fields and the hashes themselves.
+     *
+     * @param document the document
+     * @param partial  names of the fields covered by the partial hash
+     * @return the content hash, between 0 and 2<sup>31</sup> - 1
+     */
+    static int ofDocument(final Object document, final Set<String> partial) {
+        ObjectNode tree = JSON.valueToTree(document);
+        tree.remove(partial);
+        tree.remove(Set.of(CONTENT_FIELD, PARTIAL_FIELD));
+        return hash(tree);
+    }
+
+    /**
+     * Hashes the fields of a partial update.
+     *
+     * @param fields new values by field name
+     * @return the partial hash, between 0 and 2<sup>31</sup> - 1
+     */
+    static int ofFields(final Map<String, Object> fields) {
+        return hash(JSON.valueToTree(new TreeMap<>(fields)));
+    }
+
+    /**
+     * Hashes the canonical JSON form of a value.
+     *
+     * @param value the value
+     * @return the hash, between 0 and 2<sup>31</sup> - 1
+     */
+    private static int hash(final Object value) {
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(JSON.writeValueAsString(value).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to hash search document", e);
+        }
+        return (int) (crc.getValue() & NON_NEGATIVE);
+    }
+}
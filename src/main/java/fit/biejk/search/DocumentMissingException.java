@@ -0,0 +1,20 @@
+package fit.biejk.search;
+
+/**
+ * Signals that a {@link PartialUpdate} could not be applied because the document is not in the index yet,
+ * e.g. because it was never indexed or a new physical index is still being filled.
+ * <p>
+ * The change has to be retried as a full document.
+ * </p>
+ */
+class DocumentMissingException extends IllegalStateException {
+
+    /**
+     * Creates the exception.
+     *
+     * @param message description of the failure
+     */
+    DocumentMissingException(final String message) {
+        super(message);
+    }
+}
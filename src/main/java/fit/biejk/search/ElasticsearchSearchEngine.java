@@ -0,0 +1,165 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionBoostMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScore;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * {@link SearchEngine} running the searches in Elasticsearch; pages after the first run against a point in time.
+ */
+@ApplicationScoped
+public class ElasticsearchSearchEngine implements SearchEngine {
+
+    /**
+     * Pager running the search against a point in time.
+     */
+    @Inject
+    private PointInTimePager pointInTimePager;
+
+    /**
+     * Builder of the location filter and distance ranking.
+     */
+    @Inject
+    private LocationQueries locationQueries;
+
+    /**
+     * Builder of the quality part of the specialist ranking.
+     */
+    @Inject
+    private SpecialistRanking specialistRanking;
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The text relevance (BM25 with fuzzy matching) is multiplied by the quality signals of
+     * {@link SpecialistRanking}. With a radius, the result is decayed by distance as well. Ties are broken
+     * by averageRating.
+     * </p>
+     */
+    @Override
+    public CompletionStage<SearchPage<SpecialistSearchDto>> searchSpecialistsAsync(
+            final String keyword, final String location, final Double radiusKm, final String cursor, final int size) {
+        return pointInTimePager.pageAsync(SpecialistSearchService.INDEX_NAME, cursor, size,
+                specialistQuery(keyword, location, radiusKm), SpecialistSearchDto.class, null);
+    }
+
+    /**
+     * Builds the query and sort of a specialist search.
+     *
+     * @param keyword  normalized search keyword
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @return sets the query and sort on a search request
+     */
+    private Consumer<SearchRequest.Builder> specialistQuery(final String keyword, final String location,
+                                                            final Double radiusKm) {
+        Query matching = Query.of(q -> q
+                .bool(b -> b
+                        .must(m -> m
+                                .multiMatch(mm -> mm
+                                        .fields("firstName", "lastName",
+                                                "description", "services")
+                                        .query(keyword)
+                                        .fuzziness("AUTO")
+                                )
+                        )
+                        .filter(locationQueries.filter(location, radiusKm))
+                )
+        );
+        Query ranked = Query.of(q -> q
+                .functionScore(fs -> fs
+                        .query(matching)
+                        .functions(specialistRanking.functions())
+                        .scoreMode(FunctionScoreMode.Sum)
+                        .boostMode(FunctionBoostMode.Multiply)
+                )
+        );
+        List<FunctionScore> decay = locationQueries.decay(location, radiusKm);
+        Query query = decay.isEmpty()
+                ? ranked
+                : Query.of(q -> q.functionScore(fs -> fs
+                        .query(ranked)
+                        .functions(decay)
+                        .boostMode(FunctionBoostMode.Multiply)
+                ));
+        return s -> s
+                .query(query)
+                .sort(so -> so.score(sc -> sc.order(SortOrder.Desc)))
+                .sort(so -> so
+                        .field(f -> f
+                                .field("averageRating")
+                                .order(SortOrder.Desc)
+                        )
+                );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Facets are computed by aggregations in the same request.
+     * </p>
+     */
+    @Override
+    public CompletionStage<SearchPage<OrderSearchDto>> searchOrdersAsync(
+            final List<String> services, final String location, final Double radiusKm, final String cursor,
+            final int size, final boolean facets) {
+        return pointInTimePager.pageAsync(OrderSearchService.INDEX_NAME, cursor, size,
+                orderQuery(services, location, radiusKm, facets), OrderSearchDto.class,
+                facets ? OrderFacets::toBuckets : null);
+    }
+
+    /**
+     * Builds the query and, if requested, the facet aggregations of an order search.
+     *
+     * @param services normalized service names
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param facets   whether to add the facet aggregations
+     * @return sets the query and aggregations on a search request
+     */
+    private Consumer<SearchRequest.Builder> orderQuery(final List<String> services, final String location,
+                                                       final Double radiusKm, final boolean facets) {
+        Query matching = Query.of(q -> q
+                .bool(b -> b
+                        .must(m -> m
+                                .terms(t -> t
+                                        .field("services.keyword")
+                                        .terms(ts -> ts.value(services.stream().map(FieldValue::of).toList()))
+                                )
+                        )
+                        .filter(locationQueries.filter(location, radiusKm))
+                        .filter(f -> f
+                                .terms(t -> t
+                                        .field("status.keyword")
+                                        .terms(ts -> ts.value(OrderFacets.OPEN_STATUSES.stream()
+                                                .map(FieldValue::of).toList()))
+                                )
+                        )
+                )
+        );
+        List<FunctionScore> decay = locationQueries.decay(location, radiusKm);
+        Query query = decay.isEmpty()
+                ? matching
+                : Query.of(q -> q.functionScore(fs -> fs
+                        .query(matching)
+                        .functions(decay)
+                        .boostMode(FunctionBoostMode.Multiply)
+                ));
+        if (!facets) {
+            return s -> s.query(query);
+        }
+        return s -> s
+                .query(query)
+                .aggregations(OrderFacets.aggregations());
+    }
+}
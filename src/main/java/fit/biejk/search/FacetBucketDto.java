@@ -0,0 +1,34 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of search results sharing one value (or range of values) of a field.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetBucketDto {
+
+    /**
+     * Value of the field, or the label of the range.
+     */
+    private String key;
+
+    /**
+     * Number of results in the bucket.
+     */
+    private long count;
+
+    /**
+     * Inclusive lower bound of a range bucket, {@code null} for terms buckets and open ranges.
+     */
+    private Double from;
+
+    /**
+     * Exclusive upper bound of a range bucket, {@code null} for terms buckets and open ranges.
+     */
+    private Double to;
+}
@@ -0,0 +1,24 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Value of a {@code geo_point} field in a search document.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GeoPointDto {
+
+    /**
+     * Latitude in degrees.
+     */
+    private Double lat;
+
+    /**
+     * Longitude in degrees.
+     */
+    private Double lon;
+}
@@ -0,0 +1,43 @@
+package fit.biejk.search;
+
+import fit.biejk.dto.OrderDto;
+import fit.biejk.dto.SpecialistDto;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content of the marketplace landing page, fetched in a single search round trip.
+ * <p>
+ * A section that failed or exceeded its time budget is {@code null} and listed in {@link #omitted}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HomePageDto {
+
+    /**
+     * Best ranked specialists in the requested area.
+     */
+    private List<SpecialistDto> topSpecialists;
+
+    /**
+     * Newest open orders in the requested area.
+     */
+    private List<OrderDto> openOrders;
+
+    /**
+     * Facet buckets of all open orders by facet name ({@code services}, {@code location}, {@code status},
+     * {@code price}).
+     */
+    private Map<String, List<FacetBucketDto>> facets;
+
+    /**
+     * Names of the omitted sections ({@code specialists}, {@code orders}, {@code facets}).
+     */
+    private List<String> omitted;
+}
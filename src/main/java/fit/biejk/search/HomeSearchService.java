@@ -0,0 +1,368 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionBoostMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScore;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.MultisearchBody;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.util.ObjectBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ThreadContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches all sections of the marketplace landing page in one Elasticsearch {@code _msearch} round trip.
+ * <p>
+ * The sections are the top specialists and the newest open orders in the requested area, and the facet
+ * counts of all open orders. Every section has its own time budget, passed to Elasticsearch as the
+ * search timeout; a section that fails or times out is omitted instead of failing the page. Because
+ * Elasticsearch checks the timeout only between segments, the whole request is also bounded by a deadline,
+ * after which all sections are omitted.
+ * </p>
+ * <p>
+ * The request goes through the {@link SearchCircuitBreaker}. While the breaker is open, or when Elasticsearch
+ * is disabled, all sections are omitted; the local engine only supports the regular searches.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class HomeSearchService {
+
+    /**
+     * Name of the top specialists section.
+     */
+    static final String SPECIALISTS = "specialists";
+
+    /**
+     * Name of the open orders section.
+     */
+    static final String ORDERS = "orders";
+
+    /**
+     * Name of the facets section.
+     */
+    static final String FACETS = "facets";
+
+    /**
+     * All sections, in the order of the searches in the request.
+     */
+    private static final List<String> SECTIONS = List.of(SPECIALISTS, ORDERS, FACETS);
+
+    /**
+     * Asynchronous Elasticsearch client sending the multi search.
+     */
+    @Inject
+    private ElasticsearchAsyncClient elasticsearchAsyncClient;
+
+    /**
+     * Builder of the location filter and distance ranking.
+     */
+    @Inject
+    private LocationQueries locationQueries;
+
+    /**
+     * Builder of the quality part of the specialist ranking.
+     */
+    @Inject
+    private SpecialistRanking specialistRanking;
+
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Breaker guarding the calls to Elasticsearch.
+     */
+    @Inject
+    private SearchCircuitBreaker circuitBreaker;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Registry for publishing the request duration and omitted sections.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Propagates the request context to the continuations of the request.
+     */
+    @Inject
+    private ThreadContext threadContext;
+
+    /**
+     * Number of top specialists on the page.
+     */
+    @ConfigProperty(name = "profinder.search.home.specialists-size", defaultValue = "8")
+    private int specialistsSize;
+
+    /**
+     * Number of open orders on the page.
+     */
+    @ConfigProperty(name = "profinder.search.home.orders-size", defaultValue = "10")
+    private int ordersSize;
+
+    /**
+     * Time budget of the top specialists section.
+     */
+    @ConfigProperty(name = "profinder.search.home.specialists-budget", defaultValue = "150ms")
+    private Duration specialistsBudget;
+
+    /**
+     * Time budget of the open orders section.
+     */
+    @ConfigProperty(name = "profinder.search.home.orders-budget", defaultValue = "150ms")
+    private Duration ordersBudget;
+
+    /**
+     * Time budget of the facets section.
+     */
+    @ConfigProperty(name = "profinder.search.home.facets-budget", defaultValue = "100ms")
+    private Duration facetsBudget;
+
+    /**
+     * Time after which the page is returned without any search section.
+     */
+    @ConfigProperty(name = "profinder.search.home.deadline", defaultValue = "500ms")
+    private Duration deadline;
+
+    /**
+     * Fetches the sections of the landing page.
+     *
+     * @param location name of the area of the user, or {@code null} for the whole marketplace
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @return the sections; never fails
+     */
+    public Uni<HomeSections> searchAsync(final String location, final Double radiusKm) {
+        String normalizedLocation = location != null && !location.isBlank() ? location.trim() : null;
+        log.info("Searching home page sections for location {}", normalizedLocation);
+        if (searchEngineRouter.isLocalOnly()) {
+            return Uni.createFrom().item(omitAll("disabled"));
+        }
+        MsearchRequest request = MsearchRequest.of(m -> m
+                .searches(s -> s
+                        .header(h -> h.index(SpecialistSearchService.INDEX_NAME))
+                        .body(b -> specialists(b, normalizedLocation, radiusKm)))
+                .searches(s -> s
+                        .header(h -> h.index(OrderSearchService.INDEX_NAME))
+                        .body(b -> orders(b, normalizedLocation, radiusKm)))
+                .searches(s -> s
+                        .header(h -> h.index(OrderSearchService.INDEX_NAME))
+                        .body(this::facets)));
+        if (!circuitBreaker.tryAcquire()) {
+            return Uni.createFrom().item(omitAll("open"));
+        }
+        long start = System.nanoTime();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return Uni.createFrom().completionStage(() -> threadContext.withContextCapture(
+                        elasticsearchAsyncClient.msearch(request, JsonData.class))
+                        .handle((response, error) -> {
+                            searchTelemetry.record(SearchTelemetry.ELASTICSEARCH,
+                                    sample.stop(meterRegistry.timer("search.home")));
+                            circuitBreaker.record(System.nanoTime() - start, error != null);
+                            if (error != null) {
+                                log.warn("Home page search failed: {}", error.getMessage());
+                                return omitAll("error");
+                            }
+                            return toSections(response);
+                        }))
+                .ifNoItem().after(deadline).recoverWithItem(() -> omitAll("deadline"));
+    }
+
+    /**
+     * Builds the top specialists search: the quality ranking of {@link SpecialistRanking}, decayed by distance
+     * for a radius search, without a text relevance.
+     *
+     * @param b        body builder
+     * @param location normalized location, or {@code null}
+     * @param radiusKm radius around the location in kilometres, or {@code null}
+     * @return the configured builder
+     */
+    private ObjectBuilder<MultisearchBody> specialists(final MultisearchBody.Builder b, final String location,
+                                                       final Double radiusKm) {
+        Query ranked = Query.of(q -> q.functionScore(fs -> fs
+                .query(qq -> qq.bool(bb -> inArea(bb, location, radiusKm)))
+                .functions(specialistRanking.functions())
+                .scoreMode(FunctionScoreMode.Sum)
+                .boostMode(FunctionBoostMode.Replace)
+        ));
+        List<FunctionScore> decay = location != null ? locationQueries.decay(location, radiusKm) : List.of();
+        Query query = decay.isEmpty()
+                ? ranked
+                : Query.of(q -> q.functionScore(fs -> fs
+                        .query(ranked)
+                        .functions(decay)
+                        .boostMode(FunctionBoostMode.Multiply)
+                ));
+        return b
+                .query(query)
+                .size(specialistsSize)
+                .trackTotalHits(t -> t.enabled(false))
+                .timeout(specialistsBudget.toMillis() + "ms")
+                .sort(so -> so.score(sc -> sc.order(SortOrder.Desc)))
+                .sort(so -> so.field(f -> f.field("averageRating").order(SortOrder.Desc)));
+    }
+
+    /**
+     * Builds the newest open orders search.
+     *
+     * @param b        body builder
+     * @param location normalized location, or {@code null}
+     * @param radiusKm radius around the location in kilometres, or {@code null}
+     * @return the configured builder
+     */
+    private ObjectBuilder<MultisearchBody> orders(final MultisearchBody.Builder b, final String location,
+                                                  final Double radiusKm) {
+        return b
+                .query(q -> q.bool(bb -> inArea(open(bb), location, radiusKm)))
+                .size(ordersSize)
+                .trackTotalHits(t -> t.enabled(false))
+                .timeout(ordersBudget.toMillis() + "ms")
+                .sort(so -> so.field(f -> f.field("createdAt").order(SortOrder.Desc)));
+    }
+
+    /**
+     * Builds the facet counts of all open orders.
+     *
+     * @param b body builder
+     * @return the configured builder
+     */
+    private ObjectBuilder<MultisearchBody> facets(final MultisearchBody.Builder b) {
+        return b
+                .query(q -> q.bool(this::open))
+                .size(0)
+                .timeout(facetsBudget.toMillis() + "ms")
+                .aggregations(OrderFacets.aggregations());
+    }
+
+    /**
+     * Restricts a query to the requested area, if any.
+     *
+     * @param b        bool query builder
+     * @param location normalized location, or {@code null} for no restriction
+     * @param radiusKm radius around the location in kilometres, or {@code null}
+     * @return the configured builder
+     */
+    private BoolQuery.Builder inArea(final BoolQuery.Builder b, final String location, final Double radiusKm) {
+        if (location != null) {
+            b.filter(locationQueries.filter(location, radiusKm));
+        }
+        return b;
+    }
+
+    /**
+     * Restricts a query to orders open for proposals.
+     *
+     * @param b bool query builder
+     * @return the configured builder
+     */
+    private BoolQuery.Builder open(final BoolQuery.Builder b) {
+        return b.filter(f -> f.terms(t -> t
+                .field("status.keyword")
+                .terms(ts -> ts.value(OrderFacets.OPEN_STATUSES.stream().map(FieldValue::of).toList()))
+        ));
+    }
+
+    /**
+     * Converts the responses of the multi search into sections.
+     *
+     * @param response the multi search response, with one item per section in {@link #SECTIONS} order
+     * @return the sections
+     */
+    private HomeSections toSections(final MsearchResponse<JsonData> response) {
+        List<MultiSearchResponseItem<JsonData>> items = response.responses();
+        List<String> omitted = new ArrayList<>();
+        MultiSearchItem<JsonData> specialists = result(items.get(0), SPECIALISTS, omitted);
+        MultiSearchItem<JsonData> orders = result(items.get(1), ORDERS, omitted);
+        MultiSearchItem<JsonData> facets = result(items.get(2), FACETS, omitted);
+        return new HomeSections(
+                specialists != null ? sources(specialists, SpecialistSearchDto.class) : null,
+                orders != null ? sources(orders, OrderSearchDto.class) : null,
+                facets != null ? OrderFacets.toBuckets(facets.aggregations()) : null,
+                omitted);
+    }
+
+    /**
+     * Returns the result of one section, or records the section as omitted.
+     *
+     * @param item    response item of the section
+     * @param section name of the section
+     * @param omitted names of the omitted sections, extended if the section is omitted
+     * @return the result, or {@code null} if the section failed or exceeded its budget
+     */
+    private MultiSearchItem<JsonData> result(final MultiSearchResponseItem<JsonData> item, final String section,
+                                             final List<String> omitted) {
+        if (item.isFailure()) {
+            log.warn("Home page section {} failed: {}", section, item.failure().error().reason());
+            omit(section, "error", omitted);
+            return null;
+        }
+        if (item.result().timedOut()) {
+            omit(section, "timeout", omitted);
+            return null;
+        }
+        return item.result();
+    }
+
+    /**
+     * Builds sections with every section omitted.
+     *
+     * @param reason why the sections were omitted, for the metrics
+     * @return the empty sections
+     */
+    private HomeSections omitAll(final String reason) {
+        List<String> omitted = new ArrayList<>();
+        SECTIONS.forEach(section -> omit(section, reason, omitted));
+        return new HomeSections(null, null, null, omitted);
+    }
+
+    /**
+     * Records an omitted section.
+     *
+     * @param section name of the section
+     * @param reason  why the section was omitted, for the metrics
+     * @param omitted names of the omitted sections to extend
+     */
+    private void omit(final String section, final String reason, final List<String> omitted) {
+        meterRegistry.counter("search.home.omitted", "section", section, "reason", reason).increment();
+        omitted.add(section);
+    }
+
+    /**
+     * Converts the hits of a section into search documents.
+     *
+     * @param result result of the section
+     * @param type   class of the documents
+     * @param <D>    type of the documents
+     * @return the documents, in hit order
+     */
+    private static <D> List<D> sources(final MultiSearchItem<JsonData> result, final Class<D> type) {
+        return result.hits().hits().stream()
+                .map(hit -> hit.source().to(type))
+                .toList();
+    }
+}
@@ -0,0 +1,18 @@
+package fit.biejk.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search results of the sections of the landing page, as returned by {@link HomeSearchService}.
+ *
+ * @param specialists top specialists, or {@code null} if the section was omitted
+ * @param orders      newest open orders, or {@code null} if the section was omitted
+ * @param facets      facet buckets of all open orders by facet name, or {@code null} if the section was omitted
+ * @param omitted     names of the sections left out because they failed or exceeded their time budget
+ */
+record HomeSections(List<SpecialistSearchDto> specialists,
+                    List<OrderSearchDto> orders,
+                    Map<String, List<FacetBucketDto>> facets,
+                    List<String> omitted) {
+}
@@ -0,0 +1,221 @@
+package fit.biejk.search;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of document IDs.
+ * <p>
+ * Every field has a sorted term dictionary mapping each term to the posting list of the documents containing
+ * it. A forward index remembers the terms of each document so that a new version can replace the old one.
+ * Readers and writers are separated by a read-write lock.
+ * </p>
+ */
+final class InvertedIndex {
+
+    /**
+     * Term dictionaries with their posting lists, by field.
+     */
+    private final Map<String, NavigableMap<String, Set<Long>>> postings = new HashMap<>();
+
+    /**
+     * Indexed terms of each document, by document ID and field.
+     */
+    private final Map<Long, Map<String, Set<String>>> forward = new HashMap<>();
+
+    /**
+     * Lock guarding both maps.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes a document, replacing its previous terms.
+     *
+     * @param id    ID of the document
+     * @param terms terms of the document by field
+     */
+    void put(final Long id, final Map<String, ? extends Collection<String>> terms) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+            Map<String, Set<String>> indexed = new HashMap<>();
+            for (Map.Entry<String, ? extends Collection<String>> field : terms.entrySet()) {
+                Set<String> fieldTerms = new HashSet<>(field.getValue());
+                NavigableMap<String, Set<Long>> dictionary =
+                        postings.computeIfAbsent(field.getKey(), k -> new TreeMap<>());
+                for (String term : fieldTerms) {
+                    dictionary.computeIfAbsent(term, k -> new HashSet<>()).add(id);
+                }
+                indexed.put(field.getKey(), fieldTerms);
+            }
+            forward.put(id, indexed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document from the index.
+     *
+     * @param id ID of the document
+     */
+    void remove(final Long id) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the documents containing a term in a field.
+     *
+     * @param field the field
+     * @param term  the exact term
+     * @return IDs of the matching documents
+     */
+    Set<Long> exact(final String field, final String term) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, Set<Long>> dictionary = postings.get(field);
+            Set<Long> ids = dictionary == null ? null : dictionary.get(term);
+            return ids == null ? Set.of() : new HashSet<>(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the documents containing a term of a field within the given edit distance of a term.
+     * <p>
+     * Only dictionary terms starting with the same character are compared, which keeps the scan short.
+     * </p>
+     *
+     * @param field       the field
+     * @param term        the term
+     * @param maxDistance maximum number of single-character edits
+     * @return IDs of the matching documents
+     */
+    Set<Long> fuzzy(final String field, final String term, final int maxDistance) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<String, Set<Long>> dictionary = postings.get(field);
+            Set<Long> ids = new HashSet<>();
+            if (dictionary == null || term.isEmpty()) {
+                return ids;
+            }
+            String first = term.substring(0, 1);
+            String next = String.valueOf((char) (term.charAt(0) + 1));
+            for (Map.Entry<String, Set<Long>> entry : dictionary.subMap(first, true, next, false).entrySet()) {
+                if (Math.abs(entry.getKey().length() - term.length()) <= maxDistance
+                        && editDistance(entry.getKey(), term) <= maxDistance) {
+                    ids.addAll(entry.getValue());
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the IDs of all indexed documents.
+     *
+     * @return document IDs
+     */
+    Set<Long> ids() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(forward.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of indexed documents.
+     *
+     * @return document count
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return forward.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lower-case terms at every character that is neither a letter nor a digit.
+     *
+     * @param text the text, may be {@code null}
+     * @return the terms
+     */
+    static List<String> tokenize(final String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        return List.of(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")).stream()
+                .filter(t -> !t.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Removes the terms of a document from the posting lists; the caller holds the write lock.
+     *
+     * @param id ID of the document
+     */
+    private void removeTerms(final Long id) {
+        Map<String, Set<String>> indexed = forward.remove(id);
+        if (indexed == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<String>> field : indexed.entrySet()) {
+            NavigableMap<String, Set<Long>> dictionary = postings.get(field.getKey());
+            for (String term : field.getValue()) {
+                Set<Long> ids = dictionary.get(term);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    dictionary.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the Levenshtein distance between two terms.
+     *
+     * @param a first term
+     * @param b second term
+     * @return number of single-character insertions, deletions and substitutions
+     */
+    private static int editDistance(final String a, final String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
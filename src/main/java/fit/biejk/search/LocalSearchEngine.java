@@ -0,0 +1,658 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import fit.biejk.entity.Location;
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.service.LocationDistanceService;
+import fit.biejk.service.OrderService;
+import fit.biejk.service.SpecialistService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * {@link SearchEngine} answering searches from in-process inverted indices.
+ * <p>
+ * The indices hold the same documents as Elasticsearch. They are loaded from the database at startup,
+ * receive every change submitted to {@link CoalescingSearchIndexer} and are reloaded periodically to pick up
+ * changes relayed by other nodes. Matching follows the Elasticsearch queries closely: keywords match
+ * tokenized names, descriptions and services with an edit distance similar to {@code fuzziness=AUTO},
+ * specialists are ranked by the number of matched terms times the {@link SpecialistRanking} signals,
+ * locations and services of orders match exactly, and radius searches use the precomputed distances of
+ * {@link LocationDistanceService}. Pages are addressed by offset, so a page may shift if documents change
+ * between requests.
+ * </p>
+ */
+@Slf4j
+@Startup
+@ApplicationScoped
+public class LocalSearchEngine implements SearchEngine {
+
+    /**
+     * Point-in-time marker of cursors issued by this engine.
+     */
+    static final String LOCAL_PIT = "local";
+
+    /**
+     * Tokenized fields a specialist keyword is matched against.
+     */
+    private static final List<String> SPECIALIST_TEXT_FIELDS =
+            List.of("firstName", "lastName", "description", "services");
+
+    /**
+     * Field holding the exact location name.
+     */
+    private static final String LOCATION_FIELD = "location";
+
+    /**
+     * Field holding the exact service names of an order.
+     */
+    private static final String SERVICES_FIELD = "services";
+
+    /**
+     * Field holding the status of an order.
+     */
+    private static final String STATUS_FIELD = "status";
+
+    /**
+     * Score of a keyword term matched only within the allowed edit distance.
+     */
+    private static final double FUZZY_SCORE = 0.5;
+
+    /**
+     * Minimum term length for which one edit is allowed.
+     */
+    private static final int ONE_EDIT_LENGTH = 3;
+
+    /**
+     * Minimum term length for which two edits are allowed.
+     */
+    private static final int TWO_EDITS_LENGTH = 6;
+
+    /**
+     * Service resolving locations and the distances between them.
+     */
+    @Inject
+    private LocationDistanceService locationDistanceService;
+
+    /**
+     * Source of the distance decay applied to radius searches.
+     */
+    @Inject
+    private LocationQueries locationQueries;
+
+    /**
+     * Source of the quality part of the specialist ranking.
+     */
+    @Inject
+    private SpecialistRanking specialistRanking;
+
+    /**
+     * Service loading specialists from the database.
+     */
+    @Inject
+    private SpecialistService specialistService;
+
+    /**
+     * Service loading orders from the database.
+     */
+    @Inject
+    private OrderService orderService;
+
+    /**
+     * Mapper converting specialists into search documents.
+     */
+    @Inject
+    private SpecialistSearchMapper specialistSearchMapper;
+
+    /**
+     * Mapper converting orders into search documents.
+     */
+    @Inject
+    private OrderSearchMapper orderSearchMapper;
+
+    /**
+     * Executor running the initial load outside the startup thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Registry for publishing the index sizes.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Whether the local indices are maintained at all.
+     */
+    @ConfigProperty(name = "profinder.search.local.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    /**
+     * Number of entities loaded from the database per transaction.
+     */
+    @ConfigProperty(name = "profinder.search.reindex.chunk-size", defaultValue = "500")
+    private int chunkSize;
+
+    /**
+     * Inverted index of the specialists.
+     */
+    private final InvertedIndex specialistIndex = new InvertedIndex();
+
+    /**
+     * Inverted index of the orders.
+     */
+    private final InvertedIndex orderIndex = new InvertedIndex();
+
+    /**
+     * Specialist documents by ID.
+     */
+    private final Map<Long, SpecialistSearchDto> specialists = new ConcurrentHashMap<>();
+
+    /**
+     * Order documents by ID.
+     */
+    private final Map<Long, OrderSearchDto> orders = new ConcurrentHashMap<>();
+
+    /**
+     * Time of the last live change of each document, so that a running reload does not overwrite it.
+     */
+    private final Map<SearchDocumentKey, Long> recentChanges = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the indices have been loaded at least once.
+     */
+    private volatile boolean ready;
+
+    /**
+     * Registers the index size gauges and starts the initial load.
+     */
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        meterRegistry.gauge("search.local.documents", Tags.of("index", SpecialistSearchService.INDEX_NAME),
+                specialistIndex, InvertedIndex::size);
+        meterRegistry.gauge("search.local.documents", Tags.of("index", OrderSearchService.INDEX_NAME),
+                orderIndex, InvertedIndex::size);
+        executor.runAsync(this::reload);
+    }
+
+    /**
+     * Checks whether the engine can answer searches.
+     *
+     * @return {@code true} if the engine is enabled and loaded
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * Checks whether a cursor was issued by this engine.
+     *
+     * @param cursor the cursor, may be {@code null}
+     * @return {@code true} if the cursor is a local cursor
+     */
+    public static boolean owns(final String cursor) {
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return LOCAL_PIT.equals(SearchCursor.decode(cursor).pit());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies a new version of a document.
+     * <p>
+     * A {@link PartialUpdate} of a document that is not loaded yet is ignored; the next reload picks it up.
+     * Saved searches are only matched by Elasticsearch and are not kept locally.
+     * </p>
+     *
+     * @param key      the document
+     * @param document the new document, a partial update of it, or {@code null} if it was deleted
+     */
+    public void apply(final SearchDocumentKey key, final Object document) {
+        if (!enabled || key.type() == SearchDocumentType.SAVED_SEARCH) {
+            return;
+        }
+        Object current = key.type() == SearchDocumentType.ORDER ? orders.get(key.id()) : specialists.get(key.id());
+        if (document instanceof PartialUpdate && current == null) {
+            return;
+        }
+        recentChanges.put(key, System.nanoTime());
+        if (document == null) {
+            remove(key.type(), key.id());
+        } else if (document instanceof PartialUpdate update) {
+            put(key.type(), update.applyTo(current));
+        } else {
+            put(key.type(), document);
+        }
+    }
+
+    /**
+     * Reloads all documents from the database.
+     * <p>
+     * Documents changed live since the reload started are left alone, and documents no longer in the
+     * database are removed.
+     * </p>
+     */
+    @Scheduled(every = "${profinder.search.local.refresh-interval}",
+            delayed = "${profinder.search.local.refresh-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reload() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            int specialistCount = load(SearchDocumentType.SPECIALIST, (afterId, size) ->
+                    QuarkusTransaction.requiringNew().call(() ->
+                            specialistSearchMapper.toDtoList(specialistService.getChunkAfterId(afterId, size))),
+                    SpecialistSearchDto::getId, start);
+            int orderCount = load(SearchDocumentType.ORDER, (afterId, size) ->
+                    QuarkusTransaction.requiringNew().call(() ->
+                            orderSearchMapper.toDtoList(orderService.getChunkAfterId(afterId, size))),
+                    OrderSearchDto::getId, start);
+            recentChanges.values().removeIf(changedAt -> changedAt < start);
+            ready = true;
+            log.info("Loaded local search index: specialists={}, orders={}", specialistCount, orderCount);
+        } catch (RuntimeException e) {
+            log.error("Failed to load local search index", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The search runs in the calling thread, which never waits for I/O.
+     * </p>
+     */
+    @Override
+    public CompletionStage<SearchPage<SpecialistSearchDto>> searchSpecialistsAsync(
+            final String keyword, final String location, final Double radiusKm, final String cursor, final int size) {
+        try {
+            return CompletableFuture.completedFuture(searchSpecialists(keyword, location, radiusKm, cursor, size));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Searches specialists by keyword and location in the in-process index.
+     *
+     * @param keyword  normalized search keyword
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of specialists per page
+     * @return the page
+     */
+    private SearchPage<SpecialistSearchDto> searchSpecialists(final String keyword, final String location,
+                                                              final Double radiusKm, final String cursor,
+                                                              final int size) {
+        int offset = offset(cursor);
+        List<String> tokens = InvertedIndex.tokenize(keyword);
+        if (tokens.isEmpty()) {
+            return SearchPage.empty();
+        }
+        Map<Long, Double> scores = new HashMap<>();
+        for (String token : tokens) {
+            Map<Long, Double> best = new HashMap<>();
+            int edits = fuzziness(token);
+            for (String field : SPECIALIST_TEXT_FIELDS) {
+                for (Long id : specialistIndex.exact(field, token)) {
+                    best.put(id, 1.0);
+                }
+                if (edits > 0) {
+                    for (Long id : specialistIndex.fuzzy(field, token, edits)) {
+                        best.putIfAbsent(id, FUZZY_SCORE);
+                    }
+                }
+            }
+            best.forEach((id, score) -> scores.merge(id, score, Double::sum));
+        }
+
+        Map<Long, Double> decayById = matchLocation(specialistIndex, location, radiusKm);
+        Map<Long, Double> ranked = new HashMap<>();
+        List<SpecialistSearchDto> matches = new ArrayList<>();
+        LocalDateTime origin = specialistRanking.recencyOrigin();
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            Double decay = decayById.get(entry.getKey());
+            SpecialistSearchDto document = specialists.get(entry.getKey());
+            if (decay != null && document != null) {
+                ranked.put(document.getId(), entry.getValue() * specialistRanking.boost(document, origin) * decay);
+                matches.add(document);
+            }
+        }
+        List<SpecialistSearchDto> hits = matches.stream()
+                .sorted(Comparator.comparing((SpecialistSearchDto d) -> ranked.get(d.getId())).reversed()
+                        .thenComparing(Comparator.comparing(
+                                (SpecialistSearchDto d) -> d.getAverageRating() != null ? d.getAverageRating() : 0.0)
+                                .reversed())
+                        .thenComparing(SpecialistSearchDto::getId))
+                .toList();
+        return page(hits, offset, size, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The search runs in the calling thread, which never waits for I/O.
+     * </p>
+     */
+    @Override
+    public CompletionStage<SearchPage<OrderSearchDto>> searchOrdersAsync(
+            final List<String> services, final String location, final Double radiusKm, final String cursor,
+            final int size, final boolean facets) {
+        try {
+            return CompletableFuture.completedFuture(searchOrders(services, location, radiusKm, cursor, size, facets));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Searches open orders by services and location in the in-process index.
+     *
+     * @param services normalized service names
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of orders per page
+     * @param facets   whether to compute facets over all matching orders
+     * @return the page
+     */
+    private SearchPage<OrderSearchDto> searchOrders(final List<String> services, final String location,
+                                                    final Double radiusKm, final String cursor, final int size,
+                                                    final boolean facets) {
+        int offset = offset(cursor);
+        Set<Long> ids = new HashSet<>();
+        for (String service : services) {
+            ids.addAll(orderIndex.exact(SERVICES_FIELD, service));
+        }
+        Set<Long> open = new HashSet<>();
+        for (String status : OrderFacets.OPEN_STATUSES) {
+            open.addAll(orderIndex.exact(STATUS_FIELD, status));
+        }
+        ids.retainAll(open);
+        Map<Long, Double> decayById = matchLocation(orderIndex, location, radiusKm);
+        ids.retainAll(decayById.keySet());
+
+        List<OrderSearchDto> hits = ids.stream()
+                .map(orders::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing((OrderSearchDto d) -> decayById.get(d.getId())).reversed()
+                        .thenComparing(OrderSearchDto::getId, Comparator.reverseOrder()))
+                .toList();
+        return page(hits, offset, size, facets ? facets(hits) : null);
+    }
+
+    /**
+     * Loads all documents of one type from the database.
+     *
+     * @param type        type of the documents
+     * @param loader      loads the documents in chunks ordered by ID
+     * @param idExtractor returns the ID of a document
+     * @param start       {@link System#nanoTime()} when the reload started
+     * @param <D>         type of the documents
+     * @return number of documents in the database
+     */
+    private <D> int load(final SearchDocumentType type, final ChunkLoader<D> loader,
+                         final Function<D, Long> idExtractor, final long start) {
+        Set<Long> seen = new HashSet<>();
+        Long lastId = 0L;
+        List<D> chunk = loader.load(lastId, chunkSize);
+        while (!chunk.isEmpty()) {
+            for (D document : chunk) {
+                Long id = idExtractor.apply(document);
+                seen.add(id);
+                if (!changedSince(new SearchDocumentKey(type, id), start)) {
+                    put(type, document);
+                }
+            }
+            lastId = idExtractor.apply(chunk.get(chunk.size() - 1));
+            chunk = loader.load(lastId, chunkSize);
+        }
+        InvertedIndex index = type == SearchDocumentType.ORDER ? orderIndex : specialistIndex;
+        for (Long id : index.ids()) {
+            if (!seen.contains(id) && !changedSince(new SearchDocumentKey(type, id), start)) {
+                remove(type, id);
+            }
+        }
+        return seen.size();
+    }
+
+    /**
+     * Checks whether a document was changed live after a point in time.
+     *
+     * @param key   the document
+     * @param since {@link System#nanoTime()} to compare with
+     * @return {@code true} if a live change arrived after {@code since}
+     */
+    private boolean changedSince(final SearchDocumentKey key, final long since) {
+        Long changedAt = recentChanges.get(key);
+        return changedAt != null && changedAt - since > 0;
+    }
+
+    /**
+     * Indexes a document.
+     *
+     * @param type     type of the document
+     * @param document the document
+     */
+    private void put(final SearchDocumentType type, final Object document) {
+        if (type == SearchDocumentType.ORDER) {
+            OrderSearchDto order = (OrderSearchDto) document;
+            orders.put(order.getId(), order);
+            orderIndex.put(order.getId(), Map.of(
+                    SERVICES_FIELD, order.getServices() != null ? order.getServices() : List.of(),
+                    LOCATION_FIELD, exactTerm(order.getLocation()),
+                    STATUS_FIELD, exactTerm(order.getStatus())
+            ));
+            return;
+        }
+        SpecialistSearchDto specialist = (SpecialistSearchDto) document;
+        List<String> services = specialist.getServices() == null ? List.of() : specialist.getServices().stream()
+                .flatMap(s -> InvertedIndex.tokenize(s).stream())
+                .toList();
+        specialists.put(specialist.getId(), specialist);
+        specialistIndex.put(specialist.getId(), Map.of(
+                "firstName", InvertedIndex.tokenize(specialist.getFirstName()),
+                "lastName", InvertedIndex.tokenize(specialist.getLastName()),
+                "description", InvertedIndex.tokenize(specialist.getDescription()),
+                "services", services,
+                LOCATION_FIELD, exactTerm(specialist.getLocation())
+        ));
+    }
+
+    /**
+     * Removes a document.
+     *
+     * @param type type of the document
+     * @param id   ID of the document
+     */
+    private void remove(final SearchDocumentType type, final Long id) {
+        if (type == SearchDocumentType.ORDER) {
+            orderIndex.remove(id);
+            orders.remove(id);
+        } else {
+            specialistIndex.remove(id);
+            specialists.remove(id);
+        }
+    }
+
+    /**
+     * Wraps a value indexed without tokenization.
+     *
+     * @param value the value, may be {@code null}
+     * @return the value as the only term, or no terms
+     */
+    private static List<String> exactTerm(final String value) {
+        return value == null ? List.of() : List.of(value);
+    }
+
+    /**
+     * Returns the edit distance allowed for a keyword term, following {@code fuzziness=AUTO}.
+     *
+     * @param term the term
+     * @return allowed number of edits
+     */
+    private static int fuzziness(final String term) {
+        if (term.length() >= TWO_EDITS_LENGTH) {
+            return 2;
+        }
+        return term.length() >= ONE_EDIT_LENGTH ? 1 : 0;
+    }
+
+    /**
+     * Finds the documents in the requested location.
+     *
+     * @param index    index to search
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @return distance decay of each matching document
+     */
+    private Map<Long, Double> matchLocation(final InvertedIndex index, final String location, final Double radiusKm) {
+        Map<Long, Double> decay = new HashMap<>();
+        if (location == null) {
+            return decay;
+        }
+        Location centre = locationQueries.centre(location, radiusKm) != null
+                ? locationDistanceService.getByName(location)
+                : null;
+        if (centre == null) {
+            index.exact(LOCATION_FIELD, location).forEach(id -> decay.put(id, 1.0));
+            return decay;
+        }
+        for (Location nearby : locationDistanceService.withinRadius(centre.getId(), radiusKm)) {
+            double factor = locationQueries.decayFactor(
+                    locationDistanceService.distanceKm(centre.getId(), nearby.getId()));
+            index.exact(LOCATION_FIELD, nearby.getName()).forEach(id -> decay.put(id, factor));
+        }
+        return decay;
+    }
+
+    /**
+     * Counts the matching orders by service, location, status and price range.
+     *
+     * @param hits all matching orders
+     * @return buckets by facet name
+     */
+    private static Map<String, List<FacetBucketDto>> facets(final List<OrderSearchDto> hits) {
+        Map<String, Long> services = new HashMap<>();
+        Map<String, Long> locations = new HashMap<>();
+        Map<String, Long> statuses = new HashMap<>();
+        for (OrderSearchDto hit : hits) {
+            if (hit.getServices() != null) {
+                hit.getServices().stream().distinct().forEach(s -> services.merge(s, 1L, Long::sum));
+            }
+            if (hit.getLocation() != null) {
+                locations.merge(hit.getLocation(), 1L, Long::sum);
+            }
+            if (hit.getStatus() != null) {
+                statuses.merge(hit.getStatus(), 1L, Long::sum);
+            }
+        }
+        Map<String, List<FacetBucketDto>> facets = new LinkedHashMap<>();
+        facets.put(OrderFacets.SERVICES, termBuckets(services));
+        facets.put(OrderFacets.LOCATION, termBuckets(locations));
+        facets.put(OrderFacets.STATUS, termBuckets(statuses));
+
+        List<FacetBucketDto> prices = new ArrayList<>();
+        Double from = null;
+        for (int i = 0; i <= OrderFacets.PRICE_BOUNDS.size(); i++) {
+            Double to = i < OrderFacets.PRICE_BOUNDS.size() ? OrderFacets.PRICE_BOUNDS.get(i) : null;
+            Double lower = from;
+            long count = hits.stream()
+                    .map(OrderSearchDto::getPrice)
+                    .filter(p -> p != null && (lower == null || p >= lower) && (to == null || p < to))
+                    .count();
+            prices.add(new FacetBucketDto(OrderFacets.priceKey(from, to), count, from, to));
+            from = to;
+        }
+        facets.put(OrderFacets.PRICE, prices);
+        return facets;
+    }
+
+    /**
+     * Converts term counts into buckets, most frequent first.
+     *
+     * @param counts number of orders by term
+     * @return at most {@link OrderFacets#TERMS_SIZE} buckets
+     */
+    private static List<FacetBucketDto> termBuckets(final Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(OrderFacets.TERMS_SIZE)
+                .map(e -> new FacetBucketDto(e.getKey(), e.getValue(), null, null))
+                .toList();
+    }
+
+    /**
+     * Cuts one page out of the sorted hits.
+     *
+     * @param hits   all hits in order
+     * @param offset index of the first hit of the page
+     * @param size   number of hits per page
+     * @param facets facets of the search, or {@code null}
+     * @param <T>    type of the hits
+     * @return the page
+     */
+    private static <T> SearchPage<T> page(final List<T> hits, final int offset, final int size,
+                                          final Map<String, List<FacetBucketDto>> facets) {
+        int end = Math.min(hits.size(), offset + size);
+        List<T> items = offset >= end ? List.of() : List.copyOf(hits.subList(offset, end));
+        String next = end < hits.size()
+                ? SearchCursor.of(LOCAL_PIT, List.of(FieldValue.of(end))).encode()
+                : null;
+        return new SearchPage<>(items, next, facets);
+    }
+
+    /**
+     * Returns the offset encoded in a cursor.
+     *
+     * @param cursor the cursor, or {@code null} for the first page
+     * @return offset of the first hit of the page
+     * @throws IllegalArgumentException if the cursor was not issued by this engine
+     */
+    private static int offset(final String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        SearchCursor decoded = SearchCursor.decode(cursor);
+        List<FieldValue> after = decoded.searchAfter();
+        if (!LOCAL_PIT.equals(decoded.pit()) || after.size() != 1 || !after.get(0).isLong()) {
+            throw new IllegalArgumentException("Search cursor has expired");
+        }
+        return (int) after.get(0).longValue();
+    }
+}
@@ -0,0 +1,141 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.GeoLocation;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScore;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import fit.biejk.entity.Location;
+import fit.biejk.service.LocationDistanceService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+
+/**
+ * Builds the location part of search queries.
+ * <p>
+ * Without a radius, documents are filtered by the exact location name. With a radius, documents are filtered
+ * by the distance of their {@code locationPoint} from the centre of the requested location, and a Gaussian
+ * decay ranks nearer documents higher.
+ * </p>
+ */
+@ApplicationScoped
+public class LocationQueries {
+
+    /**
+     * Field holding the coordinates of the document location.
+     */
+    private static final String POINT_FIELD = "locationPoint";
+
+    /**
+     * Number of metres in a kilometre.
+     */
+    private static final double METRES_PER_KM = 1000.0;
+
+    /**
+     * Service resolving location names to coordinates.
+     */
+    @Inject
+    private LocationDistanceService locationDistanceService;
+
+    /**
+     * Distance from the centre at which the decay reaches {@link #decay}.
+     */
+    @ConfigProperty(name = "profinder.search.geo.decay-scale", defaultValue = "25km")
+    private String decayScale;
+
+    /**
+     * Score multiplier of documents at {@link #decayScale} from the centre.
+     */
+    @ConfigProperty(name = "profinder.search.geo.decay", defaultValue = "0.5")
+    private double decay;
+
+    /**
+     * Returns the coordinates to search around, if the search is a radius search.
+     *
+     * @param location name of the requested location
+     * @param radiusKm requested radius in kilometres, or {@code null} for an exact location match
+     * @return the centre, or {@code null} if the search is not a radius search or the location has no coordinates
+     */
+    public GeoPointDto centre(final String location, final Double radiusKm) {
+        if (radiusKm == null || radiusKm <= 0 || location == null) {
+            return null;
+        }
+        Location resolved = locationDistanceService.getByName(location);
+        return SearchSourceSupport.point(resolved);
+    }
+
+    /**
+     * Builds the filter restricting documents to the requested location.
+     *
+     * @param location name of the requested location
+     * @param radiusKm requested radius in kilometres, or {@code null} for an exact location match
+     * @return the filter query
+     */
+    public Query filter(final String location, final Double radiusKm) {
+        GeoPointDto centre = centre(location, radiusKm);
+        if (centre == null) {
+            return Query.of(q -> q.term(t -> t.field("location.keyword").value(location)));
+        }
+        return Query.of(q -> q.geoDistance(g -> g
+                .field(POINT_FIELD)
+                .distance(radiusKm + "km")
+                .location(geoLocation(centre))
+        ));
+    }
+
+    /**
+     * Builds the score functions ranking nearer documents higher.
+     *
+     * @param location name of the requested location
+     * @param radiusKm requested radius in kilometres, or {@code null} for an exact location match
+     * @return the functions, empty if the search is not a radius search
+     */
+    public List<FunctionScore> decay(final String location, final Double radiusKm) {
+        GeoPointDto centre = centre(location, radiusKm);
+        if (centre == null) {
+            return List.of();
+        }
+        return List.of(FunctionScore.of(f -> f.gauss(g -> g.geo(d -> d
+                .field(POINT_FIELD)
+                .placement(p -> p.origin(geoLocation(centre)).scale(decayScale).decay(decay))
+        ))));
+    }
+
+    /**
+     * Computes the Gaussian decay applied by {@link #decay} at a distance from the centre.
+     *
+     * @param distanceKm distance from the centre in kilometres
+     * @return score multiplier between 0 and 1
+     */
+    public double decayFactor(final double distanceKm) {
+        double ratio = distanceKm / scaleKm();
+        return Math.exp(Math.log(decay) * ratio * ratio);
+    }
+
+    /**
+     * Returns {@link #decayScale} in kilometres.
+     *
+     * @return the scale in kilometres
+     */
+    private double scaleKm() {
+        String scale = decayScale.trim();
+        if (scale.endsWith("km")) {
+            return Double.parseDouble(scale.substring(0, scale.length() - 2));
+        }
+        if (scale.endsWith("m")) {
+            return Double.parseDouble(scale.substring(0, scale.length() - 1)) / METRES_PER_KM;
+        }
+        return Double.parseDouble(scale);
+    }
+
+    /**
+     * Converts a point to the client representation of a geo location.
+     *
+     * @param point the point
+     * @return the geo location
+     */
+    private static GeoLocation geoLocation(final GeoPointDto point) {
+        return GeoLocation.of(g -> g.latlon(l -> l.lat(point.getLat()).lon(point.getLon())));
+    }
+}
@@ -0,0 +1,317 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import fit.biejk.dto.OrderAlertMessage;
+import fit.biejk.entity.SearchOutboxEvent;
+import fit.biejk.repository.SearchOutboxRepository;
+import fit.biejk.service.OrderService;
+import fit.biejk.socket.OrderAlertFanout;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.JsonNumber;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Matches newly indexed orders against the saved searches of specialists and pushes alerts to them.
+ * <p>
+ * Once a new order was written to the index, {@link SearchOutboxRelay} leaves a
+ * {@link fit.biejk.entity.SearchOperation#PERCOLATE} event for it in the outbox. A scheduled run claims
+ * the pending events in batches, leasing them like the relay does, and percolates the orders of a batch
+ * against the "saved-searches" index in one request, instead of running every saved search against the
+ * order index. The {@code _percolator_document_slot} field of every matched saved search tells which of
+ * the orders it matched. A specialist gets one alert per matching order, listing all of their saved searches
+ * that matched it.
+ * </p>
+ * <p>
+ * Percolations survive restarts and a failed percolate request is retried with the backoff of the relay;
+ * a batch whose node stops before finishing is percolated again once its lease expires. Alerts are pushed
+ * through the {@link OrderAlertFanout} to the specialists connected to any node; specialists who are not
+ * connected miss them. Without Elasticsearch no alerts are sent.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class OrderAlertPercolator {
+
+    /**
+     * Field of a percolator hit listing the positions of the matched documents in the request.
+     */
+    private static final String SLOT_FIELD = "_percolator_document_slot";
+
+    /**
+     * Elasticsearch client used for the percolate requests.
+     */
+    @Inject
+    private ElasticsearchClient elasticsearchClient;
+
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Fan-out delivering the alerts to the sessions of the specialists on every node.
+     */
+    @Inject
+    private OrderAlertFanout orderAlertFanout;
+
+    /**
+     * Repository holding the pending percolations.
+     */
+    @Inject
+    private SearchOutboxRepository searchOutboxRepository;
+
+    /**
+     * Relay whose backoff is applied to failed percolations.
+     */
+    @Inject
+    private SearchOutboxRelay searchOutboxRelay;
+
+    /**
+     * Service for loading the new orders from the database.
+     */
+    @Inject
+    private OrderService orderService;
+
+    /**
+     * Mapper converting orders to the percolated documents.
+     */
+    @Inject
+    private OrderSearchMapper orderSearchMapper;
+
+    /**
+     * Registry for publishing alert metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Maximum number of orders percolated in one request.
+     */
+    @ConfigProperty(name = "profinder.saved-search.percolate-batch-size", defaultValue = "100")
+    private int batchSize;
+
+    /**
+     * Number of matched saved searches read per page of a percolate request.
+     */
+    @ConfigProperty(name = "profinder.saved-search.percolate-page-size", defaultValue = "1000")
+    private int pageSize;
+
+    /**
+     * Time a claimed percolation is hidden from other runs while it is being percolated.
+     */
+    @ConfigProperty(name = "profinder.search.outbox.lease", defaultValue = "30s")
+    private Duration lease;
+
+    /**
+     * Pending percolations claimed by one run.
+     *
+     * @param claimed  number of claimed events, including those of orders deleted in the meantime
+     * @param eventIds IDs of the events of the orders to percolate
+     * @param orders   documents of the orders to percolate
+     */
+    private record Batch(int claimed, List<Long> eventIds, List<OrderSearchDto> orders) {
+    }
+
+    /**
+     * Percolates all pending orders in batches and pushes the resulting alerts.
+     */
+    @Scheduled(every = "${profinder.saved-search.percolate-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void percolate() {
+        if (searchEngineRouter.isLocalOnly()) {
+            return;
+        }
+        Batch batch;
+        do {
+            batch = QuarkusTransaction.requiringNew().call(this::claimBatch);
+            if (!batch.orders().isEmpty()) {
+                alert(batch);
+            }
+        } while (batch.claimed() == batchSize);
+    }
+
+    /**
+     * Leases one batch of due percolations and loads their orders.
+     * <p>
+     * Events of orders that were deleted in the meantime are dropped.
+     * </p>
+     *
+     * @return the claimed batch
+     */
+    private Batch claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SearchOutboxEvent> events = searchOutboxRepository.lockPercolations(now, batchSize);
+        if (events.isEmpty()) {
+            return new Batch(0, List.of(), List.of());
+        }
+        Map<Long, OrderSearchDto> orders = new HashMap<>();
+        orderService.getByIds(events.stream().map(SearchOutboxEvent::getDocumentId).toList())
+                .forEach(order -> orders.put(order.getId(), orderSearchMapper.toDto(order)));
+
+        List<Long> eventIds = new ArrayList<>();
+        List<OrderSearchDto> documents = new ArrayList<>();
+        Set<Long> claimedOrders = new HashSet<>();
+        List<Long> dropped = new ArrayList<>();
+        for (SearchOutboxEvent event : events) {
+            OrderSearchDto order = orders.get(event.getDocumentId());
+            if (order == null) {
+                dropped.add(event.getId());
+                continue;
+            }
+            eventIds.add(event.getId());
+            if (claimedOrders.add(order.getId())) {
+                documents.add(order);
+            }
+            event.setNextAttemptAt(now.plus(lease));
+            event.setLeased(true);
+        }
+        if (!dropped.isEmpty()) {
+            searchOutboxRepository.delete("id in ?1", dropped);
+        }
+        return new Batch(events.size(), eventIds, documents);
+    }
+
+    /**
+     * Percolates one batch of orders and pushes an alert for every matching specialist and order.
+     * <p>
+     * The events of the batch are deleted once the percolate request succeeded, or postponed if it failed.
+     * </p>
+     *
+     * @param batch the claimed batch
+     */
+    private void alert(final Batch batch) {
+        List<OrderSearchDto> orders = batch.orders();
+        Map<Long, Map<Integer, List<Long>>> matches;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            matches = match(orders);
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to percolate {} new orders: {}", orders.size(), e.getMessage());
+            meterRegistry.counter("search.percolate.failed").increment(orders.size());
+            QuarkusTransaction.requiringNew().run(() -> searchOutboxRepository.list("id in ?1", batch.eventIds())
+                    .forEach(searchOutboxRelay::postpone));
+            return;
+        } finally {
+            sample.stop(meterRegistry.timer("search.percolate"));
+        }
+        QuarkusTransaction.requiringNew().run(() -> searchOutboxRepository.delete("id in ?1", batch.eventIds()));
+
+        Map<Long, List<OrderAlertMessage>> alerts = new HashMap<>();
+        int total = 0;
+        for (Map.Entry<Long, Map<Integer, List<Long>>> specialist : matches.entrySet()) {
+            List<OrderAlertMessage> messages = new ArrayList<>();
+            for (Map.Entry<Integer, List<Long>> match : specialist.getValue().entrySet()) {
+                messages.add(toMessage(orders.get(match.getKey()), match.getValue()));
+            }
+            alerts.put(specialist.getKey(), messages);
+            total += messages.size();
+        }
+        if (alerts.isEmpty()) {
+            log.debug("Percolated {} new orders: no alerts", orders.size());
+            return;
+        }
+        int alertCount = total;
+        orderAlertFanout.publish(alerts).subscribe().with(delivered -> {
+            meterRegistry.counter("search.percolate.alerts", "delivered", "true").increment(delivered);
+            meterRegistry.counter("search.percolate.alerts", "delivered", "false").increment(alertCount - delivered);
+            log.debug("Percolated {} new orders: {} alerts delivered, {} for offline specialists",
+                    orders.size(), delivered, alertCount - delivered);
+        });
+    }
+
+    /**
+     * Finds the saved searches matching any of the orders, paging through all of them.
+     *
+     * @param orders the orders
+     * @return IDs of the matched saved searches by specialist ID and position of the order in the batch
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private Map<Long, Map<Integer, List<Long>>> match(final List<OrderSearchDto> orders) throws IOException {
+        List<JsonData> documents = orders.stream().map(JsonData::of).toList();
+        Map<Long, Map<Integer, List<Long>>> matches = new HashMap<>();
+        List<FieldValue> after = null;
+        List<Hit<SavedSearchQueryDto>> hits;
+        do {
+            List<FieldValue> position = after;
+            SearchResponse<SavedSearchQueryDto> response = elasticsearchClient.search(s -> {
+                s.index(SavedSearchIndexInitializer.INDEX_NAME)
+                        .size(pageSize)
+                        .source(src -> src.filter(f -> f.includes("id", "specialistId")))
+                        .query(q -> q.percolate(p -> p.field("query").documents(documents)))
+                        .sort(so -> so.field(f -> f.field("id").order(SortOrder.Asc)));
+                if (position != null) {
+                    s.searchAfter(position);
+                }
+                return s;
+            }, SavedSearchQueryDto.class);
+            hits = response.hits().hits();
+            for (Hit<SavedSearchQueryDto> hit : hits) {
+                SavedSearchQueryDto savedSearch = hit.source();
+                for (int slot : slots(hit)) {
+                    matches.computeIfAbsent(savedSearch.getSpecialistId(), k -> new TreeMap<>())
+                            .computeIfAbsent(slot, k -> new ArrayList<>())
+                            .add(savedSearch.getId());
+                }
+            }
+            if (!hits.isEmpty()) {
+                after = hits.get(hits.size() - 1).sort();
+            }
+        } while (hits.size() == pageSize);
+        return matches;
+    }
+
+    /**
+     * Returns the positions of the orders a percolator hit matched.
+     * <p>
+     * Elasticsearch may omit the slot field when a single document is percolated.
+     * </p>
+     *
+     * @param hit the hit
+     * @return positions of the matched orders in the batch
+     */
+    private static List<Integer> slots(final Hit<SavedSearchQueryDto> hit) {
+        JsonData slots = hit.fields().get(SLOT_FIELD);
+        if (slots == null) {
+            return List.of(0);
+        }
+        return slots.toJson().asJsonArray().stream()
+                .map(value -> ((JsonNumber) value).intValue())
+                .toList();
+    }
+
+    /**
+     * Builds the alert pushed to a specialist.
+     *
+     * @param order          the matched order
+     * @param savedSearchIds IDs of the saved searches of the specialist that matched the order
+     * @return the alert
+     */
+    private static OrderAlertMessage toMessage(final OrderSearchDto order, final List<Long> savedSearchIds) {
+        return new OrderAlertMessage(order.getId(), order.getTitle(), order.getServices(), order.getLocation(),
+                order.getPrice(), order.getDeadline(), savedSearchIds);
+    }
+}
@@ -0,0 +1,135 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Names and buckets of the facets computed for order searches.
+ */
+final class OrderFacets {
+
+    /**
+     * Statuses of orders that are still open for proposals and therefore searchable.
+     */
+    static final List<String> OPEN_STATUSES = List.of("CREATED", "CLIENT_PENDING");
+
+    /**
+     * Name of the facet counting orders by service.
+     */
+    static final String SERVICES = "services";
+
+    /**
+     * Name of the facet counting orders by location.
+     */
+    static final String LOCATION = "location";
+
+    /**
+     * Name of the facet counting orders by status.
+     */
+    static final String STATUS = "status";
+
+    /**
+     * Name of the facet counting orders by price range.
+     */
+    static final String PRICE = "price";
+
+    /**
+     * Upper bounds of the price facet buckets; the last bucket is open-ended.
+     */
+    static final List<Double> PRICE_BOUNDS = List.of(500.0, 1000.0, 5000.0);
+
+    /**
+     * Maximum number of buckets of a terms facet.
+     */
+    static final int TERMS_SIZE = 20;
+
+    /**
+     * Prevents instantiation.
+     */
+    private OrderFacets() {
+    }
+
+    /**
+     * Returns the key of a price bucket.
+     *
+     * @param from inclusive lower bound, or {@code null} for none
+     * @param to   exclusive upper bound, or {@code null} for none
+     * @return key such as {@code 500-1000} or {@code 5000-*}
+     */
+    static String priceKey(final Double from, final Double to) {
+        return (from == null ? "*" : String.valueOf(from.intValue()))
+                + "-" + (to == null ? "*" : String.valueOf(to.intValue()));
+    }
+
+    /**
+     * Builds the aggregations computing the facets in Elasticsearch.
+     *
+     * @return aggregations by facet name
+     */
+    static Map<String, Aggregation> aggregations() {
+        Map<String, Aggregation> aggregations = new LinkedHashMap<>();
+        aggregations.put(SERVICES, Aggregation.of(a -> a.terms(t -> t.field("services.keyword").size(TERMS_SIZE))));
+        aggregations.put(LOCATION, Aggregation.of(a -> a.terms(t -> t.field("location.keyword").size(TERMS_SIZE))));
+        aggregations.put(STATUS, Aggregation.of(a -> a.terms(t -> t.field("status.keyword"))));
+        aggregations.put(PRICE, Aggregation.of(a -> a.range(r -> r.field("price").ranges(priceRanges()))));
+        return aggregations;
+    }
+
+    /**
+     * Converts the facet aggregations of a response into facet buckets.
+     *
+     * @param aggregations aggregations of the response by name
+     * @return buckets by facet name
+     */
+    static Map<String, List<FacetBucketDto>> toBuckets(final Map<String, Aggregate> aggregations) {
+        Map<String, List<FacetBucketDto>> facets = new LinkedHashMap<>();
+        for (String name : List.of(SERVICES, LOCATION, STATUS)) {
+            Aggregate aggregate = aggregations.get(name);
+            if (aggregate != null && aggregate.isSterms()) {
+                facets.put(name, aggregate.sterms().buckets().array().stream()
+                        .map(b -> new FacetBucketDto(b.key().stringValue(), b.docCount(), null, null))
+                        .toList());
+            }
+        }
+        Aggregate price = aggregations.get(PRICE);
+        if (price != null && price.isRange()) {
+            facets.put(PRICE, price.range().buckets().array().stream()
+                    .map(b -> new FacetBucketDto(b.key(), b.docCount(), b.from(), b.to()))
+                    .toList());
+        }
+        return facets;
+    }
+
+    /**
+     * Builds the ranges of the price facet from {@link #PRICE_BOUNDS}.
+     *
+     * @return the ranges, from the cheapest
+     */
+    private static List<AggregationRange> priceRanges() {
+        List<AggregationRange> ranges = new ArrayList<>();
+        Double from = null;
+        for (Double to : PRICE_BOUNDS) {
+            ranges.add(priceRange(from, to));
+            from = to;
+        }
+        ranges.add(priceRange(from, null));
+        return ranges;
+    }
+
+    /**
+     * Builds one price range keyed by its bounds.
+     *
+     * @param from inclusive lower bound, or {@code null} for none
+     * @param to   exclusive upper bound, or {@code null} for none
+     * @return the range
+     */
+    private static AggregationRange priceRange(final Double from, final Double to) {
+        return AggregationRange.of(r -> r.from(from).to(to).key(priceKey(from, to)));
+    }
+}
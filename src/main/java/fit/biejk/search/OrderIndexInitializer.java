@@ -1,22 +1,26 @@
 package fit.biejk.search;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.util.ObjectBuilder;
 import fit.biejk.service.OrderService;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.runtime.Startup;
 import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
 
 import java.io.IOException;
 
 /**
  * Initializes the Elasticsearch index for storing order data.
  * <p>
- * This class is executed at application startup and ensures the "orders" index
- * is created in Elasticsearch with the correct mappings. It deletes the existing
- * index (if present), recreates it, and loads all current orders from the database
- * into the index.
+ * This class is executed at application startup. The "orders" alias is served by a versioned
+ * physical index managed by {@link SearchIndexManager}. A new version is built in the background
+ * when the alias is missing, its mapping version is outdated, or a rebuild on startup is configured;
+ * the previous index keeps serving searches until the new one is swapped in.
  * </p>
  */
 @Startup
@@ -24,6 +28,12 @@ import java.io.IOException;
 @Slf4j
 public class OrderIndexInitializer {
 
+    /**
+     * Version of the mapping defined in {@link #mappings(TypeMapping.Builder)}.
+     * Must be increased whenever the mapping changes, which triggers a rebuild.
+     */
+    public static final int MAPPING_VERSION = 4;
+
     /**
      * Mapper responsible for converting Order to OrderSearchDto.
      */
@@ -31,10 +41,10 @@ public class OrderIndexInitializer {
     private OrderSearchMapper orderSearchMapper;
 
     /**
-     * Elasticsearch client used to interact with the Elasticsearch cluster.
+     * Manager of versioned indices and their aliases.
      */
     @Inject
-    private ElasticsearchClient elasticsearchClient;
+    private SearchIndexManager searchIndexManager;
 
     /**
      * Service for accessing orders from the relational database.
@@ -43,65 +53,114 @@ public class OrderIndexInitializer {
     private OrderService orderService;
 
     /**
-     * Service for indexing orders in Elasticsearch.
+     * Bulk indexer used to stream orders into Elasticsearch.
      */
     @Inject
-    private OrderSearchService orderSearchService;
+    private BulkReindexer bulkReindexer;
 
     /**
-     * Initializes the index after application startup.
-     * <p>
-     * If the "orders" index already exists, it is deleted and recreated.
-     * The index is created with mappings for ID, status, services, and location.
-     * Then, all orders from the database are loaded and indexed.
-     * </p>
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Executor running the rebuild outside the startup thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Whether to rebuild the index on every startup even if the mapping is current.
+     */
+    @ConfigProperty(name = "profinder.search.rebuild-on-startup", defaultValue = "false")
+    private boolean rebuildOnStartup;
+
+    /**
+     * Checks the index after application startup and schedules a rebuild if needed, unless Elasticsearch is
+     * disabled.
      */
     @PostConstruct
     void init() {
-        String indexName = "orders";
-
+        if (searchEngineRouter.isLocalOnly()) {
+            log.info("Elasticsearch disabled, skipping index {}", OrderSearchService.INDEX_NAME);
+            return;
+        }
         try {
-            boolean exists = elasticsearchClient.indices().exists(e -> e.index(indexName)).value();
-            if (exists) {
-                log.info("Deleting index " + indexName);
-                elasticsearchClient.indices().delete(d -> d.index(indexName));
+            if (searchIndexManager.isCurrent(OrderSearchService.INDEX_NAME, MAPPING_VERSION) && !rebuildOnStartup) {
+                log.info("Index {} is up to date", OrderSearchService.INDEX_NAME);
+                return;
             }
-            log.info("Creating index " + indexName);
-            elasticsearchClient.indices().create(c -> c
-                    .index(indexName)
-                    .mappings(m -> m
-                            .properties("id", p -> p.long_(x -> x))
-                            .properties("status", p -> p
-                                    .text(t -> t
-                                            .fields("keyword", k -> k.keyword(kk -> kk))
-                                    )
-                            )
-                            .properties("services", p -> p
-                                    .text(t -> t
-                                            .fields("keyword", k -> k.keyword(kk -> kk))
-                                    )
-                            )
-                            .properties("location", p -> p
-                                    .text(t -> t
-                                            .fields("keyword", k -> k.keyword(kk -> kk))
-                                    )
-                            )
-                    )
-            );
-            load();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Failed to inspect index {}", OrderSearchService.INDEX_NAME, e);
+            return;
         }
+        executor.runAsync(this::rebuild);
     }
 
     /**
-     * Loads all orders from the database and indexes them in Elasticsearch.
+     * Builds a new version of the index from the database and swaps it in.
+     */
+    public void rebuild() {
+        try {
+            searchIndexManager.rebuild(OrderSearchService.INDEX_NAME, MAPPING_VERSION, this::mappings, this::load);
+        } catch (IOException e) {
+            log.error("Failed to rebuild index {}", OrderSearchService.INDEX_NAME, e);
+        }
+    }
+
+    /**
+     * Defines the mappings for ID, status, services, and location.
+     *
+     * @param m mapping builder
+     * @return configured mapping builder
+     */
+    ObjectBuilder<TypeMapping> mappings(final TypeMapping.Builder m) {
+        return m
+                .properties("id", p -> p.long_(x -> x))
+                .properties("status", p -> p
+                        .text(t -> t
+                                .fields("keyword", k -> k.keyword(kk -> kk))
+                        )
+                )
+                .properties("services", p -> p
+                        .text(t -> t
+                                .fields("keyword", k -> k.keyword(kk -> kk))
+                        )
+                )
+                .properties("location", p -> p
+                        .text(t -> t
+                                .fields("keyword", k -> k.keyword(kk -> kk))
+                        )
+                )
+                .properties("locationId", p -> p.long_(x -> x))
+                .properties("locationPoint", p -> p.geoPoint(g -> g))
+                .properties("serviceIds", p -> p.long_(x -> x))
+                .properties("clientId", p -> p.long_(x -> x))
+                .properties("title", p -> p.text(t -> t))
+                .properties("description", p -> p.text(t -> t))
+                .properties("price", p -> p.integer(i -> i))
+                .properties("createdAt", p -> p.date(d -> d))
+                .properties("deadline", p -> p.date(d -> d))
+                .properties("mappingVersion", p -> p.integer(i -> i))
+                .properties(ContentHash.CONTENT_FIELD, p -> p.integer(i -> i))
+                .properties(ContentHash.PARTIAL_FIELD, p -> p.integer(i -> i));
+    }
+
+    /**
+     * Streams all orders from the database into the given physical index.
+     * <p>
+     * Each chunk is read and mapped in its own transaction, so the persistence context
+     * is discarded after every chunk and memory use does not grow with the table size.
+     * </p>
+     *
+     * @param index name of the physical index to fill
      */
-    void load() {
-        log.info("Loading orders from database");
-        orderService.getAll()
-                .forEach(order ->
-                        orderSearchService.save(orderSearchMapper.toDto(order))
-                );
+    void load(final String index) {
+        log.info("Loading orders from database into {}", index);
+        bulkReindexer.reindex(index,
+                (afterId, size) -> QuarkusTransaction.requiringNew().call(() ->
+                        orderSearchMapper.toDtoList(orderService.getChunkAfterId(afterId, size))),
+                OrderSearchDto::getId);
     }
 }
@@ -36,4 +36,67 @@ public class OrderSearchDto {
      * Name of the location where the order is to be performed.
      */
     private String location;
+
+    /**
+     * ID of the location, needed to render the location without a database lookup.
+     */
+    private Long locationId;
+
+    /**
+     * Coordinates of the location, or {@code null} if the location has none.
+     */
+    private GeoPointDto locationPoint;
+
+    /**
+     * IDs of the services, in the same order as {@link #services}.
+     */
+    private List<Long> serviceIds;
+
+    /**
+     * ID of the client who created the order.
+     */
+    private Long clientId;
+
+    /**
+     * Title of the order.
+     */
+    private String title;
+
+    /**
+     * Description of the order.
+     */
+    private String description;
+
+    /**
+     * Price offered for the order.
+     */
+    private Integer price;
+
+    /**
+     * Creation time of the order in ISO-8601 format.
+     */
+    private String createdAt;
+
+    /**
+     * Deadline of the order in ISO-8601 format, or {@code null} if none is set.
+     */
+    private String deadline;
+
+    /**
+     * Mapping version the document was written with.
+     * <p>
+     * Documents older than {@link OrderIndexInitializer#MAPPING_VERSION} may lack display fields.
+     * </p>
+     */
+    private Integer mappingVersion;
+
+    /**
+     * Hash of all fields except the status fields, see {@link ContentHash}.
+     */
+    private Integer contentHash;
+
+    /**
+     * Hash of the status fields, rewritten together with them by partial updates.
+     */
+    private Integer partialHash;
 }
@@ -1,14 +1,19 @@
 package fit.biejk.search;
 
+import fit.biejk.dto.OrderDto;
 import fit.biejk.entity.Order;
+import fit.biejk.entity.OrderStatus;
 import fit.biejk.entity.ServiceOffering;
 import fit.biejk.service.OrderService;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Mapper class responsible for converting between {@link Order} entities
@@ -24,6 +29,12 @@ public class OrderSearchMapper {
     @Inject
     private OrderService orderService;
 
+    /**
+     * Hydrator loading the entities behind search hits in one query.
+     */
+    @Inject
+    private SearchHydrator searchHydrator;
+
     /**
      * Converts an {@link Order} entity to a {@link OrderSearchDto} for Elasticsearch indexing.
      *
@@ -39,12 +50,53 @@ public class OrderSearchMapper {
 
         String locationName = entity.getLocation() != null ? entity.getLocation().getName() : null;
 
-        return new OrderSearchDto(
-                entity.getId(),
-                entity.getStatus().name(),
-                serviceNames,
-                locationName
-        );
+        OrderSearchDto dto = new OrderSearchDto();
+        dto.setId(entity.getId());
+        dto.setStatus(entity.getStatus().name());
+        dto.setServices(serviceNames);
+        dto.setLocation(locationName);
+        dto.setLocationId(entity.getLocation() != null ? entity.getLocation().getId() : null);
+        dto.setLocationPoint(SearchSourceSupport.point(entity.getLocation()));
+        dto.setServiceIds(entity.getServiceOfferings() == null
+                ? List.of()
+                : entity.getServiceOfferings().stream()
+                .map(ServiceOffering::getId)
+                .toList());
+        dto.setClientId(entity.getClient() != null ? entity.getClient().getId() : null);
+        dto.setTitle(entity.getTitle());
+        dto.setDescription(entity.getDescription());
+        dto.setPrice(entity.getPrice());
+        dto.setCreatedAt(entity.getCreatedAt() != null ? entity.getCreatedAt().toString() : null);
+        dto.setDeadline(entity.getDeadline() != null ? entity.getDeadline().toString() : null);
+        dto.setMappingVersion(OrderIndexInitializer.MAPPING_VERSION);
+        Map<String, Object> status = statusFields(entity);
+        dto.setContentHash(ContentHash.ofDocument(dto, status.keySet()));
+        dto.setPartialHash(ContentHash.ofFields(status));
+        return dto;
+    }
+
+    /**
+     * Builds the partial update of the status field of an order document.
+     *
+     * @param entity the {@link Order} entity
+     * @return the partial update, including the new partial hash
+     */
+    public PartialUpdate toStatusUpdate(final Order entity) {
+        Map<String, Object> fields = statusFields(entity);
+        fields.put(ContentHash.PARTIAL_FIELD, ContentHash.ofFields(fields));
+        return new PartialUpdate(fields);
+    }
+
+    /**
+     * Returns the fields of an order document that are rewritten by status updates.
+     *
+     * @param entity the {@link Order} entity
+     * @return values by field name
+     */
+    private static Map<String, Object> statusFields(final Order entity) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("status", entity.getStatus().name());
+        return fields;
     }
 
     /**
@@ -59,16 +111,20 @@ public class OrderSearchMapper {
 
     /**
      * Converts a list of {@link OrderSearchDto} objects to a list of {@link Order} entities.
+     * <p>
+     * All entities are loaded with a single query. The order of the DTOs is preserved and entities
+     * deleted since they were indexed are left out.
+     * </p>
      *
      * @param dtos the list of {@link OrderSearchDto} objects
      * @return a list of corresponding {@link Order} entities
      */
     public List<Order> toEntityList(final List<OrderSearchDto> dtos) {
-        List<Order> entities = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
         for (OrderSearchDto dto : dtos) {
-            entities.add(toEntity(dto));
+            ids.add(dto.getId());
         }
-        return entities;
+        return searchHydrator.hydrate(OrderSearchService.INDEX_NAME, ids, orderService::getByIds, Order::getId);
     }
 
     /**
@@ -84,4 +140,55 @@ public class OrderSearchMapper {
         }
         return dtos;
     }
+
+    /**
+     * Checks whether the given documents carry all fields needed by {@link #toResponseDto(OrderSearchDto)}.
+     *
+     * @param dtos the list of {@link OrderSearchDto} objects
+     * @return {@code true} if every document was written with the current mapping version
+     */
+    public boolean isSourceComplete(final List<OrderSearchDto> dtos) {
+        for (OrderSearchDto dto : dtos) {
+            if (dto.getMappingVersion() == null || dto.getMappingVersion() < OrderIndexInitializer.MAPPING_VERSION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts an {@link OrderSearchDto} directly to an {@link OrderDto} response, without a database lookup.
+     *
+     * @param dto the {@link OrderSearchDto} to convert
+     * @return the response DTO
+     */
+    public OrderDto toResponseDto(final OrderSearchDto dto) {
+        OrderDto result = new OrderDto();
+        result.setId(dto.getId());
+        result.setClientId(dto.getClientId());
+        result.setServiceOfferings(SearchSourceSupport.serviceOfferings(dto.getServiceIds(), dto.getServices()));
+        result.setStatus(OrderStatus.valueOf(dto.getStatus()));
+        result.setDescription(dto.getDescription());
+        result.setTitle(dto.getTitle());
+        result.setPrice(dto.getPrice() != null ? dto.getPrice() : 0);
+        result.setCreatedAt(dto.getCreatedAt() != null ? LocalDateTime.parse(dto.getCreatedAt()) : null);
+        result.setDeadline(dto.getDeadline() != null ? LocalDateTime.parse(dto.getDeadline()) : null);
+        result.setLocation(SearchSourceSupport.location(dto.getLocationId(), dto.getLocation(),
+                dto.getLocationPoint()));
+        return result;
+    }
+
+    /**
+     * Converts a list of {@link OrderSearchDto} objects directly to {@link OrderDto} responses.
+     *
+     * @param dtos the list of {@link OrderSearchDto} objects
+     * @return a list of response DTOs
+     */
+    public List<OrderDto> toResponseDtoList(final List<OrderSearchDto> dtos) {
+        List<OrderDto> result = new ArrayList<>();
+        for (OrderSearchDto dto : dtos) {
+            result.add(toResponseDto(dto));
+        }
+        return result;
+    }
 }
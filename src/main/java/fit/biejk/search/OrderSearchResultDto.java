@@ -0,0 +1,28 @@
+package fit.biejk.search;
+
+import fit.biejk.dto.OrderDto;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order search results together with facet counts.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSearchResultDto {
+
+    /**
+     * Matching orders of the requested page.
+     */
+    private List<OrderDto> items;
+
+    /**
+     * Facet buckets by facet name ({@code services}, {@code location}, {@code status}, {@code price}).
+     */
+    private Map<String, List<FacetBucketDto>> facets;
+}
@@ -1,14 +1,15 @@
 package fit.biejk.search;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.search.Hit;
+import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Service for managing the indexing, deletion, and searching of {@link OrderSearchDto}
@@ -19,105 +20,97 @@ import java.util.List;
 public class OrderSearchService {
 
     /**
-     * Elasticsearch client used to perform operations on the search index.
+     * Name of the read alias of the orders index.
+     */
+    public static final String INDEX_NAME = "orders";
+
+    /**
+     * Router selecting the engine that answers the search.
      */
     @Inject
-    private ElasticsearchClient elasticsearchClient;
+    private SearchEngineRouter searchEngineRouter;
 
     /**
-     * Saves or updates an {@link OrderSearchDto} document in the Elasticsearch "orders" index.
-     *
-     * @param dto the order data to be indexed
+     * Cache of first result pages.
      */
-    public void save(final OrderSearchDto dto) {
-        try {
-            log.info("Saving Order with id {} for search", dto.getId());
-            elasticsearchClient.index(i -> i
-                    .index("orders")
-                    .id(String.valueOf(dto.getId()))
-                    .document(dto)
-            );
-        } catch (IOException e) {
-            log.warn(e.getMessage());
-            e.printStackTrace();
-        }
-    }
+    @Inject
+    private SearchResultCache searchResultCache;
 
     /**
-     * Deletes an order document from the Elasticsearch "orders" index by its ID.
-     *
-     * @param id the ID of the order to delete
+     * Layer collapsing identical concurrent first-page searches.
      */
-    public void delete(final Long id) {
-        try {
-            log.info("Deleting Order with id {} for search", id);
-            elasticsearchClient.delete(d -> d
-                    .index("orders")
-                    .id(String.valueOf(id))
-            );
-        } catch (IOException e) {
-            log.warn(e.getMessage());
-            e.printStackTrace();
-        }
-    }
+    @Inject
+    private SearchSingleFlight searchSingleFlight;
+
+    /**
+     * Time a first page with facets stays cached; kept short because the counts cover the whole result set.
+     */
+    @ConfigProperty(name = "profinder.search.cache.facet-ttl", defaultValue = "10s")
+    private Duration facetTtl;
 
     /**
-     * Searches for orders that match the specified service names and location.
-     * Only orders with status "CREATED" or "CLIENT_PENDING" are returned.
+     * Searches for orders that match the specified service names and location, and optionally counts the
+     * matching orders by service, location, status and price range in the same request.
+     * Only orders with status "CREATED" or "CLIENT_PENDING" are returned. With a radius, orders from
+     * nearby locations are included as well and nearer orders are ranked higher.
+     * <p>
+     * Facets describe the whole result set, so they are computed for the first page only.
+     * </p>
+     * <p>
+     * Elasticsearch is queried through the asynchronous client and the cache through the reactive Redis client,
+     * so no thread waits for I/O while the search runs.
+     * </p>
      *
      * @param services a list of service names to search for
      * @param location the city/location to filter orders by
-     * @return a list of matching {@link OrderSearchDto} objects
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of orders per page
+     * @param facets   whether to compute facets for the first page
+     * @return the page of matching orders, failed with an {@link IllegalArgumentException} if the cursor is
+     *         malformed or has expired
      */
-    public List<OrderSearchDto> search(final List<String> services, final String location) {
-        try {
-            log.info("Searching for Orders with services {} and location {}", services, location);
-
-            SearchResponse<OrderSearchDto> response = elasticsearchClient.search(s -> s
-                            .index("orders")
-                            .query(q -> q
-                                    .bool(b -> b
-                                        .must(m -> m
-                                                .terms(t -> t
-                                                    .field("services.keyword")
-                                                        .terms(ts -> ts
-                                                            .value(services.stream()
-                                                                    .map(v -> co.elastic.clients.
-                                                                            elasticsearch._types.FieldValue.of(v))
-                                                                    .toList())
-                                                            )
-                                                    )
-                                            )
-                                            .filter(f -> f
-                                                .term(t -> t
-                                                    .field("location.keyword")
-                                                        .value(co.elastic.clients.elasticsearch._types.
-                                                                    FieldValue.of(location))
-                                                    )
-                                            )
-                                            .filter(f -> f
-                                                .terms(t -> t
-                                                    .field("status.keyword")
-                                                        .terms(ts -> ts
-                                                            .value(List.of("CREATED", "CLIENT_PENDING").stream()
-                                                                .map(co.elastic.clients.
-                                                                    elasticsearch._types.FieldValue::of)
-                                                                    .toList())
-                                                            )
-                                                    )
-                                            )
-                                    )
-                            ),
-                    OrderSearchDto.class
-            );
-
-            return response.hits().hits().stream()
-                    .map(Hit::source)
-                    .toList();
-
-        } catch (IOException e) {
+    public Uni<SearchPage<OrderSearchDto>> searchAsync(final List<String> services, final String location,
+                                                       final Double radiusKm, final String cursor, final int size,
+                                                       final boolean facets) {
+        List<String> normalizedServices = SearchResultCache.normalizeTerms(services);
+        String normalizedLocation = location != null ? location.trim() : null;
+        log.info("Searching for Orders with services {} and location {}", normalizedServices, normalizedLocation);
+        return Uni.createFrom().completionStage(() -> {
+            if (cursor != null) {
+                return fetchAsync(normalizedServices, normalizedLocation, radiusKm, cursor, size, false);
+            }
+            String query = normalizedServices + "|" + normalizedLocation + "|" + radiusKm + "|" + size
+                    + (facets ? "|facets" : "");
+            if (facets) {
+                return searchSingleFlight.executeAsync(INDEX_NAME, INDEX_NAME + "|" + query, () ->
+                        searchResultCache.getAsync(INDEX_NAME, query, OrderSearchDto.class, facetTtl,
+                                () -> fetchAsync(normalizedServices, normalizedLocation, radiusKm, null, size, true)));
+            }
+            return searchSingleFlight.executeAsync(INDEX_NAME, INDEX_NAME + "|" + query, () ->
+                    searchResultCache.getAsync(INDEX_NAME, query, OrderSearchDto.class,
+                            () -> fetchAsync(normalizedServices, normalizedLocation, radiusKm, null, size, false)));
+        }).onFailure(IOException.class).recoverWithItem(e -> {
             log.error("Failed to search orders", e);
-            return List.of();
-        }
+            return SearchPage.empty();
+        });
+    }
+
+    /**
+     * Starts an order search on the engine selected by the router.
+     *
+     * @param services normalized service names
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null}
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of orders per page
+     * @param facets   whether to compute facets in the same request
+     * @return stage completed with the page
+     */
+    private CompletionStage<SearchPage<OrderSearchDto>> fetchAsync(final List<String> services, final String location,
+                                                                   final Double radiusKm, final String cursor,
+                                                                   final int size, final boolean facets) {
+        return searchEngineRouter.searchAsync(cursor,
+                engine -> engine.searchOrdersAsync(services, location, radiusKm, cursor, size, facets));
     }
 }
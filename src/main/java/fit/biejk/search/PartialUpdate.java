@@ -0,0 +1,57 @@
+package fit.biejk.search;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Change of some top-level fields of an indexed document, sent to Elasticsearch as an {@code _update}
+ * with a partial document instead of rewriting the whole document.
+ * <p>
+ * The field names are the JSON property names of the search DTO. Applying the same update twice has
+ * the same effect as applying it once, because every value is read from the current database state.
+ * </p>
+ *
+ * @param fields new values by field name, a {@code null} value clears the field
+ */
+record PartialUpdate(Map<String, Object> fields) {
+
+    /**
+     * Mapper merging the fields into search DTOs.
+     */
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Combines this update with a later one; fields of the later update win.
+     *
+     * @param later the later update
+     * @return the combined update
+     */
+    PartialUpdate merge(final PartialUpdate later) {
+        Map<String, Object> merged = new LinkedHashMap<>(fields);
+        merged.putAll(later.fields);
+        return new PartialUpdate(merged);
+    }
+
+    /**
+     * Returns a copy of a full document with the fields of this update applied.
+     * <p>
+     * The given document is left untouched, because it may be shared with readers.
+     * </p>
+     *
+     * @param document the full document
+     * @param <D>      type of the document
+     * @return the updated copy
+     */
+    @SuppressWarnings("unchecked")
+    <D> D applyTo(final D document) {
+        try {
+            D copy = (D) JSON.convertValue(document, document.getClass());
+            return JSON.updateValue(copy, fields);
+        } catch (JsonMappingException e) {
+            throw new IllegalStateException("Failed to apply partial update to " + document.getClass(), e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ThreadContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cursor-based pagination of searches using a point in time and {@code search_after}.
+ * <p>
+ * The first page runs as a plain search on the alias, fetching one extra hit to tell whether a next page
+ * exists, since most searches never ask for one. The second page opens a point in time on the index, so
+ * all further pages see the same snapshot even while documents are written or the alias is moved to a
+ * rebuilt index. Hits are sorted by the document ID after the sort of the query, and on the point in time
+ * also by the implicit {@code _shard_doc} tiebreaker, which makes the sort values of the last hit a stable
+ * position to continue from. The point in time is closed once the last page has been returned.
+ * </p>
+ * <p>
+ * Pages are fetched without blocking, on the asynchronous client. Its completions run on the client I/O
+ * threads, so the continuations are run with the context of the calling request.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class PointInTimePager {
+
+    /**
+     * HTTP status returned by Elasticsearch for an expired point in time.
+     */
+    private static final int NOT_FOUND = 404;
+
+    /**
+     * Point-in-time marker of the cursors issued by a first page, which ran without a point in time.
+     */
+    private static final String NO_PIT = "none";
+
+    /**
+     * Field breaking ties between hits with equal sort values.
+     */
+    private static final String TIEBREAKER = "id";
+
+    /**
+     * Non-blocking Elasticsearch client used for the searches.
+     */
+    @Inject
+    private ElasticsearchAsyncClient elasticsearchAsyncClient;
+
+    /**
+     * Context propagating the request context into the continuations of the searches.
+     */
+    @Inject
+    private ThreadContext threadContext;
+
+    /**
+     * Registry for timing the Elasticsearch phase of the searches.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * How long a point in time is kept alive between two page requests.
+     */
+    @ConfigProperty(name = "profinder.search.pit.keep-alive", defaultValue = "1m")
+    private String keepAlive;
+
+    /**
+     * Fetches one page of a search without blocking the caller.
+     *
+     * @param index  logical index to open the point in time on
+     * @param cursor token of the page to fetch, or {@code null} for the first page
+     * @param size   number of hits per page
+     * @param query  sets the query, sort and aggregations of the search; the query and sort must be the same
+     *               for all pages
+     * @param type   class of the documents
+     * @param facets converts the aggregations of the response into facets, or {@code null} for none
+     * @param <D>    type of the documents
+     * @return stage completed with the page, or failed with an {@link IllegalArgumentException} if the cursor
+     *         is malformed or has expired
+     */
+    public <D> CompletionStage<SearchPage<D>> pageAsync(
+            final String index, final String cursor, final int size, final Consumer<SearchRequest.Builder> query,
+            final Class<D> type, final Function<Map<String, Aggregate>, Map<String, List<FacetBucketDto>>> facets) {
+        SearchCursor position;
+        try {
+            position = cursor != null ? SearchCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletionStage<String> pit;
+        if (position == null) {
+            pit = CompletableFuture.completedFuture(null);
+        } else if (NO_PIT.equals(position.pit())) {
+            pit = openAsync(index);
+        } else {
+            pit = CompletableFuture.completedFuture(position.pit());
+        }
+        return pit.thenCompose(id -> {
+            long started = System.nanoTime();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            CompletionStage<SearchResponse<D>> response = threadContext.withContextCapture(
+                    elasticsearchAsyncClient.search(request(index, position, id, size, query), type));
+            return response.handle((result, error) -> {
+                searchTelemetry.record(SearchTelemetry.ELASTICSEARCH,
+                        sample.stop(meterRegistry.timer("search.elasticsearch", "index", index)));
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    if (cause instanceof ElasticsearchException e && expired(position, e)) {
+                        throw new IllegalArgumentException("Search cursor has expired", e);
+                    }
+                    throw error instanceof CompletionException ce ? ce : new CompletionException(cause);
+                }
+                recordTook(index, result.took(), System.nanoTime() - started);
+                return toPage(result, id, size, facets);
+            });
+        });
+    }
+
+    /**
+     * Builds the search request of one page.
+     *
+     * @param index    logical index, searched directly by the first page
+     * @param position position to continue from, or {@code null} for the first page
+     * @param pit      ID of the point in time to search, or {@code null} for the first page
+     * @param size     number of hits per page
+     * @param query    sets the query, sort and aggregations of the search
+     * @return the request
+     */
+    private SearchRequest request(final String index, final SearchCursor position, final String pit,
+                                  final int size, final Consumer<SearchRequest.Builder> query) {
+        boolean sorted = !SearchRequest.of(s -> {
+            query.accept(s);
+            return s;
+        }).sort().isEmpty();
+        return SearchRequest.of(s -> {
+            query.accept(s);
+            if (!sorted) {
+                s.sort(so -> so.score(sc -> sc.order(SortOrder.Desc)));
+            }
+            s.sort(so -> so.field(f -> f.field(TIEBREAKER).order(SortOrder.Asc)));
+            if (pit == null) {
+                s.index(index).size(size + 1);
+            } else {
+                s.pit(p -> p.id(pit).keepAlive(t -> t.time(keepAlive))).size(size);
+            }
+            if (position != null) {
+                List<FieldValue> after = new ArrayList<>(position.searchAfter());
+                if (NO_PIT.equals(position.pit())) {
+                    // the first page had no _shard_doc; the document ID alone already identifies its last hit
+                    after.add(FieldValue.of(Long.MAX_VALUE));
+                }
+                s.searchAfter(after);
+            }
+            return s;
+        });
+    }
+
+    /**
+     * Checks whether a search failed because the point in time of its cursor has expired.
+     *
+     * @param position position the search continued from, or {@code null} for the first page
+     * @param error    the failure
+     * @return true if the cursor has expired
+     */
+    private static boolean expired(final SearchCursor position, final ElasticsearchException error) {
+        return position != null && !NO_PIT.equals(position.pit()) && error.status() == NOT_FOUND;
+    }
+
+    /**
+     * Builds a page from a search response, closing the point in time after the last page.
+     *
+     * @param response the search response
+     * @param pit      ID of the point in time the search ran against, or {@code null} for the first page
+     * @param size     number of hits per page
+     * @param facets   converts the aggregations of the response into facets, or {@code null} for none
+     * @param <D>      type of the documents
+     * @return the page with the token of the next page
+     */
+    private <D> SearchPage<D> toPage(final SearchResponse<D> response, final String pit, final int size,
+                                     final Function<Map<String, Aggregate>, Map<String, List<FacetBucketDto>>> facets) {
+        List<Hit<D>> hits = response.hits().hits();
+        Map<String, List<FacetBucketDto>> buckets = facets != null ? facets.apply(response.aggregations()) : null;
+        if (pit == null) {
+            boolean more = hits.size() > size;
+            List<Hit<D>> first = more ? hits.subList(0, size) : hits;
+            String next = more ? SearchCursor.of(NO_PIT, first.get(size - 1).sort()).encode() : null;
+            return new SearchPage<>(first.stream().map(Hit::source).toList(), next, buckets);
+        }
+        List<D> items = hits.stream().map(Hit::source).toList();
+        String nextPit = response.pitId() != null ? response.pitId() : pit;
+        if (hits.size() < size) {
+            close(nextPit);
+            return new SearchPage<>(items, null, buckets);
+        }
+        String next = SearchCursor.of(nextPit, hits.get(hits.size() - 1).sort()).encode();
+        return new SearchPage<>(items, next, buckets);
+    }
+
+    /**
+     * Opens a point in time on an index without blocking the caller.
+     *
+     * @param index logical index
+     * @return stage completed with the ID of the point in time
+     */
+    private CompletionStage<String> openAsync(final String index) {
+        long started = System.nanoTime();
+        return threadContext.withContextCapture(elasticsearchAsyncClient.openPointInTime(o -> o
+                        .index(index)
+                        .keepAlive(t -> t.time(keepAlive))))
+                .handle((response, error) -> {
+                    searchTelemetry.record(SearchTelemetry.PIT_OPEN, System.nanoTime() - started);
+                    if (error != null) {
+                        throw error instanceof CompletionException ce ? ce : new CompletionException(error);
+                    }
+                    return response.id();
+                });
+    }
+
+    /**
+     * Records the search time reported by Elasticsearch and the remaining client-side overhead.
+     *
+     * @param index         logical index
+     * @param tookMillis    search time reported by Elasticsearch in milliseconds
+     * @param observedNanos time observed by the client in nanoseconds
+     */
+    private void recordTook(final String index, final long tookMillis, final long observedNanos) {
+        long took = TimeUnit.MILLISECONDS.toNanos(tookMillis);
+        meterRegistry.timer("search.elasticsearch.took", "index", index).record(took, TimeUnit.NANOSECONDS);
+        meterRegistry.timer("search.elasticsearch.overhead", "index", index)
+                .record(Math.max(0, observedNanos - took), TimeUnit.NANOSECONDS);
+        searchTelemetry.record(SearchTelemetry.ELASTICSEARCH_TOOK, took);
+    }
+
+    /**
+     * Closes a point in time that is no longer needed.
+     *
+     * @param pit ID of the point in time
+     */
+    private void close(final String pit) {
+        elasticsearchAsyncClient.closePointInTime(c -> c.id(pit)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.debug("Failed to close point in time: {}", error.getMessage());
+            }
+        });
+    }
+}
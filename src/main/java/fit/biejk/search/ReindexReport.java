@@ -0,0 +1,54 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Summary of a finished bulk reindex run.
+ */
+@Data
+@AllArgsConstructor
+public class ReindexReport {
+
+    /**
+     * Number of milliseconds in one second, used for throughput calculation.
+     */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /**
+     * Name of the index that was filled.
+     */
+    private String index;
+
+    /**
+     * Number of documents sent to Elasticsearch.
+     */
+    private long documents;
+
+    /**
+     * Number of documents rejected by Elasticsearch.
+     */
+    private long failed;
+
+    /**
+     * Total size of the serialized documents in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Wall-clock duration of the run in milliseconds.
+     */
+    private long durationMillis;
+
+    /**
+     * Calculates the indexing throughput of the run.
+     *
+     * @return indexed documents per second
+     */
+    public double getDocsPerSecond() {
+        if (durationMillis == 0) {
+            return documents;
+        }
+        return documents * MILLIS_PER_SECOND / durationMillis;
+    }
+}
@@ -0,0 +1,156 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.util.ObjectBuilder;
+import fit.biejk.service.SavedSearchService;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+
+import java.io.IOException;
+
+/**
+ * Initializes the Elasticsearch percolator index holding the saved searches of specialists.
+ * <p>
+ * Percolator queries are parsed against the mapping of the index they are stored in, so the index
+ * contains all order fields next to the {@code query} field. Like the other indices, the "saved-searches"
+ * alias is served by a versioned physical index managed by {@link SearchIndexManager} and rebuilt
+ * in the background from the database when needed.
+ * </p>
+ */
+@Startup
+@Singleton
+@Slf4j
+public class SavedSearchIndexInitializer {
+
+    /**
+     * Name of the logical index (alias) holding the saved searches.
+     */
+    public static final String INDEX_NAME = "saved-searches";
+
+    /**
+     * Version of the mapping defined in {@link #mappings(TypeMapping.Builder)}.
+     * <p>
+     * Includes the order mapping version, because stored queries must be rebuilt whenever the order
+     * fields they refer to change. The last two digits must be increased whenever the percolator
+     * fields change.
+     * </p>
+     */
+    public static final int MAPPING_VERSION = OrderIndexInitializer.MAPPING_VERSION * 100 + 1;
+
+    /**
+     * Initializer of the order index, providing the order field mappings.
+     */
+    @Inject
+    private OrderIndexInitializer orderIndexInitializer;
+
+    /**
+     * Mapper responsible for converting SavedSearch to SavedSearchQueryDto.
+     */
+    @Inject
+    private SavedSearchQueryMapper savedSearchQueryMapper;
+
+    /**
+     * Manager of versioned indices and their aliases.
+     */
+    @Inject
+    private SearchIndexManager searchIndexManager;
+
+    /**
+     * Service for accessing saved searches from the relational database.
+     */
+    @Inject
+    private SavedSearchService savedSearchService;
+
+    /**
+     * Bulk indexer used to stream saved searches into Elasticsearch.
+     */
+    @Inject
+    private BulkReindexer bulkReindexer;
+
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Executor running the rebuild outside the startup thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Whether to rebuild the index on every startup even if the mapping is current.
+     */
+    @ConfigProperty(name = "profinder.search.rebuild-on-startup", defaultValue = "false")
+    private boolean rebuildOnStartup;
+
+    /**
+     * Checks the index after application startup and schedules a rebuild if needed, unless Elasticsearch is
+     * disabled.
+     */
+    @PostConstruct
+    void init() {
+        if (searchEngineRouter.isLocalOnly()) {
+            log.info("Elasticsearch disabled, skipping index {}", INDEX_NAME);
+            return;
+        }
+        try {
+            if (searchIndexManager.isCurrent(INDEX_NAME, MAPPING_VERSION) && !rebuildOnStartup) {
+                log.info("Index {} is up to date", INDEX_NAME);
+                return;
+            }
+        } catch (IOException e) {
+            log.error("Failed to inspect index {}", INDEX_NAME, e);
+            return;
+        }
+        executor.runAsync(this::rebuild);
+    }
+
+    /**
+     * Builds a new version of the index from the database and swaps it in.
+     */
+    public void rebuild() {
+        try {
+            searchIndexManager.rebuild(INDEX_NAME, MAPPING_VERSION, this::mappings, this::load);
+        } catch (IOException e) {
+            log.error("Failed to rebuild index {}", INDEX_NAME, e);
+        }
+    }
+
+    /**
+     * Defines the order field mappings plus the percolator query and its owner.
+     *
+     * @param m mapping builder
+     * @return configured mapping builder
+     */
+    ObjectBuilder<TypeMapping> mappings(final TypeMapping.Builder m) {
+        orderIndexInitializer.mappings(m);
+        return m
+                .properties("query", p -> p.percolator(x -> x))
+                .properties("specialistId", p -> p.long_(x -> x));
+    }
+
+    /**
+     * Streams all saved searches from the database into the given physical index.
+     * <p>
+     * Each chunk is read and mapped in its own transaction, so the persistence context
+     * is discarded after every chunk.
+     * </p>
+     *
+     * @param index name of the physical index to fill
+     */
+    void load(final String index) {
+        log.info("Loading saved searches from database into {}", index);
+        bulkReindexer.reindex(index,
+                (afterId, size) -> QuarkusTransaction.requiringNew().call(() ->
+                        savedSearchQueryMapper.toDtoList(savedSearchService.getChunkAfterId(afterId, size))),
+                SavedSearchQueryDto::getId);
+    }
+}
@@ -0,0 +1,39 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Percolator document of a saved search, stored in the "saved-searches" index.
+ * <p>
+ * The query is matched against new order documents by {@link OrderAlertPercolator}.
+ * </p>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SavedSearchQueryDto {
+
+    /**
+     * Unique identifier of the saved search.
+     */
+    private Long id;
+
+    /**
+     * ID of the specialist to alert about matching orders.
+     */
+    private Long specialistId;
+
+    /**
+     * Elasticsearch query matching the order documents, as JSON object.
+     */
+    private Map<String, Object> query;
+
+    /**
+     * Version of the index mapping the document was built for.
+     */
+    private Integer mappingVersion;
+}
@@ -0,0 +1,117 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.util.ObjectBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fit.biejk.entity.SavedSearch;
+import fit.biejk.entity.ServiceOffering;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts {@link SavedSearch} entities to the percolator documents of the "saved-searches" index.
+ * <p>
+ * The stored query only matches open orders, like the order search, and filters them by the service IDs,
+ * the location (using the same filter as the order search) and the price range of the saved search.
+ * </p>
+ */
+@ApplicationScoped
+public class SavedSearchQueryMapper {
+
+    /**
+     * Mapper serializing client queries to JSON.
+     */
+    private static final JacksonJsonpMapper JSONP = new JacksonJsonpMapper();
+
+    /**
+     * Mapper reading the serialized query as a JSON object.
+     */
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Builder of the location filter.
+     */
+    @Inject
+    private LocationQueries locationQueries;
+
+    /**
+     * Converts a saved search to its percolator document.
+     *
+     * @param entity the saved search, with its location and services loaded
+     * @return the percolator document
+     */
+    public SavedSearchQueryDto toDto(final SavedSearch entity) {
+        SavedSearchQueryDto dto = new SavedSearchQueryDto();
+        dto.setId(entity.getId());
+        dto.setSpecialistId(entity.getSpecialist().getId());
+        dto.setQuery(toJson(Query.of(q -> q.bool(b -> filters(b, entity)))));
+        dto.setMappingVersion(SavedSearchIndexInitializer.MAPPING_VERSION);
+        return dto;
+    }
+
+    /**
+     * Converts a list of saved searches to percolator documents.
+     *
+     * @param entities the saved searches
+     * @return the percolator documents
+     */
+    public List<SavedSearchQueryDto> toDtoList(final List<SavedSearch> entities) {
+        return entities.stream().map(this::toDto).toList();
+    }
+
+    /**
+     * Adds a filter for every criterion of the saved search.
+     *
+     * @param b      bool query builder
+     * @param entity the saved search
+     * @return the configured builder
+     */
+    private ObjectBuilder<BoolQuery> filters(final BoolQuery.Builder b, final SavedSearch entity) {
+        b.filter(f -> f.terms(t -> t
+                .field("status.keyword")
+                .terms(ts -> ts.value(OrderFacets.OPEN_STATUSES.stream().map(FieldValue::of).toList()))
+        ));
+        List<ServiceOffering> services = entity.getServiceOfferings();
+        if (services != null && !services.isEmpty()) {
+            b.filter(f -> f.terms(t -> t
+                    .field("serviceIds")
+                    .terms(ts -> ts.value(services.stream().map(s -> FieldValue.of(s.getId())).toList()))
+            ));
+        }
+        if (entity.getLocation() != null) {
+            b.filter(locationQueries.filter(entity.getLocation().getName(), entity.getRadiusKm()));
+        }
+        if (entity.getMinPrice() != null || entity.getMaxPrice() != null) {
+            b.filter(f -> f.range(r -> r.number(n -> n
+                    .field("price")
+                    .gte(entity.getMinPrice() != null ? entity.getMinPrice().doubleValue() : null)
+                    .lte(entity.getMaxPrice() != null ? entity.getMaxPrice().doubleValue() : null)
+            )));
+        }
+        return b;
+    }
+
+    /**
+     * Converts a query to a JSON object.
+     *
+     * @param query the query
+     * @return the query as JSON object
+     */
+    private static Map<String, Object> toJson(final Query query) {
+        try {
+            return JSON.readValue(JsonpUtils.toJsonString(query, JSONP), new TypeReference<>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize saved search query", e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package fit.biejk.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker guarding the calls to Elasticsearch.
+ * <p>
+ * The outcomes of the last {@code window} calls are kept in a ring buffer. When the window is full and either
+ * the share of failed calls or the share of calls slower than {@code slow-call-duration} reaches its threshold,
+ * the breaker opens and calls are rejected for {@code open-duration}. Afterwards a single probe call is let
+ * through; it closes the breaker if it is fast and successful and opens it again otherwise.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchCircuitBreaker {
+
+    /**
+     * States of the breaker, with the value published by the state gauge.
+     */
+    enum State {
+
+        /**
+         * Calls pass through.
+         */
+        CLOSED(0),
+
+        /**
+         * A single probe call is in progress.
+         */
+        HALF_OPEN(1),
+
+        /**
+         * Calls are rejected.
+         */
+        OPEN(2);
+
+        /**
+         * Value published by the state gauge.
+         */
+        private final int gaugeValue;
+
+        /**
+         * Creates a state.
+         *
+         * @param gaugeValue value published by the state gauge
+         */
+        State(final int gaugeValue) {
+            this.gaugeValue = gaugeValue;
+        }
+    }
+
+    /**
+     * Registry for publishing the breaker state.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Number of recent calls the rates are computed over.
+     */
+    @ConfigProperty(name = "profinder.search.breaker.window", defaultValue = "20")
+    private int window;
+
+    /**
+     * Share of failed calls in the window that opens the breaker.
+     */
+    @ConfigProperty(name = "profinder.search.breaker.failure-rate", defaultValue = "0.5")
+    private double failureRate;
+
+    /**
+     * Share of slow calls in the window that opens the breaker.
+     */
+    @ConfigProperty(name = "profinder.search.breaker.slow-call-rate", defaultValue = "0.5")
+    private double slowCallRate;
+
+    /**
+     * Duration from which a call counts as slow.
+     */
+    @ConfigProperty(name = "profinder.search.breaker.slow-call-duration", defaultValue = "500ms")
+    private Duration slowCallDuration;
+
+    /**
+     * Time the breaker stays open before a probe call is allowed.
+     */
+    @ConfigProperty(name = "profinder.search.breaker.open-duration", defaultValue = "30s")
+    private Duration openDuration;
+
+    /**
+     * Whether each call in the window failed.
+     */
+    private boolean[] failed;
+
+    /**
+     * Whether each call in the window was slow.
+     */
+    private boolean[] slow;
+
+    /**
+     * Number of recorded calls since the breaker closed, capped at the window size.
+     */
+    private int recorded;
+
+    /**
+     * Position of the next call in the ring buffer.
+     */
+    private int next;
+
+    /**
+     * Current state.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * {@link System#nanoTime()} when the breaker last opened.
+     */
+    private long openedAt;
+
+    /**
+     * Allocates the ring buffer and registers the state gauge.
+     */
+    @PostConstruct
+    void init() {
+        failed = new boolean[window];
+        slow = new boolean[window];
+        meterRegistry.gauge("search.breaker.state", this, b -> b.state().gaugeValue);
+    }
+
+    /**
+     * Checks whether a call may be sent to Elasticsearch.
+     * <p>
+     * An open breaker whose open duration has passed turns half-open and lets this call through as the probe.
+     * </p>
+     *
+     * @return {@code true} if the call may proceed and its outcome must be recorded
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+            transition(State.HALF_OPEN);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of a call allowed by {@link #tryAcquire()}.
+     *
+     * @param nanos   duration of the call
+     * @param failure whether the call failed
+     */
+    public synchronized void record(final long nanos, final boolean failure) {
+        boolean tooSlow = nanos >= slowCallDuration.toNanos();
+        if (state == State.HALF_OPEN) {
+            transition(failure || tooSlow ? State.OPEN : State.CLOSED);
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+        failed[next] = failure;
+        slow[next] = tooSlow;
+        next = (next + 1) % window;
+        recorded = Math.min(recorded + 1, window);
+        if (recorded < window) {
+            return;
+        }
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < window; i++) {
+            failures += failed[i] ? 1 : 0;
+            slowCalls += slow[i] ? 1 : 0;
+        }
+        if (failures >= failureRate * window || slowCalls >= slowCallRate * window) {
+            log.warn("Opening search circuit breaker: {} failed and {} slow of the last {} calls",
+                    failures, slowCalls, window);
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Returns the current state.
+     *
+     * @return the state
+     */
+    synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Moves the breaker to a new state; the caller holds the monitor.
+     *
+     * @param target the new state
+     */
+    private void transition(final State target) {
+        if (target == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (target == State.CLOSED) {
+            recorded = 0;
+            next = 0;
+        }
+        if (state != target) {
+            log.info("Search circuit breaker {} -> {}", state, target);
+            meterRegistry.counter("search.breaker.transitions", "to", target.name()).increment();
+        }
+        state = target;
+    }
+}
@@ -0,0 +1,113 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in a paginated search: the point in time the search runs against and the sort values
+ * of the last returned hit.
+ * <p>
+ * Clients receive it as an opaque URL-safe token and send it back to fetch the next page.
+ * </p>
+ *
+ * @param pit   ID of the Elasticsearch point in time, or a marker if the search has none yet
+ * @param after sort values of the last hit, each prefixed with its type ({@code l:}, {@code d:}, {@code s:},
+ *              {@code b:} or {@code n:})
+ */
+public record SearchCursor(String pit, List<String> after) {
+
+    /**
+     * Mapper used to serialize the cursor before encoding it.
+     */
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Creates a cursor pointing after a hit with the given sort values.
+     *
+     * @param pit        ID of the point in time
+     * @param sortValues sort values of the last hit
+     * @return the cursor
+     */
+    public static SearchCursor of(final String pit, final List<FieldValue> sortValues) {
+        List<String> after = new ArrayList<>();
+        for (FieldValue value : sortValues) {
+            if (value.isNull()) {
+                after.add("n:");
+            } else if (value.isLong()) {
+                after.add("l:" + value.longValue());
+            } else if (value.isDouble()) {
+                after.add("d:" + value.doubleValue());
+            } else if (value.isBoolean()) {
+                after.add("b:" + value.booleanValue());
+            } else {
+                after.add("s:" + value.stringValue());
+            }
+        }
+        return new SearchCursor(pit, after);
+    }
+
+    /**
+     * Decodes a cursor token received from a client.
+     *
+     * @param token the token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static SearchCursor decode(final String token) {
+        try {
+            SearchCursor cursor = JSON.readValue(Base64.getUrlDecoder().decode(token), SearchCursor.class);
+            if (cursor.pit() == null || cursor.after() == null) {
+                throw new IllegalArgumentException("Invalid search cursor");
+            }
+            return cursor;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+    }
+
+    /**
+     * Encodes the cursor as an opaque URL-safe token.
+     *
+     * @return the token
+     */
+    public String encode() {
+        try {
+            byte[] json = JSON.writeValueAsString(this).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode search cursor", e);
+        }
+    }
+
+    /**
+     * Returns the sort values to continue the search after.
+     *
+     * @return the sort values
+     * @throws IllegalArgumentException if a value is malformed
+     */
+    public List<FieldValue> searchAfter() {
+        List<FieldValue> values = new ArrayList<>();
+        for (String value : after) {
+            if (value.length() < 2 || value.charAt(1) != ':') {
+                throw new IllegalArgumentException("Invalid search cursor");
+            }
+            String raw = value.substring(2);
+            switch (value.charAt(0)) {
+                case 'l' -> values.add(FieldValue.of(Long.parseLong(raw)));
+                case 'd' -> values.add(FieldValue.of(Double.parseDouble(raw)));
+                case 'b' -> values.add(FieldValue.of(Boolean.parseBoolean(raw)));
+                case 's' -> values.add(FieldValue.of(raw));
+                case 'n' -> values.add(FieldValue.NULL);
+                default -> throw new IllegalArgumentException("Invalid search cursor");
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,40 @@
+package fit.biejk.search;
+
+import fit.biejk.entity.SearchDocumentType;
+
+/**
+ * Identifies a single document in one of the search indices.
+ *
+ * @param type type of the indexed entity
+ * @param id   ID of the indexed entity
+ */
+public record SearchDocumentKey(SearchDocumentType type, Long id) {
+
+    /**
+     * Returns the logical index (read alias) holding documents of this type.
+     *
+     * @return name of the logical index
+     */
+    public String index() {
+        return switch (type) {
+            case ORDER -> OrderSearchService.INDEX_NAME;
+            case SPECIALIST -> SpecialistSearchService.INDEX_NAME;
+            case SAVED_SEARCH -> SavedSearchIndexInitializer.INDEX_NAME;
+        };
+    }
+
+    /**
+     * Returns the type of the documents held by a logical index.
+     *
+     * @param index name of the logical index
+     * @return the document type, or {@code null} if the index holds none of them
+     */
+    public static SearchDocumentType typeOf(final String index) {
+        for (SearchDocumentType type : SearchDocumentType.values()) {
+            if (new SearchDocumentKey(type, null).index().equals(index)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package fit.biejk.search;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Engine answering specialist and order searches.
+ * <p>
+ * Inputs are already normalized by the calling search service. Cursors are opaque tokens issued by the same
+ * engine; an engine rejects cursors it cannot continue with an {@link IllegalArgumentException}. Searches never
+ * block the caller: engines that wait for I/O complete the returned stage when the response arrives, engines
+ * that answer from memory return a completed stage.
+ * </p>
+ */
+public interface SearchEngine {
+
+    /**
+     * Searches specialists by keyword and location without blocking the caller.
+     *
+     * @param keyword  normalized search keyword
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of specialists per page
+     * @return stage completed with the page, or failed with an {@link java.io.IOException} if the engine cannot be
+     *         reached
+     */
+    CompletionStage<SearchPage<SpecialistSearchDto>> searchSpecialistsAsync(String keyword, String location,
+                                                                            Double radiusKm, String cursor,
+                                                                            int size);
+
+    /**
+     * Searches open orders by services and location without blocking the caller.
+     *
+     * @param services normalized service names
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of orders per page
+     * @param facets   whether to compute facets over all matching orders
+     * @return stage completed with the page, or failed with an {@link java.io.IOException} if the engine cannot be
+     *         reached
+     */
+    CompletionStage<SearchPage<OrderSearchDto>> searchOrdersAsync(List<String> services, String location,
+                                                                  Double radiusKm, String cursor, int size,
+                                                                  boolean facets);
+}
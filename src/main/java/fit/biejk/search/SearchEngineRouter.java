@@ -0,0 +1,175 @@
+package fit.biejk.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Routes searches to Elasticsearch or, when it is unhealthy, to the {@link LocalSearchEngine}.
+ * <p>
+ * With {@code profinder.search.engine=local}, Elasticsearch is not used at all, which lets the application run
+ * without an Elasticsearch container. Otherwise searches go to Elasticsearch through a
+ * {@link SearchCircuitBreaker}; while the breaker is open, or when a call fails, they are answered locally.
+ * Cursors are routed to the engine that issued them.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchEngineRouter {
+
+    /**
+     * Value of {@code profinder.search.engine} that disables Elasticsearch.
+     */
+    private static final String LOCAL_ENGINE = "local";
+
+    /**
+     * Engine backed by Elasticsearch.
+     */
+    @Inject
+    private ElasticsearchSearchEngine elasticsearchSearchEngine;
+
+    /**
+     * In-process engine.
+     */
+    @Inject
+    private LocalSearchEngine localSearchEngine;
+
+    /**
+     * Breaker guarding the calls to Elasticsearch.
+     */
+    @Inject
+    private SearchCircuitBreaker circuitBreaker;
+
+    /**
+     * Registry for counting fallbacks.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Primary engine: {@code elasticsearch} or {@code local}.
+     */
+    @ConfigProperty(name = "profinder.search.engine", defaultValue = "elasticsearch")
+    private String engine;
+
+    /**
+     * Search to start on the selected engine without blocking the caller.
+     *
+     * @param <T> type of the results
+     */
+    @FunctionalInterface
+    public interface AsyncEngineCall<T> {
+
+        /**
+         * Starts the search.
+         *
+         * @param searchEngine the selected engine
+         * @return stage completed with the page
+         */
+        CompletionStage<SearchPage<T>> apply(SearchEngine searchEngine);
+    }
+
+    /**
+     * Checks whether Elasticsearch is disabled.
+     *
+     * @return {@code true} if all searches are answered locally
+     */
+    public boolean isLocalOnly() {
+        return LOCAL_ENGINE.equalsIgnoreCase(engine);
+    }
+
+    /**
+     * Starts a search on the appropriate engine without blocking the caller.
+     *
+     * @param cursor cursor of the search, or {@code null} for the first page
+     * @param call   the search
+     * @param <T>    type of the results
+     * @return stage completed with the page, or failed with an {@link IOException} if Elasticsearch fails and
+     *         the local engine is not ready, or with an {@link IllegalArgumentException} if the cursor is
+     *         malformed or has expired
+     */
+    public <T> CompletionStage<SearchPage<T>> searchAsync(final String cursor, final AsyncEngineCall<T> call) {
+        if (isLocalOnly() || LocalSearchEngine.owns(cursor)) {
+            return localAsync(call);
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            return fallbackAsync(call, "open", null);
+        }
+        long start = System.nanoTime();
+        CompletionStage<SearchPage<T>> started;
+        try {
+            started = call.apply(elasticsearchSearchEngine);
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        return started.handle((page, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            circuitBreaker.record(System.nanoTime() - start,
+                    cause != null && !(cause instanceof IllegalArgumentException));
+            if (cause == null) {
+                return CompletableFuture.completedFuture(page);
+            }
+            if (cause instanceof IllegalArgumentException) {
+                return CompletableFuture.<SearchPage<T>>failedFuture(cause);
+            }
+            return fallbackAsync(call, "error", cause);
+        }).thenCompose(stage -> stage);
+    }
+
+    /**
+     * Answers a search locally instead of in Elasticsearch, without blocking the caller.
+     *
+     * @param call   the search
+     * @param reason why Elasticsearch was not used
+     * @param error  failure of the Elasticsearch call, or {@code null}
+     * @param <T>    type of the results
+     * @return stage completed with the page, or failed with an {@link IOException} if the local engine
+     *         is not ready
+     */
+    private <T> CompletionStage<SearchPage<T>> fallbackAsync(final AsyncEngineCall<T> call, final String reason,
+                                                             final Throwable error) {
+        if (!localSearchEngine.isReady()) {
+            return CompletableFuture.failedFuture(error instanceof IOException io
+                    ? io
+                    : new IOException("Elasticsearch unavailable and local search engine not ready", error));
+        }
+        if (error != null) {
+            log.warn("Search in Elasticsearch failed, answering locally: {}", error.getMessage());
+        }
+        meterRegistry.counter("search.engine.fallback", "reason", reason).increment();
+        return localAsync(call);
+    }
+
+    /**
+     * Starts a search on the local engine.
+     *
+     * @param call the search
+     * @param <T>  type of the results
+     * @return stage completed with the page
+     */
+    private <T> CompletionStage<SearchPage<T>> localAsync(final AsyncEngineCall<T> call) {
+        long started = System.nanoTime();
+        try {
+            return call.apply(localSearchEngine);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            searchTelemetry.record(SearchTelemetry.LOCAL, System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fit.biejk.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Loads the database entities behind a page of search hits.
+ * <p>
+ * All hits are loaded with a single query; the result keeps the relevance order of the hits and leaves out
+ * entities that were deleted since they were indexed. The time spent here is recorded by the
+ * {@code search.hydration} timer, separately from the time spent in Elasticsearch.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchHydrator {
+
+    /**
+     * Registry for publishing hydration metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Loads the entities for the given hit IDs.
+     *
+     * @param index       logical index the hits come from, used as a metric tag
+     * @param ids         IDs of the hits in relevance order
+     * @param loader      loads all entities with the given IDs in one query, in any order
+     * @param idExtractor returns the ID of an entity
+     * @param <E>         entity type
+     * @return found entities in the order of {@code ids}
+     */
+    public <E> List<E> hydrate(final String index, final List<Long> ids,
+                               final Function<List<Long>, List<E>> loader,
+                               final Function<E, Long> idExtractor) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Map<Long, E> byId = new HashMap<>();
+        for (E entity : loader.apply(ids)) {
+            byId.put(idExtractor.apply(entity), entity);
+        }
+        List<E> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            E entity = byId.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        searchTelemetry.record(SearchTelemetry.HYDRATION,
+                sample.stop(meterRegistry.timer("search.hydration", "index", index)));
+        if (result.size() < ids.size()) {
+            log.debug("Dropped {} stale hits from index {}", ids.size() - result.size(), index);
+            meterRegistry.counter("search.hydration.stale", "index", index).increment(ids.size() - result.size());
+        }
+        return result;
+    }
+}
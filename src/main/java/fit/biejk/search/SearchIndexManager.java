@@ -0,0 +1,462 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.util.ObjectBuilder;
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOutboxEvent;
+import fit.biejk.repository.SearchOutboxRepository;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Manages versioned Elasticsearch indices that are exposed through aliases.
+ * <p>
+ * Every logical index (e.g. {@code orders}) is backed by physical indices named
+ * {@code orders_v{n}}. Searches use the read alias ({@code orders}), writes use the
+ * write alias ({@code orders_write}). A rebuild fills a new physical index in the background,
+ * then moves both aliases to it in one atomic request, so readers never see an empty index.
+ * </p>
+ * <p>
+ * While a rebuild runs, the new index carries the rebuild alias ({@code orders_rebuild}) and live writes
+ * are sent both to the write alias and to the rebuild alias. The aliases are read from Elasticsearch, so
+ * every node writes into the new index, not only the one running the rebuild. Nodes re-read the aliases
+ * every {@code profinder.search.write-targets-refresh}; the rebuild waits twice as long before loading
+ * the database and before removing the rebuild alias, so no node writes past it.
+ * </p>
+ * <p>
+ * The bulk load may recreate a document that a live write removed from the new index in the meantime. Such
+ * removals are kept as {@link fit.biejk.entity.SearchOperation#TOMBSTONE tombstones} in the outbox by the
+ * {@link SearchOutboxRelay} and replayed against the new index before the aliases are swapped.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchIndexManager {
+
+    /**
+     * Suffix separating the logical index name from the version number.
+     */
+    private static final String VERSION_SEPARATOR = "_v";
+
+    /**
+     * Suffix of the write alias.
+     */
+    private static final String WRITE_ALIAS_SUFFIX = "_write";
+
+    /**
+     * Suffix of the rebuild alias.
+     */
+    private static final String REBUILD_ALIAS_SUFFIX = "_rebuild";
+
+    /**
+     * Key in the mapping {@code _meta} section holding the mapping version.
+     */
+    private static final String MAPPING_VERSION_KEY = "mappingVersion";
+
+    /**
+     * Maximum number of tombstones replayed in one bulk request.
+     */
+    private static final int REPLAY_CHUNK_SIZE = 1000;
+
+    /**
+     * Elasticsearch client used for index administration.
+     */
+    @Inject
+    private ElasticsearchClient elasticsearchClient;
+
+    /**
+     * Cache of search results, invalidated when an alias is moved to a rebuilt index.
+     */
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    /**
+     * Repository holding the tombstones of documents removed during a rebuild.
+     */
+    @Inject
+    private SearchOutboxRepository searchOutboxRepository;
+
+    /**
+     * Number of previous physical indices kept after a successful swap (for rollback).
+     */
+    @ConfigProperty(name = "profinder.search.retained-versions", defaultValue = "1")
+    private int retainedVersions;
+
+    /**
+     * How long the write targets read from Elasticsearch are trusted before they are read again.
+     */
+    @ConfigProperty(name = "profinder.search.write-targets-refresh", defaultValue = "1s")
+    private Duration writeTargetsRefresh;
+
+    /**
+     * Last known write targets of each logical index.
+     */
+    private final Map<String, WriteTargets> writeTargets = new ConcurrentHashMap<>();
+
+    /**
+     * Write targets of a logical index as read from Elasticsearch.
+     *
+     * @param names  names of the aliases receiving writes
+     * @param readAt time the aliases were read, from {@link System#nanoTime()}
+     */
+    private record WriteTargets(List<String> names, long readAt) {
+    }
+
+    /**
+     * Returns the name of the write alias for a logical index.
+     *
+     * @param alias logical index name
+     * @return write alias name
+     */
+    public static String writeAlias(final String alias) {
+        return alias + WRITE_ALIAS_SUFFIX;
+    }
+
+    /**
+     * Returns the name of the rebuild alias for a logical index.
+     *
+     * @param alias logical index name
+     * @return rebuild alias name
+     */
+    public static String rebuildAlias(final String alias) {
+        return alias + REBUILD_ALIAS_SUFFIX;
+    }
+
+    /**
+     * Returns all aliases a live write to the logical index must be sent to.
+     * <p>
+     * This is the write alias (once it exists) plus the rebuild alias while a rebuild runs on any node.
+     * Writes should require the target to be an alias, so a write racing the removal of the rebuild alias
+     * fails and is retried instead of creating a concrete index with the alias name.
+     * </p>
+     *
+     * @param alias logical index name
+     * @return list of alias names
+     */
+    public List<String> writeTargets(final String alias) {
+        WriteTargets cached = writeTargets.get(alias);
+        if (cached != null && System.nanoTime() - cached.readAt() < writeTargetsRefresh.toNanos()) {
+            return cached.names();
+        }
+        try {
+            Set<String> existing = new HashSet<>();
+            elasticsearchClient.indices().getAlias(g -> g.index(alias + VERSION_SEPARATOR + "*")).result()
+                    .values().forEach(a -> existing.addAll(a.aliases().keySet()));
+            List<String> names = new ArrayList<>();
+            if (existing.contains(writeAlias(alias))) {
+                names.add(writeAlias(alias));
+            }
+            if (existing.contains(rebuildAlias(alias))) {
+                names.add(rebuildAlias(alias));
+            }
+            WriteTargets read = new WriteTargets(List.copyOf(names), System.nanoTime());
+            writeTargets.put(alias, read);
+            return read.names();
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to read write targets of {}: {}", alias, e.getMessage());
+            return cached != null ? cached.names() : List.of();
+        }
+    }
+
+    /**
+     * Checks whether a logical index is being rebuilt, as far as the write targets of this node tell.
+     *
+     * @param alias logical index name
+     * @return true if live writes are also sent to the rebuild alias
+     */
+    public boolean isRebuilding(final String alias) {
+        return writeTargets(alias).contains(rebuildAlias(alias));
+    }
+
+    /**
+     * Checks whether the read alias exists and points to an index with the given mapping version.
+     *
+     * @param alias          logical index name
+     * @param mappingVersion expected mapping version
+     * @return true if no rebuild is required
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    public boolean isCurrent(final String alias, final int mappingVersion) throws IOException {
+        List<String> indices = indicesOfAlias(alias);
+        if (indices.size() != 1) {
+            log.info("Alias {} is not bound to a single index: {}", alias, indices);
+            return false;
+        }
+        String physical = indices.get(0);
+        Map<String, JsonData> meta = elasticsearchClient.indices().getMapping(g -> g.index(physical))
+                .get(physical).mappings().meta();
+        JsonData version = meta.get(MAPPING_VERSION_KEY);
+        boolean current = version != null && version.to(Integer.class) == mappingVersion;
+        log.info("Alias {} points to {} (mapping current={})", alias, physical, current);
+        return current;
+    }
+
+    /**
+     * Builds a new physical index and atomically moves the aliases to it.
+     * <p>
+     * The new index is created with refresh disabled and the rebuild alias, filled by the loader once
+     * every node writes to it, cleaned of the documents removed meanwhile, refreshed and finally swapped in.
+     * Old versions beyond {@code profinder.search.retained-versions} are deleted afterwards. If another node
+     * is already rebuilding the index, this call returns without doing anything. If the rebuild fails, the
+     * new index is deleted again.
+     * </p>
+     *
+     * @param alias          logical index name
+     * @param mappingVersion version of the mapping, stored in the index {@code _meta}
+     * @param mappings       mapping definition of the index
+     * @param loader         callback filling the given physical index with documents
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    public void rebuild(final String alias,
+                        final int mappingVersion,
+                        final Function<TypeMapping.Builder, ObjectBuilder<TypeMapping>> mappings,
+                        final Consumer<String> loader) throws IOException {
+        String rebuildAlias = rebuildAlias(alias);
+        if (!indicesOfAlias(rebuildAlias).isEmpty()) {
+            log.info("Index {} is already being rebuilt", alias);
+            return;
+        }
+        int version = nextVersion(alias);
+        String physical = alias + VERSION_SEPARATOR + version;
+        try {
+            log.info("Creating index {}", physical);
+            elasticsearchClient.indices().create(c -> c
+                    .index(physical)
+                    .aliases(rebuildAlias, a -> a)
+                    .settings(s -> s.refreshInterval(t -> t.time("-1")))
+                    .mappings(m -> mappings.apply(m.meta(MAPPING_VERSION_KEY, JsonData.of(mappingVersion))))
+            );
+        } catch (ElasticsearchException e) {
+            log.warn("Index {} could not be created, another rebuild is probably running: {}",
+                    physical, e.getMessage());
+            return;
+        }
+
+        SearchDocumentType type = SearchDocumentKey.typeOf(alias);
+        boolean swapped = false;
+        try {
+            awaitWriteTargetsRefresh();
+            // removals recorded before the load are already reflected in the snapshot
+            if (type != null) {
+                QuarkusTransaction.requiringNew().call(() -> searchOutboxRepository.deleteTombstones(type));
+            }
+            loader.accept(physical);
+            if (type != null) {
+                replayRemovals(type, physical);
+            }
+            elasticsearchClient.indices().putSettings(p -> p
+                    .index(physical)
+                    .settings(s -> s.refreshInterval(t -> t.time("1s")))
+            );
+            elasticsearchClient.indices().refresh(r -> r.index(physical));
+            swap(alias, physical);
+            swapped = true;
+            // nodes may still send writes to the rebuild alias, which now reach the live index
+            awaitWriteTargetsRefresh();
+        } finally {
+            if (swapped) {
+                elasticsearchClient.indices().deleteAlias(d -> d.index(physical).name(rebuildAlias));
+            } else {
+                deleteFailed(physical);
+            }
+            writeTargets.remove(alias);
+        }
+        deleteOldVersions(alias, version);
+    }
+
+    /**
+     * Deletes a new index whose rebuild failed before it was swapped in, together with its rebuild alias.
+     * <p>
+     * Failures are only logged, so they do not hide the failure of the rebuild.
+     * </p>
+     *
+     * @param physical the new index
+     */
+    private void deleteFailed(final String physical) {
+        try {
+            log.info("Deleting index {} of a failed rebuild", physical);
+            elasticsearchClient.indices().delete(d -> d.index(physical));
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to delete index {} of a failed rebuild: {}", physical, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the documents removed by live writes during the load from a rebuilt index.
+     * <p>
+     * Tombstones recorded after this point are not needed: their removals were applied to the rebuilt index
+     * after the load. They are dropped at the start of the next rebuild.
+     * </p>
+     *
+     * @param type     type of the documents
+     * @param physical the rebuilt index
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private void replayRemovals(final SearchDocumentType type, final String physical) throws IOException {
+        List<SearchOutboxEvent> tombstones = QuarkusTransaction.requiringNew()
+                .call(() -> searchOutboxRepository.findTombstones(type));
+        if (tombstones.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} removals against {}", tombstones.size(), physical);
+        for (int from = 0; from < tombstones.size(); from += REPLAY_CHUNK_SIZE) {
+            List<BulkOperation> operations = new ArrayList<>();
+            for (SearchOutboxEvent tombstone : tombstones.subList(from,
+                    Math.min(from + REPLAY_CHUNK_SIZE, tombstones.size()))) {
+                String id = String.valueOf(tombstone.getDocumentId());
+                operations.add(BulkOperation.of(o -> o.delete(d -> d.index(physical).id(id))));
+            }
+            BulkResponse response = elasticsearchClient.bulk(b -> b.operations(operations));
+            for (BulkResponseItem item : response.items()) {
+                if (item.error() != null) {
+                    throw new IOException("Failed to replay removal of " + item.id() + " against " + physical
+                            + ": " + item.error().reason());
+                }
+            }
+        }
+        List<Long> ids = tombstones.stream().map(SearchOutboxEvent::getId).toList();
+        QuarkusTransaction.requiringNew().run(() -> searchOutboxRepository.delete("id in ?1", ids));
+    }
+
+    /**
+     * Waits until every node has re-read the write targets.
+     *
+     * @throws IOException if the thread is interrupted
+     */
+    private void awaitWriteTargetsRefresh() throws IOException {
+        try {
+            Thread.sleep(writeTargetsRefresh.multipliedBy(2).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for write targets");
+        }
+    }
+
+    /**
+     * Moves the read and write aliases to the given physical index in one request.
+     * <p>
+     * A legacy concrete index that carries the alias name is removed in the same request.
+     * </p>
+     *
+     * @param alias    logical index name
+     * @param physical physical index that becomes live
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private void swap(final String alias, final String physical) throws IOException {
+        String writeAlias = writeAlias(alias);
+        List<Action> actions = new ArrayList<>();
+        for (String old : indicesOfAlias(alias)) {
+            actions.add(Action.of(a -> a.remove(r -> r.index(old).alias(alias))));
+        }
+        for (String old : indicesOfAlias(writeAlias)) {
+            actions.add(Action.of(a -> a.remove(r -> r.index(old).alias(writeAlias))));
+        }
+        if (elasticsearchClient.indices().exists(e -> e.index(alias)).value()
+                && indicesOfAlias(alias).isEmpty()) {
+            log.info("Removing legacy index {}", alias);
+            actions.add(Action.of(a -> a.removeIndex(r -> r.index(alias))));
+        }
+        actions.add(Action.of(a -> a.add(ad -> ad.index(physical).alias(alias))));
+        actions.add(Action.of(a -> a.add(ad -> ad.index(physical).alias(writeAlias).isWriteIndex(true))));
+
+        elasticsearchClient.indices().updateAliases(u -> u.actions(actions));
+        writeTargets.remove(alias);
+        log.info("Aliases {} and {} now point to {}", alias, writeAlias, physical);
+        searchResultCache.invalidate(alias);
+    }
+
+    /**
+     * Deletes physical indices older than the retained versions.
+     *
+     * @param alias       logical index name
+     * @param liveVersion version that is currently live
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private void deleteOldVersions(final String alias, final int liveVersion) throws IOException {
+        for (String index : physicalIndices(alias)) {
+            int version = versionOf(alias, index);
+            if (version < liveVersion - retainedVersions) {
+                log.info("Deleting old index {}", index);
+                elasticsearchClient.indices().delete(d -> d.index(index));
+            }
+        }
+    }
+
+    /**
+     * Determines the next free version number for a logical index.
+     *
+     * @param alias logical index name
+     * @return next version number
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private int nextVersion(final String alias) throws IOException {
+        int max = 0;
+        for (String index : physicalIndices(alias)) {
+            max = Math.max(max, versionOf(alias, index));
+        }
+        return max + 1;
+    }
+
+    /**
+     * Lists all physical indices of a logical index.
+     *
+     * @param alias logical index name
+     * @return names of the physical indices
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private Set<String> physicalIndices(final String alias) throws IOException {
+        return elasticsearchClient.indices().get(g -> g.index(alias + VERSION_SEPARATOR + "*"))
+                .result().keySet();
+    }
+
+    /**
+     * Lists the indices an alias currently points to.
+     *
+     * @param alias alias name
+     * @return names of the indices, empty if the alias does not exist
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private List<String> indicesOfAlias(final String alias) throws IOException {
+        if (!elasticsearchClient.indices().existsAlias(e -> e.name(alias)).value()) {
+            return List.of();
+        }
+        return new ArrayList<>(elasticsearchClient.indices().getAlias(g -> g.name(alias)).result().keySet());
+    }
+
+    /**
+     * Parses the version number from a physical index name.
+     *
+     * @param alias logical index name
+     * @param index physical index name
+     * @return version number, or {@code 0} if the name does not follow the pattern
+     */
+    private int versionOf(final String alias, final String index) {
+        try {
+            return Integer.parseInt(index.substring((alias + VERSION_SEPARATOR).length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.repository.SearchOutboxRepository;
+import fit.biejk.service.OrderService;
+import fit.biejk.service.SpecialistService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Periodically verifies that the search indices match the database and repairs the documents that drifted.
+ * <p>
+ * The outbox makes indexing reliable, but documents can still drift, e.g. after a manual change in the
+ * database or an index restored from a snapshot. The reconciler walks the database and the index together
+ * in id-ordered chunks. For every chunk it compares the document count and the sum of the
+ * {@link ContentHash content hashes} stored in the documents when they were written, which Elasticsearch
+ * sums with aggregations without returning any document. The hashes cover every field, text included.
+ * Only a chunk that differs is compared document by document, and every drifted
+ * document without a pending outbox event is repaired by enqueuing an upsert, which the relay turns into
+ * a bulk write of the current database state (or a delete if the entity no longer exists).
+ * </p>
+ * <p>
+ * The number of chunks read per second is bounded so that a run does not compete with live traffic,
+ * and nothing runs while Elasticsearch is disabled. Only one node reconciles at a time: a run holds a
+ * Postgres advisory lock on a dedicated connection, and nodes that cannot take it skip the run.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchIndexReconciler {
+
+    /**
+     * Key of the Postgres advisory lock held by the node running a reconciliation.
+     */
+    private static final long LOCK_KEY = 0x7072_6f66_7263L;
+
+    /**
+     * Elasticsearch client used for the checksum queries.
+     */
+    @Inject
+    private ElasticsearchClient elasticsearchClient;
+
+    /**
+     * Data source providing the connection that holds the reconciliation lock.
+     */
+    @Inject
+    private DataSource dataSource;
+
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Outbox receiving the repairs.
+     */
+    @Inject
+    private SearchOutbox searchOutbox;
+
+    /**
+     * Repository for finding documents with pending changes.
+     */
+    @Inject
+    private SearchOutboxRepository searchOutboxRepository;
+
+    /**
+     * Service for reading order chunks.
+     */
+    @Inject
+    private OrderService orderService;
+
+    /**
+     * Service for reading specialist chunks.
+     */
+    @Inject
+    private SpecialistService specialistService;
+
+    /**
+     * Mapper building order documents.
+     */
+    @Inject
+    private OrderSearchMapper orderSearchMapper;
+
+    /**
+     * Mapper building specialist documents.
+     */
+    @Inject
+    private SpecialistSearchMapper specialistSearchMapper;
+
+    /**
+     * Registry for publishing drift metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Whether the reconciliation runs.
+     */
+    @ConfigProperty(name = "profinder.search.reconcile.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    /**
+     * Number of documents compared per chunk.
+     */
+    @ConfigProperty(name = "profinder.search.reconcile.chunk-size", defaultValue = "500")
+    private int chunkSize;
+
+    /**
+     * Maximum number of chunks read per second.
+     */
+    @ConfigProperty(name = "profinder.search.reconcile.max-chunks-per-second", defaultValue = "5")
+    private int maxChunksPerSecond;
+
+    /**
+     * Number of drifted documents found by the last finished run per index, exported as a gauge.
+     */
+    private final Map<String, AtomicLong> lastDrift = new ConcurrentHashMap<>();
+
+    /**
+     * Reconciles the order and specialist indices with the database, unless another node is doing so.
+     */
+    @Scheduled(every = "${profinder.search.reconcile.interval}",
+            delayed = "${profinder.search.reconcile.interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void reconcile() {
+        if (!enabled || searchEngineRouter.isLocalOnly()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            if (!advisoryLock(connection, "pg_try_advisory_lock")) {
+                log.debug("Skipping search reconciliation, another node is running it");
+                meterRegistry.counter("search.reconcile.skipped").increment();
+                return;
+            }
+            try {
+                reconcile(SearchDocumentType.ORDER, OrderSearchService.INDEX_NAME,
+                        (afterId, size) -> QuarkusTransaction.requiringNew().call(() ->
+                                orderSearchMapper.toDtoList(orderService.getChunkAfterId(afterId, size))),
+                        OrderSearchDto::getId, d -> checksum(d.getContentHash(), d.getPartialHash()));
+                reconcile(SearchDocumentType.SPECIALIST, SpecialistSearchService.INDEX_NAME,
+                        (afterId, size) -> QuarkusTransaction.requiringNew().call(() ->
+                                specialistSearchMapper.toDtoList(specialistService.getChunkAfterId(afterId, size))),
+                        SpecialistSearchDto::getId, d -> checksum(d.getContentHash(), d.getPartialHash()));
+            } finally {
+                advisoryLock(connection, "pg_advisory_unlock");
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to take the search reconciliation lock: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Calls an advisory lock function on the reconciliation lock.
+     * <p>
+     * The lock belongs to the database session, so it is released with the connection if the node stops.
+     * </p>
+     *
+     * @param connection connection holding the lock
+     * @param function   {@code pg_try_advisory_lock} or {@code pg_advisory_unlock}
+     * @return the result of the function: whether the lock was taken or released
+     * @throws SQLException if the database cannot be reached
+     */
+    private static boolean advisoryLock(final Connection connection, final String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select " + function + "(?)")) {
+            statement.setLong(1, LOCK_KEY);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getBoolean(1);
+            }
+        }
+    }
+
+    /**
+     * Walks one index and the database in chunks and repairs the drifted documents.
+     *
+     * @param type        type of the documents
+     * @param index       alias of the index
+     * @param loader      source of the documents built from the database
+     * @param idExtractor returns the ID of a document
+     * @param checksum    returns the checksum of a document built from the database
+     * @param <D>         type of the search document
+     */
+    private <D> void reconcile(final SearchDocumentType type,
+                               final String index,
+                               final ChunkLoader<D> loader,
+                               final Function<D, Long> idExtractor,
+                               final Function<D, Long> checksum) {
+        long minChunkNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxChunksPerSecond);
+        long drift = 0;
+        long chunks = 0;
+        Long afterId = 0L;
+        boolean last = false;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            while (!last) {
+                long chunkStart = System.nanoTime();
+                List<D> documents = loader.load(afterId, chunkSize);
+                last = documents.size() < chunkSize;
+                // the last chunk is open-ended so that documents beyond the last row are found as well
+                Long upperId = last ? null : idExtractor.apply(documents.get(documents.size() - 1));
+                Map<Long, Long> expected = new LinkedHashMap<>();
+                documents.forEach(d -> expected.put(idExtractor.apply(d), checksum.apply(d)));
+
+                Query range = range(afterId, upperId);
+                if (matches(index, range, expected)) {
+                    meterRegistry.counter("search.reconcile.chunks", "index", index, "result", "match").increment();
+                } else {
+                    meterRegistry.counter("search.reconcile.chunks", "index", index, "result", "mismatch")
+                            .increment();
+                    drift += repair(type, index, expected, checksums(index, range));
+                }
+                chunks++;
+                afterId = upperId;
+                pace(chunkStart, minChunkNanos);
+            }
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to reconcile {} after {} chunks: {}", index, chunks, e.getMessage());
+            meterRegistry.counter("search.reconcile.failed", "index", index).increment();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            sample.stop(meterRegistry.timer("search.reconcile.run", "index", index));
+        }
+        lastDrift.computeIfAbsent(index, k -> meterRegistry.gauge("search.reconcile.drift",
+                        Tags.of("index", k), new AtomicLong()))
+                .set(drift);
+        log.info("Reconciled {}: chunks={}, drifted={}", index, chunks, drift);
+    }
+
+    /**
+     * Compares the document count and checksum sum of a chunk with the index.
+     *
+     * @param index    alias of the index
+     * @param range    query selecting the chunk
+     * @param expected checksums of the documents built from the database by ID
+     * @return true if the chunk matches
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private boolean matches(final String index,
+                            final Query range,
+                            final Map<Long, Long> expected) throws IOException {
+        SearchResponse<Void> response = elasticsearchClient.search(s -> s
+                .index(index)
+                .size(0)
+                .trackTotalHits(t -> t.enabled(true))
+                .query(range)
+                .aggregations(ContentHash.CONTENT_FIELD, a -> a.sum(sum -> sum.field(ContentHash.CONTENT_FIELD)))
+                .aggregations(ContentHash.PARTIAL_FIELD, a -> a.sum(sum -> sum.field(ContentHash.PARTIAL_FIELD))),
+                Void.class);
+        long count = response.hits().total() != null ? response.hits().total().value() : 0;
+        long sum = 0;
+        if (count > 0) {
+            sum = Math.round(response.aggregations().get(ContentHash.CONTENT_FIELD).sum().value())
+                    + Math.round(response.aggregations().get(ContentHash.PARTIAL_FIELD).sum().value());
+        }
+        long expectedSum = expected.values().stream().mapToLong(Long::longValue).sum();
+        return count == expected.size() && sum == expectedSum;
+    }
+
+    /**
+     * Reads the checksum of every indexed document of a chunk from the doc values of its hashes, without the
+     * document sources.
+     *
+     * @param index alias of the index
+     * @param range query selecting the chunk
+     * @return checksums of the indexed documents by ID, {@code null} for documents without hashes
+     * @throws IOException if Elasticsearch cannot be reached
+     */
+    private Map<Long, Long> checksums(final String index, final Query range) throws IOException {
+        Map<Long, Long> checksums = new HashMap<>();
+        List<FieldValue> after = null;
+        List<Hit<Void>> hits;
+        do {
+            List<FieldValue> position = after;
+            SearchResponse<Void> response = elasticsearchClient.search(s -> {
+                s.index(index)
+                        .size(chunkSize)
+                        .source(src -> src.fetch(false))
+                        .query(range)
+                        .docvalueFields(f -> f.field(ContentHash.CONTENT_FIELD))
+                        .docvalueFields(f -> f.field(ContentHash.PARTIAL_FIELD))
+                        .sort(so -> so.field(f -> f.field("id").order(SortOrder.Asc)));
+                if (position != null) {
+                    s.searchAfter(position);
+                }
+                return s;
+            }, Void.class);
+            hits = response.hits().hits();
+            for (Hit<Void> hit : hits) {
+                checksums.put(Long.valueOf(hit.id()), checksum(docValue(hit, ContentHash.CONTENT_FIELD),
+                        docValue(hit, ContentHash.PARTIAL_FIELD)));
+            }
+            if (!hits.isEmpty()) {
+                after = hits.get(hits.size() - 1).sort();
+            }
+        } while (hits.size() == chunkSize);
+        return checksums;
+    }
+
+    /**
+     * Enqueues an upsert for every drifted document of a chunk that has no pending change.
+     * <p>
+     * A document changed while the chunk was compared has an outbox event and is left to the relay.
+     * </p>
+     *
+     * @param type     type of the documents
+     * @param index    alias of the index
+     * @param expected checksums of the documents built from the database by ID
+     * @param actual   checksums of the indexed documents by ID
+     * @return number of repaired documents
+     */
+    private int repair(final SearchDocumentType type,
+                       final String index,
+                       final Map<Long, Long> expected,
+                       final Map<Long, Long> actual) {
+        Set<Long> drifted = new HashSet<>();
+        expected.forEach((id, checksum) -> {
+            if (!checksum.equals(actual.get(id))) {
+                drifted.add(id);
+            }
+        });
+        actual.keySet().stream().filter(id -> !expected.containsKey(id)).forEach(drifted::add);
+        if (drifted.isEmpty()) {
+            return 0;
+        }
+        QuarkusTransaction.requiringNew().run(() -> {
+            drifted.removeAll(searchOutboxRepository.findPendingIds(type, drifted));
+            drifted.forEach(id -> searchOutbox.enqueue(type, id, SearchOperation.UPSERT));
+        });
+        log.debug("Repairing {} drifted {} documents: {}", drifted.size(), type, drifted);
+        meterRegistry.counter("search.reconcile.repaired", "index", index).increment(drifted.size());
+        return drifted.size();
+    }
+
+    /**
+     * Combines the two hashes of a document into its checksum.
+     *
+     * @param contentHash hash of the fields written by full upserts, or {@code null}
+     * @param partialHash hash of the fields rewritten by partial updates, or {@code null}
+     * @return the checksum, or {@code null} if a hash is missing
+     */
+    private static Long checksum(final Integer contentHash, final Integer partialHash) {
+        return contentHash != null && partialHash != null ? (long) contentHash + partialHash : null;
+    }
+
+    /**
+     * Reads a single integer doc value of a hit.
+     *
+     * @param hit   the hit
+     * @param field name of the field
+     * @return the value, or {@code null} if the document has none
+     */
+    private static Integer docValue(final Hit<Void> hit, final String field) {
+        JsonData value = hit.fields().get(field);
+        return value != null ? value.toJson().asJsonArray().getJsonNumber(0).intValue() : null;
+    }
+
+    /**
+     * Builds the query selecting the documents of a chunk.
+     *
+     * @param afterId ID of the last document of the previous chunk
+     * @param upperId ID of the last document of the chunk, or {@code null} for the last chunk
+     * @return the query
+     */
+    private static Query range(final Long afterId, final Long upperId) {
+        return Query.of(q -> q.range(r -> r.number(n -> n
+                .field("id")
+                .gt(afterId.doubleValue())
+                .lte(upperId != null ? upperId.doubleValue() : null))));
+    }
+
+    /**
+     * Waits so that no more than the configured number of chunks is read per second.
+     *
+     * @param chunkStart    time the chunk started, from {@link System#nanoTime()}
+     * @param minChunkNanos minimum duration of a chunk
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void pace(final long chunkStart, final long minChunkNanos) throws InterruptedException {
+        long remaining = minChunkNanos - (System.nanoTime() - chunkStart);
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+}
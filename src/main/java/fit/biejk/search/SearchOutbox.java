@@ -0,0 +1,45 @@
+package fit.biejk.search;
+
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.entity.SearchOutboxEvent;
+import fit.biejk.repository.SearchOutboxRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records changes of searchable entities in the transactional outbox.
+ * <p>
+ * Must be called inside the transaction that changes the entity, so the event is committed
+ * or rolled back together with it. The events are applied to Elasticsearch by {@link SearchOutboxRelay}.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchOutbox {
+
+    /**
+     * Repository for persisting outbox events.
+     */
+    @Inject
+    private SearchOutboxRepository searchOutboxRepository;
+
+    /**
+     * Records a change of an entity that must be reflected in the search index.
+     *
+     * @param type      type of the changed entity
+     * @param id        ID of the changed entity
+     * @param operation change to apply to the index
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void enqueue(final SearchDocumentType type, final Long id, final SearchOperation operation) {
+        log.debug("Enqueue search change: type={}, id={}, operation={}", type, id, operation);
+        SearchOutboxEvent event = new SearchOutboxEvent();
+        event.setDocumentType(type);
+        event.setDocumentId(id);
+        event.setOperation(operation);
+        searchOutboxRepository.persist(event);
+    }
+}
@@ -0,0 +1,471 @@
+package fit.biejk.search;
+
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.entity.SearchOutboxEvent;
+import fit.biejk.repository.SearchOutboxRepository;
+import fit.biejk.service.OrderService;
+import fit.biejk.service.SavedSearchService;
+import fit.biejk.service.SpecialistService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background relay applying {@link SearchOutboxEvent}s to Elasticsearch.
+ * <p>
+ * Due events are locked in ID order (rows locked by another replica are skipped), collapsed per document,
+ * rebuilt from the current database state and handed to the {@link CoalescingSearchIndexer}. Dispatched
+ * events are leased, so they are not picked up again while their write is running. Once the indexer reports
+ * the result, applied events are deleted and events whose documents failed are postponed with exponential
+ * backoff. Because every document is built from the current state of the entity, replaying an event
+ * is idempotent; an event whose acknowledgement is lost (e.g. on restart) is simply relayed again after
+ * its lease expires.
+ * </p>
+ * <p>
+ * A document is relayed by one node at a time: events of a document whose other events are leased or
+ * locked by another relay are left for a later run, so two nodes never write snapshots of the same
+ * document concurrently and an older snapshot cannot overwrite a newer one.
+ * </p>
+ * <p>
+ * Rating and status events of a document are sent as {@link PartialUpdate}s, unless the batch also holds
+ * a full upsert or deletion of the document, which then wins. A partial update that finds no document
+ * in the index is upgraded to a full upsert and relayed again right away.
+ * </p>
+ * <p>
+ * Once a created order was written, its creation event is turned into a {@link SearchOperation#PERCOLATE}
+ * event instead of being deleted, so the {@link OrderAlertPercolator} alerts the specialists with matching
+ * saved searches even if the node restarts in between.
+ * </p>
+ * <p>
+ * Likewise, a removal applied while the index of the document is being rebuilt is kept as a
+ * {@link SearchOperation#TOMBSTONE}, so the {@link SearchIndexManager} can replay it against the rebuilt
+ * index after the bulk load, which may have recreated the document from an older snapshot.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchOutboxRelay {
+
+    /**
+     * Upper bound of the retry backoff exponent, preventing overflow.
+     */
+    private static final int MAX_BACKOFF_EXPONENT = 16;
+
+    /**
+     * Repository holding the outbox events.
+     */
+    @Inject
+    private SearchOutboxRepository searchOutboxRepository;
+
+    /**
+     * Indexer writing the documents to Elasticsearch.
+     */
+    @Inject
+    private CoalescingSearchIndexer indexer;
+
+    /**
+     * Service for loading orders from the database.
+     */
+    @Inject
+    private OrderService orderService;
+
+    /**
+     * Mapper converting orders to search documents.
+     */
+    @Inject
+    private OrderSearchMapper orderSearchMapper;
+
+    /**
+     * Service for loading specialists from the database.
+     */
+    @Inject
+    private SpecialistService specialistService;
+
+    /**
+     * Mapper converting specialists to search documents.
+     */
+    @Inject
+    private SpecialistSearchMapper specialistSearchMapper;
+
+    /**
+     * Service for loading saved searches from the database.
+     */
+    @Inject
+    private SavedSearchService savedSearchService;
+
+    /**
+     * Mapper converting saved searches to percolator documents.
+     */
+    @Inject
+    private SavedSearchQueryMapper savedSearchQueryMapper;
+
+    /**
+     * Router telling whether Elasticsearch, and with it the percolator, is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Manager telling whether the index of a removed document is being rebuilt.
+     */
+    @Inject
+    private SearchIndexManager searchIndexManager;
+
+    /**
+     * Registry for publishing relay metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Maximum number of events processed in one transaction.
+     */
+    @ConfigProperty(name = "profinder.search.outbox.batch-size", defaultValue = "200")
+    private int batchSize;
+
+    /**
+     * Time a dispatched event is hidden from other relay runs while its write is running.
+     */
+    @ConfigProperty(name = "profinder.search.outbox.lease", defaultValue = "30s")
+    private Duration lease;
+
+    /**
+     * Delay before the first retry of a failed event; doubled after every further failure.
+     */
+    @ConfigProperty(name = "profinder.search.outbox.retry-backoff", defaultValue = "1s")
+    private Duration retryBackoff;
+
+    /**
+     * Maximum delay between two retries of a failed event.
+     */
+    @ConfigProperty(name = "profinder.search.outbox.max-retry-backoff", defaultValue = "5m")
+    private Duration maxRetryBackoff;
+
+    /**
+     * IDs of events whose documents were written, waiting to be deleted.
+     */
+    private final Queue<Long> applied = new ConcurrentLinkedQueue<>();
+
+    /**
+     * IDs of events whose documents were removed from the index, waiting to be deleted or kept as tombstones.
+     */
+    private final Queue<Long> removals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * IDs of events whose documents failed, waiting to be postponed.
+     */
+    private final Queue<Long> rejected = new ConcurrentLinkedQueue<>();
+
+    /**
+     * IDs of partial update events whose documents were missing, waiting to be upgraded to full upserts.
+     */
+    private final Queue<Long> upgraded = new ConcurrentLinkedQueue<>();
+
+    /**
+     * IDs of creation events of written orders, waiting to be turned into pending percolations.
+     */
+    private final Queue<Long> percolations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of events waiting in the outbox, exported as a gauge.
+     */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * Age of the oldest waiting event in milliseconds, exported as a gauge.
+     */
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    /**
+     * Registers the lag gauges.
+     */
+    @PostConstruct
+    void init() {
+        meterRegistry.gauge("search.outbox.pending", pending);
+        meterRegistry.gauge("search.outbox.lag.millis", lagMillis);
+    }
+
+    /**
+     * Settles the results of previous runs, dispatches all due events and refreshes the lag metrics.
+     */
+    @Scheduled(every = "${profinder.search.outbox.poll-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void drain() {
+        QuarkusTransaction.requiringNew().run(this::settle);
+        int processed;
+        do {
+            processed = QuarkusTransaction.requiringNew().call(this::dispatchBatch);
+        } while (processed == batchSize);
+        QuarkusTransaction.requiringNew().run(this::updateLag);
+    }
+
+    /**
+     * Deletes the applied events, keeps removals from indices being rebuilt as tombstones, postpones the
+     * rejected events, upgrades the missing partial updates and queues the written orders for percolation.
+     */
+    void settle() {
+        List<Long> appliedIds = takeAll(applied);
+        if (!appliedIds.isEmpty()) {
+            searchOutboxRepository.delete("id in ?1", appliedIds);
+            meterRegistry.counter("search.outbox.relayed").increment(appliedIds.size());
+        }
+        List<Long> removalIds = takeAll(removals);
+        if (!removalIds.isEmpty()) {
+            int tombstones = 0;
+            for (SearchOutboxEvent event : searchOutboxRepository.list("id in ?1", removalIds)) {
+                String index = new SearchDocumentKey(event.getDocumentType(), event.getDocumentId()).index();
+                if (searchIndexManager.isRebuilding(index)) {
+                    event.setOperation(SearchOperation.TOMBSTONE);
+                    event.setLeased(false);
+                    tombstones++;
+                } else {
+                    searchOutboxRepository.delete(event);
+                }
+            }
+            meterRegistry.counter("search.outbox.relayed").increment(removalIds.size());
+            meterRegistry.counter("search.outbox.tombstones").increment(tombstones);
+        }
+        List<Long> rejectedIds = takeAll(rejected);
+        if (!rejectedIds.isEmpty()) {
+            searchOutboxRepository.list("id in ?1", rejectedIds).forEach(this::postpone);
+            meterRegistry.counter("search.outbox.retried").increment(rejectedIds.size());
+        }
+        List<Long> upgradedIds = takeAll(upgraded);
+        if (!upgradedIds.isEmpty()) {
+            searchOutboxRepository.list("id in ?1", upgradedIds).forEach(event -> {
+                event.setOperation(SearchOperation.UPSERT);
+                event.setNextAttemptAt(LocalDateTime.now());
+                event.setLeased(false);
+            });
+            meterRegistry.counter("search.outbox.upgraded").increment(upgradedIds.size());
+        }
+        List<Long> percolationIds = takeAll(percolations);
+        if (!percolationIds.isEmpty()) {
+            searchOutboxRepository.list("id in ?1", percolationIds).forEach(event -> {
+                event.setOperation(SearchOperation.PERCOLATE);
+                event.setAttempts(0);
+                event.setNextAttemptAt(LocalDateTime.now());
+                event.setLeased(false);
+            });
+            meterRegistry.counter("search.outbox.relayed").increment(percolationIds.size());
+        }
+    }
+
+    /**
+     * Leases one batch of due events and hands their documents to the indexer.
+     *
+     * @return number of events taken from the outbox; less than the batch size if events were left for later
+     */
+    int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SearchOutboxEvent> events = searchOutboxRepository.lockReady(now, batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Set<SearchDocumentKey> busy = busyDocuments(events, now);
+
+        Map<SearchDocumentKey, List<Long>> byDocument = new LinkedHashMap<>();
+        Map<SearchDocumentKey, SearchOperation> operations = new HashMap<>();
+        Map<SearchDocumentKey, Long> created = new HashMap<>();
+        int dispatched = 0;
+        for (SearchOutboxEvent event : events) {
+            SearchDocumentKey key = new SearchDocumentKey(event.getDocumentType(), event.getDocumentId());
+            if (busy.contains(key)) {
+                continue;
+            }
+            dispatched++;
+            byDocument.computeIfAbsent(key, k -> new ArrayList<>()).add(event.getId());
+            if (event.getOperation() == SearchOperation.CREATE) {
+                created.putIfAbsent(key, event.getId());
+            }
+            operations.merge(key, event.getOperation(), (earlier, later) ->
+                    later.isFull() || !earlier.isFull() ? later : earlier);
+            event.setNextAttemptAt(now.plus(lease));
+            event.setLeased(true);
+        }
+        if (dispatched < events.size()) {
+            meterRegistry.counter("search.outbox.deferred").increment(events.size() - dispatched);
+        }
+
+        Map<SearchDocumentKey, Object> documents = loadDocuments(operations);
+        boolean percolating = !searchEngineRouter.isLocalOnly();
+        for (Map.Entry<SearchDocumentKey, List<Long>> entry : byDocument.entrySet()) {
+            List<Long> eventIds = entry.getValue();
+            Object document = documents.get(entry.getKey());
+            Long creation = percolating && document instanceof OrderSearchDto ? created.get(entry.getKey()) : null;
+            indexer.submit(entry.getKey(), document).whenComplete((ignored, error) -> {
+                if (error == null) {
+                    for (Long id : eventIds) {
+                        if (id.equals(creation)) {
+                            percolations.add(id);
+                        } else if (document == null) {
+                            removals.add(id);
+                        } else {
+                            applied.add(id);
+                        }
+                    }
+                } else if (error instanceof DocumentMissingException) {
+                    upgraded.addAll(eventIds);
+                } else {
+                    log.warn("Failed to apply search change for {}: {}", entry.getKey(), error.getMessage());
+                    rejected.addAll(eventIds);
+                }
+            });
+        }
+        sample.stop(meterRegistry.timer("search.outbox.batch"));
+        log.debug("Dispatched {} search outbox events for {} documents", dispatched, byDocument.size());
+        return dispatched;
+    }
+
+    /**
+     * Finds the documents of a batch that another relay is writing or about to write.
+     * <p>
+     * Those are documents with another event that is leased and not yet expired, or that is locked by a
+     * concurrent dispatch which has not committed its lease yet.
+     * </p>
+     *
+     * @param events the locked events of the batch
+     * @param now    current time
+     * @return keys of the documents to leave for a later run
+     */
+    private Set<SearchDocumentKey> busyDocuments(final List<SearchOutboxEvent> events, final LocalDateTime now) {
+        Map<SearchDocumentType, Set<Long>> documentIds = new EnumMap<>(SearchDocumentType.class);
+        List<Long> eventIds = new ArrayList<>();
+        for (SearchOutboxEvent event : events) {
+            documentIds.computeIfAbsent(event.getDocumentType(), t -> new HashSet<>()).add(event.getDocumentId());
+            eventIds.add(event.getId());
+        }
+        Set<SearchDocumentKey> busy = new HashSet<>();
+        for (Map.Entry<SearchDocumentType, Set<Long>> entry : documentIds.entrySet()) {
+            List<SearchOutboxEvent> others = searchOutboxRepository.findOthers(entry.getKey(), entry.getValue(),
+                    eventIds);
+            if (others.isEmpty()) {
+                continue;
+            }
+            Set<Long> lockable = new HashSet<>();
+            searchOutboxRepository.lockOthers(entry.getKey(), entry.getValue(), eventIds)
+                    .forEach(event -> lockable.add(event.getId()));
+            for (SearchOutboxEvent other : others) {
+                boolean inFlight = other.isLeased() && other.getNextAttemptAt().isAfter(now);
+                if (inFlight || !lockable.contains(other.getId())) {
+                    busy.add(new SearchDocumentKey(other.getDocumentType(), other.getDocumentId()));
+                }
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * Loads the current search documents, or partial updates of them, for all changed entities of the batch.
+     * <p>
+     * Entities that were deleted in the meantime are missing from the result and get removed from the index.
+     * </p>
+     *
+     * @param operations operation to apply to every document of the batch
+     * @return search documents or partial updates by document key
+     */
+    private Map<SearchDocumentKey, Object> loadDocuments(final Map<SearchDocumentKey, SearchOperation> operations) {
+        Map<SearchDocumentType, List<Long>> upsertIds = new EnumMap<>(SearchDocumentType.class);
+        List<Long> statusIds = new ArrayList<>();
+        List<Long> ratingIds = new ArrayList<>();
+        for (Map.Entry<SearchDocumentKey, SearchOperation> entry : operations.entrySet()) {
+            Long id = entry.getKey().id();
+            switch (entry.getValue()) {
+                case UPSERT, CREATE -> upsertIds.computeIfAbsent(entry.getKey().type(), t -> new ArrayList<>()).add(id);
+                case UPDATE_STATUS -> statusIds.add(id);
+                case UPDATE_RATING -> ratingIds.add(id);
+                default -> {
+                }
+            }
+        }
+        Map<SearchDocumentKey, Object> documents = new HashMap<>();
+        List<Long> orderIds = upsertIds.getOrDefault(SearchDocumentType.ORDER, List.of());
+        List<Long> specialistIds = upsertIds.getOrDefault(SearchDocumentType.SPECIALIST, List.of());
+        List<Long> savedSearchIds = upsertIds.getOrDefault(SearchDocumentType.SAVED_SEARCH, List.of());
+        if (!orderIds.isEmpty()) {
+            orderService.getByIds(orderIds).forEach(order -> documents.put(
+                    new SearchDocumentKey(SearchDocumentType.ORDER, order.getId()), orderSearchMapper.toDto(order)));
+        }
+        if (!specialistIds.isEmpty()) {
+            specialistService.getByIds(specialistIds).forEach(s -> documents.put(
+                    new SearchDocumentKey(SearchDocumentType.SPECIALIST, s.getId()), specialistSearchMapper.toDto(s)));
+        }
+        if (!savedSearchIds.isEmpty()) {
+            savedSearchService.getByIds(savedSearchIds).forEach(s -> documents.put(
+                    new SearchDocumentKey(SearchDocumentType.SAVED_SEARCH, s.getId()),
+                    savedSearchQueryMapper.toDto(s)));
+        }
+        if (!statusIds.isEmpty()) {
+            orderService.getPlainByIds(statusIds).forEach(order -> documents.put(
+                    new SearchDocumentKey(SearchDocumentType.ORDER, order.getId()),
+                    orderSearchMapper.toStatusUpdate(order)));
+        }
+        if (!ratingIds.isEmpty()) {
+            specialistService.getPlainByIds(ratingIds).forEach(s -> documents.put(
+                    new SearchDocumentKey(SearchDocumentType.SPECIALIST, s.getId()),
+                    specialistSearchMapper.toRatingUpdate(s)));
+        }
+        return documents;
+    }
+
+    /**
+     * Postpones a failed event using exponential backoff.
+     *
+     * @param event the event to postpone
+     */
+    void postpone(final SearchOutboxEvent event) {
+        int attempts = event.getAttempts() + 1;
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, MAX_BACKOFF_EXPONENT));
+        if (delay.compareTo(maxRetryBackoff) > 0) {
+            delay = maxRetryBackoff;
+        }
+        event.setAttempts(attempts);
+        event.setNextAttemptAt(LocalDateTime.now().plus(delay));
+        event.setLeased(false);
+    }
+
+    /**
+     * Removes and returns all IDs currently in a result queue.
+     *
+     * @param queue the queue to empty
+     * @return the removed IDs
+     */
+    private static List<Long> takeAll(final Queue<Long> queue) {
+        List<Long> ids = new ArrayList<>();
+        for (Long id = queue.poll(); id != null; id = queue.poll()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * Refreshes the pending-count and lag gauges.
+     */
+    void updateLag() {
+        pending.set(searchOutboxRepository.countChanges());
+        SearchOutboxEvent oldest = searchOutboxRepository.findOldest();
+        lagMillis.set(oldest == null ? 0 : Duration.between(oldest.getCreatedAt(), LocalDateTime.now()).toMillis());
+    }
+}
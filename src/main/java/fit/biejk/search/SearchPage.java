@@ -0,0 +1,54 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of search results.
+ *
+ * @param <T> type of the results
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchPage<T> {
+
+    /**
+     * Results of the page, in relevance order.
+     */
+    private List<T> items;
+
+    /**
+     * Token of the next page, or {@code null} if this is the last page.
+     */
+    private String nextCursor;
+
+    /**
+     * Facet buckets by facet name, or {@code null} if no facets were requested.
+     */
+    private Map<String, List<FacetBucketDto>> facets;
+
+    /**
+     * Creates a page without facets.
+     *
+     * @param items      results of the page
+     * @param nextCursor token of the next page, or {@code null} if this is the last page
+     */
+    public SearchPage(final List<T> items, final String nextCursor) {
+        this(items, nextCursor, null);
+    }
+
+    /**
+     * Creates an empty last page.
+     *
+     * @param <T> type of the results
+     * @return the empty page
+     */
+    public static <T> SearchPage<T> empty() {
+        return new SearchPage<>(List.of(), null);
+    }
+}
@@ -1,28 +1,67 @@
 package fit.biejk.search;
 
-import fit.biejk.entity.Order;
+import fit.biejk.dto.OrderDto;
 import fit.biejk.entity.Specialist;
 import fit.biejk.mapper.OrderMapper;
 import fit.biejk.mapper.SpecialistMapper;
+import io.smallrye.mutiny.Uni;
 import jakarta.annotation.security.PermitAll;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * REST resource for handling search operations for specialists and orders.
  * <p>
  * Provides endpoints to search specialists based on a keyword and location,
- * and to search orders based on selected services and location.
+ * to search orders based on selected services and location, to suggest completions while typing, and to fetch
+ * the landing page in one round trip.
+ * Every response carries a {@value SearchTelemetry#SERVER_TIMING_HEADER} header with the time spent in each
+ * phase of the search.
+ * </p>
+ * <p>
+ * The endpoints are non-blocking: they run on the I/O thread and wait for Elasticsearch and Redis without
+ * holding a thread. Only loading the hits from the database, which is skipped when the results are rendered
+ * from the search documents, runs on a worker thread.
  * </p>
  */
+@Slf4j
 @Path("/v1/search")
 public class SearchResource {
 
+    /**
+     * Response header carrying the token of the next page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Endpoint tag of specialist searches.
+     */
+    private static final String SPECIALIST_ENDPOINT = "specialist";
+
+    /**
+     * Endpoint tag of order searches.
+     */
+    private static final String ORDER_ENDPOINT = "order";
+
+    /**
+     * Endpoint tag of suggestions.
+     */
+    private static final String SUGGEST_ENDPOINT = "suggest";
+
+    /**
+     * Endpoint tag of the landing page.
+     */
+    private static final String HOME_ENDPOINT = "home";
+
     /**
      * Service responsible for performing specialist-related Elasticsearch queries.
      */
@@ -42,13 +81,13 @@ public class SearchResource {
     private SpecialistMapper specialistMapper;
 
     /**
-     * Mapper for converting between {@link OrderSearchDto} and {@link Order}.
+     * Mapper for converting between {@link OrderSearchDto} and {@link fit.biejk.entity.Order}.
      */
     @Inject
     private OrderSearchMapper orderSearchMapper;
 
     /**
-     * Mapper for converting between {@link Order} and its DTO representation.
+     * Mapper for converting between {@link fit.biejk.entity.Order} and its DTO representation.
      */
     @Inject
     private OrderMapper orderMapper;
@@ -59,43 +98,292 @@ public class SearchResource {
     @Inject
     private OrderSearchService orderSearchService;
 
+    /**
+     * Service fetching the sections of the landing page.
+     */
+    @Inject
+    private HomeSearchService homeSearchService;
+
+    /**
+     * Collector of the latency breakdown of search requests.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Executor loading search hits from the database off the I/O thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Whether results are rendered from the search documents by default instead of being loaded from the database.
+     */
+    @ConfigProperty(name = "profinder.search.source-only", defaultValue = "false")
+    private boolean sourceOnlyByDefault;
+
+    /**
+     * Number of results per page when the client does not request a page size.
+     */
+    @ConfigProperty(name = "profinder.search.page-size.default", defaultValue = "20")
+    private int defaultPageSize;
+
+    /**
+     * Maximum number of results per page a client may request.
+     */
+    @ConfigProperty(name = "profinder.search.page-size.max", defaultValue = "100")
+    private int maxPageSize;
+
+    /**
+     * Number of suggestions of each kind when the client does not request a size.
+     */
+    @ConfigProperty(name = "profinder.search.suggest.default-size", defaultValue = "5")
+    private int defaultSuggestSize;
+
+    /**
+     * Maximum number of suggestions of each kind a client may request.
+     */
+    @ConfigProperty(name = "profinder.search.suggest.max-size", defaultValue = "10")
+    private int maxSuggestSize;
+
     /**
      * Searches for specialists based on a text query and a given location.
      * <p>
      * The query can match service names or specialist descriptions. The location is used as a filter.
+     * Results are paginated; the token of the next page is returned in the {@value #NEXT_CURSOR_HEADER}
+     * header and must be sent back together with the same query to continue.
      * </p>
      *
-     * @param query    the search keyword (e.g., service name, skill)
-     * @param location the location to filter specialists by
+     * @param query      the search keyword (e.g., service name, skill)
+     * @param location   the location to filter specialists by
+     * @param radiusKm   radius around the location in kilometres to include nearby locations, ranked by distance
+     * @param sourceOnly whether to render the results from the search documents without a database round trip
+     * @param cursor     token of the page to fetch, or {@code null} for the first page
+     * @param size       number of results per page, capped by the configured maximum
      * @return HTTP response containing the list of matching specialist DTOs
      */
     @GET
     @Path("/specialist")
     @PermitAll
-    public Response searchSpecialists(@QueryParam("query") final String query,
-                                      @QueryParam("location") final String location) {
-        List<SpecialistSearchDto> results = specialistSearchService.search(query, location);
-        List<Specialist> specialists = specialistSearchMapper.toEntityList(results);
-        return Response.ok(specialistMapper.toDtoList(specialists)).build();
+    public Uni<Response> searchSpecialists(@QueryParam("query") final String query,
+                                           @QueryParam("location") final String location,
+                                           @QueryParam("radiusKm") final Double radiusKm,
+                                           @QueryParam("sourceOnly") final Boolean sourceOnly,
+                                           @QueryParam("cursor") final String cursor,
+                                           @QueryParam("size") final Integer size) {
+        long start = System.nanoTime();
+        String shape = shape(query != null && !query.isBlank(), location, radiusKm, cursor);
+        return specialistSearchService.searchAsync(query, location, radiusKm, cursor, pageSize(size))
+                .onItem().transformToUni(page -> {
+                    List<SpecialistSearchDto> results = page.getItems();
+                    if (isSourceOnly(sourceOnly) && specialistSearchMapper.isSourceComplete(results)) {
+                        return Uni.createFrom().item(finish(Response.ok(specialistSearchMapper
+                                .toResponseDtoList(results)), page, SPECIALIST_ENDPOINT, shape, start));
+                    }
+                    return hydrate(() -> {
+                        List<Specialist> specialists = specialistSearchMapper.toEntityList(results);
+                        return specialistMapper.toDtoList(specialists);
+                    }).map(dtos -> finish(Response.ok(dtos), page, SPECIALIST_ENDPOINT, shape, start));
+                })
+                .onFailure(IllegalArgumentException.class).recoverWithItem(e -> {
+                    log.warn("Invalid specialist search request: {}", e.getMessage());
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+                });
     }
 
     /**
      * Searches for orders based on selected services and location.
      * <p>
-     * Returns only orders that are in status "CREATED" or "CLIENT_PENDING".
+     * Returns only orders that are in status "CREATED" or "CLIENT_PENDING". Results are paginated
+     * in the same way as {@link #searchSpecialists}.
      * </p>
      *
-     * @param services list of service names to search for
-     * @param location the location to filter orders by
-     * @return HTTP response containing the list of matching order DTOs
+     * @param services   list of service names to search for
+     * @param location   the location to filter orders by
+     * @param radiusKm   radius around the location in kilometres to include nearby locations, ranked by distance
+     * @param sourceOnly whether to render the results from the search documents without a database round trip
+     * @param cursor     token of the page to fetch, or {@code null} for the first page
+     * @param size       number of results per page, capped by the configured maximum
+     * @param facets     whether to wrap the results together with counts by service, location, status and price
+     * @return HTTP response containing the list of matching order DTOs, or an {@link OrderSearchResultDto}
+     *         if facets were requested
      */
     @GET
     @Path("/order")
     @PermitAll
-    public Response searchOrders(final List<String> services,
-                                 @QueryParam("location") final String location) {
-        List<OrderSearchDto> results = orderSearchService.search(services, location);
-        List<Order> orders = orderSearchMapper.toEntityList(results);
-        return Response.ok(orderMapper.toDtoList(orders)).build();
+    public Uni<Response> searchOrders(final List<String> services,
+                                      @QueryParam("location") final String location,
+                                      @QueryParam("radiusKm") final Double radiusKm,
+                                      @QueryParam("sourceOnly") final Boolean sourceOnly,
+                                      @QueryParam("cursor") final String cursor,
+                                      @QueryParam("size") final Integer size,
+                                      @QueryParam("facets") final Boolean facets) {
+        long start = System.nanoTime();
+        boolean withFacets = Boolean.TRUE.equals(facets);
+        String shape = shape(services != null && !services.isEmpty(), location, radiusKm, cursor)
+                + (withFacets ? "-facets" : "");
+        return orderSearchService.searchAsync(services, location, radiusKm, cursor, pageSize(size), withFacets)
+                .onItem().transformToUni(page -> {
+                    List<OrderSearchDto> results = page.getItems();
+                    Uni<List<OrderDto>> orders;
+                    if (isSourceOnly(sourceOnly) && orderSearchMapper.isSourceComplete(results)) {
+                        orders = Uni.createFrom().item(orderSearchMapper.toResponseDtoList(results));
+                    } else {
+                        orders = hydrate(() -> orderMapper.toDtoList(orderSearchMapper.toEntityList(results)));
+                    }
+                    return orders.map(dtos -> withFacets
+                            ? finish(Response.ok(new OrderSearchResultDto(dtos, page.getFacets())), page,
+                                    ORDER_ENDPOINT, shape, start)
+                            : finish(Response.ok(dtos), page, ORDER_ENDPOINT, shape, start));
+                })
+                .onFailure(IllegalArgumentException.class).recoverWithItem(e -> {
+                    log.warn("Invalid order search request: {}", e.getMessage());
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+                });
+    }
+
+    /**
+     * Suggests specialists and services while the user types a search query.
+     *
+     * @param prefix   text typed so far
+     * @param location the location to filter suggestions by
+     * @param size     maximum number of suggestions of each kind, capped by the configured maximum
+     * @return HTTP response containing the suggestions
+     */
+    @GET
+    @Path("/suggest")
+    @PermitAll
+    public Uni<Response> suggest(@QueryParam("prefix") final String prefix,
+                                 @QueryParam("location") final String location,
+                                 @QueryParam("size") final Integer size) {
+        long start = System.nanoTime();
+        int limit = size == null ? defaultSuggestSize : Math.max(1, Math.min(size, maxSuggestSize));
+        String shape = location == null || location.isBlank() ? "any" : "location";
+        return specialistSearchService.suggestAsync(prefix, location, limit)
+                .map(suggestions -> searchTelemetry.complete(Response.ok(suggestions), SUGGEST_ENDPOINT, shape,
+                        start, suggestions.getSpecialists().size() + suggestions.getServices().size()));
+    }
+
+    /**
+     * Fetches the marketplace landing page: top specialists and newest open orders in the given area,
+     * and facet counts of all open orders.
+     * <p>
+     * All sections are searched in one Elasticsearch round trip. A section that fails or exceeds its time
+     * budget is left out and listed in {@link HomePageDto#getOmitted()}, so the page is never delayed
+     * by its slowest section.
+     * </p>
+     *
+     * @param location   the area of the user, or {@code null} for the whole marketplace
+     * @param radiusKm   radius around the location in kilometres to include nearby locations
+     * @param sourceOnly whether to render the results from the search documents without a database round trip
+     * @return HTTP response containing the {@link HomePageDto}
+     */
+    @GET
+    @Path("/home")
+    @PermitAll
+    public Uni<Response> home(@QueryParam("location") final String location,
+                              @QueryParam("radiusKm") final Double radiusKm,
+                              @QueryParam("sourceOnly") final Boolean sourceOnly) {
+        long start = System.nanoTime();
+        String shape = shape(false, location, radiusKm, null);
+        return homeSearchService.searchAsync(location, radiusKm)
+                .onItem().transformToUni(sections -> {
+                    List<SpecialistSearchDto> specialists = sections.specialists();
+                    List<OrderSearchDto> orders = sections.orders();
+                    boolean fromSource = isSourceOnly(sourceOnly)
+                            && (specialists == null || specialistSearchMapper.isSourceComplete(specialists))
+                            && (orders == null || orderSearchMapper.isSourceComplete(orders));
+                    if (fromSource) {
+                        return Uni.createFrom().item(new HomePageDto(
+                                specialists != null ? specialistSearchMapper.toResponseDtoList(specialists) : null,
+                                orders != null ? orderSearchMapper.toResponseDtoList(orders) : null,
+                                sections.facets(), sections.omitted()));
+                    }
+                    return hydrate(() -> new HomePageDto(
+                            specialists != null
+                                    ? specialistMapper.toDtoList(specialistSearchMapper.toEntityList(specialists))
+                                    : null,
+                            orders != null ? orderMapper.toDtoList(orderSearchMapper.toEntityList(orders)) : null,
+                            sections.facets(), sections.omitted()));
+                })
+                .map(page -> searchTelemetry.complete(Response.ok(page), HOME_ENDPOINT, shape, start,
+                        (page.getTopSpecialists() != null ? page.getTopSpecialists().size() : 0)
+                                + (page.getOpenOrders() != null ? page.getOpenOrders().size() : 0)));
+    }
+
+    /**
+     * Resolves the page size of a request.
+     *
+     * @param size size requested by the client, or {@code null} to use the default
+     * @return page size between 1 and the configured maximum
+     */
+    private int pageSize(final Integer size) {
+        if (size == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    /**
+     * Loads and renders search hits from the database on a worker thread.
+     *
+     * @param loader loads the entities behind the hits and converts them to response DTOs
+     * @param <R>    type of the rendered results
+     * @return the rendered results
+     */
+    private <R> Uni<R> hydrate(final Supplier<R> loader) {
+        return Uni.createFrom().completionStage(() -> executor.supplyAsync(loader));
+    }
+
+    /**
+     * Adds the token of the next page and the latency breakdown to a response.
+     *
+     * @param response the response being built
+     * @param page     the returned page
+     * @param endpoint name of the endpoint for the metrics
+     * @param shape    shape of the query for the metrics
+     * @param start    {@link System#nanoTime()} when the request started
+     * @return the built response
+     */
+    private Response finish(final Response.ResponseBuilder response, final SearchPage<?> page,
+                            final String endpoint, final String shape, final long start) {
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return searchTelemetry.complete(response, endpoint, shape, start, page.getItems().size());
+    }
+
+    /**
+     * Describes a query by a few coarse properties, keeping the number of metric tags small.
+     *
+     * @param hasTerms whether the query has search terms
+     * @param location requested location
+     * @param radiusKm requested radius
+     * @param cursor   requested cursor
+     * @return shape such as {@code terms-radius-first}
+     */
+    private static String shape(final boolean hasTerms, final String location, final Double radiusKm,
+                                final String cursor) {
+        String area;
+        if (radiusKm != null && radiusKm > 0) {
+            area = "radius";
+        } else {
+            area = location == null || location.isBlank() ? "anywhere" : "location";
+        }
+        return (hasTerms ? "terms" : "noterms") + "-" + area + "-" + (cursor == null ? "first" : "next");
+    }
+
+    /**
+     * Resolves whether a request is served from the search documents only.
+     * <p>
+     * Even then, the results are loaded from the database if some documents were written with an older
+     * mapping version (e.g. while the index is being rebuilt) and lack display fields.
+     * </p>
+     *
+     * @param sourceOnly value requested by the client, or {@code null} to use the configured default
+     * @return {@code true} if the results should be rendered from the search documents
+     */
+    private boolean isSourceOnly(final Boolean sourceOnly) {
+        return sourceOnly != null ? sourceOnly : sourceOnlyByDefault;
     }
 }
@@ -0,0 +1,378 @@
+package fit.biejk.search;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.redis.client.RedisClient;
+import io.quarkus.redis.client.reactive.ReactiveRedisClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ThreadContext;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache of search result pages: a local Caffeine cache in front of Redis.
+ * <p>
+ * Entries are keyed by the index, its current generation and the normalized query. Whenever a document
+ * of an index changes, the generation of the index is increased in Redis, so all cached pages of the index
+ * become unreachable at once and simply expire. Other nodes pick up a new generation within
+ * {@code profinder.search.cache.generation-refresh}. If Redis is unavailable, searches bypass the cache.
+ * </p>
+ * <p>
+ * Lookups talk to Redis through the reactive client and never block the caller.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SearchResultCache {
+
+    /**
+     * Prefix of all Redis keys used by the cache.
+     */
+    private static final String KEY_PREFIX = "search:";
+
+    /**
+     * Mapper serializing the pages stored in Redis.
+     */
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Redis client increasing the generation counters.
+     */
+    @Inject
+    private RedisClient redisClient;
+
+    /**
+     * Reactive Redis client holding the shared cache and read by the lookups.
+     */
+    @Inject
+    private ReactiveRedisClient reactiveRedisClient;
+
+    /**
+     * Context propagating the request context into the continuations of the lookups.
+     */
+    @Inject
+    private ThreadContext threadContext;
+
+    /**
+     * Registry for publishing cache metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Whether the cache is used at all.
+     */
+    @ConfigProperty(name = "profinder.search.cache.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    /**
+     * Time a page stays in Redis.
+     */
+    @ConfigProperty(name = "profinder.search.cache.ttl", defaultValue = "30s")
+    private Duration ttl;
+
+    /**
+     * Time a page stays in the local cache.
+     */
+    @ConfigProperty(name = "profinder.search.cache.local-ttl", defaultValue = "5s")
+    private Duration localTtl;
+
+    /**
+     * Maximum number of pages in the local cache.
+     */
+    @ConfigProperty(name = "profinder.search.cache.local-size", defaultValue = "1000")
+    private long localSize;
+
+    /**
+     * How long a generation read from Redis is trusted before it is read again.
+     */
+    @ConfigProperty(name = "profinder.search.cache.generation-refresh", defaultValue = "1s")
+    private Duration generationRefresh;
+
+    /**
+     * Local cache of pages by their full cache key.
+     */
+    private Cache<String, SearchPage<?>> local;
+
+    /**
+     * Last known generation of each index, with the time it was read.
+     */
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Number of lookups answered by either cache level.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of lookups in total.
+     */
+    private final AtomicLong lookups = new AtomicLong();
+
+    /**
+     * Creates the local cache and registers the hit ratio gauge.
+     */
+    @PostConstruct
+    void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(localSize)
+                .expireAfterWrite(localTtl)
+                .build();
+        meterRegistry.gauge("search.cache.hit.ratio", this, SearchResultCache::hitRatio);
+    }
+
+    /**
+     * Returns a cached page or loads and caches it, without blocking the caller.
+     *
+     * @param index    logical index the page is searched in
+     * @param query    normalized query identifying the page
+     * @param itemType class of the page items
+     * @param loader   starts the search on a cache miss
+     * @param <T>      type of the page items
+     * @return stage completed with the page
+     */
+    public <T> CompletionStage<SearchPage<T>> getAsync(final String index, final String query, final Class<T> itemType,
+                                                       final Supplier<CompletionStage<SearchPage<T>>> loader) {
+        return getAsync(index, query, itemType, ttl, loader);
+    }
+
+    /**
+     * Returns a cached page or loads and caches it, without blocking the caller.
+     *
+     * @param index    logical index the page is searched in
+     * @param query    normalized query identifying the page
+     * @param itemType class of the page items
+     * @param entryTtl time the page stays in Redis
+     * @param loader   starts the search on a cache miss
+     * @param <T>      type of the page items
+     * @return stage completed with the page
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<SearchPage<T>> getAsync(final String index, final String query, final Class<T> itemType,
+                                                       final Duration entryTtl,
+                                                       final Supplier<CompletionStage<SearchPage<T>>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long started = System.nanoTime();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        lookups.incrementAndGet();
+        return generationAsync(index).handle((generation, error) -> {
+            if (error != null) {
+                log.debug("Search cache unavailable: {}", error.getMessage());
+                searchTelemetry.record(SearchTelemetry.CACHE, System.nanoTime() - started);
+                return loader.get().thenApply(page -> record(sample, index, "bypass", page));
+            }
+            String key = KEY_PREFIX + index + ":" + generation + ":" + digest(query);
+            SearchPage<T> page = (SearchPage<T>) local.getIfPresent(key);
+            if (page != null) {
+                hits.incrementAndGet();
+                searchTelemetry.record(SearchTelemetry.CACHE, System.nanoTime() - started);
+                return CompletableFuture.completedFuture(record(sample, index, "local", page));
+            }
+            return readAsync(key, itemType).thenCompose(cached -> {
+                searchTelemetry.record(SearchTelemetry.CACHE, System.nanoTime() - started);
+                if (cached != null) {
+                    local.put(key, cached);
+                    hits.incrementAndGet();
+                    return CompletableFuture.completedFuture(record(sample, index, "redis", cached));
+                }
+                return loader.get().thenApply(loaded -> {
+                    local.put(key, loaded);
+                    writeAsync(key, entryTtl, loaded);
+                    return record(sample, index, "miss", loaded);
+                });
+            });
+        }).thenCompose(stage -> stage);
+    }
+
+    /**
+     * Invalidates all cached pages of an index by increasing its generation.
+     *
+     * @param index logical index whose documents changed
+     */
+    public void invalidate(final String index) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long generation = redisClient.incr(KEY_PREFIX + "gen:" + index).toLong();
+            generations.put(index, new Generation(generation, System.nanoTime()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to invalidate search cache of index {}: {}", index, e.getMessage());
+            generations.remove(index);
+        }
+    }
+
+    /**
+     * Returns the current generation of an index without blocking, reading it from Redis if the local copy
+     * is outdated.
+     *
+     * @param index logical index
+     * @return stage completed with the generation
+     */
+    private CompletionStage<Long> generationAsync(final String index) {
+        Generation known = generations.get(index);
+        if (known != null && System.nanoTime() - known.readAt() < generationRefresh.toNanos()) {
+            return CompletableFuture.completedFuture(known.value());
+        }
+        return threadContext.withContextCapture(reactiveRedisClient.get(KEY_PREFIX + "gen:" + index)
+                        .map(response -> response == null ? 0L : response.toLong())
+                        .subscribeAsCompletionStage())
+                .thenApply(value -> {
+                    generations.put(index, new Generation(value, System.nanoTime()));
+                    return value;
+                });
+    }
+
+    /**
+     * Reads a page from Redis without blocking.
+     *
+     * @param key      full cache key
+     * @param itemType class of the page items
+     * @param <T>      type of the page items
+     * @return stage completed with the page, or with {@code null} if it is missing or cannot be read
+     */
+    private <T> CompletionStage<SearchPage<T>> readAsync(final String key, final Class<T> itemType) {
+        JavaType type = JSON.getTypeFactory().constructParametricType(SearchPage.class, itemType);
+        return threadContext.withContextCapture(reactiveRedisClient.get(key).subscribeAsCompletionStage())
+                .handle((cached, error) -> {
+                    if (error != null) {
+                        log.debug("Failed to read search cache entry: {}", error.getMessage());
+                        return null;
+                    }
+                    try {
+                        return cached == null ? null : JSON.readValue(cached.toString(), type);
+                    } catch (Exception e) {
+                        log.debug("Failed to read search cache entry: {}", e.getMessage());
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Writes a page to Redis in the background.
+     *
+     * @param key      full cache key
+     * @param entryTtl time the page stays in Redis
+     * @param page     the page
+     */
+    private void writeAsync(final String key, final Duration entryTtl, final SearchPage<?> page) {
+        try {
+            reactiveRedisClient.setex(key, String.valueOf(entryTtl.toSeconds()), JSON.writeValueAsString(page))
+                    .subscribe().with(ignored -> { },
+                            error -> log.debug("Failed to write search cache entry: {}", error.getMessage()));
+        } catch (Exception e) {
+            log.debug("Failed to write search cache entry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records the outcome and latency of a lookup.
+     *
+     * @param sample started latency sample
+     * @param index  logical index
+     * @param result where the page came from
+     * @param page   the page
+     * @param <T>    type of the page items
+     * @return the page
+     */
+    private <T> SearchPage<T> record(final Timer.Sample sample, final String index, final String result,
+                                     final SearchPage<T> page) {
+        sample.stop(meterRegistry.timer("search.cache.latency", "index", index, "result", result));
+        return page;
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return hit ratio between 0 and 1
+     */
+    double hitRatio() {
+        long total = lookups.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * Normalizes free text for analyzed fields: trims it, collapses whitespace and lower-cases it.
+     *
+     * @param text the text, may be {@code null}
+     * @return normalized text, empty for {@code null}
+     */
+    public static String normalizeText(final String text) {
+        return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalizes exact-match terms: trims them, drops blanks and duplicates and sorts them.
+     * <p>
+     * The case is kept because the terms are matched against keyword fields.
+     * </p>
+     *
+     * @param terms the terms, may be {@code null}
+     * @return normalized terms
+     */
+    public static List<String> normalizeTerms(final List<String> terms) {
+        if (terms == null) {
+            return List.of();
+        }
+        return terms.stream()
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Hashes a normalized query into a fixed-length key part.
+     *
+     * @param query the normalized query
+     * @return hex-encoded SHA-256 digest
+     */
+    private static String digest(final String query) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(query.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generation of an index as read at a given time.
+     *
+     * @param value  the generation
+     * @param readAt {@link System#nanoTime()} when it was read
+     */
+    private record Generation(long value, long readAt) {
+    }
+}
@@ -0,0 +1,98 @@
+package fit.biejk.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.context.ThreadContext;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses identical concurrent searches into one.
+ * <p>
+ * The first caller of a key becomes the leader and runs the search; callers arriving while it is running wait
+ * for the leader's future and receive the same result or exception. The key is removed as soon as the
+ * search completes, so results are never served from here after the fact. Waiting is done by composing futures,
+ * so no caller blocks.
+ * </p>
+ */
+@ApplicationScoped
+public class SearchSingleFlight {
+
+    /**
+     * Registry for counting collapsed searches.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Collector of the latency breakdown of the current request.
+     */
+    @Inject
+    private SearchTelemetry searchTelemetry;
+
+    /**
+     * Context propagating the caller's request context into the continuations of asynchronous searches,
+     * which may complete on the leader's thread.
+     */
+    @Inject
+    private ThreadContext threadContext;
+
+    /**
+     * Searches in flight by key.
+     */
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the in-flight gauge.
+     */
+    @PostConstruct
+    void init() {
+        meterRegistry.gauge("search.singleflight.in.flight", inFlight, Map::size);
+    }
+
+    /**
+     * Starts a search unless an identical one is in flight, without blocking the caller.
+     *
+     * @param index  logical index, used as metric tag
+     * @param key    key identifying identical searches
+     * @param search starts the search
+     * @param <T>    type of the result
+     * @return stage completed with the result of this or the identical search
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<T> executeAsync(final String index, final String key,
+                                               final Supplier<CompletionStage<T>> search) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            meterRegistry.counter("search.singleflight.collapsed", "index", index).increment();
+            long waiting = System.nanoTime();
+            return threadContext.withContextCapture(leader)
+                    .whenComplete((result, error) ->
+                            searchTelemetry.record(SearchTelemetry.COALESCED, System.nanoTime() - waiting))
+                    .thenApply(result -> (T) result);
+        }
+        meterRegistry.counter("search.singleflight.executed", "index", index).increment();
+        CompletionStage<T> started;
+        try {
+            started = search.get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((result, error) -> {
+            inFlight.remove(key, mine);
+            if (error != null) {
+                mine.completeExceptionally(error);
+            } else {
+                mine.complete(result);
+            }
+        });
+        return threadContext.withContextCapture(mine).thenApply(result -> (T) result);
+    }
+}
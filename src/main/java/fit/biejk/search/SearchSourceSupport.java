@@ -0,0 +1,75 @@
+package fit.biejk.search;
+
+import fit.biejk.entity.Location;
+import fit.biejk.entity.ServiceOffering;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for rebuilding response objects from denormalized search documents.
+ */
+final class SearchSourceSupport {
+
+    /**
+     * Prevents instantiation.
+     */
+    private SearchSourceSupport() {
+    }
+
+    /**
+     * Builds a detached {@link Location} from the fields stored in a search document.
+     *
+     * @param id    ID of the location
+     * @param name  name of the location
+     * @param point coordinates of the location, may be {@code null}
+     * @return the location, or {@code null} if the document has none
+     */
+    static Location location(final Long id, final String name, final GeoPointDto point) {
+        if (id == null && name == null) {
+            return null;
+        }
+        Location location = new Location();
+        location.setId(id);
+        location.setName(name);
+        if (point != null) {
+            location.setLatitude(point.getLat());
+            location.setLongitude(point.getLon());
+        }
+        return location;
+    }
+
+    /**
+     * Returns the coordinates of a location as a search document value.
+     *
+     * @param location the location, may be {@code null}
+     * @return the coordinates, or {@code null} if the location has none
+     */
+    static GeoPointDto point(final Location location) {
+        if (location == null || location.getLatitude() == null || location.getLongitude() == null) {
+            return null;
+        }
+        return new GeoPointDto(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Builds detached {@link ServiceOffering}s from the parallel ID and name lists stored in a search document.
+     *
+     * @param ids   IDs of the services
+     * @param names names of the services, in the same order as {@code ids}
+     * @return list of service offerings
+     */
+    static List<ServiceOffering> serviceOfferings(final List<Long> ids, final List<String> names) {
+        List<ServiceOffering> result = new ArrayList<>();
+        if (ids == null || names == null) {
+            return result;
+        }
+        for (int i = 0; i < Math.min(ids.size(), names.size()); i++) {
+            ServiceOffering offering = new ServiceOffering();
+            offering.setId(ids.get(i));
+            offering.setName(names.get(i));
+            result.add(offering);
+        }
+        return result;
+    }
+}
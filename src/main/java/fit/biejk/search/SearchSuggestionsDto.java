@@ -0,0 +1,26 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Typeahead suggestions for a prefix typed into the search box.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchSuggestionsDto {
+
+    /**
+     * Specialists whose name starts with the prefix.
+     */
+    private List<SpecialistSuggestionDto> specialists;
+
+    /**
+     * Names of services starting with the prefix that are offered in the location.
+     */
+    private List<String> services;
+}
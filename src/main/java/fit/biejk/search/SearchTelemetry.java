@@ -0,0 +1,151 @@
+package fit.biejk.search;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.arc.Arc;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latency breakdown of search requests.
+ * <p>
+ * Components on the search path record the time of their phase (cache lookup, Elasticsearch call and the
+ * {@code took} it reports, local engine, waiting for an identical search, database hydration). When the
+ * response is complete, the phases are published as histograms tagged by endpoint, the total time and the hit
+ * count as histograms tagged by endpoint and query shape, and everything is added to the response as a
+ * {@code Server-Timing} header.
+ * Phases recorded outside a request, e.g. by background jobs, are ignored.
+ * </p>
+ */
+@ApplicationScoped
+public class SearchTelemetry {
+
+    /**
+     * Name of the response header carrying the phase breakdown.
+     */
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    /**
+     * Phase of the search result cache lookup.
+     */
+    public static final String CACHE = "cache";
+
+    /**
+     * Phase of opening a point in time.
+     */
+    public static final String PIT_OPEN = "pit-open";
+
+    /**
+     * Phase of the Elasticsearch search as observed by the client, including network and deserialization.
+     */
+    public static final String ELASTICSEARCH = "es";
+
+    /**
+     * Search time reported by Elasticsearch itself.
+     */
+    public static final String ELASTICSEARCH_TOOK = "es-took";
+
+    /**
+     * Phase of a search answered by the local engine.
+     */
+    public static final String LOCAL = "local";
+
+    /**
+     * Phase of waiting for an identical search run by another request.
+     */
+    public static final String COALESCED = "coalesced";
+
+    /**
+     * Phase of loading the results from the database.
+     */
+    public static final String HYDRATION = "hydration";
+
+    /**
+     * Number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Phases of the current request.
+     */
+    @Inject
+    private SearchTimings searchTimings;
+
+    /**
+     * Registry the metrics are published to.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Adds time spent in a phase to the current request.
+     *
+     * @param phase name of the phase
+     * @param nanos time spent in nanoseconds
+     */
+    public void record(final String phase, final long nanos) {
+        if (Arc.container().requestContext().isActive()) {
+            searchTimings.add(phase, nanos);
+        }
+    }
+
+    /**
+     * Publishes the metrics of a finished search and adds the {@value #SERVER_TIMING_HEADER} header.
+     *
+     * @param response   the response being built
+     * @param endpoint   name of the search endpoint
+     * @param shape      low-cardinality description of the query
+     * @param startNanos {@link System#nanoTime()} when the request started
+     * @param hits       number of returned results
+     * @return the built response
+     */
+    public Response complete(final Response.ResponseBuilder response, final String endpoint, final String shape,
+                             final long startNanos, final int hits) {
+        long total = System.nanoTime() - startNanos;
+        Map<String, Long> phases = searchTimings.phases();
+        StringJoiner header = new StringJoiner(", ");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            Timer.builder("search.phase")
+                    .tags("endpoint", endpoint, "phase", phase.getKey())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(phase.getValue(), TimeUnit.NANOSECONDS);
+            header.add(serverTiming(phase.getKey(), phase.getValue()));
+        }
+        header.add(serverTiming("total", total));
+
+        Timer.builder("search.request")
+                .tags("endpoint", endpoint, "shape", shape)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(total, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("search.hits")
+                .tags("endpoint", endpoint, "shape", shape)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(hits);
+        meterRegistry.counter("search.requests", "endpoint", endpoint, "shape", shape).increment();
+        if (hits == 0) {
+            meterRegistry.counter("search.zero.results", "endpoint", endpoint, "shape", shape).increment();
+        }
+        return response.header(SERVER_TIMING_HEADER, header.toString()).build();
+    }
+
+    /**
+     * Formats one entry of the {@value #SERVER_TIMING_HEADER} header.
+     *
+     * @param name  name of the phase
+     * @param nanos duration in nanoseconds
+     * @return entry such as {@code es;dur=12.3}
+     */
+    private static String serverTiming(final String name, final long nanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.1f", name, nanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,37 @@
+package fit.biejk.search;
+
+import jakarta.enterprise.context.RequestScoped;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of the search request being handled.
+ */
+@RequestScoped
+public class SearchTimings {
+
+    /**
+     * Accumulated nanoseconds by phase, in the order the phases first occurred.
+     */
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Adds time spent in a phase.
+     *
+     * @param phase name of the phase
+     * @param nanos time spent in nanoseconds
+     */
+    void add(final String phase, final long nanos) {
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Returns the recorded phases.
+     *
+     * @return nanoseconds by phase
+     */
+    Map<String, Long> phases() {
+        return phases;
+    }
+}
@@ -1,20 +1,25 @@
 package fit.biejk.search;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
+import co.elastic.clients.util.ObjectBuilder;
 import fit.biejk.service.SpecialistService;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.runtime.Startup;
 import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
 
 import java.io.IOException;
 
 /**
  * Initializes the Elasticsearch index for storing specialist data.
  * <p>
- * This class deletes the existing index on startup, recreates it with the correct mappings,
- * and populates it from the database using the {@link SpecialistService}.
+ * The "specialists" alias is served by a versioned physical index managed by {@link SearchIndexManager}.
+ * On startup a new version is built in the background from the {@link SpecialistService} when needed
+ * and swapped in atomically, without removing the index that is currently being searched.
  * </p>
  */
 @Startup
@@ -23,10 +28,21 @@ import java.io.IOException;
 public class SpecialistIndexInitializer {
 
     /**
-     * Elasticsearch client used to interact with the Elasticsearch cluster.
+     * Version of the mapping defined in {@link #mappings(TypeMapping.Builder)}.
+     * Must be increased whenever the mapping changes, which triggers a rebuild.
+     */
+    public static final int MAPPING_VERSION = 7;
+
+    /**
+     * Name of the completion context holding the location of a specialist.
+     */
+    public static final String SUGGEST_LOCATION_CONTEXT = "location";
+
+    /**
+     * Manager of versioned indices and their aliases.
      */
     @Inject
-    private ElasticsearchClient elasticsearchClient;
+    private SearchIndexManager searchIndexManager;
 
     /**
      * Service used to retrieve specialist data from the PostgreSQL database.
@@ -35,10 +51,10 @@ public class SpecialistIndexInitializer {
     private SpecialistService specialistService;
 
     /**
-     * Service used to persist specialist data to the Elasticsearch index.
+     * Bulk indexer used to stream specialists into Elasticsearch.
      */
     @Inject
-    private SpecialistSearchService specialistSearchService;
+    private BulkReindexer bulkReindexer;
 
     /**
      * Mapper for converting {@link fit.biejk.entity.Specialist} entities into {@link SpecialistSearchDto}.
@@ -46,54 +62,116 @@ public class SpecialistIndexInitializer {
     @Inject
     private SpecialistSearchMapper specialistSearchMapper;
 
+    /**
+     * Router telling whether Elasticsearch is used at all.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Executor running the rebuild outside the startup thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Whether to rebuild the index on every startup even if the mapping is current.
+     */
+    @ConfigProperty(name = "profinder.search.rebuild-on-startup", defaultValue = "false")
+    private boolean rebuildOnStartup;
+
     /**
      * Called after the bean is constructed.
      * <p>
-     * This method checks if the index already exists. If it does, it deletes the index,
-     * then creates a new one with the necessary field mappings and loads data into it.
+     * Checks whether the alias points to an index with the current mapping version
+     * and schedules a background rebuild otherwise. Nothing is done if Elasticsearch is disabled.
      * </p>
      */
     @PostConstruct
     void init() {
-        String indexName = "specialists";
-
+        if (searchEngineRouter.isLocalOnly()) {
+            log.info("Elasticsearch disabled, skipping index {}", SpecialistSearchService.INDEX_NAME);
+            return;
+        }
         try {
-            boolean exists = elasticsearchClient.indices().exists(e -> e.index(indexName)).value();
-            if (exists) {
-                log.info("Deleting index " + indexName);
-                elasticsearchClient.indices().delete(d -> d.index(indexName));
+            if (searchIndexManager.isCurrent(SpecialistSearchService.INDEX_NAME, MAPPING_VERSION)
+                    && !rebuildOnStartup) {
+                log.info("Index {} is up to date", SpecialistSearchService.INDEX_NAME);
+                return;
             }
-            log.info("Creating index " + indexName);
-            elasticsearchClient.indices().create(c -> c
-                    .index(indexName)
-                    .mappings(m -> m
-                            .properties("id", p -> p.long_(x -> x))
-                            .properties("firstName", p -> p.text(t -> t))
-                            .properties("lastName", p -> p.text(t -> t))
-                            .properties("description", p -> p.text(t -> t))
-                            .properties("averageRating", p -> p.double_(d -> d))
-                            .properties("services", p -> p.text(t -> t))
-                            .properties("location", p -> p
-                                    .text(t -> t
-                                            .fields("keyword", k -> k.keyword(kk -> kk))
-                                    )
-                            )
-                    )
-            );
-            load();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Failed to inspect index {}", SpecialistSearchService.INDEX_NAME, e);
+            return;
+        }
+        executor.runAsync(this::rebuild);
+    }
+
+    /**
+     * Builds a new version of the index from the database and swaps it in.
+     */
+    public void rebuild() {
+        try {
+            searchIndexManager.rebuild(SpecialistSearchService.INDEX_NAME, MAPPING_VERSION,
+                    this::mappings, this::load);
+        } catch (IOException e) {
+            log.error("Failed to rebuild index {}", SpecialistSearchService.INDEX_NAME, e);
         }
     }
 
     /**
-     * Loads all specialists from the database and saves them into the Elasticsearch index.
+     * Defines the field mappings of the specialists index.
+     *
+     * @param m mapping builder
+     * @return configured mapping builder
+     */
+    ObjectBuilder<TypeMapping> mappings(final TypeMapping.Builder m) {
+        return m
+                .properties("id", p -> p.long_(x -> x))
+                .properties("firstName", p -> p.text(t -> t))
+                .properties("lastName", p -> p.text(t -> t))
+                .properties("description", p -> p.text(t -> t))
+                .properties("averageRating", p -> p.double_(d -> d))
+                .properties("services", p -> p
+                        .text(t -> t
+                                .fields("keyword", k -> k.keyword(kk -> kk))
+                        )
+                )
+                .properties("location", p -> p
+                        .text(t -> t
+                                .fields("keyword", k -> k.keyword(kk -> kk))
+                        )
+                )
+                .properties("locationId", p -> p.long_(x -> x))
+                .properties("locationPoint", p -> p.geoPoint(g -> g))
+                .properties("serviceIds", p -> p.long_(x -> x))
+                .properties("email", p -> p.keyword(k -> k.index(false)))
+                .properties("phoneNumber", p -> p.keyword(k -> k.index(false)))
+                .properties("createAt", p -> p.date(d -> d))
+                .properties("reviewCount", p -> p.integer(i -> i))
+                .properties("bayesianRating", p -> p.double_(d -> d))
+                .properties("lastActiveAt", p -> p.date(d -> d))
+                .properties("nameSuggest", p -> p.completion(c -> c
+                        .contexts(ctx -> ctx.name(SUGGEST_LOCATION_CONTEXT).type("category"))
+                ))
+                .properties("mappingVersion", p -> p.integer(i -> i))
+                .properties(ContentHash.CONTENT_FIELD, p -> p.integer(i -> i))
+                .properties(ContentHash.PARTIAL_FIELD, p -> p.integer(i -> i));
+    }
+
+    /**
+     * Streams all specialists from the database into the given physical index.
+     * <p>
+     * Each chunk is read and mapped in its own transaction, so the persistence context
+     * is discarded after every chunk and memory use does not grow with the table size.
+     * </p>
+     *
+     * @param index name of the physical index to fill
      */
-    void load() {
-        log.info("Loading specialists from database");
-        specialistService.getAll()
-                .forEach(specialist ->
-                        specialistSearchService.save(specialistSearchMapper.toDto(specialist))
-                );
+    void load(final String index) {
+        log.info("Loading specialists from database into {}", index);
+        bulkReindexer.reindex(index,
+                (afterId, size) -> QuarkusTransaction.requiringNew().call(() ->
+                        specialistSearchMapper.toDtoList(specialistService.getChunkAfterId(afterId, size))),
+                SpecialistSearchDto::getId);
     }
 }
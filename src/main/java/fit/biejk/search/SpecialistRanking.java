@@ -0,0 +1,195 @@
+package fit.biejk.search;
+
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.query_dsl.FieldValueFactorModifier;
+import co.elastic.clients.elasticsearch._types.query_dsl.FunctionScore;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Builds the quality part of the specialist ranking.
+ * <p>
+ * The text relevance of a specialist is multiplied by a weighted sum of three signals stored in the index:
+ * the Bayesian-smoothed rating, which pulls ratings based on few reviews towards a prior, the logarithm of
+ * the review count, and an exponential decay of the time since the last activity. All inputs are written
+ * with the search document, so ranking needs no database access at query time.
+ * </p>
+ * <p>
+ * The recency decay is measured from the start of the current UTC day rather than from the current instant,
+ * so the score of a document does not change between the pages of a search and score cursors stay valid.
+ * </p>
+ */
+@ApplicationScoped
+public class SpecialistRanking {
+
+    /**
+     * Highest possible rating, used to scale the rating signal to at most 1.
+     */
+    private static final double MAX_RATING = 5.0;
+
+    /**
+     * Field holding the Bayesian-smoothed rating.
+     */
+    private static final String RATING_FIELD = "bayesianRating";
+
+    /**
+     * Field holding the number of reviews.
+     */
+    private static final String REVIEW_COUNT_FIELD = "reviewCount";
+
+    /**
+     * Field holding the time of the last activity.
+     */
+    private static final String LAST_ACTIVE_FIELD = "lastActiveAt";
+
+    /**
+     * Origin of the recency decay: the current time rounded down to the day, in UTC.
+     */
+    private static final String RECENCY_ORIGIN = "now/d";
+
+    /**
+     * Rating a specialist without reviews is assumed to have.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.rating-prior", defaultValue = "4.0")
+    private double ratingPrior;
+
+    /**
+     * Number of reviews the prior counts as; the higher, the more reviews are needed to move away from it.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.rating-confidence", defaultValue = "10")
+    private double ratingConfidence;
+
+    /**
+     * Weight of the smoothed rating.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.rating-weight", defaultValue = "1.0")
+    private double ratingWeight;
+
+    /**
+     * Weight of the review count.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.review-count-weight", defaultValue = "0.5")
+    private double reviewCountWeight;
+
+    /**
+     * Weight of the recency of activity.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.recency-weight", defaultValue = "0.5")
+    private double recencyWeight;
+
+    /**
+     * Time since the last activity at which the recency signal reaches {@link #recencyDecay}.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.recency-scale", defaultValue = "30d")
+    private Duration recencyScale;
+
+    /**
+     * Recency signal of a specialist last active {@link #recencyScale} ago.
+     */
+    @ConfigProperty(name = "profinder.search.ranking.recency-decay", defaultValue = "0.5")
+    private double recencyDecay;
+
+    /**
+     * Computes the Bayesian-smoothed rating stored in the index.
+     *
+     * @param averageRating average rating of the reviews, or {@code null} if there are none
+     * @param reviewCount   number of reviews, or {@code null} if unknown
+     * @return the weighted mean of the prior and the average rating
+     */
+    public double bayesianRating(final Double averageRating, final Integer reviewCount) {
+        int count = reviewCount != null ? reviewCount : 0;
+        double average = averageRating != null ? averageRating : ratingPrior;
+        return (ratingConfidence * ratingPrior + average * count) / (ratingConfidence + count);
+    }
+
+    /**
+     * Builds the score functions whose sum multiplies the text relevance.
+     *
+     * @return the functions
+     */
+    public List<FunctionScore> functions() {
+        return List.of(
+                FunctionScore.of(f -> f
+                        .weight(ratingWeight)
+                        .fieldValueFactor(v -> v
+                                .field(RATING_FIELD)
+                                .factor(1 / MAX_RATING)
+                                .missing(ratingPrior)
+                        )
+                ),
+                FunctionScore.of(f -> f
+                        .weight(reviewCountWeight)
+                        .fieldValueFactor(v -> v
+                                .field(REVIEW_COUNT_FIELD)
+                                .modifier(FieldValueFactorModifier.Log1p)
+                                .missing(0.0)
+                        )
+                ),
+                FunctionScore.of(f -> f
+                        .weight(recencyWeight)
+                        .exp(e -> e.date(d -> d
+                                .field(LAST_ACTIVE_FIELD)
+                                .placement(p -> p
+                                        .origin(RECENCY_ORIGIN)
+                                        .scale(Time.of(t -> t.time(recencyScale.toSeconds() + "s")))
+                                        .decay(recencyDecay)
+                                )
+                        ))
+                )
+        );
+    }
+
+    /**
+     * Returns the origin of the recency decay, matching the one used by {@link #functions()}.
+     *
+     * @return the start of the current UTC day
+     */
+    public LocalDateTime recencyOrigin() {
+        return LocalDate.now(ZoneOffset.UTC).atStartOfDay();
+    }
+
+    /**
+     * Computes the same weighted sum as {@link #functions()} for a document held in memory.
+     *
+     * @param document the search document
+     * @param origin   origin of the recency decay, from {@link #recencyOrigin()}
+     * @return multiplier of the text relevance
+     */
+    public double boost(final SpecialistSearchDto document, final LocalDateTime origin) {
+        double rating = document.getBayesianRating() != null ? document.getBayesianRating() : ratingPrior;
+        int reviews = document.getReviewCount() != null ? document.getReviewCount() : 0;
+        double recency = 1.0;
+        LocalDateTime lastActive = parse(document.getLastActiveAt());
+        if (lastActive != null) {
+            double age = Math.abs(Duration.between(lastActive, origin).toSeconds());
+            recency = Math.exp(Math.log(recencyDecay) * age / recencyScale.toSeconds());
+        }
+        return ratingWeight * rating / MAX_RATING
+                + reviewCountWeight * Math.log10(1 + reviews)
+                + recencyWeight * recency;
+    }
+
+    /**
+     * Parses a date-time stored in a search document.
+     *
+     * @param value ISO-8601 local date-time, may be {@code null}
+     * @return the date-time, or {@code null} if missing or malformed
+     */
+    private static LocalDateTime parse(final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -51,4 +51,72 @@ public class SpecialistSearchDto {
      * Location (city or area) where the specialist operates.
      */
     private String location;
+
+    /**
+     * ID of the location, needed to render the location without a database lookup.
+     */
+    private Long locationId;
+
+    /**
+     * Coordinates of the location, or {@code null} if the location has none.
+     */
+    private GeoPointDto locationPoint;
+
+    /**
+     * IDs of the services, in the same order as {@link #services}.
+     */
+    private List<Long> serviceIds;
+
+    /**
+     * Contact email of the specialist.
+     */
+    private String email;
+
+    /**
+     * Contact phone number of the specialist.
+     */
+    private String phoneNumber;
+
+    /**
+     * Registration time of the specialist in ISO-8601 format.
+     */
+    private String createAt;
+
+    /**
+     * Number of client reviews.
+     */
+    private Integer reviewCount;
+
+    /**
+     * Average rating smoothed towards a prior by {@link SpecialistRanking#bayesianRating(Double, Integer)}.
+     */
+    private Double bayesianRating;
+
+    /**
+     * Time of the last activity of the specialist, in ISO-8601 format.
+     */
+    private String lastActiveAt;
+
+    /**
+     * Completion input suggesting the specialist by name, with the location as context.
+     */
+    private CompletionInput nameSuggest;
+
+    /**
+     * Mapping version the document was written with.
+     * <p>
+     * Documents older than {@link SpecialistIndexInitializer#MAPPING_VERSION} may lack display fields.
+     * </p>
+     */
+    private Integer mappingVersion;
+
+    /**
+     * Hash of all fields except the rating and activity fields, see {@link ContentHash}.
+     */
+    private Integer contentHash;
+
+    /**
+     * Hash of the rating and activity fields, rewritten together with them by partial updates.
+     */
+    private Integer partialHash;
 }
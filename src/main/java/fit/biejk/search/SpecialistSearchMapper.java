@@ -1,13 +1,17 @@
 package fit.biejk.search;
 
+import fit.biejk.dto.SpecialistDto;
 import fit.biejk.entity.ServiceOffering;
 import fit.biejk.entity.Specialist;
 import fit.biejk.service.SpecialistService;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Mapper for converting between {@link Specialist} entities and {@link SpecialistSearchDto} objects.
@@ -18,6 +22,11 @@ import java.util.List;
 @ApplicationScoped
 public class SpecialistSearchMapper {
 
+    /**
+     * Factor converting an average rating into a completion weight.
+     */
+    private static final int RATING_WEIGHT_SCALE = 100;
+
     /**
      * Service for retrieving specialist entities from the database.
      * <p>
@@ -27,6 +36,18 @@ public class SpecialistSearchMapper {
     @Inject
     private SpecialistService specialistService;
 
+    /**
+     * Hydrator loading the entities behind search hits in one query.
+     */
+    @Inject
+    private SearchHydrator searchHydrator;
+
+    /**
+     * Source of the ranking signals stored in the documents.
+     */
+    @Inject
+    private SpecialistRanking specialistRanking;
+
     /**
      * Converts a {@link Specialist} entity to a {@link SpecialistSearchDto}.
      *
@@ -40,15 +61,117 @@ public class SpecialistSearchMapper {
                 .map(ServiceOffering::getName)
                 .toList();
 
-        return new SpecialistSearchDto(
-                specialist.getId(),
-                specialist.getFirstName(),
-                specialist.getLastName(),
-                specialist.getDescription(),
-                specialist.getAverageRating(),
-                serviceNames,
-                specialist.getLocation().getName()
-        );
+        SpecialistSearchDto dto = new SpecialistSearchDto();
+        dto.setId(specialist.getId());
+        dto.setFirstName(specialist.getFirstName());
+        dto.setLastName(specialist.getLastName());
+        dto.setDescription(specialist.getDescription());
+        dto.setAverageRating(specialist.getAverageRating());
+        dto.setServices(serviceNames);
+        dto.setLocation(specialist.getLocation().getName());
+        dto.setLocationId(specialist.getLocation().getId());
+        dto.setLocationPoint(SearchSourceSupport.point(specialist.getLocation()));
+        dto.setServiceIds(specialist.getServiceOfferings() == null
+                ? List.of()
+                : specialist.getServiceOfferings().stream()
+                .map(ServiceOffering::getId)
+                .toList());
+        dto.setEmail(specialist.getEmail());
+        dto.setPhoneNumber(specialist.getPhoneNumber());
+        dto.setCreateAt(specialist.getCreateAt() != null ? specialist.getCreateAt().toString() : null);
+        dto.setReviewCount(specialist.getReviewCount() != null ? specialist.getReviewCount() : 0);
+        dto.setBayesianRating(specialistRanking.bayesianRating(specialist.getAverageRating(),
+                specialist.getReviewCount()));
+        dto.setLastActiveAt(lastActiveAt(specialist));
+        dto.setNameSuggest(nameSuggest(specialist));
+        dto.setMappingVersion(SpecialistIndexInitializer.MAPPING_VERSION);
+        Map<String, Object> rating = ratingFields(specialist);
+        dto.setContentHash(ContentHash.ofDocument(dto, rating.keySet()));
+        dto.setPartialHash(ContentHash.ofFields(rating));
+        return dto;
+    }
+
+    /**
+     * Builds the partial update of the rating and activity fields of a specialist document.
+     * <p>
+     * The name suggestion is included because its weight follows the average rating.
+     * </p>
+     *
+     * @param specialist the specialist entity
+     * @return the partial update, including the new partial hash
+     */
+    public PartialUpdate toRatingUpdate(final Specialist specialist) {
+        Map<String, Object> fields = ratingFields(specialist);
+        fields.put(ContentHash.PARTIAL_FIELD, ContentHash.ofFields(fields));
+        return new PartialUpdate(fields);
+    }
+
+    /**
+     * Returns the fields of a specialist document that are rewritten by rating updates.
+     *
+     * @param specialist the specialist entity
+     * @return values by field name
+     */
+    private Map<String, Object> ratingFields(final Specialist specialist) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("averageRating", specialist.getAverageRating());
+        fields.put("reviewCount", specialist.getReviewCount() != null ? specialist.getReviewCount() : 0);
+        fields.put("bayesianRating", specialistRanking.bayesianRating(specialist.getAverageRating(),
+                specialist.getReviewCount()));
+        fields.put("lastActiveAt", lastActiveAt(specialist));
+        fields.put("nameSuggest", nameSuggest(specialist));
+        return fields;
+    }
+
+    /**
+     * Returns the time of the last activity of a specialist, falling back to the registration time.
+     *
+     * @param specialist the specialist entity
+     * @return the time in ISO-8601 format, or {@code null} if neither is known
+     */
+    private static String lastActiveAt(final Specialist specialist) {
+        LocalDateTime lastActive = specialist.getLastActiveAt() != null
+                ? specialist.getLastActiveAt()
+                : specialist.getCreateAt();
+        return lastActive != null ? lastActive.toString() : null;
+    }
+
+    /**
+     * Builds the completion input suggesting a specialist by first name, last name or full name.
+     * <p>
+     * Better rated specialists get a higher weight and are suggested first.
+     * </p>
+     *
+     * @param specialist the specialist entity
+     * @return the completion input, or {@code null} if the specialist has no name
+     */
+    private CompletionInput nameSuggest(final Specialist specialist) {
+        List<String> input = new ArrayList<>();
+        if (specialist.getFirstName() != null && !specialist.getFirstName().isBlank()) {
+            input.add(specialist.getFirstName());
+        }
+        if (specialist.getLastName() != null && !specialist.getLastName().isBlank()) {
+            input.add(specialist.getLastName());
+        }
+        if (input.size() == 2) {
+            input.add(specialist.getFirstName() + " " + specialist.getLastName());
+        }
+        if (input.isEmpty()) {
+            return null;
+        }
+        double rating = specialist.getAverageRating() != null ? specialist.getAverageRating() : 0.0;
+        return new CompletionInput(input, (int) Math.round(rating * RATING_WEIGHT_SCALE),
+                locationContext(specialist));
+    }
+
+    /**
+     * Builds the completion contexts holding the location of a specialist.
+     *
+     * @param specialist the specialist entity
+     * @return contexts by name
+     */
+    private static Map<String, List<String>> locationContext(final Specialist specialist) {
+        return Map.of(SpecialistIndexInitializer.SUGGEST_LOCATION_CONTEXT, List.of(specialist.getLocation().getName()));
     }
 
     /**
@@ -64,15 +187,87 @@ public class SpecialistSearchMapper {
 
     /**
      * Converts a list of {@link SpecialistSearchDto} to a list of {@link Specialist} entities.
+     * <p>
+     * All entities are loaded with a single query. The order of the DTOs is preserved and entities
+     * deleted since they were indexed are left out.
+     * </p>
      *
      * @param specialistDtoList list of search DTOs
      * @return list of entities
      */
     public List<Specialist> toEntityList(final List<SpecialistSearchDto> specialistDtoList) {
-        List<Specialist> specialists = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (SpecialistSearchDto dto : specialistDtoList) {
+            ids.add(dto.getId());
+        }
+        return searchHydrator.hydrate(SpecialistSearchService.INDEX_NAME, ids,
+                specialistService::getByIds, Specialist::getId);
+    }
+
+    /**
+     * Converts a list of {@link Specialist} entities to a list of {@link SpecialistSearchDto} objects.
+     *
+     * @param specialists list of entities
+     * @return list of search DTOs
+     */
+    public List<SpecialistSearchDto> toDtoList(final List<Specialist> specialists) {
+        List<SpecialistSearchDto> dtos = new ArrayList<>();
+        for (Specialist specialist : specialists) {
+            dtos.add(toDto(specialist));
+        }
+        return dtos;
+    }
+
+    /**
+     * Checks whether the given documents carry all fields needed by {@link #toResponseDto(SpecialistSearchDto)}.
+     *
+     * @param specialistDtoList list of search DTOs
+     * @return {@code true} if every document was written with the current mapping version
+     */
+    public boolean isSourceComplete(final List<SpecialistSearchDto> specialistDtoList) {
+        for (SpecialistSearchDto dto : specialistDtoList) {
+            if (dto.getMappingVersion() == null
+                    || dto.getMappingVersion() < SpecialistIndexInitializer.MAPPING_VERSION) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a {@link SpecialistSearchDto} directly to a {@link SpecialistDto} response, without
+     * a database lookup.
+     *
+     * @param dto the search DTO
+     * @return the response DTO
+     */
+    public SpecialistDto toResponseDto(final SpecialistSearchDto dto) {
+        SpecialistDto result = new SpecialistDto();
+        result.setId(dto.getId());
+        result.setAverageRating(dto.getAverageRating() != null ? dto.getAverageRating() : 0.0);
+        result.setEmail(dto.getEmail());
+        result.setFirstName(dto.getFirstName());
+        result.setLastName(dto.getLastName());
+        result.setPhoneNumber(dto.getPhoneNumber());
+        result.setLocation(SearchSourceSupport.location(dto.getLocationId(), dto.getLocation(),
+                dto.getLocationPoint()));
+        result.setCreateAt(dto.getCreateAt() != null ? LocalDateTime.parse(dto.getCreateAt()) : null);
+        result.setServiceOfferings(SearchSourceSupport.serviceOfferings(dto.getServiceIds(), dto.getServices()));
+        result.setDescription(dto.getDescription());
+        return result;
+    }
+
+    /**
+     * Converts a list of {@link SpecialistSearchDto} directly to {@link SpecialistDto} responses.
+     *
+     * @param specialistDtoList list of search DTOs
+     * @return list of response DTOs
+     */
+    public List<SpecialistDto> toResponseDtoList(final List<SpecialistSearchDto> specialistDtoList) {
+        List<SpecialistDto> result = new ArrayList<>();
         for (SpecialistSearchDto dto : specialistDtoList) {
-            specialists.add(toEntity(dto));
+            result.add(toResponseDto(dto));
         }
-        return specialists;
+        return result;
     }
 }
@@ -1,16 +1,24 @@
 package fit.biejk.search;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.CompletionContext;
+import co.elastic.clients.elasticsearch.core.search.CompletionSuggestOption;
+import co.elastic.clients.elasticsearch.core.search.Suggestion;
+import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.context.ThreadContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for indexing, deleting, and searching specialists in Elasticsearch.
@@ -20,99 +28,251 @@ import java.util.List;
 public class SpecialistSearchService {
 
     /**
-     * Elasticsearch client used for communication with the search index.
+     * Name of the read alias of the specialists index.
+     */
+    public static final String INDEX_NAME = "specialists";
+
+    /**
+     * Name of the suggester completing specialist names.
+     */
+    private static final String NAME_SUGGESTER = "names";
+
+    /**
+     * Name of the aggregation collecting the service names matching a prefix.
+     */
+    private static final String SERVICE_AGGREGATION = "services";
+
+    /**
+     * Non-blocking Elasticsearch client used by the suggestions.
+     */
+    @Inject
+    private ElasticsearchAsyncClient elasticsearchAsyncClient;
+
+    /**
+     * Context propagating the request context into the continuations of asynchronous calls.
+     */
+    @Inject
+    private ThreadContext threadContext;
+
+    /**
+     * Router selecting the engine that answers the search.
+     */
+    @Inject
+    private SearchEngineRouter searchEngineRouter;
+
+    /**
+     * Cache of first result pages.
+     */
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    /**
+     * Layer collapsing identical concurrent first-page searches.
+     */
+    @Inject
+    private SearchSingleFlight searchSingleFlight;
+
+    /**
+     * Collector of the latency breakdown of the current request.
      */
     @Inject
-    private ElasticsearchClient elasticsearchClient;
+    private SearchTelemetry searchTelemetry;
 
     /**
-     * Indexes a specialist document in Elasticsearch.
+     * Suggests specialists and services whose names start with the given prefix.
+     * <p>
+     * Specialists are completed from a completion field, which is answered from in-memory structures without
+     * scoring documents; only the fields needed to render them are fetched. Services are collected by a terms
+     * aggregation over the specialists offering a matching service, since a completion suggester returns at
+     * most one option per document. The services offered by the most specialists come first.
+     * </p>
      *
-     * @param dto the specialist data to be indexed
-     */
-    @Transactional
-    public void save(final SpecialistSearchDto dto) {
-        try {
-            log.info("Saving Specialist with id {} for search", dto.getId());
-            elasticsearchClient.index(i -> i
-                    .index("specialists")
-                    .id(String.valueOf(dto.getId()))
-                    .document(dto)
-            );
-        } catch (IOException e) {
-            log.warn(e.getMessage());
-            e.printStackTrace();
+     * @param prefix   text typed by the user
+     * @param location the city to filter suggestions by, or {@code null} for all cities
+     * @param size     maximum number of suggestions of each kind
+     * @return the suggestions, empty if Elasticsearch cannot be reached
+     */
+    public Uni<SearchSuggestionsDto> suggestAsync(final String prefix, final String location, final int size) {
+        String normalizedPrefix = prefix != null ? prefix.trim() : "";
+        if (normalizedPrefix.isEmpty()) {
+            return Uni.createFrom().item(new SearchSuggestionsDto(List.of(), List.of()));
         }
+        return Uni.createFrom().completionStage(() -> {
+            long started = System.nanoTime();
+            return threadContext.withContextCapture(elasticsearchAsyncClient.search(
+                            suggestRequest(normalizedPrefix, location, size), SpecialistSearchDto.class))
+                    .thenApply(response -> toSuggestions(response, started));
+        }).onFailure().recoverWithItem(e -> {
+            log.warn("Failed to suggest specialists: {}", e.getMessage());
+            return new SearchSuggestionsDto(List.of(), List.of());
+        });
     }
 
     /**
-     * Deletes a specialist document from Elasticsearch by ID.
+     * Builds the completion request of a suggestion.
      *
-     * @param id the ID of the specialist to delete
-     */
-    @Transactional
-    public void delete(final Long id) {
-        try {
-            log.info("Deleting Specialist with id {} for search", id);
-            elasticsearchClient.delete(d -> d
-                    .index("specialists")
-                    .id(String.valueOf(id))
-            );
-        } catch (IOException e) {
-            log.warn(e.getMessage());
-            e.printStackTrace();
+     * @param prefix   normalized text typed by the user
+     * @param location the city to filter suggestions by, or {@code null} for all cities
+     * @param size     maximum number of suggestions of each kind
+     * @return the search request
+     */
+    private static SearchRequest suggestRequest(final String prefix, final String location, final int size) {
+        Map<String, List<CompletionContext>> contexts = location == null || location.isBlank()
+                ? Map.of()
+                : Map.of(SpecialistIndexInitializer.SUGGEST_LOCATION_CONTEXT,
+                List.of(CompletionContext.of(c -> c.context(ctx -> ctx.category(location.trim())))));
+        return SearchRequest.of(s -> s
+                .index(INDEX_NAME)
+                .size(0)
+                .query(q -> q.bool(b -> {
+                    b.filter(f -> f.prefix(p -> p.field("services.keyword").value(prefix).caseInsensitive(true)));
+                    if (location != null && !location.isBlank()) {
+                        b.filter(f -> f.term(t -> t.field("location.keyword").value(location.trim())));
+                    }
+                    return b;
+                }))
+                .aggregations(SERVICE_AGGREGATION, a -> a
+                        .terms(t -> t
+                                .field("services.keyword")
+                                .include(i -> i.regexp(prefixPattern(prefix)))
+                                .size(size)
+                        )
+                )
+                .source(src -> src.filter(f -> f.includes("id", "firstName", "lastName")))
+                .suggest(sg -> sg
+                        .suggesters(NAME_SUGGESTER, fs -> fs
+                                .prefix(prefix)
+                                .completion(c -> c
+                                        .field("nameSuggest")
+                                        .size(size)
+                                        .skipDuplicates(true)
+                                        .contexts(contexts)
+                                )
+                        )
+                )
+        );
+    }
+
+    /**
+     * Converts a completion response into suggestions and records its latency.
+     *
+     * @param response the search response
+     * @param started  {@link System#nanoTime()} when the request was sent
+     * @return the suggestions
+     */
+    private SearchSuggestionsDto toSuggestions(final SearchResponse<SpecialistSearchDto> response,
+                                               final long started) {
+        searchTelemetry.record(SearchTelemetry.ELASTICSEARCH, System.nanoTime() - started);
+        searchTelemetry.record(SearchTelemetry.ELASTICSEARCH_TOOK, TimeUnit.MILLISECONDS.toNanos(response.took()));
+
+        List<SpecialistSuggestionDto> specialists = new ArrayList<>();
+        for (CompletionSuggestOption<SpecialistSearchDto> option : options(response, NAME_SUGGESTER)) {
+            SpecialistSearchDto source = option.source();
+            if (source != null) {
+                specialists.add(new SpecialistSuggestionDto(source.getId(), source.getFirstName(),
+                        source.getLastName(), option.text()));
+            }
         }
+        List<String> services = new ArrayList<>();
+        Aggregate aggregate = response.aggregations().get(SERVICE_AGGREGATION);
+        if (aggregate != null && aggregate.isSterms()) {
+            aggregate.sterms().buckets().array().forEach(bucket -> services.add(bucket.key().stringValue()));
+        }
+        return new SearchSuggestionsDto(specialists, services);
+    }
+
+    /**
+     * Builds the regular expression matching the terms that start with a prefix, ignoring case.
+     *
+     * @param prefix the prefix
+     * @return the regular expression
+     */
+    private static String prefixPattern(final String prefix) {
+        StringBuilder pattern = new StringBuilder();
+        prefix.codePoints().forEach(c -> {
+            int lower = Character.toLowerCase(c);
+            int upper = Character.toUpperCase(c);
+            if (lower != upper) {
+                pattern.append('[').appendCodePoint(lower).appendCodePoint(upper).append(']');
+            } else if (Character.isLetterOrDigit(c)) {
+                pattern.appendCodePoint(c);
+            } else {
+                pattern.append('\\').appendCodePoint(c);
+            }
+        });
+        return pattern.append(".*").toString();
+    }
+
+    /**
+     * Returns the options of a completion suggester in a response.
+     *
+     * @param response  the search response
+     * @param suggester name of the suggester
+     * @return the options, empty if the suggester returned none
+     */
+    private static List<CompletionSuggestOption<SpecialistSearchDto>> options(
+            final SearchResponse<SpecialistSearchDto> response, final String suggester) {
+        List<CompletionSuggestOption<SpecialistSearchDto>> options = new ArrayList<>();
+        for (Suggestion<SpecialistSearchDto> suggestion : response.suggest().getOrDefault(suggester, List.of())) {
+            if (suggestion.isCompletion()) {
+                options.addAll(suggestion.completion().options());
+            }
+        }
+        return options;
     }
 
     /**
      * Searches for specialists using keyword and location.
-     * The results are sorted by averageRating in descending order.
-     * Supports fuzzy matching for keyword.
+     * The results are ranked by text relevance combined with the smoothed rating, review count and recent
+     * activity of the specialist (see {@link SpecialistRanking}). With a radius, specialists from nearby
+     * locations are included as well and the ranking is decayed by distance. Supports fuzzy matching for keyword.
+     * <p>
+     * Elasticsearch is queried through the asynchronous client and the cache through the reactive Redis client,
+     * so no thread waits for I/O while the search runs.
+     * </p>
      *
      * @param keyword  the search keyword (e.g., service name or description)
      * @param location the city to filter specialists by
-     * @return a list of matching specialists
-     */
-    public List<SpecialistSearchDto> search(final String keyword, final String location) {
-        try {
-            log.info("Searching for Specialist with keyword {} and location {}", keyword, location);
-            SearchResponse<SpecialistSearchDto> response = elasticsearchClient.search(s -> s
-                            .index("specialists")
-                            .query(q -> q
-                                    .bool(b -> b
-                                            .must(m -> m
-                                                    .multiMatch(mm -> mm
-                                                            .fields("firstName", "lastName",
-                                                                    "description", "services")
-                                                            .query(keyword)
-                                                            .fuzziness("AUTO")
-                                                    )
-                                            )
-                                            .filter(f -> f
-                                                    .term(t -> t
-                                                            .field("location.keyword")
-                                                            .value(location)
-                                                    )
-                                            )
-                                    )
-                            )
-                            .sort(so -> so
-                                    .field(f -> f
-                                            .field("averageRating")
-                                            .order(SortOrder.Desc)
-                                    )
-                            ),
-                    SpecialistSearchDto.class
-            );
-
-            return response.hits().hits().stream()
-                    .map(Hit::source)
-                    .toList();
-
-        } catch (IOException e) {
+     * @param radiusKm radius around the location in kilometres, or {@code null} to match the location exactly
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of specialists per page
+     * @return the page of matching specialists, failed with an {@link IllegalArgumentException} if the cursor
+     *         is malformed or has expired
+     */
+    public Uni<SearchPage<SpecialistSearchDto>> searchAsync(final String keyword, final String location,
+                                                            final Double radiusKm, final String cursor,
+                                                            final int size) {
+        String normalizedKeyword = SearchResultCache.normalizeText(keyword);
+        String normalizedLocation = location != null ? location.trim() : null;
+        log.info("Searching for Specialist with keyword {} and location {}", normalizedKeyword, normalizedLocation);
+        return Uni.createFrom().completionStage(() -> {
+            if (cursor != null) {
+                return fetchAsync(normalizedKeyword, normalizedLocation, radiusKm, cursor, size);
+            }
+            String query = normalizedKeyword + "|" + normalizedLocation + "|" + radiusKm + "|" + size;
+            return searchSingleFlight.executeAsync(INDEX_NAME, INDEX_NAME + "|" + query, () ->
+                    searchResultCache.getAsync(INDEX_NAME, query, SpecialistSearchDto.class,
+                            () -> fetchAsync(normalizedKeyword, normalizedLocation, radiusKm, null, size)));
+        }).onFailure(IOException.class).recoverWithItem(e -> {
             log.warn(e.getMessage());
-            e.printStackTrace();
-            return List.of();
-        }
+            return SearchPage.empty();
+        });
+    }
+
+    /**
+     * Starts a specialist search on the engine selected by the router.
+     *
+     * @param keyword  normalized search keyword
+     * @param location normalized location
+     * @param radiusKm radius around the location in kilometres, or {@code null}
+     * @param cursor   token of the page to fetch, or {@code null} for the first page
+     * @param size     number of specialists per page
+     * @return stage completed with the page
+     */
+    private CompletionStage<SearchPage<SpecialistSearchDto>> fetchAsync(final String keyword, final String location,
+                                                                        final Double radiusKm, final String cursor,
+                                                                        final int size) {
+        return searchEngineRouter.searchAsync(cursor,
+                engine -> engine.searchSpecialistsAsync(keyword, location, radiusKm, cursor, size));
     }
 }
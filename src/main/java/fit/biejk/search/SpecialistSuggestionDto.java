@@ -0,0 +1,34 @@
+package fit.biejk.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Specialist suggested while the user types a search query.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpecialistSuggestionDto {
+
+    /**
+     * Unique identifier of the specialist.
+     */
+    private Long id;
+
+    /**
+     * First name of the specialist.
+     */
+    private String firstName;
+
+    /**
+     * Last name of the specialist.
+     */
+    private String lastName;
+
+    /**
+     * The completed text that matched the typed prefix.
+     */
+    private String text;
+}
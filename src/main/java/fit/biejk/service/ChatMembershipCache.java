@@ -0,0 +1,178 @@
+package fit.biejk.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import fit.biejk.repository.ChatRepository;
+import fit.biejk.socket.ChatFanout;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.context.ManagedExecutor;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Cache of the participants of the chats, used to authorize chat sessions without a query per message.
+ * <p>
+ * The participants of a chat are loaded with one query and kept for {@code profinder.chat.membership.max-age}.
+ * Entries in use are reloaded in the background after {@code profinder.chat.membership.refresh}, so sessions
+ * keep being served from memory. A chat is only deleted together with one of its users, so deleting a user
+ * drops the chats of the user once the deletion is committed, on this node and, through the
+ * {@link ChatFanout}, on all other nodes. If that notice is lost, the other nodes notice the deletion at the
+ * next reload at the latest.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class ChatMembershipCache {
+
+    /**
+     * Repository reading the participants of a chat.
+     */
+    @Inject
+    private ChatRepository chatRepository;
+
+    /**
+     * Registry used to defer invalidations until the deleting transaction is committed.
+     */
+    @Inject
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    /**
+     * Executor running the background reloads.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Fan-out telling the other nodes to drop the chats of a deleted user.
+     */
+    @Inject
+    private ChatFanout chatFanout;
+
+    /**
+     * Registry for publishing cache metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Maximum number of cached chats.
+     */
+    @ConfigProperty(name = "profinder.chat.membership.max-size", defaultValue = "100000")
+    private long maxSize;
+
+    /**
+     * Time after which the participants of a chat in use are reloaded in the background.
+     */
+    @ConfigProperty(name = "profinder.chat.membership.refresh", defaultValue = "1m")
+    private Duration refresh;
+
+    /**
+     * Time after which the participants of a chat are not trusted anymore and are loaded again on use.
+     */
+    @ConfigProperty(name = "profinder.chat.membership.max-age", defaultValue = "10m")
+    private Duration maxAge;
+
+    /**
+     * IDs of the participants by chat ID; chats that do not exist are not cached.
+     */
+    private LoadingCache<Long, Set<Long>> participants;
+
+    /**
+     * Creates the cache.
+     */
+    @PostConstruct
+    void init() {
+        participants = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refresh)
+                .expireAfterWrite(maxAge)
+                .executor(executor)
+                .build(this::load);
+    }
+
+    /**
+     * Checks whether a user is a participant of a chat.
+     *
+     * @param chatId ID of the chat
+     * @param userId ID of the user
+     * @return true if the chat exists and the user is one of its participants
+     */
+    public boolean isParticipant(final Long chatId, final Long userId) {
+        Set<Long> ids = participants.get(chatId);
+        return ids != null && ids.contains(userId);
+    }
+
+    /**
+     * Drops the chats of a deleted user on every node, after the current transaction is committed if there
+     * is one.
+     *
+     * @param userId ID of the user
+     */
+    public void invalidateUser(final Long userId) {
+        if (transactionRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            removeUserEverywhere(userId);
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nothing to do before the commit
+            }
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    removeUserEverywhere(userId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the cached chats a user participates in on this node only, e.g. when told so by another node.
+     *
+     * @param userId ID of the user
+     */
+    public void removeUser(final Long userId) {
+        participants.asMap().values().removeIf(ids -> ids.contains(userId));
+        log.debug("Dropped cached chat memberships of user {}", userId);
+    }
+
+    /**
+     * Drops all cached chats of this node, e.g. after invalidations of other nodes may have been missed.
+     */
+    public void clear() {
+        participants.invalidateAll();
+    }
+
+    /**
+     * Drops the cached chats a user participates in on this node and tells the other nodes to do the same.
+     *
+     * @param userId ID of the user
+     */
+    private void removeUserEverywhere(final Long userId) {
+        removeUser(userId);
+        chatFanout.publishMembershipInvalidation(userId);
+    }
+
+    /**
+     * Reads the participants of a chat from the database.
+     *
+     * @param chatId ID of the chat
+     * @return IDs of the participants, or {@code null} if the chat does not exist
+     */
+    private Set<Long> load(final Long chatId) {
+        meterRegistry.counter("chat.membership.loads").increment();
+        return QuarkusTransaction.requiringNew().call(() -> chatRepository.findParticipantIds(chatId));
+    }
+}
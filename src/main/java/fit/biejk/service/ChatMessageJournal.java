@@ -0,0 +1,214 @@
+package fit.biejk.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fit.biejk.converter.ChatMessageDecoder;
+import fit.biejk.dto.ChatOutputMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only on-disk journal of the chat messages that were accepted but not yet stored in the database.
+ * <p>
+ * Messages are appended as JSON lines to the current segment file. When the write-behind takes the buffered
+ * messages for a flush, it rolls the journal, so the closed segment holds exactly those messages and can be
+ * deleted once they are stored. Segments left over from a crash are read back on startup.
+ * </p>
+ * <p>
+ * A written line survives a crash of the process. With {@code fsync} enabled it also survives a crash of
+ * the machine, at the cost of a disk flush per message.
+ * </p>
+ */
+@Slf4j
+final class ChatMessageJournal implements Closeable {
+
+    /**
+     * Prefix of the segment file names, followed by a zero-padded sequence number.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * Suffix of the segment file names.
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Mapper serializing the journal entries, with the same date format as the WebSocket messages.
+     */
+    private static final ObjectMapper JSON = ChatMessageDecoder.getJackson();
+
+    /**
+     * Directory holding the segments.
+     */
+    private final Path directory;
+
+    /**
+     * Whether every append is flushed to the disk.
+     */
+    private final boolean fsync;
+
+    /**
+     * Sequence number of the current segment.
+     */
+    private long segmentNumber;
+
+    /**
+     * Path of the current segment.
+     */
+    private Path segment;
+
+    /**
+     * Open channel of the current segment.
+     */
+    private FileChannel channel;
+
+    /**
+     * Opens the journal, creating the directory if needed.
+     * <p>
+     * Existing segments are left untouched until {@link #recover(List)} reads them; new messages go to a new
+     * segment after them.
+     * </p>
+     *
+     * @param directory directory holding the segments
+     * @param fsync     whether every append is flushed to the disk
+     * @throws IOException if the directory or the first segment cannot be created
+     */
+    ChatMessageJournal(final Path directory, final boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        segmentNumber = segments().stream().mapToLong(ChatMessageJournal::number).max().orElse(0);
+        open();
+    }
+
+    /**
+     * Reads the messages of all segments except the current one, oldest first.
+     *
+     * @param recovered list receiving the messages
+     * @return paths of the read segments, to be deleted once the messages are stored
+     * @throws IOException if a segment cannot be read
+     */
+    synchronized List<Path> recover(final List<ChatOutputMessage> recovered) throws IOException {
+        List<Path> old = segments().stream().filter(p -> !p.equals(segment)).toList();
+        for (Path path : old) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    recovered.add(JSON.readValue(line, ChatOutputMessage.class));
+                } catch (IOException e) {
+                    // the last line of a segment may be cut off by the crash
+                    log.warn("Skipping damaged journal entry in {}: {}", path.getFileName(), e.getMessage());
+                }
+            }
+        }
+        return old;
+    }
+
+    /**
+     * Appends a message to the current segment.
+     *
+     * @param message the message
+     * @throws IOException if the message cannot be written
+     */
+    synchronized void append(final ChatOutputMessage message) throws IOException {
+        byte[] line = (JSON.writeValueAsString(message) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one.
+     *
+     * @return path of the closed segment
+     * @throws IOException if the new segment cannot be created
+     */
+    synchronized Path roll() throws IOException {
+        Path closed = segment;
+        channel.close();
+        open();
+        return closed;
+    }
+
+    /**
+     * Deletes segments whose messages were stored.
+     *
+     * @param paths the segments
+     * @throws IOException if a segment cannot be deleted
+     */
+    void delete(final List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Closes the current segment, deleting it if it is empty.
+     *
+     * @throws IOException if the segment cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        long size = channel.size();
+        channel.close();
+        if (size == 0) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Opens the next segment for appending.
+     *
+     * @throws IOException if the segment cannot be created
+     */
+    private void open() throws IOException {
+        segmentNumber++;
+        segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Lists the segment files in the directory, oldest first.
+     *
+     * @return paths of the segments
+     * @throws IOException if the directory cannot be listed
+     */
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .toList());
+            segments.sort(null);
+            return segments;
+        }
+    }
+
+    /**
+     * Returns the sequence number of a segment.
+     *
+     * @param segment path of the segment
+     * @return the sequence number
+     */
+    private static long number(final Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -1,57 +1,53 @@
 package fit.biejk.service;
 
-import fit.biejk.entity.Chat;
-import fit.biejk.entity.ChatMessage;
-import fit.biejk.entity.User;
-import fit.biejk.repository.ChatMessageRepository;
+import fit.biejk.dto.ChatOutputMessage;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.transaction.Transactional;
 
 /**
  * Service class responsible for creating chat messages.
+ * <p>
+ * Messages are stored in the background by the {@link ChatMessageWriteBehind}; the sender and the chat
+ * are checked when the WebSocket session is opened, and the database enforces them again on insert.
+ * </p>
  */
 @ApplicationScoped
 public class ChatMessageService {
 
     /**
-     * Repository for performing database operations on {@link ChatMessage} entities.
+     * Maximum number of characters of a message, the length of the {@code content} column.
      */
-    @Inject
-    private ChatMessageRepository chatMessageRepository;
+    public static final int MAX_CONTENT_LENGTH = 255;
 
     /**
-     * Service used for retrieving user information.
+     * Write-behind storing the messages in batches.
      */
     @Inject
-    private UserService userService;
+    private ChatMessageWriteBehind chatMessageWriteBehind;
 
     /**
-     * Service used for retrieving chat information.
+     * Buffers of the newest messages of active chats.
      */
     @Inject
-    private ChatService chatService;
+    private ChatRecentMessages chatRecentMessages;
 
     /**
-     * Creates and persists a new {@link ChatMessage} entity in the specified chat.
+     * Creates a new message in the specified chat and queues it for storing.
      *
      * @param chatId  the ID of the chat to which the message belongs
      * @param fromId  the ID of the user sending the message
      * @param content the content of the message
-     * @return the newly created {@link ChatMessage}
+     * @return the accepted message with its ID and timestamp, ready to be broadcast
+     * @throws IllegalArgumentException if the content is longer than {@link #MAX_CONTENT_LENGTH}
+     * @throws IllegalStateException    if too many messages are waiting to be stored
      */
-    @Transactional
-    public ChatMessage create(final Long chatId, final Long fromId, final String content) {
-        User fromUser = userService.getById(fromId);
-        Chat chat = chatService.getById(chatId);
-
-        ChatMessage chatMessage = new ChatMessage();
-        chatMessage.setContent(content);
-        chatMessage.setSender(fromUser);
-        chatMessage.setChat(chat);
-
-        chatMessageRepository.persist(chatMessage);
-
-        return chatMessage;
+    public ChatOutputMessage create(final Long chatId, final Long fromId, final String content) {
+        // rejected before it is broadcast, as the database would drop it when stored
+        if (content != null && content.codePointCount(0, content.length()) > MAX_CONTENT_LENGTH) {
+            throw new IllegalArgumentException("Message is longer than " + MAX_CONTENT_LENGTH + " characters");
+        }
+        ChatOutputMessage message = chatMessageWriteBehind.submit(chatId, fromId, content);
+        chatRecentMessages.append(message);
+        return message;
     }
 }
@@ -0,0 +1,481 @@
+package fit.biejk.service;
+
+import fit.biejk.dto.ChatOutputMessage;
+import fit.biejk.entity.ChatMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.Startup;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores chat messages in the database in the background, in group commits.
+ * <p>
+ * A submitted message gets its ID and timestamp at once and is appended to the {@link ChatMessageJournal},
+ * so it can be broadcast right away. A single flusher thread wakes up every
+ * {@code profinder.chat.write-behind.flush-interval}, takes all buffered messages and stores them with
+ * multi-row inserts in one transaction per chunk, instead of one transaction per message. Once stored,
+ * their journal segment is deleted. IDs are reserved in blocks from the message sequence, so assigning
+ * them costs one database call per {@link ChatMessage#ID_ALLOCATION_SIZE} messages.
+ * </p>
+ * <p>
+ * If the database is unavailable, batches are kept in memory and in the journal and retried; messages
+ * left in the journal by a crash are stored on the next startup. Inserts ignore messages that already exist,
+ * so storing a batch twice is harmless. Messages rejected by a constraint, e.g. because their chat was
+ * deleted in the meantime, are dropped. A stored message shows up in the history with a delay of up to
+ * one flush interval.
+ * </p>
+ */
+@Slf4j
+@Startup
+@ApplicationScoped
+public class ChatMessageWriteBehind {
+
+    /**
+     * Columns written for every message, in parameter order.
+     */
+    private static final String INSERT_PREFIX =
+            "insert into \"chat-message\" (id, chat_id, sender_id, content, create_at) values ";
+
+    /**
+     * Placeholders of one row of the insert.
+     */
+    private static final String ROW = "(?, ?, ?, ?, ?)";
+
+    /**
+     * Clause making the insert idempotent when a batch is stored again.
+     */
+    private static final String ON_CONFLICT = " on conflict (id) do nothing";
+
+    /**
+     * Prefix of the SQL states of integrity constraint violations.
+     */
+    private static final String INTEGRITY_VIOLATION = "23";
+
+    /**
+     * Prefix of the SQL states of data exceptions, such as a value too long for its column.
+     */
+    private static final String DATA_EXCEPTION = "22";
+
+    /**
+     * Data source the messages are written to.
+     */
+    @Inject
+    private DataSource dataSource;
+
+    /**
+     * Registry for publishing write-behind metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Directory of the journal.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.journal-dir", defaultValue = "data/chat-journal")
+    private Path journalDir;
+
+    /**
+     * Whether every journal append is flushed to the disk.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.journal-fsync", defaultValue = "false")
+    private boolean journalFsync;
+
+    /**
+     * Time between two flushes.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.flush-interval", defaultValue = "5ms")
+    private Duration flushInterval;
+
+    /**
+     * Maximum number of rows of one insert statement.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.max-batch-size", defaultValue = "500")
+    private int maxBatchSize;
+
+    /**
+     * Maximum number of messages waiting to be stored; further messages are rejected.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.max-pending", defaultValue = "100000")
+    private int maxPending;
+
+    /**
+     * Time to wait before retrying a batch that could not be stored.
+     */
+    @ConfigProperty(name = "profinder.chat.write-behind.retry-backoff", defaultValue = "1s")
+    private Duration retryBackoff;
+
+    /**
+     * Journal of the messages not yet stored.
+     */
+    private ChatMessageJournal journal;
+
+    /**
+     * Messages submitted since the last flush, guarded by {@code this}.
+     */
+    private List<ChatOutputMessage> buffer = new ArrayList<>();
+
+    /**
+     * Batches taken from the buffer but not yet stored, oldest first; used only by the flusher thread.
+     */
+    private final Deque<Batch> unflushed = new ArrayDeque<>();
+
+    /**
+     * Number of submitted messages not yet stored.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Submitted messages not yet stored, by ID; a message is removed only after it was committed.
+     */
+    private final Map<Long, ChatOutputMessage> unstored = new ConcurrentHashMap<>();
+
+    /**
+     * Next reserved message ID, guarded by the ID lock.
+     */
+    private long nextId;
+
+    /**
+     * Last reserved message ID, guarded by the ID lock.
+     */
+    private long lastReservedId;
+
+    /**
+     * Lock guarding the reserved ID block.
+     */
+    private final Object idLock = new Object();
+
+    /**
+     * Thread running the flushes.
+     */
+    private Thread flusher;
+
+    /**
+     * Whether the flusher keeps running.
+     */
+    private volatile boolean running;
+
+    /**
+     * Number of rows per insert statement.
+     */
+    private DistributionSummary batchSizes;
+
+    /**
+     * Duration of storing one batch.
+     */
+    private Timer flushTimer;
+
+    /**
+     * Messages taken for one flush and the journal segments holding them.
+     *
+     * @param messages the messages
+     * @param segments journal segments to delete once the messages are stored
+     */
+    private record Batch(List<ChatOutputMessage> messages, List<Path> segments) {
+    }
+
+    /**
+     * Opens the journal, queues the messages left by a previous run and starts the flusher.
+     *
+     * @throws IOException if the journal cannot be opened or read
+     */
+    @PostConstruct
+    void init() throws IOException {
+        batchSizes = meterRegistry.summary("chat.write-behind.batch.size");
+        flushTimer = meterRegistry.timer("chat.write-behind.flush");
+        meterRegistry.gauge("chat.write-behind.pending", pending);
+
+        journal = new ChatMessageJournal(journalDir, journalFsync);
+        List<ChatOutputMessage> recovered = new ArrayList<>();
+        List<Path> segments = journal.recover(recovered);
+        if (!segments.isEmpty()) {
+            log.info("Recovered {} chat messages from {} journal segments", recovered.size(), segments.size());
+            pending.addAndGet(recovered.size());
+            recovered.forEach(m -> unstored.put(m.getId(), m));
+            unflushed.add(new Batch(recovered, segments));
+        }
+
+        running = true;
+        flusher = new Thread(this::run, "chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops the flusher and stores the remaining messages; whatever cannot be stored stays in the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     * @throws InterruptedException if interrupted while waiting for the flusher
+     */
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join();
+        takeBuffer();
+        flushUnflushed();
+        journal.close();
+    }
+
+    /**
+     * Accepts a new message: assigns its ID and timestamp and journals it for storing.
+     *
+     * @param chatId   ID of the chat
+     * @param senderId ID of the sender
+     * @param content  content of the message
+     * @return the accepted message, ready to be broadcast
+     * @throws IllegalStateException if too many messages are waiting to be stored
+     * @throws UncheckedIOException  if the message cannot be journaled
+     */
+    public ChatOutputMessage submit(final Long chatId, final Long senderId, final String content) {
+        if (pending.get() >= maxPending) {
+            meterRegistry.counter("chat.write-behind.rejected").increment();
+            throw new IllegalStateException("Too many chat messages waiting to be stored");
+        }
+        // the database keeps microseconds, so the broadcast timestamp matches the stored one
+        ChatOutputMessage message = new ChatOutputMessage(nextId(), chatId, content, senderId,
+                LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        synchronized (this) {
+            try {
+                journal.append(message);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to journal chat message", e);
+            }
+            buffer.add(message);
+            unstored.put(message.getId(), message);
+            pending.incrementAndGet();
+        }
+        return message;
+    }
+
+    /**
+     * Returns the accepted messages of a chat that are not stored in the database yet.
+     *
+     * @param chatId ID of the chat
+     * @return the messages, in no particular order
+     */
+    public List<ChatOutputMessage> getUnstored(final Long chatId) {
+        return unstored.values().stream().filter(m -> chatId.equals(m.getChatId())).toList();
+    }
+
+    /**
+     * Flushes the buffer every flush interval until stopped, backing off while the database is unavailable.
+     */
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(flushInterval);
+                takeBuffer();
+                if (!flushUnflushed()) {
+                    Thread.sleep(retryBackoff);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("Chat write-behind flush failed", e);
+            }
+        }
+    }
+
+    /**
+     * Moves the buffered messages into a new batch and rolls the journal, so the closed segment holds
+     * exactly the messages of the batch.
+     *
+     * @throws IOException if the journal cannot be rolled
+     */
+    private synchronized void takeBuffer() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Path segment = journal.roll();
+        unflushed.add(new Batch(buffer, List.of(segment)));
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Stores the waiting batches, oldest first, and deletes their journal segments.
+     *
+     * @return false if a batch could not be stored and is kept for a retry
+     * @throws IOException if a stored segment cannot be deleted
+     */
+    private boolean flushUnflushed() throws IOException {
+        Batch batch = unflushed.peek();
+        while (batch != null) {
+            try {
+                store(batch.messages());
+            } catch (SQLException e) {
+                log.warn("Failed to store {} chat messages, retrying in {}: {}",
+                        batch.messages().size(), retryBackoff, e.getMessage());
+                meterRegistry.counter("chat.write-behind.failed").increment();
+                return false;
+            }
+            unflushed.poll();
+            journal.delete(batch.segments());
+            pending.addAndGet(-batch.messages().size());
+            batch.messages().forEach(m -> unstored.remove(m.getId()));
+            batch = unflushed.peek();
+        }
+        return true;
+    }
+
+    /**
+     * Stores messages with multi-row inserts, one transaction per chunk.
+     * <p>
+     * If a chunk is rejected because of one of its rows, its messages are inserted one by one and the rejected
+     * ones dropped.
+     * </p>
+     *
+     * @param messages the messages
+     * @throws SQLException if the database is unavailable
+     */
+    private void store(final List<ChatOutputMessage> messages) throws SQLException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            for (int from = 0; from < messages.size(); from += maxBatchSize) {
+                List<ChatOutputMessage> chunk = messages.subList(from, Math.min(from + maxBatchSize, messages.size()));
+                try {
+                    insert(connection, chunk);
+                    connection.commit();
+                    batchSizes.record(chunk.size());
+                } catch (SQLException e) {
+                    connection.rollback();
+                    if (!isRowError(e)) {
+                        throw e;
+                    }
+                    storeOneByOne(connection, chunk);
+                }
+            }
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    /**
+     * Stores messages one per transaction, dropping those rejected because of their own values.
+     *
+     * @param connection connection to use, with auto-commit disabled
+     * @param messages   the messages
+     * @throws SQLException if the database is unavailable
+     */
+    private void storeOneByOne(final Connection connection, final List<ChatOutputMessage> messages)
+            throws SQLException {
+        for (ChatOutputMessage message : messages) {
+            try {
+                insert(connection, List.of(message));
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                if (!isRowError(e)) {
+                    throw e;
+                }
+                log.warn("Dropping chat message {} of chat {}: {}", message.getId(), message.getChatId(),
+                        e.getMessage());
+                meterRegistry.counter("chat.write-behind.dropped").increment();
+            }
+        }
+    }
+
+    /**
+     * Inserts messages with a single multi-row statement.
+     *
+     * @param connection connection to use
+     * @param messages   the messages
+     * @throws SQLException if the insert fails
+     */
+    private static void insert(final Connection connection, final List<ChatOutputMessage> messages)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        for (int i = 0; i < messages.size(); i++) {
+            sql.append(i == 0 ? ROW : ", " + ROW);
+        }
+        sql.append(ON_CONFLICT);
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            for (ChatOutputMessage message : messages) {
+                statement.setLong(parameter++, message.getId());
+                statement.setLong(parameter++, message.getChatId());
+                statement.setLong(parameter++, message.getSenderId());
+                statement.setString(parameter++, message.getContent());
+                statement.setTimestamp(parameter++, Timestamp.valueOf(message.getCreateAt()));
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Reserves the next message ID, drawing a new block from the sequence when the current one is used up.
+     * <p>
+     * Like Hibernate's pooled optimizer, every value of the sequence is the last ID of a block of
+     * {@link ChatMessage#ID_ALLOCATION_SIZE} IDs.
+     * </p>
+     *
+     * @return the ID
+     * @throws IllegalStateException if the sequence cannot be read
+     */
+    private long nextId() {
+        synchronized (idLock) {
+            if (nextId == 0 || nextId > lastReservedId) {
+                long last = readSequence();
+                nextId = Math.max(1, last - ChatMessage.ID_ALLOCATION_SIZE + 1);
+                lastReservedId = last;
+            }
+            return nextId++;
+        }
+    }
+
+    /**
+     * Reads the next value of the message ID sequence.
+     *
+     * @return the value
+     * @throws IllegalStateException if the sequence cannot be read
+     */
+    private long readSequence() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "select nextval('" + ChatMessage.ID_SEQUENCE + "')");
+             ResultSet result = statement.executeQuery()) {
+            result.next();
+            return result.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to reserve chat message IDs", e);
+        }
+    }
+
+    /**
+     * Tells whether an SQL error is caused by the values of a row: an integrity constraint violation or a
+     * data exception. Storing such a row again can never succeed.
+     *
+     * @param e the error
+     * @return true for constraint violations and data exceptions
+     */
+    private static boolean isRowError(final SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith(INTEGRITY_VIOLATION) || state.startsWith(DATA_EXCEPTION));
+    }
+}
@@ -0,0 +1,420 @@
+package fit.biejk.service;
+
+import fit.biejk.dto.ChatHistoryCursor;
+import fit.biejk.dto.ChatHistoryPage;
+import fit.biejk.dto.ChatOutputMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory buffers of the newest messages of the chats that are active on this node.
+ * <p>
+ * Every buffer holds a gap-free run of the newest messages of one chat, ordered by {@code (createAt, id)},
+ * up to {@code profinder.chat.recent.capacity} messages. Buffers are kept only for chats with sessions on
+ * this node, because only for those does the node see every new message: its own through
+ * {@link ChatMessageService#create}, those of other nodes through the chat fan-out. A buffer is only
+ * created by filling it from the database on the first history request, so it always starts with the
+ * newest messages of the chat; new messages are added to it from then on, and history pages that lie
+ * within it are served without a query.
+ * </p>
+ * <p>
+ * The buffers of all chats together are limited to {@code profinder.chat.recent.max-bytes}; the chats
+ * read or written least recently are evicted first. A buffer is also rebuilt after
+ * {@code profinder.chat.recent.max-age}, which bounds the effect of a message from another node that
+ * arrived just before the buffer was filled and was not yet stored.
+ * </p>
+ */
+@ApplicationScoped
+public class ChatRecentMessages {
+
+    /**
+     * Estimated memory taken by a message apart from its content: the DTO, its boxed fields and
+     * the timestamp.
+     */
+    private static final long MESSAGE_OVERHEAD_BYTES = 128;
+
+    /**
+     * Order of the messages in the history.
+     */
+    private static final Comparator<ChatOutputMessage> HISTORY_ORDER =
+            Comparator.comparing(ChatOutputMessage::getCreateAt).thenComparing(ChatOutputMessage::getId);
+
+    /**
+     * Registry for publishing buffer metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Maximum number of messages buffered per chat.
+     */
+    @ConfigProperty(name = "profinder.chat.recent.capacity", defaultValue = "100")
+    private int capacity;
+
+    /**
+     * Maximum estimated memory of all buffers together.
+     */
+    @ConfigProperty(name = "profinder.chat.recent.max-bytes", defaultValue = "67108864")
+    private long maxBytes;
+
+    /**
+     * Time after which a buffer is dropped and filled again.
+     */
+    @ConfigProperty(name = "profinder.chat.recent.max-age", defaultValue = "5m")
+    private Duration maxAge;
+
+    /**
+     * Chats with sessions on this node.
+     */
+    private final Set<Long> trackedChats = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Buffers by chat ID, least recently used first; guarded by {@code this}.
+     */
+    private final LinkedHashMap<Long, Ring> rings = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Estimated memory of all buffers; guarded by {@code this}.
+     */
+    private long totalBytes;
+
+    /**
+     * Buffered messages of one chat.
+     */
+    private static final class Ring {
+
+        /**
+         * Messages ordered from oldest to newest.
+         */
+        private final List<ChatOutputMessage> messages = new ArrayList<>();
+
+        /**
+         * Time the buffer was created, from {@link System#nanoTime()}.
+         */
+        private final long createdAt = System.nanoTime();
+
+        /**
+         * Whether the buffer holds the whole history of the chat.
+         */
+        private boolean complete;
+
+        /**
+         * Whether the buffer was filled and may serve pages; a buffer being filled only collects messages.
+         */
+        private boolean ready;
+
+        /**
+         * Estimated memory of the buffered messages.
+         */
+        private long bytes;
+    }
+
+    /**
+     * Registers the memory and size gauges.
+     */
+    @PostConstruct
+    void init() {
+        meterRegistry.gauge("chat.recent.bytes", this, ChatRecentMessages::bytes);
+        meterRegistry.gauge("chat.recent.chats", this, ChatRecentMessages::chats);
+    }
+
+    /**
+     * Returns the maximum number of messages buffered per chat.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Starts keeping a buffer for a chat that got its first session on this node.
+     *
+     * @param chatId ID of the chat
+     */
+    public void track(final Long chatId) {
+        trackedChats.add(chatId);
+    }
+
+    /**
+     * Drops the buffer of a chat that has no sessions on this node anymore, since new messages of other
+     * nodes will no longer reach it.
+     *
+     * @param chatId ID of the chat
+     */
+    public void untrack(final Long chatId) {
+        trackedChats.remove(chatId);
+        synchronized (this) {
+            remove(chatId);
+        }
+    }
+
+    /**
+     * Drops the buffer of a chat after messages of other nodes were missed; the chat stays tracked, so the
+     * next history request fills the buffer again.
+     *
+     * @param chatId ID of the chat
+     */
+    public synchronized void drop(final Long chatId) {
+        remove(chatId);
+    }
+
+    /**
+     * Drops all buffers, e.g. after messages of other nodes may have been missed.
+     */
+    public synchronized void clear() {
+        rings.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Adds a new message to the buffer of its chat, if the chat has one.
+     * <p>
+     * Without a buffer the message is not kept: the fill started by the next history request reads it from
+     * the write-behind or the database.
+     * </p>
+     *
+     * @param message the message
+     */
+    public synchronized void append(final ChatOutputMessage message) {
+        Ring ring = rings.get(message.getChatId());
+        if (ring == null) {
+            return;
+        }
+        add(ring, List.of(message));
+        evict();
+    }
+
+    /**
+     * Starts filling the buffer of a chat from the database, if the chat is active on this node and has no
+     * buffer yet.
+     * <p>
+     * New messages are collected from now on, so the caller must read the unstored and then the stored
+     * messages afterwards and pass them to {@link #fill}.
+     * </p>
+     *
+     * @param chatId ID of the chat
+     * @return true if the caller should fill the buffer
+     */
+    public synchronized boolean startFill(final Long chatId) {
+        if (!trackedChats.contains(chatId) || rings.containsKey(chatId)) {
+            return false;
+        }
+        rings.put(chatId, new Ring());
+        return true;
+    }
+
+    /**
+     * Completes filling the buffer of a chat.
+     *
+     * @param chatId   ID of the chat
+     * @param newest   the newest messages of the chat, in any order
+     * @param complete whether the messages are the whole history of the chat
+     */
+    public synchronized void fill(final Long chatId, final Collection<ChatOutputMessage> newest,
+                                  final boolean complete) {
+        Ring ring = rings.get(chatId);
+        if (ring == null || ring.ready) {
+            return;
+        }
+        ring.complete = complete;
+        add(ring, newest);
+        ring.ready = true;
+        evict();
+    }
+
+    /**
+     * Serves a history page from the buffer of a chat if the buffer holds all messages of the page.
+     *
+     * @param chatId ID of the chat
+     * @param before position to read older messages from, or {@code null}
+     * @param after  position to read newer messages from, or {@code null}
+     * @param limit  number of messages per page
+     * @return the page, or {@code null} if the buffer cannot serve it
+     */
+    public ChatHistoryPage<ChatOutputMessage> page(final Long chatId, final ChatHistoryCursor before,
+                                                   final ChatHistoryCursor after, final int limit) {
+        ChatHistoryPage<ChatOutputMessage> page;
+        synchronized (this) {
+            page = servePage(chatId, before, after, limit);
+        }
+        meterRegistry.counter("chat.recent.requests", "result", page != null ? "hit" : "miss").increment();
+        return page;
+    }
+
+    /**
+     * Builds a history page from the buffer of a chat.
+     *
+     * @param chatId ID of the chat
+     * @param before position to read older messages from, or {@code null}
+     * @param after  position to read newer messages from, or {@code null}
+     * @param limit  number of messages per page
+     * @return the page, or {@code null} if the buffer cannot serve it
+     */
+    private ChatHistoryPage<ChatOutputMessage> servePage(final Long chatId, final ChatHistoryCursor before,
+                                                         final ChatHistoryCursor after, final int limit) {
+        Ring ring = rings.get(chatId);
+        if (ring == null || !ring.ready) {
+            return null;
+        }
+        if (System.nanoTime() - ring.createdAt > maxAge.toNanos()) {
+            remove(chatId);
+            return null;
+        }
+        List<ChatOutputMessage> messages = ring.messages;
+
+        if (after != null) {
+            // the buffer holds every message newer than its oldest one
+            boolean covered = ring.complete || !messages.isEmpty() && compare(messages.get(0), after) <= 0;
+            if (!covered) {
+                return null;
+            }
+            List<ChatOutputMessage> newer = newerThan(messages, after, limit + 1);
+            boolean hasNewer = newer.size() > limit;
+            return ChatHistoryPage.of(hasNewer ? newer.subList(0, limit) : newer, true, hasNewer);
+        }
+
+        int end = messages.size();
+        if (before != null) {
+            while (end > 0 && compare(messages.get(end - 1), before) >= 0) {
+                end--;
+            }
+        }
+        if (end > limit) {
+            return ChatHistoryPage.of(List.copyOf(messages.subList(end - limit, end)), true, before != null);
+        }
+        if (ring.complete) {
+            return ChatHistoryPage.of(List.copyOf(messages.subList(0, end)), false, before != null);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the buffered messages following a position.
+     *
+     * @param messages buffered messages, oldest first
+     * @param after    the position
+     * @param max      maximum number of messages
+     * @return the messages, oldest first
+     */
+    private static List<ChatOutputMessage> newerThan(final List<ChatOutputMessage> messages,
+                                                     final ChatHistoryCursor after, final int max) {
+        List<ChatOutputMessage> newer = new ArrayList<>();
+        for (ChatOutputMessage message : messages) {
+            if (newer.size() == max) {
+                break;
+            }
+            if (compare(message, after) > 0) {
+                newer.add(message);
+            }
+        }
+        return newer;
+    }
+
+    /**
+     * Adds messages to a buffer in history order, skipping messages already buffered and dropping the oldest
+     * messages above the capacity.
+     *
+     * @param ring     the buffer
+     * @param messages the messages
+     */
+    private void add(final Ring ring, final Collection<ChatOutputMessage> messages) {
+        for (ChatOutputMessage message : messages) {
+            int position = Collections.binarySearch(ring.messages, message, HISTORY_ORDER);
+            if (position >= 0) {
+                continue;
+            }
+            ring.messages.add(-position - 1, message);
+            ring.bytes += size(message);
+            totalBytes += size(message);
+        }
+        while (ring.messages.size() > capacity) {
+            ChatOutputMessage dropped = ring.messages.remove(0);
+            ring.bytes -= size(dropped);
+            totalBytes -= size(dropped);
+            ring.complete = false;
+        }
+    }
+
+    /**
+     * Evicts the least recently used buffers until the memory limit is met.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, Ring>> eldest = rings.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            meterRegistry.counter("chat.recent.evictions").increment();
+        }
+    }
+
+    /**
+     * Drops the buffer of a chat.
+     *
+     * @param chatId ID of the chat
+     */
+    private void remove(final Long chatId) {
+        Ring ring = rings.remove(chatId);
+        if (ring != null) {
+            totalBytes -= ring.bytes;
+        }
+    }
+
+    /**
+     * Compares a message with a position in the history.
+     *
+     * @param message the message
+     * @param cursor  the position
+     * @return a negative number, zero or a positive number if the message is before, at or after the position
+     */
+    private static int compare(final ChatOutputMessage message, final ChatHistoryCursor cursor) {
+        LocalDateTime createAt = message.getCreateAt();
+        int byTime = createAt.compareTo(cursor.createAt());
+        return byTime != 0 ? byTime : message.getId().compareTo(cursor.id());
+    }
+
+    /**
+     * Estimates the memory taken by a buffered message.
+     *
+     * @param message the message
+     * @return the size in bytes
+     */
+    private static long size(final ChatOutputMessage message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD_BYTES + (content != null ? 2L * content.length() : 0);
+    }
+
+    /**
+     * Returns the estimated memory of all buffers.
+     *
+     * @return the size in bytes
+     */
+    private synchronized double bytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the number of buffered chats.
+     *
+     * @return the number of chats
+     */
+    private synchronized double chats() {
+        return rings.size();
+    }
+}
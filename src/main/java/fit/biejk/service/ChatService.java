@@ -1,8 +1,13 @@
 package fit.biejk.service;
 
+import fit.biejk.dto.ChatHistoryCursor;
+import fit.biejk.dto.ChatHistoryPage;
+import fit.biejk.dto.ChatOutputMessage;
 import fit.biejk.entity.Chat;
 import fit.biejk.entity.ChatMessage;
 import fit.biejk.entity.User;
+import fit.biejk.mapper.ChatMessageMapper;
+import fit.biejk.repository.ChatMessageRepository;
 import fit.biejk.repository.ChatRepository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -10,8 +15,14 @@ import jakarta.transaction.Transactional;
 import jakarta.ws.rs.NotFoundException;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service for handling chat operations, such as creating new chats,
@@ -28,12 +39,48 @@ public class ChatService {
     @Inject
     private ChatRepository chatRepository;
 
+    /**
+     * Repository for reading the message history of chats.
+     */
+    @Inject
+    private ChatMessageRepository chatMessageRepository;
+
+    /**
+     * Buffers of the newest messages of active chats.
+     */
+    @Inject
+    private ChatRecentMessages chatRecentMessages;
+
+    /**
+     * Write-behind holding the messages not yet stored.
+     */
+    @Inject
+    private ChatMessageWriteBehind chatMessageWriteBehind;
+
+    /**
+     * Mapper to convert chat messages to DTOs.
+     */
+    @Inject
+    private ChatMessageMapper chatMessageMapper;
+
     /**
      * Service for user-related operations.
      */
     @Inject
     private UserService userService;
 
+    /**
+     * Number of messages per history page if the client does not ask for a size.
+     */
+    @ConfigProperty(name = "profinder.chat.history.page-size.default", defaultValue = "50")
+    private int defaultHistoryPageSize;
+
+    /**
+     * Maximum number of messages per history page.
+     */
+    @ConfigProperty(name = "profinder.chat.history.page-size.max", defaultValue = "200")
+    private int maxHistoryPageSize;
+
     /**
      * Creates a new chat between two users if it doesn't already exist.
      *
@@ -83,15 +130,126 @@ public class ChatService {
     }
 
     /**
-     * Retrieves the list of messages in a given chat.
+     * Retrieves one page of the message history of a chat, ordered by creation time and ID.
+     * <p>
+     * Without a cursor the newest messages are returned. With {@code before} the page holds the messages
+     * just older than the cursor, with {@code after} the messages just newer than it. Pages within the
+     * recent messages of a chat active on this node are served from {@link ChatRecentMessages}; the first
+     * request for the newest messages of such a chat fills its buffer. Otherwise one message more than
+     * the page size is read to tell whether further messages exist, so no count query is needed.
+     * </p>
+     * <p>
+     * Messages are stored by the {@link ChatMessageWriteBehind} shortly after they are accepted. Pages read
+     * with {@code after} from the database include the messages not yet stored by this node, but a message
+     * accepted by another node only appears once that node stored it, i.e. within
+     * {@code profinder.chat.write-behind.flush-interval} while the database is healthy. A message older
+     * than the cursor that is stored later is not returned by {@code after}; live clients receive it over
+     * the chat WebSocket, and others see it when they read the history again without a cursor.
+     * </p>
      *
      * @param chatId ID of the chat
-     * @return list of {@link ChatMessage} in the chat
+     * @param before token of the position to read older messages from, or {@code null}
+     * @param after  token of the position to read newer messages from, or {@code null}
+     * @param size   number of messages requested by the client, or {@code null} for the default
+     * @return the page, with messages ordered from oldest to newest
+     * @throws NotFoundException        if no chat is found with the given ID
+     * @throws IllegalArgumentException if both cursors are given or a cursor is malformed
      */
-    public List<ChatMessage> getMessagesById(final Long chatId) {
-        log.info("Getting history for chat {}", chatId);
-        Chat chat = getById(chatId);
-        return chat.getMessages();
+    public ChatHistoryPage<ChatOutputMessage> getHistory(final Long chatId, final String before,
+                                                         final String after, final Integer size) {
+        log.info("Getting history for chat {}: before={}, after={}, size={}", chatId, before, after, size);
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Only one of before and after can be given");
+        }
+        ChatHistoryCursor beforeCursor = before != null ? ChatHistoryCursor.decode(before) : null;
+        ChatHistoryCursor afterCursor = after != null ? ChatHistoryCursor.decode(after) : null;
+        int limit = historyPageSize(size);
+
+        ChatHistoryPage<ChatOutputMessage> recent = chatRecentMessages.page(chatId, beforeCursor, afterCursor, limit);
+        if (recent != null) {
+            return recent;
+        }
+        getById(chatId);
+
+        if (afterCursor != null) {
+            List<ChatOutputMessage> messages = findAfter(chatId, afterCursor, limit + 1);
+            boolean hasNewer = messages.size() > limit;
+            return ChatHistoryPage.of(hasNewer ? messages.subList(0, limit) : messages, true, hasNewer);
+        }
+
+        if (beforeCursor == null && chatRecentMessages.startFill(chatId)) {
+            fillRecent(chatId);
+            recent = chatRecentMessages.page(chatId, null, null, limit);
+            if (recent != null) {
+                return recent;
+            }
+        }
+
+        List<ChatMessage> messages = beforeCursor != null
+                ? chatMessageRepository.findBefore(chatId, beforeCursor.createAt(), beforeCursor.id(), limit + 1)
+                : chatMessageRepository.findLatest(chatId, limit + 1);
+        boolean hasOlder = messages.size() > limit;
+        List<ChatOutputMessage> chronological = new ArrayList<>(
+                chatMessageMapper.toDtoList(hasOlder ? messages.subList(0, limit) : messages));
+        Collections.reverse(chronological);
+        return ChatHistoryPage.of(chronological, hasOlder, beforeCursor != null);
+    }
+
+    /**
+     * Reads the messages of a chat that follow a position in the history, including those not yet stored.
+     * <p>
+     * The unstored messages are read first, so a message stored in between is read from the database and
+     * only kept once.
+     * </p>
+     *
+     * @param chatId ID of the chat
+     * @param after  position to read newer messages from
+     * @param limit  maximum number of messages
+     * @return messages ordered from oldest to newest
+     */
+    private List<ChatOutputMessage> findAfter(final Long chatId, final ChatHistoryCursor after, final int limit) {
+        Map<Long, ChatOutputMessage> byId = new HashMap<>();
+        for (ChatOutputMessage message : chatMessageWriteBehind.getUnstored(chatId)) {
+            int byTime = message.getCreateAt().compareTo(after.createAt());
+            if (byTime > 0 || byTime == 0 && message.getId() > after.id()) {
+                byId.put(message.getId(), message);
+            }
+        }
+        chatMessageMapper.toDtoList(chatMessageRepository.findAfter(chatId, after.createAt(), after.id(), limit))
+                .forEach(message -> byId.put(message.getId(), message));
+        return byId.values().stream()
+                .sorted(Comparator.comparing(ChatOutputMessage::getCreateAt).thenComparing(ChatOutputMessage::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Fills the recent-message buffer of a chat with its newest stored and not yet stored messages.
+     * <p>
+     * The unstored messages are read first: a message stored after that read is visible to the query.
+     * </p>
+     *
+     * @param chatId ID of the chat
+     */
+    private void fillRecent(final Long chatId) {
+        List<ChatOutputMessage> newest = new ArrayList<>(chatMessageWriteBehind.getUnstored(chatId));
+        int capacity = chatRecentMessages.capacity();
+        List<ChatMessage> stored = chatMessageRepository.findLatest(chatId, capacity + 1);
+        newest.addAll(chatMessageMapper.toDtoList(stored));
+        chatRecentMessages.fill(chatId, newest, stored.size() <= capacity);
+    }
+
+    /**
+     * Resolves the size of a history page.
+     *
+     * @param size size requested by the client, or {@code null} to use the default
+     * @return page size between 1 and the configured maximum
+     */
+    private int historyPageSize(final Integer size) {
+        if (size == null) {
+            return Math.min(defaultHistoryPageSize, maxHistoryPageSize);
+        }
+        return Math.max(1, Math.min(size, maxHistoryPageSize));
     }
 
     /**
@@ -0,0 +1,195 @@
+package fit.biejk.service;
+
+import fit.biejk.entity.Location;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides precomputed distances between the fixed set of {@link Location}s.
+ * <p>
+ * The great-circle distances between all pairs of locations are computed once, when first needed,
+ * so callers can filter and sort by proximity with plain lookups instead of trigonometry per request.
+ * The table is computed at startup, so non-blocking callers never hit the database.
+ * </p>
+ * <p>
+ * The application has no write path for locations; they are maintained directly in the database. The table
+ * is therefore recomputed every {@code profinder.location.distance-refresh}, and a future write path should
+ * call {@link #refresh()} after its commit.
+ * </p>
+ */
+@Slf4j
+@Startup
+@ApplicationScoped
+public class LocationDistanceService {
+
+    /**
+     * Mean radius of the Earth in kilometres.
+     */
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    /**
+     * Service for loading the locations.
+     */
+    @Inject
+    private LocationService locationService;
+
+    /**
+     * Current distance table; replaced as a whole by {@link #refresh()}.
+     */
+    private volatile DistanceTable table;
+
+    /**
+     * Computes the distance table at startup; if that fails, it is computed on first use instead.
+     */
+    @PostConstruct
+    void init() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Failed to precompute location distances: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the location with the given name together with its coordinates.
+     *
+     * @param name name of the location
+     * @return the location, or {@code null} if no location has that name
+     */
+    public Location getByName(final String name) {
+        return table().byName().get(name);
+    }
+
+    /**
+     * Returns the distance between two locations.
+     *
+     * @param fromId ID of the first location
+     * @param toId   ID of the second location
+     * @return distance in kilometres, or {@link Double#POSITIVE_INFINITY} if a location has no coordinates
+     */
+    public double distanceKm(final Long fromId, final Long toId) {
+        Map<Long, Double> row = table().distances().get(fromId);
+        if (row == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return row.getOrDefault(toId, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the locations within a radius of a location, nearest first.
+     *
+     * @param fromId   ID of the centre location
+     * @param radiusKm radius in kilometres
+     * @return locations within the radius, including the centre itself
+     */
+    public List<Location> withinRadius(final Long fromId, final double radiusKm) {
+        DistanceTable current = table();
+        Map<Long, Double> row = current.distances().getOrDefault(fromId, Map.of());
+        List<Location> result = new ArrayList<>();
+        for (Location location : current.byName().values()) {
+            if (row.getOrDefault(location.getId(), Double.POSITIVE_INFINITY) <= radiusKm) {
+                result.add(location);
+            }
+        }
+        result.sort(Comparator.comparingDouble(l -> row.get(l.getId())));
+        return result;
+    }
+
+    /**
+     * Recomputes the distance table periodically, so locations changed in the database are picked up.
+     */
+    @Scheduled(every = "${profinder.location.distance-refresh}", delayed = "${profinder.location.distance-refresh}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh location distances: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes the distance table from the current locations.
+     */
+    public void refresh() {
+        List<Location> locations = QuarkusTransaction.joiningExisting().call(locationService::getAll);
+        Map<String, Location> byName = new HashMap<>();
+        Map<Long, Map<Long, Double>> distances = new HashMap<>();
+        for (Location from : locations) {
+            byName.put(from.getName(), from);
+            Map<Long, Double> row = new HashMap<>();
+            for (Location to : locations) {
+                if (hasCoordinates(from) && hasCoordinates(to)) {
+                    row.put(to.getId(), haversineKm(from, to));
+                }
+            }
+            distances.put(from.getId(), row);
+        }
+        table = new DistanceTable(byName, distances);
+        log.info("Precomputed distances between {} locations", locations.size());
+    }
+
+    /**
+     * Returns the distance table, computing it on first use.
+     *
+     * @return the distance table
+     */
+    private DistanceTable table() {
+        DistanceTable current = table;
+        if (current == null) {
+            synchronized (this) {
+                if (table == null) {
+                    refresh();
+                }
+                current = table;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Checks whether a location has both coordinates.
+     *
+     * @param location the location
+     * @return {@code true} if latitude and longitude are set
+     */
+    private static boolean hasCoordinates(final Location location) {
+        return location.getLatitude() != null && location.getLongitude() != null;
+    }
+
+    /**
+     * Computes the great-circle distance between two locations using the haversine formula.
+     *
+     * @param from first location
+     * @param to   second location
+     * @return distance in kilometres
+     */
+    private static double haversineKm(final Location from, final Location to) {
+        double dLat = Math.toRadians(to.getLatitude() - from.getLatitude());
+        double dLon = Math.toRadians(to.getLongitude() - from.getLongitude());
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(from.getLatitude())) * Math.cos(Math.toRadians(to.getLatitude()))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * Immutable snapshot of the locations and the distances between them.
+     *
+     * @param byName    locations by name
+     * @param distances distances in kilometres by source and target location ID
+     */
+    private record DistanceTable(Map<String, Location> byName, Map<Long, Map<Long, Double>> distances) {
+    }
+}
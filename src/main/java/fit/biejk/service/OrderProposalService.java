@@ -39,6 +39,12 @@ public class OrderProposalService {
     @Inject
     private OrderRepository orderRepository;
 
+    /**
+     * Service recording the activity of the specialist submitting a proposal.
+     */
+    @Inject
+    private SpecialistService specialistService;
+
     /**
      * Creates a new proposal for an order and assigns it the {@link ProposalStatus#CREATED} status.
      *
@@ -52,6 +58,7 @@ public class OrderProposalService {
 
         orderProposal.setStatus(ProposalStatus.CREATED);
         orderProposalRepository.persist(orderProposal);
+        specialistService.recordActivity(orderProposal.getSpecialist().getId());
 
         log.debug("Proposal created with ID={}, status={}", orderProposal.getId(), orderProposal.getStatus());
         return orderProposal;
@@ -2,9 +2,7 @@ package fit.biejk.service;
 
 import fit.biejk.entity.*;
 import fit.biejk.repository.OrderRepository;
-import fit.biejk.search.OrderSearchDto;
-import fit.biejk.search.OrderSearchMapper;
-import fit.biejk.search.OrderSearchService;
+import fit.biejk.search.SearchOutbox;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
@@ -26,16 +24,11 @@ import java.util.List;
 public class OrderService {
 
     /**
-     * Service for indexing orders in Elasticsearch.
+     * Outbox recording changes that must be propagated to the search index.
      */
     @Inject
-    private OrderSearchService orderSearchService;
+    private SearchOutbox searchOutbox;
 
-    /**
-     * Mapper responsible for converting Order to OrderSearchDto.
-     */
-    @Inject
-    private OrderSearchMapper orderSearchMapper;
     /**
      * Repository for accessing order data.
      */
@@ -67,8 +60,7 @@ public class OrderService {
         orderRepository.persist(order);
         log.debug("Order created with ID={}", order.getId());
 
-        OrderSearchDto dto = orderSearchMapper.toDto(order);
-        orderSearchService.save(dto);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, order.getId(), SearchOperation.CREATE);
 
         return order;
     }
@@ -95,8 +87,7 @@ public class OrderService {
         old.setPrice(order.getPrice());
         old.setDeadline(order.getDeadline());
 
-        OrderSearchDto dto = orderSearchMapper.toDto(old);
-        orderSearchService.save(dto);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, old.getId(), SearchOperation.UPSERT);
 
         log.debug("Order updated with ID={}", orderId);
         return old;
@@ -118,7 +109,7 @@ public class OrderService {
         }
         orderRepository.delete(order);
 
-        orderSearchService.delete(orderId);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, orderId, SearchOperation.DELETE);
 
         log.debug("Order deleted with ID={}", orderId);
     }
@@ -141,8 +132,7 @@ public class OrderService {
         order.setStatus(order.getStatus().transitionTo(OrderStatus.CANCELLED));
         orderRepository.persist(order);
 
-        OrderSearchDto dto = orderSearchMapper.toDto(order);
-        orderSearchService.save(dto);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, order.getId(), SearchOperation.UPDATE_STATUS);
 
         log.debug("Order canceled with ID={}", orderId);
         return order;
@@ -177,6 +167,43 @@ public class OrderService {
         return orders;
     }
 
+    /**
+     * Retrieves all orders with the given IDs.
+     * <p>
+     * IDs that do not exist are skipped.
+     * </p>
+     *
+     * @param ids IDs of the orders
+     * @return list of found orders
+     */
+    public List<Order> getByIds(final List<Long> ids) {
+        log.debug("Get orders by IDs: count={}", ids.size());
+        return orderRepository.findByIds(ids);
+    }
+
+    /**
+     * Retrieves all orders with the given IDs without their service offerings and proposals.
+     *
+     * @param ids IDs of the orders
+     * @return list of found orders
+     */
+    public List<Order> getPlainByIds(final List<Long> ids) {
+        log.debug("Get plain orders by IDs: count={}", ids.size());
+        return orderRepository.findPlainByIds(ids);
+    }
+
+    /**
+     * Retrieves the next chunk of orders ordered by ID.
+     *
+     * @param afterId ID of the last order of the previous chunk
+     * @param size    maximum number of orders to return
+     * @return list of orders with IDs greater than {@code afterId}
+     */
+    public List<Order> getChunkAfterId(final Long afterId, final int size) {
+        log.debug("Get orders chunk: afterId={}, size={}", afterId, size);
+        return orderRepository.findChunkAfterId(afterId, size);
+    }
+
     /**
      * Adds a new proposal to an order.
      *
@@ -199,8 +226,7 @@ public class OrderService {
         order.setStatus(order.getStatus().transitionTo(OrderStatus.CLIENT_PENDING));
         orderRepository.persist(order);
 
-        OrderSearchDto dto = orderSearchMapper.toDto(order);
-        orderSearchService.save(dto);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, order.getId(), SearchOperation.UPDATE_STATUS);
 
         log.debug("Proposal created with ID={}", proposal.getId());
         return proposal;
@@ -292,8 +318,7 @@ public class OrderService {
 
         orderRepository.persist(order);
 
-        OrderSearchDto dto = orderSearchMapper.toDto(order);
-        orderSearchService.save(dto);
+        searchOutbox.enqueue(SearchDocumentType.ORDER, order.getId(), SearchOperation.UPSERT);
 
         log.debug("Order confirmed with ID={}", order.getId());
         return order;
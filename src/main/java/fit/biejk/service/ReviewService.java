@@ -50,8 +50,8 @@ public class ReviewService {
         reviewRepository.persist(review);
         log.debug("Review persisted: reviewId={}", review.getId());
 
-        specialistService.computeAverageRating(review.getSpecialist().getId());
-        log.debug("Average rating recalculated for specialistId={}", review.getSpecialist().getId());
+        specialistService.addRating(review.getSpecialist().getId(), review.getRating());
+        log.debug("Average rating updated for specialistId={}", review.getSpecialist().getId());
 
         return review;
     }
@@ -0,0 +1,176 @@
+package fit.biejk.service;
+
+import fit.biejk.entity.SavedSearch;
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.entity.ServiceOffering;
+import fit.biejk.repository.SavedSearchRepository;
+import fit.biejk.search.SearchOutbox;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+
+/**
+ * Service for managing {@link SavedSearch} entities.
+ * <p>
+ * Every change is recorded in the search outbox, which keeps the percolator index used to alert
+ * specialists about matching new orders in sync with the database.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class SavedSearchService {
+
+    /**
+     * Outbox recording changes that must be propagated to the search index.
+     */
+    @Inject
+    private SearchOutbox searchOutbox;
+
+    /**
+     * Repository for accessing saved searches.
+     */
+    @Inject
+    private SavedSearchRepository savedSearchRepository;
+
+    /**
+     * Service for retrieving specialists.
+     */
+    @Inject
+    private SpecialistService specialistService;
+
+    /**
+     * Service for resolving the requested location.
+     */
+    @Inject
+    private LocationService locationService;
+
+    /**
+     * Service for resolving the requested service offerings.
+     */
+    @Inject
+    private ServiceOfferingService serviceOfferingService;
+
+    /**
+     * Maximum number of saved searches a specialist may register.
+     */
+    @ConfigProperty(name = "profinder.saved-search.max-per-specialist", defaultValue = "20")
+    private int maxPerSpecialist;
+
+    /**
+     * Registers a new saved search for a specialist.
+     *
+     * @param specialistId ID of the specialist
+     * @param savedSearch  criteria of the search
+     * @return the persisted saved search
+     * @throws IllegalArgumentException if the price range is empty, a service does not exist,
+     *                                  or the specialist has too many saved searches
+     */
+    @Transactional
+    public SavedSearch create(final Long specialistId, final SavedSearch savedSearch) {
+        log.info("Create saved search: specialistId={}", specialistId);
+        if (savedSearch.getMinPrice() != null && savedSearch.getMaxPrice() != null
+                && savedSearch.getMinPrice() > savedSearch.getMaxPrice()) {
+            throw new IllegalArgumentException("Minimum price must not exceed maximum price");
+        }
+        if (savedSearchRepository.countBySpecialistId(specialistId) >= maxPerSpecialist) {
+            throw new IllegalArgumentException("At most " + maxPerSpecialist + " saved searches are allowed");
+        }
+        savedSearch.setSpecialist(specialistService.getById(specialistId));
+        savedSearch.setServiceOfferings(resolveServices(savedSearch.getServiceOfferings()));
+        if (savedSearch.getLocation() != null) {
+            savedSearch.setLocation(locationService.getById(savedSearch.getLocation().getId()));
+        } else {
+            savedSearch.setRadiusKm(null);
+        }
+        savedSearchRepository.persist(savedSearch);
+
+        searchOutbox.enqueue(SearchDocumentType.SAVED_SEARCH, savedSearch.getId(), SearchOperation.UPSERT);
+
+        log.debug("Saved search created with ID={}", savedSearch.getId());
+        return savedSearch;
+    }
+
+    /**
+     * Retrieves all saved searches of a specialist.
+     *
+     * @param specialistId ID of the specialist
+     * @return list of saved searches, oldest first
+     */
+    public List<SavedSearch> getBySpecialistId(final Long specialistId) {
+        log.info("Get saved searches: specialistId={}", specialistId);
+        return savedSearchRepository.findBySpecialistId(specialistId);
+    }
+
+    /**
+     * Deletes a saved search of a specialist.
+     *
+     * @param specialistId  ID of the specialist
+     * @param savedSearchId ID of the saved search
+     * @throws NotFoundException        if the saved search does not exist
+     * @throws IllegalArgumentException if the saved search belongs to another specialist
+     */
+    @Transactional
+    public void delete(final Long specialistId, final Long savedSearchId) {
+        log.info("Delete saved search: specialistId={}, savedSearchId={}", specialistId, savedSearchId);
+        SavedSearch savedSearch = savedSearchRepository.findById(savedSearchId);
+        if (savedSearch == null) {
+            throw new NotFoundException("Saved search not found");
+        }
+        if (!savedSearch.getSpecialist().getId().equals(specialistId)) {
+            log.error("Specialist is not the owner of saved search. savedSearchId={}, specialistId={}",
+                    savedSearchId, specialistId);
+            throw new IllegalArgumentException("Saved search belongs to another specialist");
+        }
+        savedSearchRepository.delete(savedSearch);
+
+        searchOutbox.enqueue(SearchDocumentType.SAVED_SEARCH, savedSearchId, SearchOperation.DELETE);
+    }
+
+    /**
+     * Retrieves all saved searches with the given IDs, with their location and services loaded.
+     *
+     * @param ids IDs of the saved searches
+     * @return found saved searches, in no particular order; missing IDs are skipped
+     */
+    public List<SavedSearch> getByIds(final List<Long> ids) {
+        log.debug("Get saved searches by IDs: count={}", ids.size());
+        return savedSearchRepository.findByIds(ids);
+    }
+
+    /**
+     * Retrieves the next chunk of saved searches ordered by ID.
+     *
+     * @param afterId ID after which the chunk starts
+     * @param size    maximum number of saved searches in the chunk
+     * @return the chunk, empty if there are no more saved searches
+     */
+    public List<SavedSearch> getChunkAfterId(final Long afterId, final int size) {
+        log.debug("Get saved searches chunk: afterId={}, size={}", afterId, size);
+        return savedSearchRepository.findChunkAfterId(afterId, size);
+    }
+
+    /**
+     * Replaces the requested services with the persisted ones.
+     *
+     * @param requested services sent by the client, identified by ID
+     * @return the persisted services, empty if none were requested
+     * @throws IllegalArgumentException if a service does not exist
+     */
+    private List<ServiceOffering> resolveServices(final List<ServiceOffering> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = requested.stream().map(ServiceOffering::getId).distinct().toList();
+        List<ServiceOffering> resolved = serviceOfferingService.getByIds(ids);
+        if (resolved.size() != ids.size()) {
+            throw new IllegalArgumentException("Unknown service offering");
+        }
+        return resolved;
+    }
+}
@@ -33,4 +33,15 @@ public class ServiceOfferingService {
         log.info("get all service offerings");
         return serviceOfferingRepository.listAll();
     }
+
+    /**
+     * Retrieves the service offerings with the given IDs.
+     *
+     * @param ids IDs of the service offerings
+     * @return found service offerings; missing IDs are skipped
+     */
+    public List<ServiceOffering> getByIds(final List<Long> ids) {
+        log.debug("get service offerings by IDs: {}", ids);
+        return serviceOfferingRepository.list("id in ?1", ids);
+    }
 }
@@ -2,14 +2,14 @@ package fit.biejk.service;
 
 import fit.biejk.entity.*;
 import fit.biejk.repository.SpecialistRepository;
-import fit.biejk.search.SpecialistSearchMapper;
-import fit.biejk.search.SpecialistSearchService;
+import fit.biejk.search.SearchOutbox;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.NotFoundException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -36,16 +36,10 @@ public class SpecialistService {
     private UserService userService;
 
     /**
-     * Service used to persist specialist data to the Elasticsearch index.
+     * Outbox recording changes that must be propagated to the search index.
      */
     @Inject
-    private SpecialistSearchService specialistSearchService;
-
-    /**
-     * Mapper for converting Specialist entities into SpecialistSearchDto.
-     */
-    @Inject
-    private SpecialistSearchMapper specialistSearchMapper;
+    private SearchOutbox searchOutbox;
 
     /** Service for managing reviews. */
     @Inject
@@ -73,7 +67,7 @@ public class SpecialistService {
         userService.checkUniqueEmail(specialist.getEmail());
         specialistRepository.persist(specialist);
 
-        specialistSearchService.save(specialistSearchMapper.toDto(specialist));
+        searchOutbox.enqueue(SearchDocumentType.SPECIALIST, specialist.getId(), SearchOperation.UPSERT);
 
         log.debug("Specialist created with ID={}", specialist.getId());
         return specialist;
@@ -91,6 +85,43 @@ public class SpecialistService {
         return specialists;
     }
 
+    /**
+     * Retrieves all specialists with the given IDs.
+     * <p>
+     * IDs that do not exist are skipped.
+     * </p>
+     *
+     * @param ids IDs of the specialists
+     * @return list of found specialists
+     */
+    public List<Specialist> getByIds(final List<Long> ids) {
+        log.debug("Get specialists by IDs: count={}", ids.size());
+        return specialistRepository.findByIds(ids);
+    }
+
+    /**
+     * Retrieves all specialists with the given IDs without their service offerings.
+     *
+     * @param ids IDs of the specialists
+     * @return list of found specialists
+     */
+    public List<Specialist> getPlainByIds(final List<Long> ids) {
+        log.debug("Get plain specialists by IDs: count={}", ids.size());
+        return specialistRepository.findPlainByIds(ids);
+    }
+
+    /**
+     * Retrieves the next chunk of specialists ordered by ID.
+     *
+     * @param afterId ID of the last specialist of the previous chunk
+     * @param size    maximum number of specialists to return
+     * @return list of specialists with IDs greater than {@code afterId}
+     */
+    public List<Specialist> getChunkAfterId(final Long afterId, final int size) {
+        log.debug("Get specialists chunk: afterId={}, size={}", afterId, size);
+        return specialistRepository.findChunkAfterId(afterId, size);
+    }
+
     /**
      * Retrieves a specialist by their ID.
      *
@@ -120,14 +151,11 @@ public class SpecialistService {
     public Specialist update(final Long id, final Specialist specialist) {
         log.info("Update specialist: ID={}, email={}", id, specialist.getEmail());
         Specialist old = getById(id);
+        // queues the reindex of the document, which also picks up the description
         userService.update(id, specialist);
         old.setDescription(specialist.getDescription());
         specialistRepository.flush();
 
-        old.getServiceOfferings().size();
-
-        specialistSearchService.save(specialistSearchMapper.toDto(old));
-
         log.debug("Specialist updated with ID={}", id);
         return old;
     }
@@ -143,43 +171,47 @@ public class SpecialistService {
         log.info("Delete specialist: ID={}", id);
         userService.delete(id);
 
-        specialistSearchService.delete(id);
+        searchOutbox.enqueue(SearchDocumentType.SPECIALIST, id, SearchOperation.DELETE);
 
         log.debug("Specialist deleted with ID={}", id);
     }
 
     /**
-     * Recalculates and updates the average rating for a specialist.
+     * Adds one new review rating to the average rating of a specialist.
      * <p>
-     * Computes the arithmetic mean from all reviews linked to the specialist.
-     * If no reviews are found, the rating is set to {@code null}.
+     * The average and the review count are updated incrementally in one statement, without loading the
+     * existing reviews and without losing concurrent reviews. Receiving a review is not activity of the
+     * specialist, so the last activity is left to {@link #recordActivity(Long)}.
      * </p>
      *
-     * @param specialistId the ID of the specialist whose rating should be updated
+     * @param specialistId the ID of the reviewed specialist
+     * @param rating       rating of the new review
+     * @throws NotFoundException if specialist is not found
      */
     @Transactional
-    public void computeAverageRating(final Long specialistId) {
-        Specialist specialist = getById(specialistId);
-        List<Review> reviews = specialist.getReviews();
-
-        if (reviews == null || reviews.isEmpty()) {
-            log.warn("No reviews found for specialistId={}. Setting averageRating to null.", specialistId);
-            specialist.setAverageRating(null);
-        } else {
-            double sum = 0;
-            for (Review review : reviews) {
-                sum += review.getRating();
-            }
-            double average = sum / reviews.size();
-            specialist.setAverageRating(average);
-            log.debug("Computed new averageRating={} for specialistId={}", average, specialistId);
+    public void addRating(final Long specialistId, final int rating) {
+        if (specialistRepository.addRating(specialistId, rating) == 0) {
+            throw new NotFoundException("Specialist with id " + specialistId + " not found");
         }
 
-        specialistRepository.persist(specialist);
+        searchOutbox.enqueue(SearchDocumentType.SPECIALIST, specialistId, SearchOperation.UPDATE_RATING);
 
-        specialistSearchService.save(specialistSearchMapper.toDto(specialist));
+        log.debug("Added rating={} for specialistId={}", rating, specialistId);
+    }
+
+    /**
+     * Records that a specialist was active just now.
+     *
+     * @param specialistId the ID of the specialist
+     */
+    @Transactional
+    public void recordActivity(final Long specialistId) {
+        Specialist specialist = getById(specialistId);
+        specialist.setLastActiveAt(LocalDateTime.now());
+
+        specialistRepository.persist(specialist);
 
-        log.info("Updated averageRating for specialistId={}", specialistId);
+        searchOutbox.enqueue(SearchDocumentType.SPECIALIST, specialist.getId(), SearchOperation.UPDATE_RATING);
     }
 
     /**
@@ -198,7 +230,7 @@ public class SpecialistService {
 
         specialistRepository.persist(specialist);
 
-        specialistSearchService.save(specialistSearchMapper.toDto(specialist));
+        searchOutbox.enqueue(SearchDocumentType.SPECIALIST, specialist.getId(), SearchOperation.UPSERT);
 
         log.debug("Updated services with ID={}", specialistId);
         return specialist;
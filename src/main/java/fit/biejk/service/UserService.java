@@ -1,8 +1,12 @@
 package fit.biejk.service;
 
 import fit.biejk.entity.Location;
+import fit.biejk.entity.SearchDocumentType;
+import fit.biejk.entity.SearchOperation;
+import fit.biejk.entity.Specialist;
 import fit.biejk.entity.User;
 import fit.biejk.repository.UserRepository;
+import fit.biejk.search.SearchOutbox;
 import fit.biejk.utilits.CryptoUtils;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -42,6 +46,18 @@ public class UserService {
     @Inject
     private MailService mailService;
 
+    /**
+     * Cache of chat participants, dropped for deleted users.
+     */
+    @Inject
+    private ChatMembershipCache chatMembershipCache;
+
+    /**
+     * Outbox recording changes that must be propagated to the search index.
+     */
+    @Inject
+    private SearchOutbox searchOutbox;
+
     /**
      * Checks if the given email is unique.
      *
@@ -112,6 +128,10 @@ public class UserService {
 
     /**
      * Updates the user data by ID.
+     * <p>
+     * The name, phone number and location are part of the search document of a specialist,
+     * so the document of a specialist is queued for reindexing.
+     * </p>
      *
      * @param userId   ID of the user
      * @param newUser  updated user data
@@ -133,6 +153,7 @@ public class UserService {
         }
         existingUser.setFirstName(newUser.getFirstName());
         existingUser.setLastName(newUser.getLastName());
+        reindexIfSpecialist(existingUser);
         log.debug("User updated with ID={}", existingUser.getId());
         return existingUser;
     }
@@ -153,6 +174,10 @@ public class UserService {
 
     /**
      * Updates user email.
+     * <p>
+     * The email is part of the search document of a specialist, so the document of a specialist
+     * is queued for reindexing.
+     * </p>
      *
      * @param userId   user ID
      * @param newEmail new email
@@ -163,10 +188,22 @@ public class UserService {
         log.info("Update user: userId={}, newEmail={}", userId, newEmail);
         User existingUser = getById(userId);
         existingUser.setEmail(newEmail);
+        reindexIfSpecialist(existingUser);
         log.debug("User updated with ID={}", existingUser.getId());
         return existingUser;
     }
 
+    /**
+     * Queues the search document of a user for reindexing if the user is a specialist.
+     *
+     * @param user the changed user
+     */
+    private void reindexIfSpecialist(final User user) {
+        if (user instanceof Specialist) {
+            searchOutbox.enqueue(SearchDocumentType.SPECIALIST, user.getId(), SearchOperation.UPSERT);
+        }
+    }
+
 
 
     /**
@@ -184,6 +221,7 @@ public class UserService {
             throw new NotFoundException("User with id " + userId + " not found");
         }
         userRepository.delete(existingUser);
+        chatMembershipCache.invalidateUser(userId);
         log.debug("User deleted with ID={}", userId);
     }
 
@@ -0,0 +1,514 @@
+package fit.biejk.socket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fit.biejk.converter.ChatMessageDecoder;
+import fit.biejk.dto.ChatFanoutBatch;
+import fit.biejk.dto.ChatMembershipInvalidation;
+import fit.biejk.dto.ChatOutputMessage;
+import fit.biejk.service.ChatMembershipCache;
+import fit.biejk.service.ChatRecentMessages;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.redis.client.Command;
+import io.vertx.mutiny.redis.client.Redis;
+import io.vertx.mutiny.redis.client.RedisConnection;
+import io.vertx.mutiny.redis.client.Request;
+import io.vertx.mutiny.redis.client.Response;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers chat messages to the sessions of a chat on every node of the cluster.
+ * <p>
+ * Each node keeps its own chat sessions and subscribes, over one dedicated Redis connection, only to the
+ * channels of the chats that have local sessions. A sent message is delivered to the local sessions
+ * right away and published once to the channel of its chat. Messages are published in batches: while a
+ * publish is in flight, new messages are queued and sent together with the next one, one batch per chat,
+ * so a busy node issues few publishes without delaying a message on a quiet one. A node ignores its own
+ * batches and delivers every message at most once, even if it arrives twice.
+ * </p>
+ * <p>
+ * The batches a node publishes for a chat are numbered consecutively, including those whose publish
+ * failed. A receiver that sees a number skipped has missed messages of that chat and drops the chat from
+ * {@link ChatRecentMessages}, so its history is read from the database again. The first batch received
+ * from a node for a chat only sets the expected number.
+ * </p>
+ * <p>
+ * Every node is also subscribed to one channel for chat membership invalidations, so a node that drops the
+ * cached chats of a user from {@link ChatMembershipCache} makes all other nodes drop them at once.
+ * </p>
+ * <p>
+ * If Redis is unavailable, messages still reach the sessions on the sending node, and the subscriptions
+ * are restored once Redis is back.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class ChatFanout {
+
+    /**
+     * Prefix of the Redis channels, followed by the chat ID.
+     */
+    private static final String CHANNEL_PREFIX = "profinder:chat:";
+
+    /**
+     * Redis channel of the chat membership invalidations, subscribed by every node.
+     */
+    private static final String MEMBERSHIP_CHANNEL = "profinder:chat-membership";
+
+    /**
+     * Type of a Redis reply carrying a message published to a subscribed channel.
+     */
+    private static final String MESSAGE_REPLY = "message";
+
+    /**
+     * Number of elements of a published-message reply: type, channel and payload.
+     */
+    private static final int MESSAGE_REPLY_SIZE = 3;
+
+    /**
+     * Mapper serializing the batches, with the same date format as the WebSocket messages.
+     */
+    private static final ObjectMapper JSON = ChatMessageDecoder.getJackson();
+
+    /**
+     * Low-level Redis client, used for the dedicated subscriber connection and pipelined publishes.
+     */
+    @Inject
+    private Redis redis;
+
+    /**
+     * Buffers of the newest messages, kept for the chats with local sessions.
+     */
+    @Inject
+    private ChatRecentMessages chatRecentMessages;
+
+    /**
+     * Cache of the chat participants, invalidated on behalf of the other nodes.
+     */
+    @Inject
+    private ChatMembershipCache chatMembershipCache;
+
+    /**
+     * Registry for publishing fan-out metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Whether messages are published to the other nodes.
+     */
+    @ConfigProperty(name = "profinder.chat.fanout.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    /**
+     * Maximum number of messages published in one pipelined request.
+     */
+    @ConfigProperty(name = "profinder.chat.fanout.max-batch-size", defaultValue = "100")
+    private int maxBatchSize;
+
+    /**
+     * How long the IDs of delivered messages are remembered to drop duplicates.
+     */
+    @ConfigProperty(name = "profinder.chat.fanout.dedup-window", defaultValue = "1m")
+    private Duration dedupWindow;
+
+    /**
+     * ID of this node, identifying the batches it published.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Open sessions on this node, keyed by chat ID; a chat is subscribed while it has an entry.
+     */
+    private final Map<Long, Set<Session>> chatSessions = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the last batch published by this node, by chat ID; written only while publishing.
+     */
+    private final Map<Long, Long> sentSequences = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the last batch received from each other node, by chat ID and node ID.
+     */
+    private final Map<Long, Map<String, Long>> receivedSequences = new ConcurrentHashMap<>();
+
+    /**
+     * Messages waiting to be published.
+     */
+    private final Queue<ChatOutputMessage> outgoing = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a publish is in flight.
+     */
+    private final AtomicBoolean publishing = new AtomicBoolean();
+
+    /**
+     * IDs of the recently delivered messages.
+     */
+    private Cache<Long, Boolean> delivered;
+
+    /**
+     * Delay between publishing a batch on another node and its delivery on this node.
+     */
+    private Timer latency;
+
+    /**
+     * Subscriber connection, or {@code null} if it is not open.
+     */
+    private volatile Uni<RedisConnection> subscriber;
+
+    /**
+     * Creates the duplicate filter and registers the metrics.
+     */
+    @PostConstruct
+    void init() {
+        delivered = Caffeine.newBuilder()
+                .expireAfterWrite(dedupWindow)
+                .build();
+        latency = Timer.builder("chat.fanout.latency")
+                .description("Delay between publishing a chat message and its delivery on another node")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        meterRegistry.gauge("chat.fanout.subscriptions", chatSessions, Map::size);
+    }
+
+    /**
+     * Registers a session of this node in a chat, subscribing to the chat on its first local session.
+     *
+     * @param chatId  ID of the chat
+     * @param session the session
+     */
+    public void join(final Long chatId, final Session session) {
+        chatSessions.compute(chatId, (id, sessions) -> {
+            Set<Session> joined = sessions;
+            if (joined == null) {
+                joined = ConcurrentHashMap.newKeySet();
+                chatRecentMessages.track(id);
+                send(Request.cmd(Command.SUBSCRIBE).arg(channel(id)));
+            }
+            joined.add(session);
+            return joined;
+        });
+    }
+
+    /**
+     * Removes a session of this node from a chat, unsubscribing from the chat after its last local session.
+     *
+     * @param chatId  ID of the chat
+     * @param session the session
+     */
+    public void leave(final Long chatId, final Session session) {
+        chatSessions.computeIfPresent(chatId, (id, sessions) -> {
+            sessions.remove(session);
+            if (!sessions.isEmpty()) {
+                return sessions;
+            }
+            send(Request.cmd(Command.UNSUBSCRIBE).arg(channel(id)));
+            chatRecentMessages.untrack(id);
+            sentSequences.remove(id);
+            receivedSequences.remove(id);
+            return null;
+        });
+    }
+
+    /**
+     * Delivers a message to the sessions of its chat on this node and publishes it to the other nodes.
+     *
+     * @param message the message
+     */
+    public void publish(final ChatOutputMessage message) {
+        deliver(message.getChatId(), List.of(message));
+        if (!enabled) {
+            return;
+        }
+        outgoing.add(message);
+        flush();
+    }
+
+    /**
+     * Tells the other nodes to drop the cached chats of a user.
+     * <p>
+     * If the publish fails, the other nodes drop the chats when their cache reloads them.
+     * </p>
+     *
+     * @param userId ID of the user
+     */
+    public void publishMembershipInvalidation(final Long userId) {
+        if (!enabled) {
+            return;
+        }
+        String payload;
+        try {
+            payload = JSON.writeValueAsString(new ChatMembershipInvalidation(nodeId, userId));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize chat membership invalidation of user {}", userId, e);
+            return;
+        }
+        redis.send(Request.cmd(Command.PUBLISH).arg(MEMBERSHIP_CHANNEL).arg(payload)).subscribe().with(
+                response -> meterRegistry.counter("chat.fanout.membership.published").increment(),
+                error -> {
+                    log.warn("Failed to publish chat membership invalidation of user {}: {}", userId,
+                            error.getMessage());
+                    meterRegistry.counter("chat.fanout.membership.failed").increment();
+                });
+    }
+
+    /**
+     * Opens the subscriber connection, and reopens it after it was lost.
+     * <p>
+     * The connection is kept even without local chat sessions, for the membership invalidations.
+     * </p>
+     */
+    @Scheduled(every = "${profinder.chat.fanout.resubscribe-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void resubscribe() {
+        if (!enabled || subscriber != null) {
+            return;
+        }
+        log.info("Restoring chat subscriptions: chats={}", chatSessions.size());
+        meterRegistry.counter("chat.fanout.resubscribes").increment();
+        subscriber().subscribe().with(
+                connection -> { },
+                error -> log.warn("Failed to restore chat subscriptions: {}", error.getMessage()));
+    }
+
+    /**
+     * Publishes the queued messages unless a publish is already in flight, one batch per chat.
+     */
+    private void flush() {
+        if (!publishing.compareAndSet(false, true)) {
+            return;
+        }
+        Map<Long, List<ChatOutputMessage>> byChat = new LinkedHashMap<>();
+        int count = 0;
+        ChatOutputMessage message = outgoing.poll();
+        while (message != null) {
+            byChat.computeIfAbsent(message.getChatId(), k -> new ArrayList<>()).add(message);
+            count++;
+            message = count < maxBatchSize ? outgoing.poll() : null;
+        }
+        if (byChat.isEmpty()) {
+            published(0, 0, null);
+            return;
+        }
+
+        List<Request> requests = new ArrayList<>();
+        long publishedAt = System.currentTimeMillis();
+        for (Map.Entry<Long, List<ChatOutputMessage>> chat : byChat.entrySet()) {
+            // numbered before serializing, so a batch that is never published shows up as a gap
+            long sequence = sentSequences.merge(chat.getKey(), 1L, Long::sum);
+            try {
+                String payload = JSON.writeValueAsString(
+                        new ChatFanoutBatch(nodeId, publishedAt, sequence, chat.getValue()));
+                requests.add(Request.cmd(Command.PUBLISH).arg(channel(chat.getKey())).arg(payload));
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize chat messages of chat {}", chat.getKey(), e);
+            }
+        }
+        int messages = count;
+        redis.batch(requests).subscribe().with(
+                responses -> published(messages, requests.size(), null),
+                error -> published(messages, requests.size(), error));
+    }
+
+    /**
+     * Records a finished publish and publishes the messages queued in the meantime.
+     *
+     * @param messages number of published messages
+     * @param batches  number of published batches
+     * @param error    failure of the publish, or {@code null} on success
+     */
+    private void published(final int messages, final int batches, final Throwable error) {
+        if (error != null) {
+            log.warn("Failed to publish {} chat messages: {}", messages, error.getMessage());
+            meterRegistry.counter("chat.fanout.failed").increment(messages);
+        } else if (messages > 0) {
+            meterRegistry.counter("chat.fanout.published").increment(messages);
+            meterRegistry.counter("chat.fanout.batches").increment(batches);
+        }
+        publishing.set(false);
+        if (!outgoing.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Handles a reply received on the subscriber connection, delivering the batches of the other nodes.
+     *
+     * @param response the reply
+     */
+    private void onReply(final Response response) {
+        if (response.size() != MESSAGE_REPLY_SIZE || !MESSAGE_REPLY.equals(response.get(0).toString())) {
+            return;
+        }
+        if (MEMBERSHIP_CHANNEL.equals(response.get(1).toString())) {
+            onMembershipInvalidation(response.get(2).toString());
+            return;
+        }
+        ChatFanoutBatch batch;
+        try {
+            batch = JSON.readValue(response.get(2).toString(), ChatFanoutBatch.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed chat batch on {}: {}", response.get(1), e.getMessage());
+            return;
+        }
+        if (nodeId.equals(batch.getNodeId()) || batch.getMessages().isEmpty()) {
+            return;
+        }
+        // measured with the wall clocks of two nodes, so it is only as accurate as their synchronization
+        latency.record(Math.max(0, System.currentTimeMillis() - batch.getPublishedAt()), TimeUnit.MILLISECONDS);
+        Long chatId = batch.getMessages().get(0).getChatId();
+        checkSequence(chatId, batch);
+        batch.getMessages().forEach(chatRecentMessages::append);
+        deliver(chatId, batch.getMessages());
+    }
+
+    /**
+     * Drops the cached chats of a user on behalf of another node.
+     *
+     * @param payload the serialized invalidation
+     */
+    private void onMembershipInvalidation(final String payload) {
+        ChatMembershipInvalidation invalidation;
+        try {
+            invalidation = JSON.readValue(payload, ChatMembershipInvalidation.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed chat membership invalidation: {}", e.getMessage());
+            return;
+        }
+        if (!nodeId.equals(invalidation.getNodeId())) {
+            chatMembershipCache.removeUser(invalidation.getUserId());
+        }
+    }
+
+    /**
+     * Records the number of a received batch and drops the buffer of its chat if batches were skipped.
+     *
+     * @param chatId ID of the chat
+     * @param batch  the batch
+     */
+    private void checkSequence(final Long chatId, final ChatFanoutBatch batch) {
+        Long previous = receivedSequences.computeIfAbsent(chatId, id -> new ConcurrentHashMap<>())
+                .put(batch.getNodeId(), batch.getSequence());
+        if (previous != null && batch.getSequence() != previous + 1) {
+            log.warn("Missed chat batches of chat {} from node {}: expected {}, got {}", chatId,
+                    batch.getNodeId(), previous + 1, batch.getSequence());
+            meterRegistry.counter("chat.fanout.gaps").increment();
+            chatRecentMessages.drop(chatId);
+        }
+    }
+
+    /**
+     * Sends messages to the open sessions of a chat on this node, skipping messages delivered before.
+     *
+     * @param chatId   ID of the chat
+     * @param messages the messages
+     */
+    private void deliver(final Long chatId, final List<ChatOutputMessage> messages) {
+        Set<Session> sessions = chatSessions.getOrDefault(chatId, Set.of());
+        for (ChatOutputMessage message : messages) {
+            if (delivered.asMap().putIfAbsent(message.getId(), Boolean.TRUE) != null) {
+                meterRegistry.counter("chat.fanout.duplicates").increment();
+                continue;
+            }
+            for (Session s : sessions) {
+                if (s.isOpen()) {
+                    s.getAsyncRemote().sendObject(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a subscription command over the subscriber connection, opening it if needed.
+     *
+     * @param request the command
+     */
+    private void send(final Request request) {
+        if (!enabled) {
+            return;
+        }
+        subscriber().chain(connection -> connection.send(request)).subscribe().with(
+                response -> { },
+                error -> log.warn("Failed to update chat subscriptions: {}", error.getMessage()));
+    }
+
+    /**
+     * Returns the subscriber connection, opening it on first use and subscribing it to the membership channel
+     * and all local chats.
+     * <p>
+     * A connection that failed or closed is dropped, and {@link #resubscribe()} later opens a new one.
+     * </p>
+     *
+     * @return the connection
+     */
+    private synchronized Uni<RedisConnection> subscriber() {
+        if (subscriber == null) {
+            subscriber = redis.connect()
+                    .invoke(connection -> connection
+                            .handler(this::onReply)
+                            .exceptionHandler(error -> log.warn("Chat subscriber failed: {}", error.getMessage()))
+                            .endHandler(this::dropSubscriber))
+                    .call(connection -> connection.send(subscribeAll()))
+                    .onFailure().invoke(error -> dropSubscriber())
+                    .memoize().indefinitely();
+        }
+        return subscriber;
+    }
+
+    /**
+     * Builds the command subscribing to the membership channel and the channels of all chats with local
+     * sessions.
+     *
+     * @return the command
+     */
+    private Request subscribeAll() {
+        Request request = Request.cmd(Command.SUBSCRIBE).arg(MEMBERSHIP_CHANNEL);
+        chatSessions.keySet().forEach(chatId -> request.arg(channel(chatId)));
+        return request;
+    }
+
+    /**
+     * Forgets the subscriber connection after it failed or closed.
+     */
+    private synchronized void dropSubscriber() {
+        log.warn("Chat subscriber connection lost, subscriptions will be restored");
+        subscriber = null;
+        // messages and membership invalidations of other nodes may have been missed meanwhile
+        chatRecentMessages.clear();
+        chatMembershipCache.clear();
+    }
+
+    /**
+     * Returns the Redis channel of a chat.
+     *
+     * @param chatId ID of the chat
+     * @return the channel name
+     */
+    private static String channel(final Long chatId) {
+        return CHANNEL_PREFIX + chatId;
+    }
+}
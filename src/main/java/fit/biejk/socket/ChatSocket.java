@@ -4,11 +4,8 @@ import fit.biejk.converter.ChatMessageDecoder;
 import fit.biejk.converter.ChatMessageEncoder;
 import fit.biejk.dto.ChatInputMessage;
 import fit.biejk.dto.ChatOutputMessage;
-import fit.biejk.entity.ChatMessage;
-import fit.biejk.mapper.ChatMessageMapper;
+import fit.biejk.service.ChatMembershipCache;
 import fit.biejk.service.ChatMessageService;
-import fit.biejk.service.ChatService;
-import fit.biejk.service.UserService;
 import io.smallrye.jwt.auth.principal.JWTParser;
 import io.smallrye.jwt.auth.principal.ParseException;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -20,9 +17,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.context.ManagedExecutor;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * WebSocket endpoint for managing chat sessions and message broadcasting.
  */
@@ -35,6 +29,11 @@ import java.util.concurrent.ConcurrentHashMap;
 )
 public class ChatSocket {
 
+    /**
+     * Key of the {@link ChatPrincipal} in the user properties of a session.
+     */
+    private static final String PRINCIPAL = "principal";
+
     /**
      * Parses JWT tokens to extract user information.
      */
@@ -54,27 +53,16 @@ public class ChatSocket {
     private ManagedExecutor executor;
 
     /**
-     * Service for chat-related operations such as validation.
+     * Cache of chat participants authorizing the sessions.
      */
     @Inject
-    private ChatService chatService;
+    private ChatMembershipCache chatMembershipCache;
 
     /**
-     * Mapper to convert between entity and DTO for chat messages.
+     * Delivers messages to the chat sessions on all nodes.
      */
     @Inject
-    private ChatMessageMapper chatMessageMapper;
-
-    /**
-     * Service for managing user-related logic.
-     */
-    @Inject
-    private UserService userService;
-
-    /**
-     * Map storing active chat sessions, keyed by chat ID.
-     */
-    private static final Map<Long, Set<Session>> CHAT_SESSIONS = new ConcurrentHashMap<>();
+    private ChatFanout chatFanout;
 
     /**
      * Handles new WebSocket connections.
@@ -94,20 +82,27 @@ public class ChatSocket {
     }
 
     private void handleOpenSession(final String token, final Long chatId, final Session session) {
-        Long userId = extractUserId(token);
-
-        if (userId == null || !userService.existById(userId)) {
+        Long userId;
+        try {
+            userId = extractUserId(token);
+        } catch (IllegalArgumentException e) {
             closeSession(session, "Unauthorized");
             return;
         }
 
-        if (!chatService.existById(chatId)) {
-            closeSession(session, "Chat does not exist");
+        // a chat is deleted together with its users, so membership also proves that both exist
+        if (!chatMembershipCache.isParticipant(chatId, userId)) {
+            closeSession(session, "Forbidden");
             return;
         }
 
-        session.getUserProperties().put("userId", userId);
-        CHAT_SESSIONS.computeIfAbsent(chatId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        session.getUserProperties().put(PRINCIPAL, new ChatPrincipal(userId, chatId));
+        chatFanout.join(chatId, session);
+        // the session may have closed while this ran, after onClose already left the chat
+        if (!session.isOpen()) {
+            chatFanout.leave(chatId, session);
+            return;
+        }
 
         log.info("User {} joined chat {}", userId, chatId);
     }
@@ -122,39 +117,35 @@ public class ChatSocket {
     @OnMessage
     public void onMessage(final ChatInputMessage inputMessage, final Session session,
                           @PathParam("chatId") final Long chatId) {
-        Long senderId = (Long) session.getUserProperties().get("userId");
-        if (senderId == null) {
-            log.warn("No userId associated with session: {}", session.getId());
+        ChatPrincipal principal = (ChatPrincipal) session.getUserProperties().get(PRINCIPAL);
+        if (principal == null || !principal.chatId().equals(chatId)) {
+            log.warn("No verified user associated with session: {}", session.getId());
             return;
         }
 
-        executor.execute(() -> handleIncomingMessage(inputMessage, senderId, chatId));
+        executor.execute(() -> handleIncomingMessage(inputMessage, principal, session));
     }
 
-    private void handleIncomingMessage(final ChatInputMessage inputMessage, final Long senderId, final Long chatId) {
-        if (!userService.existById(senderId)) {
+    private void handleIncomingMessage(final ChatInputMessage inputMessage, final ChatPrincipal principal,
+                                       final Session session) {
+        // served from memory; drops the session once the user or the chat is deleted
+        if (!chatMembershipCache.isParticipant(principal.chatId(), principal.userId())) {
+            closeSession(session, "Forbidden");
             return;
         }
 
         try {
-            ChatMessage message = chatMessageService.create(chatId, senderId, inputMessage.getContent());
-            ChatOutputMessage outputMessage = chatMessageMapper.toDto(message);
-            log.info("Sending message in chat {}: {}", chatId, outputMessage);
-            broadcastMessage(chatId, outputMessage);
+            ChatOutputMessage outputMessage = chatMessageService.create(principal.chatId(), principal.userId(),
+                    inputMessage.getContent());
+            log.info("Sending message in chat {}: {}", principal.chatId(), outputMessage);
+            chatFanout.publish(outputMessage);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected message in chat {}: {}", principal.chatId(), e.getMessage());
         } catch (Exception e) {
             log.error("Failed to process message", e);
         }
     }
 
-    private void broadcastMessage(final Long chatId, final ChatOutputMessage outputMessage) {
-        Set<Session> sessions = CHAT_SESSIONS.getOrDefault(chatId, Set.of());
-        for (Session s : sessions) {
-            if (s.isOpen()) {
-                s.getAsyncRemote().sendObject(outputMessage);
-            }
-        }
-    }
-
     /**
      * Handles WebSocket disconnections.
      *
@@ -163,10 +154,7 @@ public class ChatSocket {
      */
     @OnClose
     public void onClose(final Session session, @PathParam("chatId") final Long chatId) {
-        Set<Session> sessions = CHAT_SESSIONS.get(chatId);
-        if (sessions != null) {
-            sessions.remove(session);
-        }
+        chatFanout.leave(chatId, session);
         log.info("User disconnected from chat {}: {}", chatId, session.getId());
     }
 
@@ -231,4 +219,13 @@ public class ChatSocket {
             throw new IllegalArgumentException("Invalid JWT", e);
         }
     }
+
+    /**
+     * User of a session and the chat the user was verified to participate in when the session was opened.
+     *
+     * @param userId ID of the user
+     * @param chatId ID of the chat
+     */
+    private record ChatPrincipal(Long userId, Long chatId) {
+    }
 }
@@ -0,0 +1,334 @@
+package fit.biejk.socket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fit.biejk.converter.ChatMessageDecoder;
+import fit.biejk.dto.OrderAlertBatch;
+import fit.biejk.dto.OrderAlertMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.redis.client.Command;
+import io.vertx.mutiny.redis.client.Redis;
+import io.vertx.mutiny.redis.client.RedisConnection;
+import io.vertx.mutiny.redis.client.Request;
+import io.vertx.mutiny.redis.client.Response;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers new-order alerts to the sessions of a specialist on every node of the cluster.
+ * <p>
+ * Works like {@link ChatFanout}: each node keeps its own alert sessions and subscribes, over one dedicated
+ * Redis connection, only to the channels of the specialists with local sessions. Alerts are delivered to the
+ * local sessions right away and published in one pipelined request, one batch per specialist, to the
+ * channels of the specialists. A node ignores its own batches.
+ * </p>
+ * <p>
+ * If Redis is unavailable, alerts still reach the sessions on the percolating node, and the subscriptions
+ * are restored once Redis is back.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+public class OrderAlertFanout {
+
+    /**
+     * Prefix of the Redis channels, followed by the specialist ID.
+     */
+    private static final String CHANNEL_PREFIX = "profinder:alerts:";
+
+    /**
+     * Type of a Redis reply carrying a message published to a subscribed channel.
+     */
+    private static final String MESSAGE_REPLY = "message";
+
+    /**
+     * Number of elements of a published-message reply: type, channel and payload.
+     */
+    private static final int MESSAGE_REPLY_SIZE = 3;
+
+    /**
+     * Mapper serializing the batches, with the same settings as the WebSocket messages.
+     */
+    private static final ObjectMapper JSON = ChatMessageDecoder.getJackson();
+
+    /**
+     * Low-level Redis client, used for the dedicated subscriber connection and pipelined publishes.
+     */
+    @Inject
+    private Redis redis;
+
+    /**
+     * Registry for publishing fan-out metrics.
+     */
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Whether alerts are published to the other nodes.
+     */
+    @ConfigProperty(name = "profinder.saved-search.fanout.enabled", defaultValue = "true")
+    private boolean enabled;
+
+    /**
+     * ID of this node, identifying the batches it published.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Open sessions on this node, keyed by specialist ID; a specialist is subscribed while it has an entry.
+     */
+    private final Map<Long, Set<Session>> specialistSessions = new ConcurrentHashMap<>();
+
+    /**
+     * Subscriber connection, or {@code null} if it is not open.
+     */
+    private volatile Uni<RedisConnection> subscriber;
+
+    /**
+     * Registers the subscription gauge.
+     */
+    @PostConstruct
+    void init() {
+        meterRegistry.gauge("order.alerts.fanout.subscriptions", specialistSessions, Map::size);
+    }
+
+    /**
+     * Registers a session of this node, subscribing to the specialist on their first local session.
+     *
+     * @param specialistId ID of the specialist
+     * @param session      the session
+     */
+    public void join(final Long specialistId, final Session session) {
+        specialistSessions.compute(specialistId, (id, sessions) -> {
+            Set<Session> joined = sessions;
+            if (joined == null) {
+                joined = ConcurrentHashMap.newKeySet();
+                send(Request.cmd(Command.SUBSCRIBE).arg(channel(id)));
+            }
+            joined.add(session);
+            return joined;
+        });
+    }
+
+    /**
+     * Removes a session of this node, unsubscribing from the specialist after their last local session.
+     *
+     * @param specialistId ID of the specialist
+     * @param session      the session
+     */
+    public void leave(final Long specialistId, final Session session) {
+        specialistSessions.computeIfPresent(specialistId, (id, sessions) -> {
+            sessions.remove(session);
+            if (!sessions.isEmpty()) {
+                return sessions;
+            }
+            send(Request.cmd(Command.UNSUBSCRIBE).arg(channel(id)));
+            return null;
+        });
+    }
+
+    /**
+     * Delivers alerts to the sessions of their specialists on this node and publishes them to the other nodes.
+     *
+     * @param alerts alerts by specialist ID
+     * @return number of alerts that reached a session of their specialist on some node; alerts published
+     *         while Redis is unavailable count only if the specialist is connected to this node
+     */
+    public Uni<Integer> publish(final Map<Long, List<OrderAlertMessage>> alerts) {
+        Set<Long> reached = new HashSet<>();
+        for (Map.Entry<Long, List<OrderAlertMessage>> specialist : alerts.entrySet()) {
+            if (deliver(specialist.getKey(), specialist.getValue())) {
+                reached.add(specialist.getKey());
+            }
+        }
+        List<Long> published = new ArrayList<>();
+        List<Request> requests = new ArrayList<>();
+        if (enabled) {
+            for (Map.Entry<Long, List<OrderAlertMessage>> specialist : alerts.entrySet()) {
+                try {
+                    String payload = JSON.writeValueAsString(
+                            new OrderAlertBatch(nodeId, specialist.getKey(), specialist.getValue()));
+                    requests.add(Request.cmd(Command.PUBLISH).arg(channel(specialist.getKey())).arg(payload));
+                    published.add(specialist.getKey());
+                } catch (JsonProcessingException e) {
+                    log.error("Failed to serialize order alerts of specialist {}", specialist.getKey(), e);
+                }
+            }
+        }
+        if (requests.isEmpty()) {
+            return Uni.createFrom().item(count(alerts, reached));
+        }
+        return redis.batch(requests)
+                .map(responses -> {
+                    meterRegistry.counter("order.alerts.fanout.published").increment(requests.size());
+                    for (int i = 0; i < published.size(); i++) {
+                        Long specialistId = published.get(i);
+                        // this node is one of the receivers while it has sessions of the specialist
+                        int own = specialistSessions.containsKey(specialistId) ? 1 : 0;
+                        if (responses.get(i).toInteger() > own) {
+                            reached.add(specialistId);
+                        }
+                    }
+                    return count(alerts, reached);
+                })
+                .onFailure().recoverWithItem(error -> {
+                    log.warn("Failed to publish order alerts of {} specialists: {}",
+                            requests.size(), error.getMessage());
+                    meterRegistry.counter("order.alerts.fanout.failed").increment(requests.size());
+                    return count(alerts, reached);
+                });
+    }
+
+    /**
+     * Reopens the subscriber connection after it was lost while specialists have local sessions.
+     */
+    @Scheduled(every = "${profinder.saved-search.fanout.resubscribe-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void resubscribe() {
+        if (!enabled || subscriber != null || specialistSessions.isEmpty()) {
+            return;
+        }
+        log.info("Restoring order alert subscriptions: specialists={}", specialistSessions.size());
+        meterRegistry.counter("order.alerts.fanout.resubscribes").increment();
+        subscriber().subscribe().with(
+                connection -> { },
+                error -> log.warn("Failed to restore order alert subscriptions: {}", error.getMessage()));
+    }
+
+    /**
+     * Counts the alerts of the specialists that were reached.
+     *
+     * @param alerts  alerts by specialist ID
+     * @param reached IDs of the reached specialists
+     * @return number of delivered alerts
+     */
+    private static int count(final Map<Long, List<OrderAlertMessage>> alerts, final Set<Long> reached) {
+        int delivered = 0;
+        for (Long specialistId : reached) {
+            delivered += alerts.get(specialistId).size();
+        }
+        return delivered;
+    }
+
+    /**
+     * Handles a reply received on the subscriber connection, delivering the batches of the other nodes.
+     *
+     * @param response the reply
+     */
+    private void onReply(final Response response) {
+        if (response.size() != MESSAGE_REPLY_SIZE || !MESSAGE_REPLY.equals(response.get(0).toString())) {
+            return;
+        }
+        OrderAlertBatch batch;
+        try {
+            batch = JSON.readValue(response.get(2).toString(), OrderAlertBatch.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed order alert batch on {}: {}", response.get(1), e.getMessage());
+            return;
+        }
+        if (nodeId.equals(batch.getNodeId())) {
+            return;
+        }
+        deliver(batch.getSpecialistId(), batch.getAlerts());
+    }
+
+    /**
+     * Sends alerts to the open sessions of a specialist on this node.
+     *
+     * @param specialistId ID of the specialist
+     * @param alerts       the alerts
+     * @return {@code true} if the specialist has an open session on this node
+     */
+    private boolean deliver(final Long specialistId, final List<OrderAlertMessage> alerts) {
+        boolean delivered = false;
+        for (Session s : specialistSessions.getOrDefault(specialistId, Set.of())) {
+            if (s.isOpen()) {
+                alerts.forEach(alert -> s.getAsyncRemote().sendObject(alert));
+                delivered = true;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Sends a subscription command over the subscriber connection, opening it if needed.
+     *
+     * @param request the command
+     */
+    private void send(final Request request) {
+        if (!enabled) {
+            return;
+        }
+        subscriber().chain(connection -> connection.send(request)).subscribe().with(
+                response -> { },
+                error -> log.warn("Failed to update order alert subscriptions: {}", error.getMessage()));
+    }
+
+    /**
+     * Returns the subscriber connection, opening it on first use and subscribing it to all local specialists.
+     * <p>
+     * A connection that failed or closed is dropped, and {@link #resubscribe()} later opens a new one.
+     * </p>
+     *
+     * @return the connection
+     */
+    private synchronized Uni<RedisConnection> subscriber() {
+        if (subscriber == null) {
+            subscriber = redis.connect()
+                    .invoke(connection -> connection
+                            .handler(this::onReply)
+                            .exceptionHandler(error -> log.warn("Order alert subscriber failed: {}",
+                                    error.getMessage()))
+                            .endHandler(this::dropSubscriber))
+                    .call(connection -> specialistSessions.isEmpty()
+                            ? Uni.createFrom().nullItem()
+                            : connection.send(subscribeAll()))
+                    .onFailure().invoke(error -> dropSubscriber())
+                    .memoize().indefinitely();
+        }
+        return subscriber;
+    }
+
+    /**
+     * Builds the command subscribing to the channels of all specialists with local sessions.
+     *
+     * @return the command
+     */
+    private Request subscribeAll() {
+        Request request = Request.cmd(Command.SUBSCRIBE);
+        specialistSessions.keySet().forEach(specialistId -> request.arg(channel(specialistId)));
+        return request;
+    }
+
+    /**
+     * Forgets the subscriber connection after it failed or closed.
+     */
+    private synchronized void dropSubscriber() {
+        log.warn("Order alert subscriber connection lost, subscriptions will be restored");
+        subscriber = null;
+    }
+
+    /**
+     * Returns the Redis channel of a specialist.
+     *
+     * @param specialistId ID of the specialist
+     * @return the channel name
+     */
+    private static String channel(final Long specialistId) {
+        return CHANNEL_PREFIX + specialistId;
+    }
+}
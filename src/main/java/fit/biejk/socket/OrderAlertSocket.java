@@ -0,0 +1,170 @@
+package fit.biejk.socket;
+
+import fit.biejk.converter.OrderAlertEncoder;
+import fit.biejk.entity.UserRole;
+import fit.biejk.service.UserService;
+import io.smallrye.jwt.auth.principal.JWTParser;
+import io.smallrye.jwt.auth.principal.ParseException;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.websocket.*;
+import jakarta.websocket.server.ServerEndpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.context.ManagedExecutor;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+/**
+ * WebSocket endpoint pushing new-order alerts to connected specialists.
+ * <p>
+ * Specialists connect with their JWT in the {@code token} query parameter and receive an
+ * {@link fit.biejk.dto.OrderAlertMessage} whenever a new order matches one of their saved searches,
+ * instead of polling the order search. Sessions are registered with the {@link OrderAlertFanout}, so alerts
+ * percolated on any node reach them.
+ * </p>
+ */
+@Slf4j
+@ApplicationScoped
+@ServerEndpoint(value = "/alerts", encoders = OrderAlertEncoder.class)
+public class OrderAlertSocket {
+
+    /**
+     * Parses JWT tokens to extract user information.
+     */
+    @Inject
+    private JWTParser jwtParser;
+
+    /**
+     * Executor for running background tasks outside IO thread.
+     */
+    @Inject
+    private ManagedExecutor executor;
+
+    /**
+     * Service for managing user-related logic.
+     */
+    @Inject
+    private UserService userService;
+
+    /**
+     * Fan-out delivering the alerts to the sessions of a specialist on every node.
+     */
+    @Inject
+    private OrderAlertFanout orderAlertFanout;
+
+    /**
+     * Handles new WebSocket connections.
+     *
+     * @param session the WebSocket session
+     */
+    @OnOpen
+    public void onOpen(final Session session) {
+        String token = getTokenFromQuery(session);
+        if (token == null) {
+            closeSession(session, "Unauthorized");
+            return;
+        }
+
+        executor.execute(() -> handleOpenSession(token, session));
+    }
+
+    private void handleOpenSession(final String token, final Session session) {
+        Long userId;
+        try {
+            userId = extractUserId(token);
+        } catch (IllegalArgumentException e) {
+            closeSession(session, "Unauthorized");
+            return;
+        }
+
+        if (userId == null || !userService.existById(userId)
+                || userService.getById(userId).getRole() != UserRole.SPECIALIST) {
+            closeSession(session, "Unauthorized");
+            return;
+        }
+
+        session.getUserProperties().put("userId", userId);
+        orderAlertFanout.join(userId, session);
+        // the session may have closed while this ran, after onClose already left
+        if (!session.isOpen()) {
+            orderAlertFanout.leave(userId, session);
+            return;
+        }
+
+        log.info("Specialist {} subscribed to order alerts", userId);
+    }
+
+    /**
+     * Handles WebSocket disconnections.
+     *
+     * @param session the WebSocket session
+     */
+    @OnClose
+    public void onClose(final Session session) {
+        Long userId = (Long) session.getUserProperties().get("userId");
+        if (userId != null) {
+            orderAlertFanout.leave(userId, session);
+        }
+        log.info("Specialist {} unsubscribed from order alerts: {}", userId, session.getId());
+    }
+
+    /**
+     * Handles WebSocket errors.
+     *
+     * @param session the WebSocket session
+     * @param error   the error occurred
+     */
+    @OnError
+    public void onError(final Session session, final Throwable error) {
+        log.warn("Error in order alert session {}: {}", session.getId(), error.getMessage());
+    }
+
+    /**
+     * Extracts JWT token from session query string.
+     *
+     * @param session WebSocket session
+     * @return extracted token or null if missing
+     */
+    private String getTokenFromQuery(final Session session) {
+        String query = session.getQueryString();
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            if (param.startsWith("token=")) {
+                return param.substring("token=".length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes the WebSocket session with the given reason.
+     *
+     * @param session session to close
+     * @param reason  reason for closing
+     */
+    private void closeSession(final Session session, final String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, reason));
+        } catch (Exception e) {
+            log.warn("Failed to close session {}: {}", session.getId(), e.getMessage());
+        }
+        log.warn("Closed session {}: {}", session.getId(), reason);
+    }
+
+    /**
+     * Extracts user ID from a JWT token.
+     *
+     * @param token JWT token
+     * @return extracted user ID
+     * @throws IllegalArgumentException if token is invalid
+     */
+    private Long extractUserId(final String token) {
+        try {
+            JsonWebToken jwt = jwtParser.parse(token);
+            return Long.parseLong(jwt.getSubject());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Invalid JWT", e);
+        }
+    }
+}
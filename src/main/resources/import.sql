@@ -1,15 +1,15 @@
 -- Locations --
-INSERT INTO location (name) VALUES
-('Prague'),
-('Brno'),
-('Ostrava'),
-('Pilsen'),
-('Liberec'),
-('Olomouc'),
-('České Budějovice'),
-('Hradec Králové'),
-('Zlín'),
-('Karlovy Vary');
+INSERT INTO location (name, latitude, longitude) VALUES
+('Prague', 50.0755, 14.4378),
+('Brno', 49.1951, 16.6068),
+('Ostrava', 49.8209, 18.2625),
+('Pilsen', 49.7384, 13.3736),
+('Liberec', 50.7663, 15.0543),
+('Olomouc', 49.5938, 17.2509),
+('České Budějovice', 48.9745, 14.4743),
+('Hradec Králové', 50.2092, 15.8328),
+('Zlín', 49.2265, 17.6707),
+('Karlovy Vary', 50.2319, 12.8720);
 
 -- Services --
 INSERT INTO service_offering (name) VALUES
@@ -48,17 +48,17 @@ INSERT INTO users (id, email, password, first_name, last_name, phone_number, loc
 (109, 'spec10@example.com','$2a$10$abcdefghijklmnopqrstuv', 'Marek',  'Blaha',      '888999000', 2, 'SPECIALIST', now());
 
 -- Specialist data
-INSERT INTO specialist (id, average_rating, description) VALUES
-(100, 4.7, 'Experienced hair stylist with over 10 years in the business.'),
-(101, 4.2, 'Certified tax consultant helping small businesses.'),
-(102, 4.5, 'Expert in legal consulting and personal finance.'),
-(103, 4.3, 'Tech enthusiast offering laptop and phone repair.'),
-(104, 4.6, 'Haircuts and grooming for men and women.'),
-(105, 4.1, 'Professional resume and job application advisor.'),
-(106, 4.4, 'Skincare specialist with years of experience.'),
-(107, 4.0, 'Document translation and business help services.'),
-(108, 4.8, 'Photo editing and logo design expert.'),
-(109, 4.9, 'Website development and IT consulting.');
+INSERT INTO specialist (id, average_rating, review_count, last_active_at, description) VALUES
+(100, 4.7, 124, now(), 'Experienced hair stylist with over 10 years in the business.'),
+(101, 4.2, 37, now(), 'Certified tax consultant helping small businesses.'),
+(102, 4.5, 58, now(), 'Expert in legal consulting and personal finance.'),
+(103, 4.3, 12, now(), 'Tech enthusiast offering laptop and phone repair.'),
+(104, 4.6, 203, now(), 'Haircuts and grooming for men and women.'),
+(105, 4.1, 8, now(), 'Professional resume and job application advisor.'),
+(106, 4.4, 46, now(), 'Skincare specialist with years of experience.'),
+(107, 4.0, 21, now(), 'Document translation and business help services.'),
+(108, 4.8, 3, now(), 'Photo editing and logo design expert.'),
+(109, 4.9, 1, now(), 'Website development and IT consulting.');
 
 -- Specialist ⟷ Services
 INSERT INTO specialist_service_offering (specialist_id, serviceofferings_id) VALUES